@@ -0,0 +1,120 @@
+package com.misys.cme.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+
+import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.definitions.DefinitionLoader;
+import com.misys.jdbc.DataSourceManager;
+
+/**
+ * Loads the CMEObject definitions for the benchmarks that need them, the same way GenerateCMEAPI does.
+ * The database is given by system properties, e.g.
+ * java -Dcmeapi.benchmark.server=TEXLDEFHK4HC2 -Dcmeapi.benchmark.instance=MSSQLSERVER2012
+ * -Dcmeapi.benchmark.database=MonDev -Dcmeapi.benchmark.user=... -Dcmeapi.benchmark.password=... -jar benchmarks.jar
+ * @note The definitions are only read at setup; the database isn't used while measuring.
+ */
+public class BenchmarkDefinitions {
+	private static final String PROPERTY_PREFIX = "cmeapi.benchmark.";
+
+	private static boolean loaded = false;
+
+	/**
+	 * Loads the CMEObject definitions if they aren't loaded yet.
+	 */
+	public static synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		try {
+			System.setProperty(Context.INITIAL_CONTEXT_FACTORY, "org.apache.naming.java.javaURLContextFactory");
+			System.setProperty(Context.URL_PKG_PREFIXES, "org.apache.naming");
+
+			InitialContext ic = new InitialContext();
+			ic.createSubcontext("java:");
+			ic.createSubcontext("java:/comp");
+			ic.createSubcontext("java:/comp/env");
+			ic.createSubcontext("java:/comp/env/jdbc");
+
+			SQLServerDataSource dataSource = new SQLServerDataSource();
+			dataSource.setServerName(BenchmarkDefinitions.getProperty("server"));
+			String instance = System.getProperty(PROPERTY_PREFIX + "instance");
+			if (instance != null) {
+				dataSource.setInstanceName(instance);
+			}
+			dataSource.setDatabaseName(BenchmarkDefinitions.getProperty("database"));
+			dataSource.setUser(BenchmarkDefinitions.getProperty("user"));
+			dataSource.setPassword(BenchmarkDefinitions.getProperty("password"));
+
+			ic.bind("CF_SYS_DS", dataSource);
+
+			DataSourceManager.setDataSource(dataSource);
+			DefinitionLoader.initialzeDefinitions();
+			loaded = true;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Gets a required system property.
+	 * @param name Name of the property, without the cmeapi.benchmark. prefix.
+	 * @return The value of the property.
+	 */
+	private static String getProperty(String name) {
+		String value = System.getProperty(PROPERTY_PREFIX + name);
+		if (value == null) {
+			throw new RuntimeException("The system property " + PROPERTY_PREFIX + name + " must be set to load the CMEObject definitions!");
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the API classes of every CMEObject type, the same way CMEAPIUtils maps them.
+	 * @return Map of CMEObject names to the classes that handle API requests for the CMEObjects.
+	 */
+	public static Map<String, Class<?>> getClassMap() {
+		BenchmarkDefinitions.load();
+		Map<String, Class<?>> classMap = new HashMap<String, Class<?>>();
+		for (String cmeObjectName : CMEObjectDef.getCMEObjectDefs().keySet()) {
+			try {
+				classMap.put(cmeObjectName, Class.forName("com.misys.cme.api." + cmeObjectName));
+			} catch (ClassNotFoundException e) {
+				//No API class was generated for this type
+			}
+		}
+		return classMap;
+	}
+
+	/**
+	 * Creates a CMEObject of the given type with a value of the right data type in every column.
+	 * @param name Name of the CMEObject type.
+	 * @param seed Number the values are derived from, so different seeds give different keys.
+	 * @return A new CMEObject.
+	 */
+	public static CMEObject createCMEObject(String name, int seed) {
+		BenchmarkDefinitions.load();
+		CMEObject cmeObject = new CMEObject(name);
+		for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getColumns()) {
+			switch (column.getDataType()) {
+				case INTEGER:
+					cmeObject.setValue(column.getColumnName(), Long.valueOf(seed + 1));
+					break;
+				case DECIMAL:
+					cmeObject.setValue(column.getColumnName(), BigDecimal.valueOf(seed * 100L + 25, 2));
+					break;
+				default:
+					cmeObject.setValue(column.getColumnName(), column.getColumnName() + " " + seed);
+					break;
+			}
+		}
+		return cmeObject;
+	}
+}
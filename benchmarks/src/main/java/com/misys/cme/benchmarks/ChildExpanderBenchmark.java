@@ -0,0 +1,110 @@
+package com.misys.cme.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.backend.BackendRegistry;
+import com.misys.cme.backend.InMemoryBackend;
+import com.misys.cme.backend.SyntheticDataGenerator;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.utils.ChildExpander;
+import com.misys.cme.utils.JsonCodec;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Measures adding child references to a page of CMEObjects, as CMEObjectStreamingOutput does for every page.
+ * The CMEObjects and their children are generated into an InMemoryBackend, so expanding doesn't need a database.
+ * Needs the CMEObject definitions. See BenchmarkDefinitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChildExpanderBenchmark {
+	private static final String BASE_URL = "http://localhost:8080/CMEAPI/";
+
+	@Param({"Entity", "Individual"})
+	public String name;
+
+	@Param({"1", "100"})
+	public int pageSize;
+
+	/**
+	 * Number of CMEObjects of the type generated into the backend, each with their children.
+	 */
+	@Param({"10000"})
+	public int generatedCount;
+
+	private List<CMEObject> cmeObjects;
+	private List<ObjectNode> templateNodes;
+
+	/**
+	 * Generates the CMEObjects of the type and their children into an InMemoryBackend, and takes a page of them from
+	 * the middle of the table.
+	 */
+	@Setup
+	public void setup() {
+		BenchmarkDefinitions.load();
+		InMemoryBackend backend = new InMemoryBackend();
+		new SyntheticDataGenerator(backend, 1, 3).generate(name, generatedCount);
+		BackendRegistry.setBackend(backend);
+
+		List<CMEObject> all = backend.search(name, null, null, (Filter) null);
+		int start = Math.max(0, all.size() / 2 - pageSize / 2);
+		cmeObjects = new ArrayList<>(all.subList(start, Math.min(start + pageSize, all.size())));
+		templateNodes = new ArrayList<>(cmeObjects.size());
+		for (CMEObject cmeObject : cmeObjects) {
+			templateNodes.add(JsonCodec.toTree(cmeObject));
+		}
+	}
+
+	/**
+	 * Adds links to the children of every CMEObject in the page.
+	 * The JSON is copied first, since adding the links changes it.
+	 * @return The JSON of the page.
+	 */
+	@Benchmark
+	public List<ObjectNode> addChildrenAsLinks() {
+		return addChildren("link");
+	}
+
+	/**
+	 * Expands the children of every CMEObject in the page, searching the InMemoryBackend for them.
+	 * The JSON is copied first, since expanding changes it.
+	 * @return The JSON of the page.
+	 */
+	@Benchmark
+	public List<ObjectNode> addChildrenExpanded() {
+		return addChildren("expand");
+	}
+
+	/**
+	 * Adds child references to a copy of the JSON of the page.
+	 * @param references Value of the references URL query parameter.
+	 * @return The JSON of the page.
+	 */
+	private List<ObjectNode> addChildren(String references) {
+		List<ObjectNode> nodes = new ArrayList<>(templateNodes.size());
+		for (ObjectNode templateNode : templateNodes) {
+			nodes.add(templateNode.deepCopy());
+		}
+		new ChildExpander(references, BASE_URL).addChildren(nodes, cmeObjects);
+		return nodes;
+	}
+}
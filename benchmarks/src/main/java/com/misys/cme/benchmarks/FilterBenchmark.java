@@ -0,0 +1,157 @@
+package com.misys.cme.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.search.filter.ConditionalOperator;
+import com.misys.cme.search.filter.ConditionalOperatorFactory;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.FilterPlanCache;
+import com.misys.cme.utils.JsonCodec;
+
+/**
+ * Measures parsing search filters (the "filter" of POST /searches/{collection}) into Filter trees, with and without
+ * FilterPlanCache, and typing the literals of single operators.
+ * These don't need the CMEObject definitions, so the literals are typed by their text alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+	/**
+	 * Filters like the ones the UI sends, from a single equality to a nested search over child collections.
+	 */
+	private static final String[] FILTERS = {
+		//simple: one key lookup
+		"{\"ent_id\": 1234}",
+		//typical: the entity search screen
+		"{\"$and\": [{\"lgl_ent_id\": {\"$in\": [1, 2, 3, 4, 5]}}, {\"ent_name\": {\"$begins\": \"SMITH\"}},"
+				+ " {\"st_abbv\": {\"$nin\": [\"TX\", \"OK\", \"LA\"]}}, {\"created_date\": {\"$gte\": \"2017-01-01\"}}]}",
+		//complex: ranges, $or and $elemMatch over a child collection
+		"{\"$or\": [{\"$and\": [{\"ent_id\": {\"$gt\": 1000}}, {\"ent_id\": {\"$lte\": 50000}}]},"
+				+ " {\"tax_id\": {\"$contains\": \"555\"}}, {\"$not\": {\"ent_struct_id\": {\"$eq\": null}}}],"
+				+ " \"addresses\": {\"$elemMatch\": {\"st_abbv\": \"TX\", \"adr_num\": {\"$lt\": 3}}},"
+				+ " \"modified_ts\": {\"$lt\": \"2018-03-01T12:30:00\"}, \"app_id\": {\"$ne\": 7}}"
+	};
+
+	/**
+	 * Literals of every kind ConditionalOperatorFactory tells apart for $eq.
+	 */
+	private static final String[] EQUALITY_LITERALS = {
+		"12345", "-0.75", "\"SMITH\"", "\"2018-03-01\"", "\"12:30:00\"", "\"2018-03-01T12:30:00\"",
+		"\"3f2504e0-4f89-11d3-9a0c-0305e82c3301\"", "true", "null"
+	};
+
+	/**
+	 * Literals of every kind ConditionalOperatorFactory accepts for $gte.
+	 */
+	private static final String[] COMPARISON_LITERALS = {
+		"12345", "-0.75", "\"2018-03-01\"", "\"12:30:00\"", "\"2018-03-01T12:30:00\"",
+		"\"3f2504e0-4f89-11d3-9a0c-0305e82c3301\""
+	};
+
+	/**
+	 * One of the FILTERS, parsed into JSON.
+	 */
+	@State(Scope.Benchmark)
+	public static class FilterState {
+		@Param({"0", "1", "2"})
+		public int filterIndex;
+
+		private ObjectNode filterJSON;
+
+		@Setup
+		public void setup() throws IOException {
+			filterJSON = (ObjectNode) JsonCodec.getMapper().readTree(FILTERS[filterIndex]);
+		}
+	}
+
+	/**
+	 * One of the EQUALITY_LITERALS, parsed into JSON.
+	 */
+	@State(Scope.Benchmark)
+	public static class EqualityLiteralState {
+		@Param({"0", "1", "2", "3", "4", "5", "6", "7", "8"})
+		public int literalIndex;
+
+		private JsonNode literal;
+
+		@Setup
+		public void setup() throws IOException {
+			literal = JsonCodec.getMapper().readTree(EQUALITY_LITERALS[literalIndex]);
+		}
+	}
+
+	/**
+	 * One of the COMPARISON_LITERALS, parsed into JSON.
+	 */
+	@State(Scope.Benchmark)
+	public static class ComparisonLiteralState {
+		@Param({"0", "1", "2", "3", "4", "5"})
+		public int literalIndex;
+
+		private JsonNode literal;
+
+		@Setup
+		public void setup() throws IOException {
+			literal = JsonCodec.getMapper().readTree(COMPARISON_LITERALS[literalIndex]);
+		}
+	}
+
+	/**
+	 * Parses the filter into a new Filter tree.
+	 * @param state The filter.
+	 * @return The Filter.
+	 */
+	@Benchmark
+	public Filter parseFilter(FilterState state) {
+		return new Filter(state.filterJSON);
+	}
+
+	/**
+	 * Gets the Filter from FilterPlanCache, which after the first call only hashes the filter's shape and binds its
+	 * literals.
+	 * @param state The filter.
+	 * @return The Filter.
+	 */
+	@Benchmark
+	public Filter parseFilterCached(FilterState state) {
+		return FilterPlanCache.getFilter(state.filterJSON);
+	}
+
+	/**
+	 * Creates an $eq operator, which types its literal.
+	 * @param state The literal.
+	 * @return The ConditionalOperator.
+	 */
+	@Benchmark
+	public ConditionalOperator createEqualsOperator(EqualityLiteralState state) {
+		return ConditionalOperatorFactory.create("$eq", state.literal);
+	}
+
+	/**
+	 * Creates a $gte operator, which types its literal as a comparable value.
+	 * @param state The literal.
+	 * @return The ConditionalOperator.
+	 */
+	@Benchmark
+	public ConditionalOperator createComparisonOperator(ComparisonLiteralState state) {
+		return ConditionalOperatorFactory.create("$gte", state.literal);
+	}
+}
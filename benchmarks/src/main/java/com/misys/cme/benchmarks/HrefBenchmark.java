@@ -0,0 +1,95 @@
+package com.misys.cme.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.misys.cme.utils.HrefTemplateRegistry;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Measures building the href of CMEObjects, which every response does once per CMEObject, and the link of a child
+ * reference, which references=link does once per child per CMEObject.
+ * Needs the CMEObject definitions. See BenchmarkDefinitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HrefBenchmark {
+	private static final String BASE_URL = "http://localhost:8080/CMEAPI/";
+
+	/**
+	 * Entity has a single key column; ObligorNumber has a composite key.
+	 */
+	@Param({"Entity", "ObligorNumber"})
+	public String name;
+
+	private HrefTemplateRegistry hrefTemplates;
+	private CMEObject cmeObject;
+	private Map<String, Object> keyParams;
+	private Map<String, Object> searchParams;
+
+	/**
+	 * Builds the href templates and a CMEObject of the type.
+	 */
+	@Setup
+	public void setup() {
+		hrefTemplates = new HrefTemplateRegistry(BenchmarkDefinitions.getClassMap());
+		cmeObject = BenchmarkDefinitions.createCMEObject(name, 1234);
+		keyParams = new HashMap<String, Object>();
+		for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+			keyParams.put(column.getColumnName(), cmeObject.getValue(column.getColumnName()));
+		}
+		//Dropping a key column makes the link a search URL with query params
+		searchParams = new HashMap<String, Object>(keyParams);
+		if (searchParams.size() > 1) {
+			searchParams.remove(searchParams.keySet().iterator().next());
+		} else {
+			searchParams.put("ent_name", "SMITH & SONS");
+		}
+	}
+
+	/**
+	 * Builds the href of the CMEObject.
+	 * @return The URL.
+	 */
+	@Benchmark
+	public String getURLFromCMEObject() {
+		return hrefTemplates.getURLFromCMEObject(cmeObject, BASE_URL);
+	}
+
+	/**
+	 * Builds the link of a child reference with all of the key columns, which is the URL of the get method.
+	 * @return The URL.
+	 */
+	@Benchmark
+	public String getURLFromKeyParams() {
+		return hrefTemplates.getURLFromTypeParams(name, BASE_URL, keyParams);
+	}
+
+	/**
+	 * Builds the link of a child reference without all of the key columns, which is the URL of the search method.
+	 * @return The URL.
+	 */
+	@Benchmark
+	public String getURLFromSearchParams() {
+		return hrefTemplates.getURLFromTypeParams(name, BASE_URL, searchParams);
+	}
+}
@@ -0,0 +1,93 @@
+package com.misys.cme.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.backend.InMemoryBackend;
+import com.misys.cme.backend.SyntheticDataGenerator;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.FilterPlanCache;
+import com.misys.cme.utils.JsonCodec;
+import com.misys.cme.utils.SortOrder;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Measures searching generated Entities in an InMemoryBackend, i.e. evaluating Filters with FilterEvaluator, from key
+ * lookups that only read one key range to filters on other columns that scan the whole table, and finding the top
+ * results of each in an order other than key order.
+ * Needs the CMEObject definitions. See BenchmarkDefinitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InMemorySearchBenchmark {
+	private static final String[] FILTERS = {
+		//key lookup
+		"{\"ent_id\": 5000}",
+		//key range, like the next page of a keyset cursor
+		"{\"$and\": [{\"ent_id\": {\"$gt\": 5000}}, {\"ent_id\": {\"$lte\": 5100}}]}",
+		//scan: text prefix
+		"{\"ent_name\": {\"$begins\": \"SMITH 1\"}}",
+		//scan: $or of $nin and a range
+		"{\"$or\": [{\"ent_name\": {\"$nin\": [\"SMITH 1\", \"JONES 2\"]}}, {\"ent_id\": {\"$lt\": 10}}]}"
+	};
+
+	@Param({"100000"})
+	public int generatedCount;
+
+	@Param({"0", "1", "2", "3"})
+	public int filterIndex;
+
+	private InMemoryBackend backend;
+	private Filter filter;
+	private SortOrder sort;
+
+	/**
+	 * Generates the Entities and parses the filter.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		BenchmarkDefinitions.load();
+		backend = new InMemoryBackend();
+		new SyntheticDataGenerator(backend, 1, 0).generate("Entity", generatedCount);
+		ObjectNode filterJSON = (ObjectNode) JsonCodec.getMapper().readTree(FILTERS[filterIndex]);
+		filter = FilterPlanCache.getFilter(filterJSON, CMEObjectDef.getCmeObjDef("Entity"));
+		sort = new SortOrder("Entity", JsonCodec.getMapper().readTree("[{\"field\": \"ent_name\", \"direction\": \"desc\"}]"));
+	}
+
+	/**
+	 * Searches the Entities with the filter.
+	 * @return The Entities found.
+	 */
+	@Benchmark
+	public List<CMEObject> search() {
+		return backend.search("Entity", null, null, filter);
+	}
+
+	/**
+	 * Searches the Entities with the filter for the first 20 by descending name.
+	 * @return The Entities found.
+	 */
+	@Benchmark
+	public List<CMEObject> searchTop() {
+		return backend.search("Entity", null, null, filter, sort, 20);
+	}
+}
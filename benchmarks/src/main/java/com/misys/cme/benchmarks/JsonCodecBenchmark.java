@@ -0,0 +1,109 @@
+package com.misys.cme.benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.utils.JsonCodec;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Measures the per-row cost of converting CMEObjects to and from JSON with a new ObjectMapper for each row, as the API
+ * layer used to, against the shared ObjectMapper and ObjectReader of JsonCodec.
+ * The CMEObjects have a mix of integer, decimal, text and null values, so they don't need the CMEObject definitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonCodecBenchmark {
+	@Param({"10", "50", "200"})
+	public int columnCount;
+
+	private CMEObject cmeObject;
+	private ObjectNode json;
+
+	/**
+	 * Creates a CMEObject with columnCount columns, and its JSON.
+	 */
+	@Setup
+	public void setup() {
+		cmeObject = new CMEObject("Entity");
+		for (int i = 0; i < columnCount; i++) {
+			String columnName = "column_" + i;
+			switch (i % 4) {
+				case 0:
+					cmeObject.setValue(columnName, Long.valueOf(i * 1000L));
+					break;
+				case 1:
+					cmeObject.setValue(columnName, BigDecimal.valueOf(i * 100L + 25, 2));
+					break;
+				case 2:
+					cmeObject.setValue(columnName, "Value of column " + i);
+					break;
+				default:
+					cmeObject.setValue(columnName, null);
+					break;
+			}
+		}
+		json = JsonCodec.toTree(cmeObject);
+	}
+
+	/**
+	 * Converts the CMEObject to a JSON tree with a new ObjectMapper.
+	 * @return The ObjectNode.
+	 */
+	@Benchmark
+	public ObjectNode toTreeNewMapper() {
+		return new ObjectMapper().valueToTree(cmeObject);
+	}
+
+	/**
+	 * Converts the CMEObject to a JSON tree with the shared ObjectMapper.
+	 * @return The ObjectNode.
+	 */
+	@Benchmark
+	public ObjectNode toTreeShared() {
+		return JsonCodec.toTree(cmeObject);
+	}
+
+	/**
+	 * Converts the JSON to a CMEObject with a new ObjectMapper.
+	 * @return The CMEObject.
+	 */
+	@Benchmark
+	public CMEObject toCMEObjectNewMapper() {
+		Map<String, Object> map = new ObjectMapper().convertValue(json.get("values"), new TypeReference<Map<String, Object>>(){});
+		CMEObject result = new CMEObject(json.get("type").asText());
+		result.setValues(map);
+		return result;
+	}
+
+	/**
+	 * Converts the JSON to a CMEObject with the shared ObjectReader.
+	 * @return The CMEObject.
+	 * @throws IOException if the JSON can't be read.
+	 */
+	@Benchmark
+	public CMEObject toCMEObjectShared() throws IOException {
+		return JsonCodec.toCMEObject(json);
+	}
+}
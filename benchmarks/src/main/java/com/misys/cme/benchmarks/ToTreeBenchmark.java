@@ -0,0 +1,71 @@
+package com.misys.cme.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.utils.JsonCodec;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Measures converting CMEObjects to JSON trees, which every response does once per CMEObject.
+ * The CMEObjects have a mix of integer, decimal, text and null values, so they don't need the CMEObject definitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToTreeBenchmark {
+	@Param({"10", "50", "200"})
+	public int columnCount;
+
+	private CMEObject cmeObject;
+
+	/**
+	 * Creates a CMEObject with columnCount columns.
+	 */
+	@Setup
+	public void setup() {
+		cmeObject = new CMEObject("Entity");
+		for (int i = 0; i < columnCount; i++) {
+			String columnName = "column_" + i;
+			switch (i % 4) {
+				case 0:
+					cmeObject.setValue(columnName, Long.valueOf(i * 1000L));
+					break;
+				case 1:
+					cmeObject.setValue(columnName, BigDecimal.valueOf(i * 100L + 25, 2));
+					break;
+				case 2:
+					cmeObject.setValue(columnName, "Value of column " + i);
+					break;
+				default:
+					cmeObject.setValue(columnName, null);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Converts the CMEObject to a new JSON tree.
+	 * @return The ObjectNode.
+	 */
+	@Benchmark
+	public ObjectNode toTree() {
+		return JsonCodec.toTree(cmeObject);
+	}
+}
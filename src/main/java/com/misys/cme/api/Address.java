@@ -2,6 +2,7 @@ package com.misys.cme.api;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.misys.cme.utils.CMEAPIUtils;
+import java.io.InputStream;
 import java.lang.Integer;
 import java.lang.Object;
 import java.lang.String;
@@ -28,7 +29,7 @@ public class Address {
 	private static Logger logger = LogManager.getLogger(Address.class.getName());
 
 	@GET
-	@Produces("application/json")
+	@Produces("application/json, application/x-ndjson, text/csv")
 	public static Response searchAddress(@Context UriInfo uriInfo) {
 		logger.traceEntry();
 		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
@@ -44,6 +45,42 @@ public class Address {
 		return logger.traceExit(rb.build());
 	}
 
+	@GET
+	@Path("/_count")
+	@Produces("application/json")
+	public static Response countAddress(@Context UriInfo uriInfo) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.count("Address", uriInfo);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
+	@GET
+	@Path("/_exists")
+	@Produces("application/json")
+	public static Response existsAddress(@Context UriInfo uriInfo) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.exists("Address", uriInfo);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
 	@GET
 	@Path("/{adr_num}/{ent_id}")
 	@Produces("application/json")
@@ -65,6 +102,25 @@ public class Address {
 		return logger.traceExit(rb.build());
 	}
 
+	@POST
+	@Path("/_mget")
+	@Consumes("application/json")
+	@Produces("application/json")
+	public static Response mgetAddress(@Context UriInfo uriInfo, JsonNode ids) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.mget("Address", uriInfo, ids);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
 	@PUT
 	@Path("/{adr_num}/{ent_id}")
 	@Consumes("application/json")
@@ -122,4 +178,23 @@ public class Address {
 		}
 		return logger.traceExit(rb.build());
 	}
+
+	@POST
+	@Path("/_bulk")
+	@Consumes("application/json, application/x-ndjson")
+	@Produces("application/json")
+	public static Response bulkAddress(@Context UriInfo uriInfo, InputStream operations) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.bulk("Address", uriInfo, operations);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
 }
@@ -2,6 +2,7 @@ package com.misys.cme.api;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.misys.cme.utils.CMEAPIUtils;
+import java.io.InputStream;
 import java.lang.Integer;
 import java.lang.Object;
 import java.lang.String;
@@ -28,7 +29,7 @@ public class CountryName {
 	private static Logger logger = LogManager.getLogger(CountryName.class.getName());
 
 	@GET
-	@Produces("application/json")
+	@Produces("application/json, application/x-ndjson, text/csv")
 	public static Response searchCountryName(@Context UriInfo uriInfo) {
 		logger.traceEntry();
 		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
@@ -44,6 +45,42 @@ public class CountryName {
 		return logger.traceExit(rb.build());
 	}
 
+	@GET
+	@Path("/_count")
+	@Produces("application/json")
+	public static Response countCountryName(@Context UriInfo uriInfo) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.count("CountryName", uriInfo);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
+	@GET
+	@Path("/_exists")
+	@Produces("application/json")
+	public static Response existsCountryName(@Context UriInfo uriInfo) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.exists("CountryName", uriInfo);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
 	@GET
 	@Path("/{code_id}")
 	@Produces("application/json")
@@ -64,6 +101,25 @@ public class CountryName {
 		return logger.traceExit(rb.build());
 	}
 
+	@POST
+	@Path("/_mget")
+	@Consumes("application/json")
+	@Produces("application/json")
+	public static Response mgetCountryName(@Context UriInfo uriInfo, JsonNode ids) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.mget("CountryName", uriInfo, ids);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
+
 	@PUT
 	@Path("/{code_id}")
 	@Consumes("application/json")
@@ -120,4 +176,23 @@ public class CountryName {
 		}
 		return logger.traceExit(rb.build());
 	}
+
+	@POST
+	@Path("/_bulk")
+	@Consumes("application/json, application/x-ndjson")
+	@Produces("application/json")
+	public static Response bulkCountryName(@Context UriInfo uriInfo, InputStream operations) {
+		logger.traceEntry();
+		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+		try {
+			Object object = CMEAPIUtils.bulk("CountryName", uriInfo, operations);
+			rb.entity(object);
+			rb.header("X-Messages", "This was successful");
+		} catch(Exception e) {
+			rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+			rb.header("X-Errors", "There was an error");
+			logger.log(Level.ERROR, e.getMessage());
+		}
+		return logger.traceExit(rb.build());
+	}
 }
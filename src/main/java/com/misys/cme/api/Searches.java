@@ -37,7 +37,7 @@ public class Searches {
 
 	@POST
 	@Consumes("application/json")
-	@Produces("application/json")
+	@Produces("application/json, application/x-ndjson, text/csv")
 	public static Response searchViaPOST(@Context UriInfo uriInfo, @PathParam("collection") String collection, JsonNode filterJSON) {
 		logger.traceEntry();
 		Response.ResponseBuilder rb = Response.status(Response.Status.OK);
@@ -0,0 +1,82 @@
+package com.misys.cme.backend;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds the CMEObjectBackend the API reads and writes CMEObjects with.
+ * The backend is chosen by the CMEAPI.backend system property:
+ * <ul>
+ * <li>database (the default): CMEObjectController, i.e. the database.</li>
+ * <li>memory: an InMemoryBackend, filled by SyntheticDataGenerator from CMEAPI.backend.generate, e.g.
+ * -DCMEAPI.backend.generate=Entity:1000000,Individual:100000. The GROUP children of every generated CMEObject are
+ * generated too, CMEAPI.backend.groupSize (3 by default) per parent, and CMEAPI.backend.seed (1 by default) seeds the
+ * values.</li>
+ * </ul>
+ * @note The CMEObject definitions are still loaded by DefinitionLoader; only the CMEObjects themselves come from the
+ * backend.
+ */
+public class BackendRegistry {
+	private static Logger logger = LogManager.getLogger(BackendRegistry.class);
+
+	private static final String PROPERTY_PREFIX = "CMEAPI.backend";
+
+	private static volatile CMEObjectBackend backend;
+
+	/**
+	 * Gets the backend, creating it from the system properties the first time.
+	 * @return The CMEObjectBackend.
+	 */
+	public static CMEObjectBackend getBackend() {
+		CMEObjectBackend current = BackendRegistry.backend;
+		if (current == null) {
+			synchronized (BackendRegistry.class) {
+				current = BackendRegistry.backend;
+				if (current == null) {
+					current = BackendRegistry.createBackend();
+					BackendRegistry.backend = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Sets the backend, e.g. to an InMemoryBackend filled by a benchmark.
+	 * @param backend The CMEObjectBackend to use from now on.
+	 */
+	public static void setBackend(CMEObjectBackend backend) {
+		BackendRegistry.backend = backend;
+	}
+
+	/**
+	 * Creates the backend named by the CMEAPI.backend system property.
+	 * @return A new CMEObjectBackend.
+	 */
+	private static CMEObjectBackend createBackend() {
+		String type = System.getProperty(PROPERTY_PREFIX, "database").trim();
+		switch (type) {
+			case "database":
+				return new ControllerBackend();
+			case "memory":
+				InMemoryBackend memoryBackend = new InMemoryBackend();
+				SyntheticDataGenerator generator = new SyntheticDataGenerator(memoryBackend,
+						Long.getLong(PROPERTY_PREFIX + ".seed", 1), Integer.getInteger(PROPERTY_PREFIX + ".groupSize", 3));
+				String generate = System.getProperty(PROPERTY_PREFIX + ".generate", "");
+				for (String entry : generate.split(",")) {
+					if (entry.trim().isEmpty()) {
+						continue;
+					}
+					String[] parts = entry.split(":");
+					if (parts.length != 2) {
+						throw new RuntimeException("The entries of " + PROPERTY_PREFIX + ".generate must be <name>:<count>!");
+					}
+					generator.generate(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+				}
+				logger.info("Using the in-memory backend with " + memoryBackend.getSizes());
+				return memoryBackend;
+			default:
+				throw new RuntimeException("The backend \"" + type + "\" is not supported! Use \"database\" or \"memory\".");
+		}
+	}
+}
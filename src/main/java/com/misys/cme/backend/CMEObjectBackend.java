@@ -0,0 +1,101 @@
+package com.misys.cme.backend;
+
+import java.util.List;
+import java.util.Map;
+
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.utils.Aggregation;
+import com.misys.cme.utils.SortOrder;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Reads and writes CMEObjects for the API. Every read and write of the API goes through the backend returned by
+ * BackendRegistry.getBackend(), so the API can be run against something other than the database, e.g. for load
+ * testing.
+ * @note Implementations must be thread safe.
+ */
+public interface CMEObjectBackend {
+	/**
+	 * Searches for CMEObjects of the given type whose columns equal the given parameters.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param viewName Name of the view to search, or null.
+	 * @param columns List of column names to return. If the List is empty or null, all columns are returned.
+	 * @param params Parameters to search with. Those that don't name a column are ignored.
+	 * @return List of the CMEObjects found.
+	 */
+	List<CMEObject> search(String name, String viewName, List<String> columns, Map<String, Object> params);
+
+	/**
+	 * Searches for CMEObjects of the given type that match the given Filter.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param viewName Name of the view to search, or null.
+	 * @param columns List of column names to return. If the List is empty or null, all columns are returned.
+	 * @param filter Filter to search with.
+	 * @return List of the CMEObjects found.
+	 */
+	List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter);
+
+	/**
+	 * Searches for the first CMEObjects of the given type that match the given Filter in the given order. How the top
+	 * results are found is up to the backend.
+	 * @note ControllerBackend still reads every CMEObject that matches from the database, then sorts them in Java and
+	 * keeps the first ones, so the limit only saves converting and writing the rest.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param viewName Name of the view to search, or null.
+	 * @param columns List of column names to return. If the List is empty or null, all columns are returned.
+	 * @param filter Filter to search with. If null, every CMEObject of the type matches.
+	 * @param sort Order of the results. If null, they are in key order.
+	 * @param limit Maximum number of CMEObjects to return, or null to return all of them.
+	 * @return List of the CMEObjects found, in order.
+	 */
+	List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter, SortOrder sort, Integer limit);
+
+	/**
+	 * Counts the CMEObjects of the given type that match the given Filter.
+	 * @param name Name of the CMEObject type to count.
+	 * @param viewName Name of the view to search, or null.
+	 * @param filter Filter to search with. If null, every CMEObject of the type is counted.
+	 * @return Number of CMEObjects found.
+	 */
+	int count(String name, String viewName, Filter filter);
+
+	/**
+	 * Checks whether any CMEObject of the given type matches the given Filter.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param viewName Name of the view to search, or null.
+	 * @param filter Filter to search with. If null, any CMEObject of the type matches.
+	 * @return true if a CMEObject was found; false otherwise.
+	 */
+	boolean exists(String name, String viewName, Filter filter);
+
+	/**
+	 * Groups the CMEObjects of the given type that match the given Filter and computes the given Aggregation of each
+	 * group, so only the groups are returned instead of the CMEObjects.
+	 * @param name Name of the CMEObject type to aggregate.
+	 * @param viewName Name of the view to search, or null.
+	 * @param filter Filter to search with. If null, every CMEObject of the type is aggregated.
+	 * @param aggregation Group by columns and aggregates to compute.
+	 * @return The groups. See Aggregation.Accumulator.getResults.
+	 */
+	List<Map<String, Object>> aggregate(String name, String viewName, Filter filter, Aggregation aggregation);
+
+	/**
+	 * Inserts the given CMEObject.
+	 * @param cmeObject CMEObject to insert.
+	 * @return The inserted CMEObject, with any generated key values.
+	 */
+	CMEObject insert(CMEObject cmeObject) throws Exception;
+
+	/**
+	 * Updates the CMEObject with the key of the given CMEObject to the given CMEObject.
+	 * @param cmeObject Updated state of the CMEObject.
+	 */
+	void update(CMEObject cmeObject) throws Exception;
+
+	/**
+	 * Deletes the CMEObject of the given type with the given key.
+	 * @param name Name of the CMEObject type to delete.
+	 * @param params Values of the key columns of the CMEObject to delete.
+	 */
+	void delete(String name, Map<String, Object> params);
+}
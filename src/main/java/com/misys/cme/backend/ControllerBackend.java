@@ -0,0 +1,143 @@
+package com.misys.cme.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.utils.Aggregation;
+import com.misys.cme.utils.SortOrder;
+import com.misys.cmeobject.CMEObject;
+import com.misys.cmeobject.CMEObjectController;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Reads and writes CMEObjects in the database through CMEObjectController. This is the default backend.
+ * @note CMEObjectController has no ORDER BY or TOP, so sorted and limited searches are sorted here, keeping only the
+ * top results with a bounded heap.
+ * @note CMEObjectController has no COUNT, EXISTS or GROUP BY query, so counting selects only the key columns of the
+ * matching rows and counts them, and aggregating selects only the columns the Aggregation reads and groups them here.
+ * That still reads every matching row, but doesn't transfer, convert or write their other columns.
+ */
+public class ControllerBackend implements CMEObjectBackend {
+	/**
+	 * Searches the database for CMEObjects of the given type whose columns equal the given parameters.
+	 * @see CMEObjectBackend#search(String, String, List, Map)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Map<String, Object> params) {
+		return CMEObjectController.search(name, viewName, columns, params);
+	}
+
+	/**
+	 * Searches the database for CMEObjects of the given type that match the given Filter.
+	 * @see CMEObjectBackend#search(String, String, List, Filter)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter) {
+		return CMEObjectController.search(name, viewName, columns, filter);
+	}
+
+	/**
+	 * Searches the database for CMEObjects of the given type that match the given Filter, then sorts them and keeps
+	 * the first ones.
+	 * @see CMEObjectBackend#search(String, String, List, Filter, SortOrder, Integer)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter, SortOrder sort, Integer limit) {
+		List<CMEObject> cmeObjects;
+		if (filter == null) {
+			cmeObjects = CMEObjectController.search(name, viewName, columns, new HashMap<String, Object>());
+		} else {
+			cmeObjects = CMEObjectController.search(name, viewName, columns, filter);
+		}
+		if (sort == null && limit != null) {
+			sort = SortOrder.keyOrder(name);
+		}
+		if (sort != null) {
+			return sort.top(cmeObjects, limit);
+		}
+		return cmeObjects;
+	}
+
+	/**
+	 * Counts the CMEObjects of the given type in the database that match the given Filter.
+	 * @see CMEObjectBackend#count(String, String, Filter)
+	 */
+	@Override
+	public int count(String name, String viewName, Filter filter) {
+		List<String> keyColumns = new ArrayList<>();
+		for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+			keyColumns.add(column.getColumnName());
+		}
+		if (filter == null) {
+			return CMEObjectController.search(name, viewName, keyColumns, new HashMap<String, Object>()).size();
+		}
+		return CMEObjectController.search(name, viewName, keyColumns, filter).size();
+	}
+
+	/**
+	 * Checks whether any CMEObject of the given type in the database matches the given Filter.
+	 * @see CMEObjectBackend#exists(String, String, Filter)
+	 * TODO: Stop at the first row once CMEObjectController can limit a search.
+	 */
+	@Override
+	public boolean exists(String name, String viewName, Filter filter) {
+		return count(name, viewName, filter) > 0;
+	}
+
+	/**
+	 * Aggregates the CMEObjects of the given type in the database that match the given Filter.
+	 * @see CMEObjectBackend#aggregate(String, String, Filter, Aggregation)
+	 */
+	@Override
+	public List<Map<String, Object>> aggregate(String name, String viewName, Filter filter, Aggregation aggregation) {
+		List<String> columns = aggregation.getColumnNames();
+		if (columns.isEmpty()) {
+			//An empty List selects every column, and only the number of rows is needed
+			for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+				columns.add(column.getColumnName());
+			}
+		}
+		List<CMEObject> cmeObjects;
+		if (filter == null) {
+			cmeObjects = CMEObjectController.search(name, viewName, columns, new HashMap<String, Object>());
+		} else {
+			cmeObjects = CMEObjectController.search(name, viewName, columns, filter);
+		}
+		Aggregation.Accumulator accumulator = aggregation.createAccumulator();
+		for (CMEObject cmeObject : cmeObjects) {
+			accumulator.add(cmeObject);
+		}
+		return accumulator.getResults();
+	}
+
+	/**
+	 * Inserts the given CMEObject into the database.
+	 * @see CMEObjectBackend#insert(CMEObject)
+	 */
+	@Override
+	public CMEObject insert(CMEObject cmeObject) throws Exception {
+		return CMEObjectController.insert(cmeObject);
+	}
+
+	/**
+	 * Updates the given CMEObject in the database.
+	 * @see CMEObjectBackend#update(CMEObject)
+	 */
+	@Override
+	public void update(CMEObject cmeObject) throws Exception {
+		CMEObjectController.update(cmeObject);
+	}
+
+	/**
+	 * Deletes the CMEObject of the given type with the given key from the database.
+	 * @see CMEObjectBackend#delete(String, Map)
+	 */
+	@Override
+	public void delete(String name, Map<String, Object> params) {
+		CMEObjectController.delete(name, params);
+	}
+}
@@ -0,0 +1,600 @@
+package com.misys.cme.backend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.cme.search.filter.AndCombinator;
+import com.misys.cme.search.filter.EqualityValue;
+import com.misys.cme.search.filter.EqualsOperator;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.FilterEvaluator;
+import com.misys.cme.search.filter.FilterOptimizer;
+import com.misys.cme.search.filter.GreaterThanOperator;
+import com.misys.cme.search.filter.GreaterThanOrEqualsOperator;
+import com.misys.cme.search.filter.InOperator;
+import com.misys.cme.search.filter.LessThanOperator;
+import com.misys.cme.search.filter.LessThanOrEqualsOperator;
+import com.misys.cme.search.filter.OrCombinator;
+import com.misys.cme.search.filter.Selector;
+import com.misys.cme.utils.Aggregation;
+import com.misys.cme.utils.CMEAPIUtils;
+import com.misys.cme.utils.SortOrder;
+import com.misys.cmeobject.CMEObject;
+import com.misys.cmeobject.search.Queries.ConditionalOperator;
+import com.misys.cmeobject.search.Queries.Query;
+import com.misys.cmeobject.search.Queries.QueryNode;
+import com.misys.definitions.CMEChildRelKeysDef;
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.enums.DataType;
+
+/**
+ * Keeps CMEObjects in memory, so the API can be load tested without a database.
+ * Each CMEObject type is a table ordered by its key columns, like a clustered index. Searches evaluate their Filter
+ * with FilterEvaluator. Filters that fix the leading key columns ($eq or $in, also under $or, as get, multi-get and
+ * ChildExpander send) or bound them (as KeysetCursor sends) only read the matching key ranges; any other filter scans
+ * the whole table.
+ * CMEObjects are copied going in and out, so callers can't change the stored ones.
+ * @note Views aren't applied: searching a view searches the whole table.
+ */
+public class InMemoryBackend implements CMEObjectBackend {
+	private static Logger logger = LogManager.getLogger(InMemoryBackend.class);
+
+	/**
+	 * Key value that is greater than every other key value, for the upper ends of key ranges.
+	 */
+	private static final Object MAX_VALUE = new Object();
+
+	/**
+	 * Orders keys column by column, like KeysetCursor orders pages. A key that is a prefix of another comes first.
+	 */
+	private static final Comparator<List<Object>> KEY_ORDER = InMemoryBackend::compareKeys;
+
+	private ConcurrentHashMap<String, ConcurrentSkipListMap<List<Object>, CMEObject>> tables = new ConcurrentHashMap<>();
+	private ConcurrentHashMap<String, AtomicLong> sequences = new ConcurrentHashMap<>();
+	private FilterEvaluator evaluator = new FilterEvaluator(this::getChildren);
+
+	/**
+	 * Searches for CMEObjects of the given type whose columns equal the given parameters, like CMEAPIUtils does for
+	 * paged searches.
+	 * @see CMEObjectBackend#search(String, String, List, Map)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Map<String, Object> params) {
+		return search(name, viewName, columns, CMEAPIUtils.createFilterFromParams(name, params));
+	}
+
+	/**
+	 * Searches for CMEObjects of the given type that match the given Filter.
+	 * @see CMEObjectBackend#search(String, String, List, Filter)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter) {
+		CMEObjectDef def = InMemoryBackend.getDef(name);
+		List<CMEObject> results = new ArrayList<>();
+		for (CMEObject cmeObject : getCandidates(def, filter)) {
+			if (evaluator.matches(filter, cmeObject)) {
+				results.add(InMemoryBackend.copy(def, cmeObject, columns));
+			}
+		}
+		logger.trace(name + (viewName != null ? " (" + viewName + ")" : "") + ", " + filter + ": " + results.size());
+		return results;
+	}
+
+	/**
+	 * Searches for the first CMEObjects of the given type that match the given Filter in the given order. In key order
+	 * the search stops once it has found enough; in any other order only the matches are kept, and only the ones
+	 * returned are copied.
+	 * @see CMEObjectBackend#search(String, String, List, Filter, SortOrder, Integer)
+	 */
+	@Override
+	public List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter, SortOrder sort, Integer limit) {
+		CMEObjectDef def = InMemoryBackend.getDef(name);
+		boolean keyOrder = sort == null || sort.isKeyOrder();
+		List<CMEObject> matches = new ArrayList<>();
+		for (CMEObject cmeObject : getCandidates(def, filter)) {
+			if (keyOrder && limit != null && matches.size() >= limit) {
+				break;
+			}
+			if (evaluator.matches(filter, cmeObject)) {
+				matches.add(cmeObject);
+			}
+		}
+		if (!keyOrder) {
+			matches = sort.top(matches, limit);
+		}
+		List<CMEObject> results = new ArrayList<>(matches.size());
+		for (CMEObject cmeObject : matches) {
+			results.add(InMemoryBackend.copy(def, cmeObject, columns));
+		}
+		logger.trace(name + (viewName != null ? " (" + viewName + ")" : "") + ", " + filter + ", " + sort + ", " + limit + ": " + results.size());
+		return results;
+	}
+
+	/**
+	 * Counts the CMEObjects of the given type that match the given Filter, without copying them.
+	 * @see CMEObjectBackend#count(String, String, Filter)
+	 */
+	@Override
+	public int count(String name, String viewName, Filter filter) {
+		int count = 0;
+		for (CMEObject cmeObject : getCandidates(InMemoryBackend.getDef(name), filter)) {
+			if (evaluator.matches(filter, cmeObject)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks whether any CMEObject of the given type matches the given Filter, stopping at the first one.
+	 * @see CMEObjectBackend#exists(String, String, Filter)
+	 */
+	@Override
+	public boolean exists(String name, String viewName, Filter filter) {
+		for (CMEObject cmeObject : getCandidates(InMemoryBackend.getDef(name), filter)) {
+			if (evaluator.matches(filter, cmeObject)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Aggregates the CMEObjects of the given type that match the given Filter, without copying them.
+	 * @see CMEObjectBackend#aggregate(String, String, Filter, Aggregation)
+	 */
+	@Override
+	public List<Map<String, Object>> aggregate(String name, String viewName, Filter filter, Aggregation aggregation) {
+		Aggregation.Accumulator accumulator = aggregation.createAccumulator();
+		for (CMEObject cmeObject : getCandidates(InMemoryBackend.getDef(name), filter)) {
+			if (evaluator.matches(filter, cmeObject)) {
+				accumulator.add(cmeObject);
+			}
+		}
+		return accumulator.getResults();
+	}
+
+	/**
+	 * Inserts the given CMEObject. If the type has a single integer key column without a value, the next number of
+	 * the type's sequence is used, like an identity column.
+	 * @see CMEObjectBackend#insert(CMEObject)
+	 */
+	@Override
+	public CMEObject insert(CMEObject cmeObject) {
+		CMEObjectDef def = InMemoryBackend.getDef(cmeObject.getType());
+		CMEObject stored = InMemoryBackend.copy(def, cmeObject, null);
+		CMEObjectColumnDef identityColumn = InMemoryBackend.getIdentityColumn(def);
+		if (identityColumn != null && stored.getValue(identityColumn.getColumnName()) == null) {
+			stored.setValue(identityColumn.getColumnName(), nextId(def.getName()));
+		}
+		List<Object> key = InMemoryBackend.getKey(def, stored);
+		if (key.contains(null)) {
+			throw new RuntimeException("The key columns of " + def.getName() + " must all have values!");
+		}
+		if (getTable(def.getName()).putIfAbsent(key, stored) != null) {
+			throw new RuntimeException(def.getName() + " " + key + " already exists!");
+		}
+		updateSequence(def, stored);
+		return InMemoryBackend.copy(def, stored, null);
+	}
+
+	/**
+	 * Replaces the CMEObject with the key of the given CMEObject.
+	 * @see CMEObjectBackend#update(CMEObject)
+	 */
+	@Override
+	public void update(CMEObject cmeObject) {
+		CMEObjectDef def = InMemoryBackend.getDef(cmeObject.getType());
+		CMEObject stored = InMemoryBackend.copy(def, cmeObject, null);
+		List<Object> key = InMemoryBackend.getKey(def, stored);
+		if (getTable(def.getName()).replace(key, stored) == null) {
+			throw new RuntimeException(def.getName() + " " + key + " does not exist!");
+		}
+	}
+
+	/**
+	 * Deletes the CMEObject of the given type with the given key, if there is one.
+	 * @see CMEObjectBackend#delete(String, Map)
+	 */
+	@Override
+	public void delete(String name, Map<String, Object> params) {
+		CMEObjectDef def = InMemoryBackend.getDef(name);
+		List<Object> key = new ArrayList<>();
+		for (CMEObjectColumnDef column : def.getKeyColumns()) {
+			key.add(params.get(column.getColumnName()));
+		}
+		getTable(name).remove(key);
+	}
+
+	/**
+	 * Stores the given CMEObject as it is, replacing any CMEObject with the same key. This is for filling the backend
+	 * with generated data, so the CMEObject isn't copied or checked.
+	 * @param cmeObject CMEObject to store. It must have values in all of its key columns and must not be changed
+	 * afterwards.
+	 */
+	public void load(CMEObject cmeObject) {
+		CMEObjectDef def = InMemoryBackend.getDef(cmeObject.getType());
+		getTable(def.getName()).put(InMemoryBackend.getKey(def, cmeObject), cmeObject);
+		updateSequence(def, cmeObject);
+	}
+
+	/**
+	 * Gets the next number of the sequence of the given CMEObject type, which is above every integer key stored so far.
+	 * @param name Name of the CMEObject type.
+	 * @return The next number.
+	 */
+	public long nextId(String name) {
+		return getSequence(name).incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of CMEObjects stored of each type.
+	 * @return Map of CMEObject names to counts, sorted by name.
+	 */
+	public Map<String, Integer> getSizes() {
+		Map<String, Integer> sizes = new TreeMap<>();
+		for (Map.Entry<String, ConcurrentSkipListMap<List<Object>, CMEObject>> entry : tables.entrySet()) {
+			sizes.put(entry.getKey(), entry.getValue().size());
+		}
+		return sizes;
+	}
+
+	/**
+	 * Gets the table of the given CMEObject type, creating it if needed.
+	 */
+	private ConcurrentSkipListMap<List<Object>, CMEObject> getTable(String name) {
+		return tables.computeIfAbsent(name, k -> new ConcurrentSkipListMap<>(KEY_ORDER));
+	}
+
+	/**
+	 * Gets the sequence of the given CMEObject type, creating it if needed.
+	 */
+	private AtomicLong getSequence(String name) {
+		return sequences.computeIfAbsent(name, k -> new AtomicLong());
+	}
+
+	/**
+	 * Moves the sequence of the type of the given CMEObject past its integer key, if it has one.
+	 */
+	private void updateSequence(CMEObjectDef def, CMEObject cmeObject) {
+		CMEObjectColumnDef identityColumn = InMemoryBackend.getIdentityColumn(def);
+		if (identityColumn != null) {
+			Object value = cmeObject.getValue(identityColumn.getColumnName());
+			if (value instanceof Number) {
+				long id = ((Number) value).longValue();
+				getSequence(def.getName()).accumulateAndGet(id, Math::max);
+			}
+		}
+	}
+
+	/**
+	 * Gets the children of the given CMEObject for the given child reference, for $elemMatch.
+	 * @param cmeObject Parent CMEObject.
+	 * @param fieldName Reference column name (or name) of the child.
+	 * @return The children.
+	 */
+	private List<CMEObject> getChildren(CMEObject cmeObject, String fieldName) {
+		CMEObjectDef def = InMemoryBackend.getDef(cmeObject.getType());
+		for (CMEObjectChildDef child : def.getChildDefs()) {
+			if (fieldName.equals(child.getRefColName()) || fieldName.equals(child.getChildName())) {
+				Map<String, Object> childParams = new HashMap<>();
+				for (CMEChildRelKeysDef key : child.getKeys()) {
+					Object value = cmeObject.getValue(key.getParentColumnName());
+					if (value == null) {
+						return Collections.emptyList();
+					}
+					childParams.put(key.getColumnName(), value);
+				}
+				return search(child.getChildName(), null, null, childParams);
+			}
+		}
+		throw new RuntimeException("\"" + fieldName + "\" is not a child of " + def.getName() + "!");
+	}
+
+	/**
+	 * Gets the stored CMEObjects of the given type that might match the given Filter, in key order.
+	 * @param def Definition of the CMEObject type.
+	 * @param filter Filter of the search, or null.
+	 * @return The CMEObjects in the key ranges the Filter restricts the search to, or all of them.
+	 */
+	private Collection<CMEObject> getCandidates(CMEObjectDef def, Filter filter) {
+		ConcurrentSkipListMap<List<Object>, CMEObject> table = getTable(def.getName());
+		List<String> keyColumnNames = new ArrayList<>();
+		for (CMEObjectColumnDef column : def.getKeyColumns()) {
+			keyColumnNames.add(column.getColumnName());
+		}
+		List<KeyRange> ranges = filter != null && !keyColumnNames.isEmpty() ? InMemoryBackend.getKeyRanges(keyColumnNames, filter) : null;
+		if (ranges == null) {
+			return table.values();
+		} else if (ranges.size() == 1) {
+			return ranges.get(0).of(table).values();
+		}
+		//Ranges can overlap, e.g. with an $or of $in lists
+		NavigableMap<List<Object>, CMEObject> merged = new TreeMap<>(KEY_ORDER);
+		for (KeyRange range : ranges) {
+			merged.putAll(range.of(table));
+		}
+		return merged.values();
+	}
+
+	/**
+	 * Gets the key ranges that the CMEObjects matching the given Query are in.
+	 * @param keyColumnNames Names of the key columns.
+	 * @param query Query to get the key ranges of.
+	 * @return The key ranges, or null if the Query doesn't restrict the keys.
+	 */
+	private static List<KeyRange> getKeyRanges(List<String> keyColumnNames, Query query) {
+		if (!(query instanceof Filter)) {
+			return null;
+		}
+		QueryNode node = ((Filter) query).getOperator();
+		if (node instanceof OrCombinator) {
+			List<KeyRange> ranges = new ArrayList<>();
+			for (Query child : ((OrCombinator) node).getChildren()) {
+				List<KeyRange> childRanges = InMemoryBackend.getKeyRanges(keyColumnNames, child);
+				if (childRanges == null) {
+					return null;
+				}
+				ranges.addAll(childRanges);
+			}
+			return ranges;
+		}
+		List<Query> terms;
+		if (node instanceof AndCombinator) {
+			terms = ((AndCombinator) node).getChildren();
+		} else if (node instanceof Selector) {
+			terms = Collections.singletonList(query);
+		} else {
+			return null;
+		}
+
+		//Fix as many leading key columns as the terms have $eq selectors for
+		List<Object> prefix = new ArrayList<>();
+		while (prefix.size() < keyColumnNames.size()) {
+			EqualityValue value = null;
+			for (Query term : terms) {
+				ConditionalOperator operator = InMemoryBackend.getOperator(term, keyColumnNames.get(prefix.size()));
+				if (operator instanceof EqualsOperator && !((EqualsOperator) operator).getValueNode().isNull()) {
+					value = ((EqualsOperator) operator).getValueNode();
+					break;
+				}
+			}
+			if (value == null) {
+				break;
+			}
+			prefix.add(FilterOptimizer.getValue(value));
+		}
+		//Then restrict the next key column by an $in or the bounds on it
+		if (prefix.size() < keyColumnNames.size()) {
+			KeyRange bounds = null;
+			for (Query term : terms) {
+				List<KeyRange> ranges = KeyRange.create(prefix, InMemoryBackend.getOperator(term, keyColumnNames.get(prefix.size())));
+				if (ranges == null) {
+					continue;
+				} else if (ranges.size() != 1) {
+					return ranges;
+				}
+				bounds = bounds == null ? ranges.get(0) : bounds.intersect(ranges.get(0));
+			}
+			if (bounds != null) {
+				return Collections.singletonList(bounds);
+			}
+		}
+		if (!prefix.isEmpty()) {
+			return Collections.singletonList(KeyRange.withPrefix(prefix));
+		}
+		//Then an $or of keys inside the $and
+		for (Query term : terms) {
+			if (term instanceof Filter && !(((Filter) term).getOperator() instanceof Selector)) {
+				List<KeyRange> ranges = InMemoryBackend.getKeyRanges(keyColumnNames, term);
+				if (ranges != null) {
+					return ranges;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the operator of the given Query if it is a selector on the given column.
+	 * @return The ConditionalOperator, or null if the Query isn't a selector on the column.
+	 */
+	private static ConditionalOperator getOperator(Query query, String columnName) {
+		if (query instanceof Filter && ((Filter) query).getOperator() instanceof Selector) {
+			Selector selector = (Selector) ((Filter) query).getOperator();
+			if (selector.getFieldName().equals(columnName)) {
+				return selector.getOperator();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A range of keys in a table.
+	 */
+	private static class KeyRange {
+		private List<Object> from;
+		private boolean fromInclusive;
+		private List<Object> to;
+		private boolean toInclusive;
+
+		private KeyRange(List<Object> from, boolean fromInclusive, List<Object> to, boolean toInclusive) {
+			this.from = from;
+			this.fromInclusive = fromInclusive;
+			this.to = to;
+			this.toInclusive = toInclusive;
+		}
+
+		/**
+		 * Creates the range of the keys that start with the given values.
+		 */
+		private static KeyRange withPrefix(List<Object> prefix) {
+			return new KeyRange(prefix, true, KeyRange.append(prefix, MAX_VALUE), true);
+		}
+
+		/**
+		 * Creates the ranges of the keys that start with the given values and whose next value satisfies the given
+		 * operator.
+		 * @return The ranges, or null if the operator doesn't restrict the next value.
+		 */
+		private static List<KeyRange> create(List<Object> prefix, ConditionalOperator operator) {
+			if (operator instanceof EqualsOperator && !((EqualsOperator) operator).getValueNode().isNull()) {
+				Object value = FilterOptimizer.getValue(((EqualsOperator) operator).getValueNode());
+				return Collections.singletonList(KeyRange.withPrefix(KeyRange.append(prefix, value)));
+			} else if (operator instanceof InOperator) {
+				List<KeyRange> ranges = new ArrayList<>();
+				for (EqualityValue value : ((InOperator) operator).getValues()) {
+					if (!value.isNull()) {
+						ranges.add(KeyRange.withPrefix(KeyRange.append(prefix, FilterOptimizer.getValue(value))));
+					}
+				}
+				return ranges;
+			}
+			List<Object> lowest = prefix;
+			List<Object> highest = KeyRange.append(prefix, MAX_VALUE);
+			if (operator instanceof GreaterThanOperator) {
+				Object value = FilterOptimizer.getValue(((GreaterThanOperator) operator).getValueNode());
+				return Collections.singletonList(new KeyRange(KeyRange.append(KeyRange.append(prefix, value), MAX_VALUE), false, highest, true));
+			} else if (operator instanceof GreaterThanOrEqualsOperator) {
+				Object value = FilterOptimizer.getValue(((GreaterThanOrEqualsOperator) operator).getValueNode());
+				return Collections.singletonList(new KeyRange(KeyRange.append(prefix, value), true, highest, true));
+			} else if (operator instanceof LessThanOperator) {
+				Object value = FilterOptimizer.getValue(((LessThanOperator) operator).getValueNode());
+				return Collections.singletonList(new KeyRange(lowest, true, KeyRange.append(prefix, value), false));
+			} else if (operator instanceof LessThanOrEqualsOperator) {
+				Object value = FilterOptimizer.getValue(((LessThanOrEqualsOperator) operator).getValueNode());
+				return Collections.singletonList(new KeyRange(lowest, true, KeyRange.append(KeyRange.append(prefix, value), MAX_VALUE), true));
+			}
+			return null;
+		}
+
+		/**
+		 * Creates the range of the keys in both this range and the given one.
+		 */
+		private KeyRange intersect(KeyRange other) {
+			int fromResult = KEY_ORDER.compare(from, other.from);
+			int toResult = KEY_ORDER.compare(to, other.to);
+			return new KeyRange(
+					fromResult > 0 ? from : other.from,
+					fromResult > 0 ? fromInclusive : fromResult < 0 ? other.fromInclusive : fromInclusive && other.fromInclusive,
+					toResult < 0 ? to : other.to,
+					toResult < 0 ? toInclusive : toResult > 0 ? other.toInclusive : toInclusive && other.toInclusive);
+		}
+
+		/**
+		 * Creates a copy of the given key with the given value added.
+		 */
+		private static List<Object> append(List<Object> key, Object value) {
+			List<Object> result = new ArrayList<>(key.size() + 1);
+			result.addAll(key);
+			result.add(value);
+			return result;
+		}
+
+		/**
+		 * Gets the part of the given table in this range.
+		 */
+		private NavigableMap<List<Object>, CMEObject> of(ConcurrentSkipListMap<List<Object>, CMEObject> table) {
+			if (KEY_ORDER.compare(from, to) > 0) {
+				return Collections.emptyNavigableMap();
+			}
+			return table.subMap(from, fromInclusive, to, toInclusive);
+		}
+	}
+
+	/**
+	 * Gets the definition of the given CMEObject type.
+	 */
+	private static CMEObjectDef getDef(String name) {
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		if (def == null) {
+			throw new RuntimeException("There is no CMEObject type \"" + name + "\"!");
+		}
+		return def;
+	}
+
+	/**
+	 * Gets the key column of the given CMEObject type if it is a single integer column, which is numbered like an
+	 * identity column.
+	 * @return The key column, or null if the key isn't a single integer column.
+	 */
+	private static CMEObjectColumnDef getIdentityColumn(CMEObjectDef def) {
+		List<CMEObjectColumnDef> keyColumns = def.getKeyColumns();
+		if (keyColumns.size() == 1 && keyColumns.get(0).getDataType() == DataType.INTEGER) {
+			return keyColumns.get(0);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the key of the given CMEObject.
+	 */
+	private static List<Object> getKey(CMEObjectDef def, CMEObject cmeObject) {
+		List<CMEObjectColumnDef> keyColumns = def.getKeyColumns();
+		List<Object> key = new ArrayList<>(keyColumns.size());
+		for (CMEObjectColumnDef column : keyColumns) {
+			key.add(cmeObject.getValue(column.getColumnName()));
+		}
+		return key;
+	}
+
+	/**
+	 * Copies the given columns of the given CMEObject.
+	 * @param def Definition of the CMEObject's type.
+	 * @param cmeObject CMEObject to copy.
+	 * @param columns Names of the columns to copy. If the List is empty or null, all columns are copied.
+	 * @return A new CMEObject.
+	 */
+	private static CMEObject copy(CMEObjectDef def, CMEObject cmeObject, List<String> columns) {
+		CMEObject copy = new CMEObject(cmeObject.getType());
+		if (columns == null || columns.isEmpty()) {
+			for (CMEObjectColumnDef column : def.getColumns()) {
+				copy.setValue(column.getColumnName(), cmeObject.getValue(column.getColumnName()));
+			}
+		} else {
+			for (String columnName : columns) {
+				copy.setValue(columnName, cmeObject.getValue(columnName));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Compares two keys column by column. A key that is a prefix of the other comes first.
+	 */
+	private static int compareKeys(List<Object> a, List<Object> b) {
+		int size = Math.min(a.size(), b.size());
+		for (int i = 0; i < size; i++) {
+			int result = InMemoryBackend.compareValues(a.get(i), b.get(i));
+			if (result != 0) {
+				return result;
+			}
+		}
+		return Integer.compare(a.size(), b.size());
+	}
+
+	/**
+	 * Compares two key values the way the database orders them (see SortOrder.compareValues), with MAX_VALUE last.
+	 */
+	private static int compareValues(Object a, Object b) {
+		if (a != b && (a == MAX_VALUE || b == MAX_VALUE)) {
+			return a == MAX_VALUE ? 1 : -1;
+		}
+		return SortOrder.compareValues(a, b);
+	}
+}
@@ -0,0 +1,192 @@
+package com.misys.cme.backend;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEChildRelKeysDef;
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.enums.CMEObjectType;
+
+/**
+ * Fills an InMemoryBackend with synthetic CMEObjects generated from their CMEObjectDefs, for load testing.
+ * Every column gets a value of its data type. Key columns are numbered by the type's sequence; other columns are drawn
+ * from a seeded Random, so the same seed always generates the same data. Text columns get a name from a short list and
+ * a number, so $begins and $contains filters match a realistic share of them. Columns that aren't required are null
+ * one time in ten.
+ * The children of each generated CMEObject are generated with it, with the child columns of their CMEChildRelKeysDefs
+ * set from the parent: groupSize for each GROUP child, and one for each SINGLE child (e.g. a lookup) that doesn't
+ * exist yet. Their own children are generated the same way, down to MAX_DEPTH levels.
+ */
+public class SyntheticDataGenerator {
+	private static Logger logger = LogManager.getLogger(SyntheticDataGenerator.class);
+
+	/**
+	 * Number of CMEObjects generated together with their children, which bounds the memory used besides the backend.
+	 */
+	private static final int BATCH_SIZE = 10000;
+
+	/**
+	 * Number of levels of children generated below the CMEObjects asked for.
+	 */
+	private static final int MAX_DEPTH = 3;
+
+	/**
+	 * Highest value of integer columns that aren't keys. These usually refer to lookups, so this bounds their size.
+	 */
+	private static final int MAX_INTEGER_VALUE = 1000;
+
+	private static final String[] NAMES = {
+		"SMITH", "JOHNSON", "WILLIAMS", "BROWN", "JONES", "GARCIA", "MILLER", "DAVIS", "RODRIGUEZ", "MARTINEZ",
+		"HERNANDEZ", "LOPEZ", "GONZALEZ", "WILSON", "ANDERSON", "THOMAS", "TAYLOR", "MOORE", "JACKSON", "MARTIN"
+	};
+
+	private InMemoryBackend backend;
+	private Random random;
+	private int groupSize;
+
+	/**
+	 * Constructs a SyntheticDataGenerator.
+	 * @param backend InMemoryBackend to fill.
+	 * @param seed Seed of the values generated.
+	 * @param groupSize Number of children generated for each GROUP child of a CMEObject.
+	 */
+	public SyntheticDataGenerator(InMemoryBackend backend, long seed, int groupSize) {
+		this.backend = backend;
+		this.random = new Random(seed);
+		this.groupSize = groupSize;
+	}
+
+	/**
+	 * Generates CMEObjects of the given type and their children.
+	 * @param name Name of the CMEObject type to generate.
+	 * @param count Number of CMEObjects of the type to generate.
+	 */
+	public void generate(String name, int count) {
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		if (def == null) {
+			throw new RuntimeException("There is no CMEObject type \"" + name + "\"!");
+		}
+		Map<String, Object> noFixedValues = new HashMap<>();
+		for (int start = 0; start < count; start += BATCH_SIZE) {
+			int batchSize = Math.min(BATCH_SIZE, count - start);
+			List<CMEObject> batch = new ArrayList<>(batchSize);
+			for (int i = 0; i < batchSize; i++) {
+				CMEObject cmeObject = create(def, noFixedValues);
+				backend.load(cmeObject);
+				batch.add(cmeObject);
+			}
+			generateChildren(def, batch, 1);
+			logger.debug("Generated " + (start + batchSize) + " of " + count + " " + name + ": " + backend.getSizes());
+		}
+	}
+
+	/**
+	 * Generates the children of the given CMEObjects and, recursively, their children.
+	 * @param def Definition of the CMEObjects' type.
+	 * @param parents CMEObjects to generate the children of.
+	 * @param depth Level of the children, starting at 1.
+	 */
+	private void generateChildren(CMEObjectDef def, List<CMEObject> parents, int depth) {
+		if (depth > MAX_DEPTH) {
+			return;
+		}
+		for (CMEObjectChildDef child : def.getChildDefs()) {
+			CMEObjectDef childDef = CMEObjectDef.getCmeObjDef(child.getChildName());
+			List<CMEObject> children = new ArrayList<>();
+			for (CMEObject parent : parents) {
+				Map<String, Object> fixedValues = new HashMap<>();
+				for (CMEChildRelKeysDef key : child.getKeys()) {
+					Object value = parent.getValue(key.getParentColumnName());
+					if (value == null) {
+						fixedValues = null;
+						break;
+					}
+					fixedValues.put(key.getColumnName(), value);
+				}
+				if (fixedValues == null) {
+					continue;
+				}
+				if (child.getType().equals(CMEObjectType.GROUP)) {
+					for (int i = 0; i < groupSize; i++) {
+						CMEObject childObject = create(childDef, fixedValues);
+						backend.load(childObject);
+						children.add(childObject);
+					}
+				} else if (backend.search(child.getChildName(), null, null, fixedValues).isEmpty()) {
+					CMEObject childObject = create(childDef, fixedValues);
+					backend.load(childObject);
+					children.add(childObject);
+				}
+			}
+			generateChildren(childDef, children, depth + 1);
+		}
+	}
+
+	/**
+	 * Creates a CMEObject of the given type.
+	 * @param def Definition of the CMEObject type.
+	 * @param fixedValues Values of the columns that must have a given value, e.g. the columns that refer to the parent.
+	 * @return A new CMEObject.
+	 */
+	private CMEObject create(CMEObjectDef def, Map<String, Object> fixedValues) {
+		CMEObject cmeObject = new CMEObject(def.getName());
+		Set<String> keyColumnNames = new HashSet<>();
+		for (CMEObjectColumnDef column : def.getKeyColumns()) {
+			keyColumnNames.add(column.getColumnName());
+		}
+		long id = backend.nextId(def.getName());
+		for (CMEObjectColumnDef column : def.getColumns()) {
+			String columnName = column.getColumnName();
+			if (fixedValues.containsKey(columnName)) {
+				cmeObject.setValue(columnName, fixedValues.get(columnName));
+			} else if (keyColumnNames.contains(columnName)) {
+				cmeObject.setValue(columnName, createKeyValue(column, id));
+			} else if (!column.isRequired() && random.nextInt(10) == 0) {
+				cmeObject.setValue(columnName, null);
+			} else {
+				cmeObject.setValue(columnName, createValue(column));
+			}
+		}
+		return cmeObject;
+	}
+
+	/**
+	 * Creates a value of the given key column from the given number of the type's sequence.
+	 */
+	private static Object createKeyValue(CMEObjectColumnDef column, long id) {
+		switch (column.getDataType()) {
+			case INTEGER:
+				return id;
+			case DECIMAL:
+				return BigDecimal.valueOf(id);
+			default:
+				return "K" + id;
+		}
+	}
+
+	/**
+	 * Creates a random value of the given column's data type.
+	 */
+	private Object createValue(CMEObjectColumnDef column) {
+		switch (column.getDataType()) {
+			case INTEGER:
+				return (long) (random.nextInt(MAX_INTEGER_VALUE) + 1);
+			case DECIMAL:
+				return BigDecimal.valueOf(random.nextInt(100000000), 2);
+			default:
+				return NAMES[random.nextInt(NAMES.length)] + " " + random.nextInt(10000);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.misys.cme.generate;
 
+import java.nio.file.Paths;
+
 import javax.naming.Context;
 import javax.naming.InitialContext;
 
@@ -35,6 +37,10 @@ public class GenerateCMEAPI {
 			
 			DataSourceManager.setDataSource(dataSource);
 			DefinitionLoader.initialzeDefinitions();
+			//Give the source directory of this project (e.g. C:\CMEAPI\src\main\java) to generate asynchronous API classes
+			if (args.length > 0) {
+				CMEAPIGenerator.setAsync(Paths.get(args[0]));
+			}
 			CMEAPIGenerator.generateAPIs();
 			
 		} catch (Exception e) {
@@ -0,0 +1,76 @@
+package com.misys.cme.providers;
+
+import java.io.IOException;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+
+import com.misys.cme.utils.CachedEntity;
+import com.misys.cme.utils.ExportWriter;
+
+/**
+ * Adds an ETag header to cached GET responses and answers conditional GETs whose If-None-Match matches it with
+ * 304 Not Modified, without writing the body.
+ * The generated API classes can't set headers from CMEAPIUtils, so the ETag travels on the response entity.
+ */
+@Provider
+public class ETagFilter implements ContainerResponseFilter {
+	/**
+	 * Adds the ETag header if the response is a CachedEntity, and turns the response into a 304 if the client already
+	 * has it.
+	 * @param requestContext Context of the request.
+	 * @param responseContext Context of the response.
+	 */
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		Object entity = responseContext.getEntity();
+		String method = requestContext.getMethod();
+		if (!(entity instanceof CachedEntity) || responseContext.getStatus() != Response.Status.OK.getStatusCode()
+				|| !(HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method))) {
+			return;
+		}
+		String eTag = ((CachedEntity) entity).getETag();
+		MediaType mediaType = responseContext.getMediaType();
+		if (ExportWriter.isExportType(mediaType)) {
+			//The NDJSON and CSV representations are written from the cached JSON, and each needs its own ETag
+			eTag = eTag.substring(0, eTag.length() - 1) + "-" + mediaType.getSubtype() + "\"";
+		}
+		responseContext.getHeaders().putSingle(HttpHeaders.ETAG, eTag);
+		responseContext.getHeaders().putSingle(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+		//Clients may keep the response but must check it is still current before using it
+		responseContext.getHeaders().putSingle(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+		String ifNoneMatch = requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null && ETagFilter.matches(ifNoneMatch, eTag)) {
+			responseContext.setStatus(Response.Status.NOT_MODIFIED.getStatusCode());
+			responseContext.setEntity(null);
+			responseContext.getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+		}
+	}
+
+	/**
+	 * Checks whether an If-None-Match header matches the given ETag.
+	 * If-None-Match uses weak comparison, so W/ prefixes are ignored.
+	 * @param ifNoneMatch Value of the If-None-Match header: "*" or a comma separated list of ETags.
+	 * @param eTag ETag of the current response, including the surrounding quotes.
+	 * @return true if the client already has the current response; false otherwise.
+	 */
+	private static boolean matches(String ifNoneMatch, String eTag) {
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
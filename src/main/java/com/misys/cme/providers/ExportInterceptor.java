@@ -0,0 +1,51 @@
+package com.misys.cme.providers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.misys.cme.utils.CMEObjectStreamingOutput;
+import com.misys.cme.utils.CachedEntity;
+import com.misys.cme.utils.ExportWriter;
+import com.misys.cme.utils.JsonCodec;
+
+/**
+ * Writes search results as NDJSON or CSV when Jersey negotiates one of those media types from the client's Accept
+ * header, e.g. Accept: text/csv. See ExportWriter.
+ * The generated API classes don't see the Accept header, so the media type is handed to the response entity just
+ * before it is written.
+ */
+@Provider
+public class ExportInterceptor implements WriterInterceptor {
+	/**
+	 * Tells a CMEObjectStreamingOutput which media type to write, or converts a cached JSON response to it.
+	 * @param context Context of the body being written.
+	 */
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		MediaType mediaType = context.getMediaType();
+		if (ExportWriter.isExportType(mediaType)) {
+			Object entity = context.getEntity();
+			if (entity instanceof CMEObjectStreamingOutput) {
+				((CMEObjectStreamingOutput) entity).setMediaType(mediaType);
+			} else if (entity instanceof CachedEntity) {
+				//Cached lookups are small, so their JSON is just parsed back and written as rows
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				((CachedEntity) entity).write(buffer);
+				JsonNode results = JsonCodec.getMapper().readTree(buffer.toByteArray());
+				StreamingOutput export = (output) -> ExportWriter.writeAll(results, mediaType, output);
+				context.setEntity(export);
+				context.setType(StreamingOutput.class);
+				context.setGenericType(StreamingOutput.class);
+			}
+		}
+		context.proceed();
+	}
+}
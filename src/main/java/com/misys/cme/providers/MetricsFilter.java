@@ -0,0 +1,94 @@
+package com.misys.cme.providers;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.misys.cme.utils.Metrics;
+
+/**
+ * Records the latency of every request and the time spent writing its response body, per API class and method.
+ * The latency of a request with a body is recorded once the body is written, so it includes the serialization and
+ * child expansion that StreamingOutputs do lazily.
+ * The low priority makes this the first request filter and the last response filter, so the latency covers the other
+ * filters and the response status is final (e.g. after ETagFilter turns it into a 304).
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class MetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+	private static final String START_PROPERTY = "com.misys.cme.metrics.start";
+	private static final String RESOURCE_PROPERTY = "com.misys.cme.metrics.resource";
+	private static final String METHOD_PROPERTY = "com.misys.cme.metrics.method";
+	private static final String STATUS_PROPERTY = "com.misys.cme.metrics.status";
+
+	@Context
+	private ResourceInfo resourceInfo;
+
+	/**
+	 * Records when the request was received.
+	 * @param requestContext Context of the request.
+	 */
+	@Override
+	public void filter(ContainerRequestContext requestContext) throws IOException {
+		requestContext.setProperty(START_PROPERTY, System.nanoTime());
+	}
+
+	/**
+	 * Records the latency of the request if its response has no body; otherwise leaves it for aroundWriteTo.
+	 * @param requestContext Context of the request.
+	 * @param responseContext Context of the response.
+	 */
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		Long start = (Long) requestContext.getProperty(START_PROPERTY);
+		if (start == null) {
+			return;
+		}
+		String resource = "unmatched";
+		String method = requestContext.getMethod();
+		if (resourceInfo != null && resourceInfo.getResourceMethod() != null) {
+			resource = resourceInfo.getResourceClass().getSimpleName();
+			method = resourceInfo.getResourceMethod().getName();
+		}
+		if (responseContext.hasEntity()) {
+			requestContext.setProperty(RESOURCE_PROPERTY, resource);
+			requestContext.setProperty(METHOD_PROPERTY, method);
+			requestContext.setProperty(STATUS_PROPERTY, responseContext.getStatus());
+		} else {
+			Metrics.recordRequest(resource, method, responseContext.getStatus(), System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Writes the response body and records how long that took and the latency of the whole request.
+	 * @param context Context of the body being written.
+	 */
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		long writeStart = System.nanoTime();
+		try {
+			context.proceed();
+		} finally {
+			long end = System.nanoTime();
+			Long start = (Long) context.getProperty(START_PROPERTY);
+			String resource = (String) context.getProperty(RESOURCE_PROPERTY);
+			String method = (String) context.getProperty(METHOD_PROPERTY);
+			Integer status = (Integer) context.getProperty(STATUS_PROPERTY);
+			if (start != null && resource != null) {
+				Metrics.recordSerialization(resource, method, end - writeStart);
+				Metrics.recordRequest(resource, method, status, end - start);
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.misys.cme.providers;
+
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.misys.cme.utils.JsonCodec;
+
+/**
+ * Makes Jersey's Jackson provider use the shared ObjectMapper from JsonCodec when it reads request bodies and writes
+ * response entities for the generated API classes.
+ */
+@Provider
+public class ObjectMapperResolver implements ContextResolver<ObjectMapper> {
+	/**
+	 * Gets the ObjectMapper to use for the given type.
+	 * @param type Class being read or written.
+	 * @return The shared ObjectMapper.
+	 */
+	@Override
+	public ObjectMapper getContext(Class<?> type) {
+		return JsonCodec.getMapper();
+	}
+}
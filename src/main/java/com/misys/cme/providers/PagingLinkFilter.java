@@ -0,0 +1,44 @@
+package com.misys.cme.providers;
+
+import java.io.IOException;
+import java.net.URI;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import com.misys.cme.utils.CMEObjectStreamingOutput;
+import com.misys.cme.utils.KeysetCursor;
+
+/**
+ * Adds a Link header pointing to the next page to paged GET collection responses, and an X-Next-Cursor header with
+ * the cursor of the next page to paged GET and POST search responses. The header is the only place an NDJSON or CSV
+ * export of a POST search has the cursor, since it isn't written in a wrapper object.
+ * The generated API classes can't set headers from CMEAPIUtils, so the next cursor travels on the response entity.
+ */
+@Provider
+public class PagingLinkFilter implements ContainerResponseFilter {
+	/**
+	 * Adds the Link and X-Next-Cursor headers if the response is a page of search results that has a next page.
+	 * @param requestContext Context of the request.
+	 * @param responseContext Context of the response.
+	 */
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		Object entity = responseContext.getEntity();
+		if (entity instanceof CMEObjectStreamingOutput) {
+			String nextCursor = ((CMEObjectStreamingOutput) entity).getNextCursor();
+			if (nextCursor != null) {
+				if (HttpMethod.GET.equals(requestContext.getMethod())) {
+					URI next = requestContext.getUriInfo().getRequestUriBuilder()
+							.replaceQueryParam(KeysetCursor.CURSOR_PARAMETER, nextCursor)
+							.build();
+					responseContext.getHeaders().add("Link", "<" + next.toASCIIString() + ">; rel=\"next\"");
+				}
+				responseContext.getHeaders().add("X-Next-Cursor", nextCursor);
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.misys.cme.providers;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import com.misys.cme.utils.CMEObjectStreamingOutput;
+import com.misys.cme.utils.RequestTimer;
+
+/**
+ * Adds a Server-Timing header with the phases of the request timed by RequestTimer (db, expand, serialize, href).
+ * Streamed search results are converted and expanded while the body is written, after the headers are sent, so their
+ * header only has the phases done before that. POST /searches can ask for all of them with "timing": true.
+ */
+@Provider
+public class ServerTimingFilter implements ContainerResponseFilter {
+	/**
+	 * Adds the Server-Timing header if the request was timed, and removes the timer from the current thread.
+	 * @param requestContext Context of the request.
+	 * @param responseContext Context of the response.
+	 */
+	@Override
+	public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+		Object entity = responseContext.getEntity();
+		RequestTimer timer;
+		if (entity instanceof CMEObjectStreamingOutput) {
+			timer = ((CMEObjectStreamingOutput) entity).getTimer();
+		} else {
+			timer = RequestTimer.current();
+		}
+		RequestTimer.clear();
+		if (timer != null) {
+			String serverTiming = timer.toServerTiming();
+			if (!serverTiming.isEmpty()) {
+				responseContext.getHeaders().putSingle("Server-Timing", serverTiming);
+			}
+		}
+	}
+}
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.misys.cmeobject.search.Queries.CombinatorNode;
 import com.misys.cmeobject.search.Queries.Query;
+import com.misys.definitions.CMEObjectDef;
 
 /**
  * Contains static functions for creating Combinators.
@@ -23,21 +24,32 @@ public class CombinatorFactory {
 	 * @return The new Combinator.
 	 */
 	public static CombinatorNode create(String fieldName, JsonNode fieldValue) {
+		return create(fieldName, fieldValue, null);
+	}
+	
+	/**
+	 * Creates a new Combinator from the given field name and JsonNode for the given CMEObject type.
+	 * @param fieldName Name of the field in the filter JSON that specifies the type of Combinator.
+	 * @param fieldValue JsonNode that is associated with fieldName in the filter JSON.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
+	 * @return The new Combinator.
+	 */
+	public static CombinatorNode create(String fieldName, JsonNode fieldValue, CMEObjectDef def) {
 		switch (fieldName) {
 			case "$and":
-				List<Query> andFilters = createListOfFilters(fieldValue);
+				List<Query> andFilters = createListOfFilters(fieldValue, def);
 				return new AndCombinator(andFilters);
 			case "$or":
-				List<Query> orFilters = createListOfFilters(fieldValue);
+				List<Query> orFilters = createListOfFilters(fieldValue, def);
 				return new OrCombinator(orFilters);
 			case "$nand":
-			    List<Query> nandFilters = createListOfFilters(fieldValue);
+			    List<Query> nandFilters = createListOfFilters(fieldValue, def);
 			    return new NandCombinator(nandFilters);
 			case "$nor":
-				List<Query> norFilters = createListOfFilters(fieldValue);
+				List<Query> norFilters = createListOfFilters(fieldValue, def);
 				return new NorCombinator(norFilters);
 			case "$not":
-				return createNotCombinator(fieldValue);
+				return createNotCombinator(fieldValue, def);
 			default:
 				throw new RuntimeException("Cannot create combinator from field \"" + fieldName + "\"!");
 		}
@@ -55,14 +67,15 @@ public class CombinatorFactory {
 	/**
 	 * Creates a List of Filters from the given JsonNode.
 	 * @param jsonNode JsonNode to create the List from.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
 	 * @return A new List of Filters.
 	 */
-	private static List<Query> createListOfFilters(JsonNode jsonNode) {
+	private static List<Query> createListOfFilters(JsonNode jsonNode, CMEObjectDef def) {
 		if (jsonNode.isArray()) {
 			List<Query> filters = new ArrayList<>();
 			for (JsonNode filterNode : (ArrayNode)jsonNode) {
 				if (filterNode.isObject()) {
-					filters.add(new Filter((ObjectNode)filterNode));
+					filters.add(new Filter((ObjectNode)filterNode, def));
 				} else {
 					throw new RuntimeException("Every filter in a combinator must be an object!");
 				}
@@ -76,11 +89,12 @@ public class CombinatorFactory {
 	/**
 	 * Creates a new NotCombinator from the given JsonNode.
 	 * @param jsonNode JsonNode to create the NotCombinator with.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
 	 * @return A new NotCombinator.
 	 */
-	private static NotCombinator createNotCombinator(JsonNode jsonNode) {
+	private static NotCombinator createNotCombinator(JsonNode jsonNode, CMEObjectDef def) {
 		if (jsonNode.isObject()) {
-			return new NotCombinator(new Filter((ObjectNode)jsonNode));
+			return new NotCombinator(new Filter((ObjectNode)jsonNode, def));
 		} else {
 			throw new RuntimeException("The filter for a $not combinator must be an object!");
 		}
@@ -15,6 +15,7 @@ import com.misys.cmeobject.search.Queries.ValueType;
 public class ComparisonValue implements ValueNode {
 	private Date date;
 	private Number number;
+	private String text;
 	private Time time;
 	private Timestamp timestamp;
 	private UUID uuid;
@@ -38,6 +39,16 @@ public class ComparisonValue implements ValueNode {
 		this.valueType = ValueType.NUMBER;
 	}
 	
+	/**
+	 * Constructs a ComparisonValue from the given text.
+	 * @param text String containing the text to store.
+	 * @note Text values are created from filter JSON for text columns, and for comparing against text key columns.
+	 */
+	public ComparisonValue(String text) {
+		this.text = text;
+		this.valueType = ValueType.TEXT;
+	}
+	
 	/**
 	 * Constructs a ComparisonValue from the given Time.
 	 * @param time Time value to store.
@@ -139,6 +150,8 @@ public class ComparisonValue implements ValueNode {
 				return date.toString();
 			case NUMBER:
 				return number.toString();
+			case TEXT:
+				return text;
 			case TIME:
 				return time.toString();
 			case TIMESTAMP:
@@ -172,10 +185,12 @@ public class ComparisonValue implements ValueNode {
 	/**
 	 * Gets the text value this contains.
 	 * @return The text value this contains.
-	 * @warning ComparisonValues don't support this operation!
 	 */
 	@Override
 	public String getText() {
-		throw new UnsupportedOperationException();
+		if (valueType != ValueType.TEXT) {
+			throw new UnsupportedOperationException();
+		}
+		return text;
 	}
 }
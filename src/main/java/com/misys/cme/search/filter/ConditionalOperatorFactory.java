@@ -19,6 +19,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.misys.cmeobject.search.Queries.ConditionalOperator;
 import com.misys.cmeobject.search.Queries.ValueType;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.enums.DataType;
 
 /**
  * Contains static functions for creating ConditionalOperators.
@@ -36,6 +38,17 @@ public class ConditionalOperatorFactory {
 	 * @return The new ConditionalOperator.
 	 */
 	public static ConditionalOperator create(JsonNode jsonNode) {
+		return create(jsonNode, null);
+	}
+	
+	/**
+	 * Creates a new ConditionalOperator from the given JsonNode for the given column.
+	 * If the JsonNode is a value, this will create an EqualsOperator.
+	 * @param jsonNode JsonNode specifying the ConditionalOperator to create.
+	 * @param column Definition of the column the operator applies to, or null if it isn't known.
+	 * @return The new ConditionalOperator.
+	 */
+	public static ConditionalOperator create(JsonNode jsonNode, CMEObjectColumnDef column) {
 		// Get operator name and its JsonNode value
 		String operatorName;
 		JsonNode operatorValue;
@@ -53,25 +66,47 @@ public class ConditionalOperatorFactory {
 		} else {
 			throw new RuntimeException("A field selector must be a literal value or an object!");
 		}
-		
+		return create(operatorName, operatorValue, column);
+	}
+	
+	/**
+	 * Creates a new ConditionalOperator from the given operator name and JsonNode value.
+	 * @param operatorName Name of the operator to create, e.g. "$eq" or "$in".
+	 * @param operatorValue JsonNode associated with operatorName in the filter JSON.
+	 * @return The new ConditionalOperator.
+	 */
+	public static ConditionalOperator create(String operatorName, JsonNode operatorValue) {
+		return create(operatorName, operatorValue, null);
+	}
+	
+	/**
+	 * Creates a new ConditionalOperator from the given operator name and JsonNode value for the given column.
+	 * When the column is known, text literals for text columns are kept as text instead of being checked for dates,
+	 * times, timestamps, and UUIDs.
+	 * @param operatorName Name of the operator to create, e.g. "$eq" or "$in".
+	 * @param operatorValue JsonNode associated with operatorName in the filter JSON.
+	 * @param column Definition of the column the operator applies to, or null if it isn't known.
+	 * @return The new ConditionalOperator.
+	 */
+	public static ConditionalOperator create(String operatorName, JsonNode operatorValue, CMEObjectColumnDef column) {
 		// Parse JsonNode value according to operator type; then create and return the operator
 		if (isComparisonOperator(operatorName)) {
 			try {
-				ComparisonValue value = createComparisonValue(operatorValue);
+				ComparisonValue value = createComparisonValue(operatorValue, column);
 				return createComparisonOperator(operatorName, value);
 			} catch (Exception e) {
-				throw new RuntimeException("The " + operatorName + " conditional operator must be provided a numeric, date, time, timestamp, or UUID value!", e);
+				throw new RuntimeException("The " + operatorName + " conditional operator must be provided a numeric, date, time, timestamp, or UUID value, or a text value for a text column!", e);
 			}
 		} else if (isEqualityOperator(operatorName)) {
 			try {
-				EqualityValue value = createEqualityValue(operatorValue);
+				EqualityValue value = createEqualityValue(operatorValue, column);
 				return createEqualityOperator(operatorName, value);
 			} catch (Exception e) {
 				throw new RuntimeException("The " + operatorName + " conditional operator must be provided a value!", e);
 			}
 		} else if (isInOperator(operatorName)) {
 			try {
-				List<EqualityValue> values = createListOfEqualityValues(operatorValue);
+				List<EqualityValue> values = createListOfEqualityValues(operatorValue, column);
 				return createInOperator(operatorName, values);
 			} catch (Exception e) {
 				throw new RuntimeException("The " + operatorName + " conditional operator must be provided an array of values!", e);
@@ -126,22 +161,30 @@ public class ConditionalOperatorFactory {
 	/**
 	 * Creates a ComparisonValue from the given JsonNode.
 	 * @param jsonNode JsonNode to create the ComparisonValue from.
+	 * @param column Definition of the column the value is compared with, or null if it isn't known.
 	 * @return A new ComparisonValue.
-	 * @throws Exception if jsonNode doesn't contain a number, date, time, timestamp, or UUID value.
+	 * @throws Exception if jsonNode doesn't contain a number, date, time, timestamp, or UUID value (or text, for a
+	 * text column).
 	 */
-	private static ComparisonValue createComparisonValue(JsonNode jsonNode) throws Exception {
+	private static ComparisonValue createComparisonValue(JsonNode jsonNode, CMEObjectColumnDef column) throws Exception {
 		if (jsonNode.isNumber()) {
 			return new ComparisonValue(((NumericNode)jsonNode).numberValue());
 		} else if (jsonNode.isTextual()) {
 			String text = ((TextNode)jsonNode).textValue();
-			if (isTimestamp(text)) {
-				return new ComparisonValue(toTimestamp(text));
-			} else if (isDate(text)) {
-				return new ComparisonValue(toDate(text));
-			} else if (isTime(text)) {
-				return new ComparisonValue(toTime(text));
-			} else if (isUUID(text)) {
-				return new ComparisonValue(UUID.fromString(text));
+			if (isTextColumn(column)) {
+				return new ComparisonValue(text);
+			}
+			switch (LiteralClassifier.classify(text)) {
+				case TIMESTAMP:
+					return new ComparisonValue(toTimestamp(text));
+				case DATE:
+					return new ComparisonValue(toDate(text));
+				case TIME:
+					return new ComparisonValue(toTime(text));
+				case UUID:
+					return new ComparisonValue(UUID.fromString(text));
+				default:
+					break;
 			}
 		}
 		throw new Exception("Failed to create a ComparisonValue from the following JsonNode: " + jsonNode);
@@ -167,10 +210,11 @@ public class ConditionalOperatorFactory {
 	/**
 	 * Creates an EqualityValue from the given JsonNode.
 	 * @param jsonNode JsonNode to create the EqualityValue from.
+	 * @param column Definition of the column the value is compared with, or null if it isn't known.
 	 * @return A new EqualityValue.
 	 * @throws Exception if jsonNode doesn't contain a boolean, null, number, date, text, time, timestamp, or UUID value.
 	 */
-	private static EqualityValue createEqualityValue(JsonNode jsonNode) throws Exception {
+	private static EqualityValue createEqualityValue(JsonNode jsonNode, CMEObjectColumnDef column) throws Exception {
 		if (jsonNode.isNumber()) {
 			return new EqualityValue(((NumericNode)jsonNode).numberValue());
 		} else if (jsonNode.isBoolean()) {
@@ -179,21 +223,52 @@ public class ConditionalOperatorFactory {
 			return new EqualityValue();
 		} else if (jsonNode.isTextual()) {
 			String text = ((TextNode)jsonNode).textValue();
-			if (isTimestamp(text)) {
-				return new EqualityValue(toTimestamp(text));
-			} else if (isDate(text)) {
-				return new EqualityValue(toDate(text));
-			} else if (isTime(text)) {
-				return new EqualityValue(toTime(text));
-			} else if (isUUID(text)) {
-				return new EqualityValue(UUID.fromString(text));
-			} else {
+			if (isTextColumn(column)) {
 				return new EqualityValue(text);
 			}
+			switch (LiteralClassifier.classify(text)) {
+				case TIMESTAMP:
+					return new EqualityValue(toTimestamp(text));
+				case DATE:
+					return new EqualityValue(toDate(text));
+				case TIME:
+					return new EqualityValue(toTime(text));
+				case UUID:
+					return new EqualityValue(UUID.fromString(text));
+				default:
+					return new EqualityValue(text);
+			}
 		}
 		throw new Exception("Failed to create an EqualityValue from the following JsonNode: " + jsonNode);
 	}
 	
+	/**
+	 * Creates an EqualityValue from the given Java value, such as a column value of a CMEObject.
+	 * @param value Value to create the EqualityValue from.
+	 * @return A new EqualityValue. Values of types that have no matching ValueType are stored as text.
+	 */
+	public static EqualityValue createEqualityValueFromObject(Object value) {
+		if (value == null) {
+			return new EqualityValue();
+		} else if (value instanceof Number) {
+			return new EqualityValue((Number)value);
+		} else if (value instanceof Boolean) {
+			return new EqualityValue((Boolean)value);
+		} else if (value instanceof Date) {
+			return new EqualityValue((Date)value);
+		} else if (value instanceof Time) {
+			return new EqualityValue((Time)value);
+		} else if (value instanceof Timestamp) {
+			return new EqualityValue((Timestamp)value);
+		} else if (value instanceof java.util.Date) {
+			return new EqualityValue(new Timestamp(((java.util.Date)value).getTime()));
+		} else if (value instanceof UUID) {
+			return new EqualityValue((UUID)value);
+		} else {
+			return new EqualityValue(value.toString());
+		}
+	}
+
 	/**
 	 * Creates an "in" operator from the given operator name and List of EqualityValues.
 	 * @param operatorName Name of the operator to create.
@@ -214,14 +289,15 @@ public class ConditionalOperatorFactory {
 	/**
 	 * Creates a List of EqualityValues from the given JsonNode.
 	 * @param jsonNode JsonNode to create the List from.
+	 * @param column Definition of the column the values are compared with, or null if it isn't known.
 	 * @return A new List of EqualityValues.
 	 * @throws Exception if jsonNode isn't an array, it contains an invalid value (see createEqualityValue), or it contains values of different types.
 	 */
-	private static List<EqualityValue> createListOfEqualityValues(JsonNode jsonNode) throws Exception {
+	private static List<EqualityValue> createListOfEqualityValues(JsonNode jsonNode, CMEObjectColumnDef column) throws Exception {
 		if (jsonNode.isArray()) {
 			List<EqualityValue> values = new ArrayList<>();
 			for (JsonNode value : (ArrayNode)jsonNode) {
-				values.add(createEqualityValue(value));
+				values.add(createEqualityValue(value, column));
 			}
 			
 			ValueType valueType = null;
@@ -318,20 +394,7 @@ public class ConditionalOperatorFactory {
 		return comparisonOperators.contains(s);
 	}
 	
-	/**
-	 * Checks whether the given String can be converted to a Date.
-	 * @param s String to check.
-	 * @return true if the String can be converted to a Date; false otherwise.
-	 */
-	private static boolean isDate(String s) {
-		try {
-			DatatypeConverter.parseDate(s);
-			return true;
-		} catch (Throwable t) {
-			return false;
-		}
-	}
-	
+
 	/**
 	 * Checks if the given String is the name of an equality operator.
 	 * Equality operator names: $eq, $ne, $in, $nin
@@ -352,6 +415,16 @@ public class ConditionalOperatorFactory {
 		return inOperators.contains(s);
 	}
 	
+	/**
+	 * Checks whether the given column holds text, so text literals compared with it are never dates, times,
+	 * timestamps, or UUIDs.
+	 * @param column Definition of the column, or null if it isn't known.
+	 * @return true if the column is known to hold text; false otherwise.
+	 */
+	private static boolean isTextColumn(CMEObjectColumnDef column) {
+		return column != null && column.getDataType() == DataType.STRING;
+	}
+	
 	/**
 	 * Checks if the given String is the name of a string operator.
 	 * String operator names: $begins, $contains, $ends
@@ -362,48 +435,6 @@ public class ConditionalOperatorFactory {
 		return stringOperators.contains(s);
 	}
 	
-	/**
-	 * Checks whether the given String can be converted to a Time.
-	 * @param s String to check.
-	 * @return true if the String can be converted to a Time; false otherwise.
-	 */
-	private static boolean isTime(String s) {
-		try {
-			DatatypeConverter.parseTime(s);
-			return true;
-		} catch (Throwable t) {
-			return false;
-		}
-	}
-	
-	/**
-	 * Checks whether the given String can be converted to a Timestamp.
-	 * @param s String to check.
-	 * @return true if the String can be converted to a Timestamp; false otherwise.
-	 */
-	private static boolean isTimestamp(String s) {
-		try {
-			DatatypeConverter.parseDateTime(s);
-			return true;
-		} catch (Throwable t) {
-			return false;
-		}
-	}
-	
-	/**
-	 * Checks whether the given String can be converted to a UUID.
-	 * @param s String to check.
-	 * @return true if the String can be converted to a UUID; false otherwise.
-	 */
-	private static boolean isUUID(String s) {
-		try {
-			UUID.fromString(s);
-			return true;
-		} catch (Throwable t) {
-			return false;
-		}
-	}
-	
 	/**
 	 * Converts the given String to a Date.
 	 * @note The Date type here is java.sql.Date and not java.util.Date.
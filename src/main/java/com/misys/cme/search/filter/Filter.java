@@ -11,6 +11,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.misys.cmeobject.search.Queries.ConditionalOperator;
 import com.misys.cmeobject.search.Queries.Query;
 import com.misys.cmeobject.search.Queries.QueryNode;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
 
 /**
  * Represents a search filter.
@@ -23,12 +25,23 @@ public class Filter implements Query {
 	 * @param filterJSON ObjectNode containing the data for the new Filter.
 	 */
 	public Filter(ObjectNode filterJSON) {
+		this(filterJSON, null);
+	}
+	
+	/**
+	 * Constructs a new filter from the given ObjectNode for the given CMEObject type.
+	 * The column definitions of the type are used to type the literal values in the filter.
+	 * @param filterJSON ObjectNode containing the data for the new Filter.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
+	 */
+	public Filter(ObjectNode filterJSON, CMEObjectDef def) {
 		if (filterJSON.size() == 1) {
 			String fieldName = filterJSON.fieldNames().next();
 			if (CombinatorFactory.isCombinatorFieldName(fieldName)) {
-				operator = CombinatorFactory.create(fieldName, filterJSON.get(fieldName));
+				operator = CombinatorFactory.create(fieldName, filterJSON.get(fieldName), def);
 			} else {
-				ConditionalOperator selectorOperator = ConditionalOperatorFactory.create(filterJSON.get(fieldName));
+				CMEObjectColumnDef column = def != null ? def.getColumnByName(fieldName) : null;
+				ConditionalOperator selectorOperator = ConditionalOperatorFactory.create(filterJSON.get(fieldName), column);
 				operator = new Selector(fieldName, selectorOperator);
 			}
 		} else {
@@ -38,12 +51,20 @@ public class Filter implements Query {
 				Map.Entry<String, JsonNode> entry = entryIterator.next();
 				ObjectNode newFilterObject = JsonNodeFactory.instance.objectNode();
 				newFilterObject.set(entry.getKey(), entry.getValue());
-				topLevelFilters.add(new Filter(newFilterObject));
+				topLevelFilters.add(new Filter(newFilterObject, def));
 			}
 			operator = new AndCombinator(topLevelFilters);
 		}
 	}
 	
+	/**
+	 * Constructs a new filter that contains the given, already built, operator.
+	 * @param operator QueryNode the new Filter will contain.
+	 */
+	public Filter(QueryNode operator) {
+		this.operator = operator;
+	}
+	
 	/**
 	 * Gets the operator this Filter contains.
 	 * @return The QueryNode this Filter contains.
@@ -0,0 +1,279 @@
+package com.misys.cme.search.filter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+
+import com.misys.cmeobject.CMEObject;
+import com.misys.cmeobject.search.Queries.ConditionalOperator;
+import com.misys.cmeobject.search.Queries.Query;
+import com.misys.cmeobject.search.Queries.QueryNode;
+import com.misys.cmeobject.search.Queries.ValueType;
+
+/**
+ * Evaluates a search Filter against CMEObjects in memory, the way the database would.
+ * Selectors follow SQL's three-valued logic: comparing a NULL column with anything is unknown, and unknown is
+ * treated as not matching once the whole Filter is evaluated. {"x": null} and {"x": {"$ne": null}} are IS NULL and IS
+ * NOT NULL.
+ * @note Text is compared like SQL Server's default collation: ignoring case and trailing spaces.
+ */
+public class FilterEvaluator {
+	private BiFunction<CMEObject, String, List<CMEObject>> childLookup;
+
+	/**
+	 * Constructs a FilterEvaluator.
+	 * @param childLookup Gets the children of a CMEObject for the name of a child reference, for $elemMatch. If null,
+	 * $elemMatch never matches.
+	 */
+	public FilterEvaluator(BiFunction<CMEObject, String, List<CMEObject>> childLookup) {
+		this.childLookup = childLookup;
+	}
+
+	/**
+	 * Checks whether the given CMEObject matches the given Filter.
+	 * @param filter Filter to evaluate. null matches every CMEObject.
+	 * @param cmeObject CMEObject to evaluate the Filter against.
+	 * @return true if the CMEObject matches; false if it doesn't or the result is unknown.
+	 */
+	public boolean matches(Filter filter, CMEObject cmeObject) {
+		return filter == null || Boolean.TRUE.equals(evaluate(filter, cmeObject));
+	}
+
+	/**
+	 * Evaluates the given Query against the given CMEObject.
+	 * @param query Query to evaluate.
+	 * @param cmeObject CMEObject to evaluate the Query against.
+	 * @return TRUE, FALSE, or null if the result is unknown.
+	 */
+	private Boolean evaluate(Query query, CMEObject cmeObject) {
+		if (!(query instanceof Filter)) {
+			throw new RuntimeException("Cannot evaluate the query \"" + query + "\" in memory!");
+		}
+		QueryNode node = ((Filter) query).getOperator();
+		if (node instanceof AndCombinator) {
+			return and(((AndCombinator) node).getChildren(), cmeObject);
+		} else if (node instanceof OrCombinator) {
+			return or(((OrCombinator) node).getChildren(), cmeObject);
+		} else if (node instanceof NandCombinator) {
+			return not(and(((NandCombinator) node).getChildren(), cmeObject));
+		} else if (node instanceof NorCombinator) {
+			return not(or(((NorCombinator) node).getChildren(), cmeObject));
+		} else if (node instanceof NotCombinator) {
+			return not(evaluate(((NotCombinator) node).getFilter(), cmeObject));
+		} else if (node instanceof Selector) {
+			Selector selector = (Selector) node;
+			return evaluate(selector.getOperator(), selector.getFieldName(), cmeObject);
+		}
+		throw new RuntimeException("Cannot evaluate the query node \"" + node + "\" in memory!");
+	}
+
+	/**
+	 * ANDs the given Queries together.
+	 */
+	private Boolean and(List<Query> children, CMEObject cmeObject) {
+		Boolean result = Boolean.TRUE;
+		for (Query child : children) {
+			Boolean childResult = evaluate(child, cmeObject);
+			if (Boolean.FALSE.equals(childResult)) {
+				return Boolean.FALSE;
+			} else if (childResult == null) {
+				result = null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * ORs the given Queries together.
+	 */
+	private Boolean or(List<Query> children, CMEObject cmeObject) {
+		Boolean result = Boolean.FALSE;
+		for (Query child : children) {
+			Boolean childResult = evaluate(child, cmeObject);
+			if (Boolean.TRUE.equals(childResult)) {
+				return Boolean.TRUE;
+			} else if (childResult == null) {
+				result = null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Negates the given result. Unknown stays unknown.
+	 */
+	private static Boolean not(Boolean result) {
+		return result == null ? null : !result;
+	}
+
+	/**
+	 * Evaluates the given selector operator against a field of the given CMEObject.
+	 * @param operator ConditionalOperator of the selector.
+	 * @param fieldName Name of the field the selector applies to.
+	 * @param cmeObject CMEObject to evaluate the selector against.
+	 * @return TRUE, FALSE, or null if the result is unknown.
+	 */
+	private Boolean evaluate(ConditionalOperator operator, String fieldName, CMEObject cmeObject) {
+		if (operator instanceof ElemMatchOperator) {
+			if (childLookup == null) {
+				return Boolean.FALSE;
+			}
+			Filter childFilter = ((ElemMatchOperator) operator).getFilter();
+			for (CMEObject child : childLookup.apply(cmeObject, fieldName)) {
+				if (matches(childFilter, child)) {
+					return Boolean.TRUE;
+				}
+			}
+			return Boolean.FALSE;
+		}
+
+		Object value = cmeObject.getValue(fieldName);
+		if (operator instanceof EqualsOperator) {
+			EqualityValue literal = ((EqualsOperator) operator).getValueNode();
+			if (literal.isNull()) {
+				return value == null;
+			}
+			return FilterEvaluator.isEqual(value, literal);
+		} else if (operator instanceof NotEqualsOperator) {
+			EqualityValue literal = ((NotEqualsOperator) operator).getValueNode();
+			if (literal.isNull()) {
+				return value != null;
+			}
+			return not(FilterEvaluator.isEqual(value, literal));
+		} else if (operator instanceof InOperator) {
+			return FilterEvaluator.isIn(value, ((InOperator) operator).getValues());
+		} else if (operator instanceof NotInOperator) {
+			return not(FilterEvaluator.isIn(value, ((NotInOperator) operator).getValues()));
+		} else if (operator instanceof GreaterThanOperator) {
+			Integer result = FilterEvaluator.compare(value, ((GreaterThanOperator) operator).getValueNode());
+			return result == null ? null : result > 0;
+		} else if (operator instanceof GreaterThanOrEqualsOperator) {
+			Integer result = FilterEvaluator.compare(value, ((GreaterThanOrEqualsOperator) operator).getValueNode());
+			return result == null ? null : result >= 0;
+		} else if (operator instanceof LessThanOperator) {
+			Integer result = FilterEvaluator.compare(value, ((LessThanOperator) operator).getValueNode());
+			return result == null ? null : result < 0;
+		} else if (operator instanceof LessThanOrEqualsOperator) {
+			Integer result = FilterEvaluator.compare(value, ((LessThanOrEqualsOperator) operator).getValueNode());
+			return result == null ? null : result <= 0;
+		} else if (operator instanceof BeginsOperator) {
+			String text = FilterEvaluator.getText(value);
+			return text == null ? null : text.startsWith(FilterEvaluator.getText(((BeginsOperator) operator).getValueNode().getText()));
+		} else if (operator instanceof ContainsOperator) {
+			String text = FilterEvaluator.getText(value);
+			return text == null ? null : text.contains(FilterEvaluator.getText(((ContainsOperator) operator).getValueNode().getText()));
+		} else if (operator instanceof EndsOperator) {
+			String text = FilterEvaluator.getText(value);
+			return text == null ? null : text.endsWith(FilterEvaluator.getText(((EndsOperator) operator).getValueNode().getText()));
+		} else if (operator instanceof ModuloOperator) {
+			ModuloOperator modulo = (ModuloOperator) operator;
+			Object number = FilterEvaluator.toKey(ValueType.NUMBER, value);
+			if (number == null) {
+				return null;
+			}
+			BigDecimal remainder = ((BigDecimal) number).remainder(new BigDecimal(modulo.getDivisor().toString()));
+			return remainder.compareTo(new BigDecimal(modulo.getRemainder().toString())) == 0;
+		}
+		throw new RuntimeException("Cannot evaluate the operator \"" + operator + "\" in memory!");
+	}
+
+	/**
+	 * Checks whether the given column value equals the given non-null literal.
+	 * @return TRUE, FALSE, or null if the column value is NULL or can't be compared with the literal.
+	 */
+	private static Boolean isEqual(Object value, EqualityValue literal) {
+		Object key = FilterEvaluator.toKey(literal.getValueType(), value);
+		if (key == null) {
+			return null;
+		}
+		return key.equals(FilterEvaluator.toKey(literal.getValueType(), FilterOptimizer.getValue(literal)));
+	}
+
+	/**
+	 * Checks whether the given column value is in the given literals, like SQL's IN.
+	 * @return TRUE, FALSE, or null if the column value is NULL or not found and a literal is NULL.
+	 */
+	private static Boolean isIn(Object value, List<EqualityValue> literals) {
+		Boolean result = Boolean.FALSE;
+		for (EqualityValue literal : literals) {
+			Boolean equal = literal.isNull() ? null : FilterEvaluator.isEqual(value, literal);
+			if (Boolean.TRUE.equals(equal)) {
+				return Boolean.TRUE;
+			} else if (equal == null) {
+				result = null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Compares the given column value with the given literal.
+	 * @return A negative number, zero, or a positive number as the value is less than, equal to, or greater than the
+	 * literal, or null if the column value is NULL or can't be compared with the literal.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Integer compare(Object value, ComparisonValue literal) {
+		Object key = FilterEvaluator.toKey(literal.getValueType(), value);
+		if (key == null) {
+			return null;
+		}
+		return ((Comparable<Object>) key).compareTo(FilterEvaluator.toKey(literal.getValueType(), FilterOptimizer.getValue(literal)));
+	}
+
+	/**
+	 * Converts a column value or literal to a key of the given type that compares the way the database compares
+	 * values of that type.
+	 * @param type Type of the literal the value is compared with.
+	 * @param value The value.
+	 * @return The key, or null if the value is NULL or can't be converted to the type.
+	 */
+	private static Object toKey(ValueType type, Object value) {
+		if (value == null) {
+			return null;
+		}
+		switch (type) {
+			case NUMBER:
+				if (value instanceof Number) {
+					return FilterOptimizer.getKey(type, value);
+				}
+				try {
+					return FilterOptimizer.getKey(type, new BigDecimal(value.toString().trim()));
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			case BOOLEAN:
+				if (value instanceof Number) {
+					return ((Number) value).intValue() != 0;
+				}
+				return Boolean.valueOf(value.toString().trim());
+			case DATE:
+			case TIME:
+			case TIMESTAMP:
+				if (value instanceof java.util.Date) {
+					return ((java.util.Date) value).getTime();
+				}
+				return null;
+			case TEXT:
+				return FilterEvaluator.getText(value);
+			default:
+				return FilterOptimizer.getKey(type, value.toString());
+		}
+	}
+
+	/**
+	 * Gets the given column value or literal as text for comparing and matching $begins, $contains and $ends.
+	 * @return The text in upper case without trailing spaces, or null if the value is NULL.
+	 */
+	private static String getText(Object value) {
+		if (value == null) {
+			return null;
+		}
+		String text = value.toString();
+		int end = text.length();
+		while (end > 0 && text.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return text.substring(0, end).toUpperCase(Locale.ROOT);
+	}
+}
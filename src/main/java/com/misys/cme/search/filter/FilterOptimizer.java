@@ -0,0 +1,585 @@
+package com.misys.cme.search.filter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.misys.cmeobject.search.Queries.ConditionalOperator;
+import com.misys.cmeobject.search.Queries.Query;
+import com.misys.cmeobject.search.Queries.QueryNode;
+import com.misys.cmeobject.search.Queries.ValueType;
+
+/**
+ * Simplifies a search Filter before it is handed to CMEObjectController.
+ * The optimizer:
+ * <ul>
+ * <li>pushes $not, $nand and $nor down to the selectors (De Morgan), negating the selector operators where there is an
+ * opposite operator, e.g. NOT(x < 5) becomes x >= 5 and NOT(x IN (1, 2)) becomes x NOT IN (1, 2)</li>
+ * <li>flattens $and inside $and and $or inside $or</li>
+ * <li>merges $eq and $in on the same field under $or into one $in, and $ne and $nin on the same field under $and into
+ * one $nin</li>
+ * <li>detects $and filters that can't match anything, e.g. {"x": {"$lt": 5}} and {"x": {"$gt": 10}}, or
+ * {"x": 1} and {"x": 2}, so the search can return no results without hitting the database</li>
+ * </ul>
+ * All of these rewrites hold in SQL's three-valued logic, so NULLs are matched exactly as before.
+ * @note The database's collation isn't known here, so text values are only treated as equal when they are the same
+ * String. Text that differs only in case or trailing spaces is never merged away or used to prove a contradiction.
+ */
+public class FilterOptimizer {
+	/**
+	 * Placeholder for a part of the filter that matches every CMEObject.
+	 */
+	private static final Filter MATCH_EVERYTHING = new Filter(new AndCombinator(Collections.<Query>emptyList()));
+
+	/**
+	 * Placeholder for a part of the filter that can't match any CMEObject.
+	 */
+	private static final Filter MATCH_NOTHING = new Filter(new OrCombinator(Collections.<Query>emptyList()));
+
+	private Filter filter;
+	private boolean matchesNothing;
+
+	/**
+	 * Constructs a FilterOptimizer and simplifies the given Filter.
+	 * @param filter Filter to simplify. This isn't modified.
+	 */
+	public FilterOptimizer(Filter filter) {
+		Query result = simplify(filter, false);
+		if (result == MATCH_NOTHING) {
+			matchesNothing = true;
+		} else if (result != MATCH_EVERYTHING) {
+			this.filter = toFilter(result);
+		}
+	}
+
+	/**
+	 * Gets the simplified Filter.
+	 * @return The simplified Filter, or null if the filter matches every CMEObject or can't match any (see
+	 * matchesNothing).
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Checks whether the filter can't match any CMEObject, so there is no need to search.
+	 * @return true if the filter can't match anything; false otherwise.
+	 */
+	public boolean matchesNothing() {
+		return matchesNothing;
+	}
+
+	/**
+	 * Checks whether the filter matches every CMEObject, so the search doesn't need a filter.
+	 * @return true if the filter matches everything; false otherwise.
+	 */
+	public boolean matchesEverything() {
+		return !matchesNothing && filter == null;
+	}
+
+	/**
+	 * Simplifies the given Query.
+	 * @param query Query to simplify.
+	 * @param negated Whether the Query is inside an odd number of negations.
+	 * @return The simplified Query, MATCH_EVERYTHING, or MATCH_NOTHING.
+	 */
+	private static Query simplify(Query query, boolean negated) {
+		if (!(query instanceof Filter)) {
+			return negated ? negate(toFilter(query)) : query;
+		}
+		Filter filter = (Filter) query;
+		QueryNode node = filter.getOperator();
+		if (node instanceof AndCombinator) {
+			List<Query> children = ((AndCombinator) node).getChildren();
+			return negated ? combineOr(children, true) : combineAnd(children, false);
+		} else if (node instanceof OrCombinator) {
+			List<Query> children = ((OrCombinator) node).getChildren();
+			return negated ? combineAnd(children, true) : combineOr(children, false);
+		} else if (node instanceof NandCombinator) {
+			List<Query> children = ((NandCombinator) node).getChildren();
+			return negated ? combineAnd(children, false) : combineOr(children, true);
+		} else if (node instanceof NorCombinator) {
+			List<Query> children = ((NorCombinator) node).getChildren();
+			return negated ? combineOr(children, false) : combineAnd(children, true);
+		} else if (node instanceof NotCombinator) {
+			return simplify(((NotCombinator) node).getFilter(), !negated);
+		} else if (node instanceof Selector && negated) {
+			ConditionalOperator opposite = getOppositeOperator(((Selector) node).getOperator());
+			if (opposite != null) {
+				return new Filter(new Selector(((Selector) node).getFieldName(), opposite));
+			}
+		}
+		return negated ? negate(filter) : filter;
+	}
+
+	/**
+	 * Simplifies the given Queries and ANDs them together.
+	 * @param children Queries to AND together.
+	 * @param negateChildren Whether each of the Queries is negated.
+	 * @return The simplified Query, MATCH_EVERYTHING, or MATCH_NOTHING.
+	 */
+	private static Query combineAnd(List<Query> children, boolean negateChildren) {
+		List<Query> terms = new ArrayList<>();
+		for (Query child : children) {
+			Query term = simplify(child, negateChildren);
+			if (term == MATCH_NOTHING) {
+				return MATCH_NOTHING;
+			} else if (term == MATCH_EVERYTHING) {
+				continue;
+			} else if (term instanceof Filter && ((Filter) term).getOperator() instanceof AndCombinator) {
+				terms.addAll(((AndCombinator) ((Filter) term).getOperator()).getChildren());
+			} else {
+				terms.add(term);
+			}
+		}
+		if (isContradiction(terms)) {
+			return MATCH_NOTHING;
+		}
+		terms = mergeSelectors(terms, false);
+		if (terms.isEmpty()) {
+			return MATCH_EVERYTHING;
+		} else if (terms.size() == 1) {
+			return terms.get(0);
+		}
+		return new Filter(new AndCombinator(terms));
+	}
+
+	/**
+	 * Simplifies the given Queries and ORs them together.
+	 * @param children Queries to OR together.
+	 * @param negateChildren Whether each of the Queries is negated.
+	 * @return The simplified Query, MATCH_EVERYTHING, or MATCH_NOTHING.
+	 */
+	private static Query combineOr(List<Query> children, boolean negateChildren) {
+		List<Query> terms = new ArrayList<>();
+		for (Query child : children) {
+			Query term = simplify(child, negateChildren);
+			if (term == MATCH_EVERYTHING) {
+				return MATCH_EVERYTHING;
+			} else if (term == MATCH_NOTHING) {
+				continue;
+			} else if (term instanceof Filter && ((Filter) term).getOperator() instanceof OrCombinator) {
+				terms.addAll(((OrCombinator) ((Filter) term).getOperator()).getChildren());
+			} else {
+				terms.add(term);
+			}
+		}
+		terms = mergeSelectors(terms, true);
+		if (terms.isEmpty()) {
+			return MATCH_NOTHING;
+		} else if (terms.size() == 1) {
+			return terms.get(0);
+		}
+		return new Filter(new OrCombinator(terms));
+	}
+
+	/**
+	 * Merges the selectors on the same field with values of the same type: $eq and $in into one $in under $or, or $ne
+	 * and $nin into one $nin under $and. Null values are never merged, since IN (NULL) doesn't match NULL.
+	 * The merged selector takes the place of the first selector it replaces.
+	 * @param terms Terms of the combinator.
+	 * @param isOr true to merge the terms of an $or; false to merge the terms of an $and.
+	 * @return The merged terms.
+	 */
+	private static List<Query> mergeSelectors(List<Query> terms, boolean isOr) {
+		Map<String, List<EqualityValue>> valuesByGroup = new HashMap<>();
+		Map<String, Set<Object>> keysByGroup = new HashMap<>();
+		Map<String, Integer> countsByGroup = new HashMap<>();
+		for (Query term : terms) {
+			String group = getMergeGroup(term, isOr);
+			if (group != null) {
+				if (!valuesByGroup.containsKey(group)) {
+					valuesByGroup.put(group, new ArrayList<>());
+					keysByGroup.put(group, new HashSet<>());
+					countsByGroup.put(group, 0);
+				}
+				countsByGroup.put(group, countsByGroup.get(group) + 1);
+				for (EqualityValue value : getMergeableValues(getSelector(term).getOperator(), isOr)) {
+					if (keysByGroup.get(group).add(getKey(value.getValueType(), getValue(value)))) {
+						valuesByGroup.get(group).add(value);
+					}
+				}
+			}
+		}
+
+		List<Query> merged = new ArrayList<>(terms.size());
+		Set<String> mergedGroups = new HashSet<>();
+		for (Query term : terms) {
+			String group = getMergeGroup(term, isOr);
+			if (group == null || countsByGroup.get(group) == 1) {
+				merged.add(term);
+			} else if (mergedGroups.add(group)) {
+				List<EqualityValue> values = valuesByGroup.get(group);
+				ConditionalOperator operator;
+				if (values.size() == 1) {
+					operator = isOr ? new EqualsOperator(values.get(0)) : new NotEqualsOperator(values.get(0));
+				} else {
+					operator = isOr ? new InOperator(values) : new NotInOperator(values);
+				}
+				merged.add(new Filter(new Selector(getSelector(term).getFieldName(), operator)));
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Gets the group of selectors the given term can be merged with: its field name and value type.
+	 * @return The group, or null if the term can't be merged.
+	 */
+	private static String getMergeGroup(Query term, boolean isOr) {
+		Selector selector = getSelector(term);
+		if (selector == null) {
+			return null;
+		}
+		List<EqualityValue> values = getMergeableValues(selector.getOperator(), isOr);
+		if (values == null || values.isEmpty()) {
+			return null;
+		}
+		return selector.getFieldName() + "\u0000" + values.get(0).getValueType();
+	}
+
+	/**
+	 * Gets the values of the given operator if it can be merged: $eq or $in under $or, $ne or $nin under $and.
+	 * @return The non-null values of the operator, or null if it can't be merged.
+	 */
+	private static List<EqualityValue> getMergeableValues(ConditionalOperator operator, boolean isOr) {
+		List<EqualityValue> values;
+		if (isOr && operator instanceof EqualsOperator) {
+			values = Collections.singletonList(((EqualsOperator) operator).getValueNode());
+		} else if (isOr && operator instanceof InOperator) {
+			values = ((InOperator) operator).getValues();
+		} else if (!isOr && operator instanceof NotEqualsOperator) {
+			values = Collections.singletonList(((NotEqualsOperator) operator).getValueNode());
+		} else if (!isOr && operator instanceof NotInOperator) {
+			values = ((NotInOperator) operator).getValues();
+		} else {
+			return null;
+		}
+		for (EqualityValue value : values) {
+			if (value.isNull() || value.getValueType() != values.get(0).getValueType()) {
+				return null;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Checks whether the given terms of an $and can't all be true for the same CMEObject.
+	 * @param terms Terms of the $and.
+	 * @return true if the $and can't match anything; false if it might.
+	 */
+	private static boolean isContradiction(List<Query> terms) {
+		Map<String, List<ConditionalOperator>> operatorsByField = new LinkedHashMap<>();
+		for (Query term : terms) {
+			Selector selector = getSelector(term);
+			if (selector != null) {
+				List<ConditionalOperator> operators = operatorsByField.get(selector.getFieldName());
+				if (operators == null) {
+					operators = new ArrayList<>();
+					operatorsByField.put(selector.getFieldName(), operators);
+				}
+				operators.add(selector.getOperator());
+			}
+		}
+		for (List<ConditionalOperator> operators : operatorsByField.values()) {
+			if (operators.size() > 1 && new FieldConstraints(operators).isContradiction()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Constraints the ANDed selectors of one field put on its value.
+	 */
+	private static class FieldConstraints {
+		private boolean isNull;
+		private boolean isNotNull;
+		private ValueType valueType;
+		private boolean hasMixedTypes;
+		private Set<Object> allowed;
+		private Set<Object> excluded = new HashSet<>();
+		private Comparable<Object> lower;
+		private boolean lowerInclusive;
+		private Comparable<Object> upper;
+		private boolean upperInclusive;
+
+		private FieldConstraints(List<ConditionalOperator> operators) {
+			for (ConditionalOperator operator : operators) {
+				if (operator instanceof EqualsOperator) {
+					EqualityValue value = ((EqualsOperator) operator).getValueNode();
+					if (value.isNull()) {
+						isNull = true;
+					} else {
+						isNotNull = true;
+						allow(Collections.singletonList(value));
+					}
+				} else if (operator instanceof NotEqualsOperator) {
+					EqualityValue value = ((NotEqualsOperator) operator).getValueNode();
+					isNotNull = true;
+					if (!value.isNull()) {
+						exclude(Collections.singletonList(value));
+					}
+				} else if (operator instanceof InOperator) {
+					isNotNull = true;
+					allow(((InOperator) operator).getValues());
+				} else if (operator instanceof NotInOperator) {
+					isNotNull = true;
+					exclude(((NotInOperator) operator).getValues());
+				} else if (operator instanceof GreaterThanOperator) {
+					isNotNull = true;
+					addLowerBound(((GreaterThanOperator) operator).getValueNode(), false);
+				} else if (operator instanceof GreaterThanOrEqualsOperator) {
+					isNotNull = true;
+					addLowerBound(((GreaterThanOrEqualsOperator) operator).getValueNode(), true);
+				} else if (operator instanceof LessThanOperator) {
+					isNotNull = true;
+					addUpperBound(((LessThanOperator) operator).getValueNode(), false);
+				} else if (operator instanceof LessThanOrEqualsOperator) {
+					isNotNull = true;
+					addUpperBound(((LessThanOrEqualsOperator) operator).getValueNode(), true);
+				}
+			}
+		}
+
+		private boolean isContradiction() {
+			if (isNull && isNotNull) {
+				return true;
+			} else if (hasMixedTypes) {
+				// Let the database decide how values of different types compare
+				return false;
+			}
+			if (lower != null && upper != null) {
+				int result = lower.compareTo(upper);
+				if (result > 0 || (result == 0 && !(lowerInclusive && upperInclusive))) {
+					return true;
+				}
+			}
+			if (allowed != null) {
+				for (Object key : allowed) {
+					if (!excluded.contains(key) && isInRange(key)) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return false;
+		}
+
+		private void allow(List<EqualityValue> values) {
+			Set<Object> keys = new HashSet<>();
+			for (EqualityValue value : values) {
+				if (value.isNull()) {
+					// Leave IN lists with NULL to the database
+					return;
+				} else if (checkType(value.getValueType())) {
+					keys.add(getKey(value.getValueType(), getValue(value)));
+				}
+			}
+			if (allowed == null) {
+				allowed = keys;
+			} else if (valueType == ValueType.TEXT) {
+				// Different Strings may be equal in the database's collation, so any of them might match
+				allowed.addAll(keys);
+			} else {
+				allowed.retainAll(keys);
+			}
+		}
+
+		private void exclude(List<EqualityValue> values) {
+			for (EqualityValue value : values) {
+				if (!value.isNull() && checkType(value.getValueType())) {
+					excluded.add(getKey(value.getValueType(), getValue(value)));
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addLowerBound(ComparisonValue value, boolean inclusive) {
+			if (checkType(value.getValueType()) && isOrdered(value.getValueType())) {
+				Comparable<Object> key = (Comparable<Object>) getKey(value.getValueType(), getValue(value));
+				int result = lower == null ? 1 : key.compareTo(lower);
+				if (result > 0 || (result == 0 && !inclusive)) {
+					lower = key;
+					lowerInclusive = inclusive;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addUpperBound(ComparisonValue value, boolean inclusive) {
+			if (checkType(value.getValueType()) && isOrdered(value.getValueType())) {
+				Comparable<Object> key = (Comparable<Object>) getKey(value.getValueType(), getValue(value));
+				int result = upper == null ? -1 : key.compareTo(upper);
+				if (result < 0 || (result == 0 && !inclusive)) {
+					upper = key;
+					upperInclusive = inclusive;
+				}
+			}
+		}
+
+		private boolean isInRange(Object key) {
+			if (lower != null) {
+				int result = lower.compareTo(key);
+				if (result > 0 || (result == 0 && !lowerInclusive)) {
+					return false;
+				}
+			}
+			if (upper != null) {
+				int result = upper.compareTo(key);
+				if (result < 0 || (result == 0 && !upperInclusive)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Records the type of a value, noting when the field is compared with values of different types.
+		 * @return true if the value has the same type as the values before it; false otherwise.
+		 */
+		private boolean checkType(ValueType type) {
+			if (valueType == null) {
+				valueType = type;
+			} else if (valueType != type) {
+				hasMixedTypes = true;
+			}
+			return !hasMixedTypes;
+		}
+	}
+
+	/**
+	 * Gets the opposite of the given operator, i.e. the operator that is true exactly when the given one is false.
+	 * @param operator Operator to get the opposite of.
+	 * @return The opposite operator, or null if there isn't one.
+	 */
+	private static ConditionalOperator getOppositeOperator(ConditionalOperator operator) {
+		if (operator instanceof EqualsOperator) {
+			return new NotEqualsOperator(((EqualsOperator) operator).getValueNode());
+		} else if (operator instanceof NotEqualsOperator) {
+			return new EqualsOperator(((NotEqualsOperator) operator).getValueNode());
+		} else if (operator instanceof InOperator) {
+			return new NotInOperator(((InOperator) operator).getValues());
+		} else if (operator instanceof NotInOperator) {
+			return new InOperator(((NotInOperator) operator).getValues());
+		} else if (operator instanceof GreaterThanOperator) {
+			return new LessThanOrEqualsOperator(((GreaterThanOperator) operator).getValueNode());
+		} else if (operator instanceof GreaterThanOrEqualsOperator) {
+			return new LessThanOperator(((GreaterThanOrEqualsOperator) operator).getValueNode());
+		} else if (operator instanceof LessThanOperator) {
+			return new GreaterThanOrEqualsOperator(((LessThanOperator) operator).getValueNode());
+		} else if (operator instanceof LessThanOrEqualsOperator) {
+			return new GreaterThanOperator(((LessThanOrEqualsOperator) operator).getValueNode());
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the Selector the given Query contains, if it is a Filter with a Selector.
+	 * @return The Selector, or null if the Query isn't a selector.
+	 */
+	private static Selector getSelector(Query query) {
+		if (query instanceof Filter && ((Filter) query).getOperator() instanceof Selector) {
+			return (Selector) ((Filter) query).getOperator();
+		}
+		return null;
+	}
+
+	/**
+	 * Wraps the given Filter in a $not.
+	 */
+	private static Filter negate(Filter filter) {
+		return new Filter(new NotCombinator(filter));
+	}
+
+	/**
+	 * Gets the given Query as a Filter.
+	 */
+	private static Filter toFilter(Query query) {
+		if (query instanceof Filter) {
+			return (Filter) query;
+		}
+		return new Filter(new AndCombinator(Collections.singletonList(query)));
+	}
+
+	/**
+	 * Checks whether values of the given type can be compared with $lt, $lte, $gt and $gte here.
+	 * Text and UUIDs are left to the database, since their order depends on its collation and storage.
+	 */
+	private static boolean isOrdered(ValueType type) {
+		return type == ValueType.NUMBER || type == ValueType.DATE || type == ValueType.TIME || type == ValueType.TIMESTAMP;
+	}
+
+	/**
+	 * Gets the value the given EqualityValue contains.
+	 */
+	public static Object getValue(EqualityValue value) {
+		switch (value.getValueType()) {
+			case BOOLEAN:
+				return value.getBoolean();
+			case DATE:
+				return value.getDate();
+			case NUMBER:
+				return value.getNumber();
+			case TEXT:
+				return value.getText();
+			case TIME:
+				return value.getTime();
+			case TIMESTAMP:
+				return value.getTimestamp();
+			case UUID:
+				return value.getUUID();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Gets the value the given ComparisonValue contains.
+	 */
+	public static Object getValue(ComparisonValue value) {
+		switch (value.getValueType()) {
+			case DATE:
+				return value.getDate();
+			case NUMBER:
+				return value.getNumber();
+			case TEXT:
+				return value.getText();
+			case TIME:
+				return value.getTime();
+			case TIMESTAMP:
+				return value.getTimestamp();
+			case UUID:
+				return value.getUUID();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Gets a key for the given value that is equal to the key of another value only if the database considers the
+	 * values equal. Numbers are compared by value (1 = 1.0). Text is keyed on the exact String, since the database may
+	 * compare it with any collation.
+	 * @param type Type of the value.
+	 * @param value The value.
+	 * @return The key.
+	 */
+	static Object getKey(ValueType type, Object value) {
+		switch (type) {
+			case NUMBER:
+				BigDecimal number = new BigDecimal(value.toString()).stripTrailingZeros();
+				return number.signum() == 0 ? BigDecimal.ZERO : number;
+			case UUID:
+				return value.toString().toLowerCase(Locale.ROOT);
+			default:
+				return value;
+		}
+	}
+}
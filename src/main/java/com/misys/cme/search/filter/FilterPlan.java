@@ -0,0 +1,261 @@
+package com.misys.cme.search.filter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cmeobject.search.Queries.QueryNode;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Represents a compiled search filter with its literal values taken out.
+ * A FilterPlan is compiled once per filter shape (see getShape) and then bound to the literals of each filter of that
+ * shape to build the same tree of Filters that new Filter(ObjectNode) would, without re-dispatching on field and
+ * operator names or building wrapper ObjectNodes.
+ */
+public class FilterPlan {
+	private ObjectPlan root;
+
+	/**
+	 * Compiles a FilterPlan from the given filter JSON for the given CMEObject type.
+	 * @param filterJSON Filter JSON to compile. Its shape must have been checked by getShape.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
+	 */
+	FilterPlan(ObjectNode filterJSON, CMEObjectDef def) {
+		root = compileObject(filterJSON, def);
+	}
+
+	/**
+	 * Builds a Filter from this plan and the given literals.
+	 * @param literals Literals of the filter, in the order getShape collected them.
+	 * @return A new Filter.
+	 */
+	public Filter bind(List<JsonNode> literals) {
+		Iterator<JsonNode> literalIterator = literals.iterator();
+		return root.bind(literalIterator);
+	}
+
+	/**
+	 * Gets the shape of the given filter JSON and collects its literals.
+	 * The shape contains the field names, combinators and operators of the filter, with a '?' in place of each
+	 * literal, e.g. {"$or":[{"ent_id":{"$gt":?}},{"ent_nm":?}]}.
+	 * @param filterJSON Filter JSON to get the shape of.
+	 * @param literals[out] List to add the literals to.
+	 * @return The shape, or null if the filter JSON isn't valid (new Filter(ObjectNode) reports why).
+	 */
+	public static String getShape(ObjectNode filterJSON, List<JsonNode> literals) {
+		StringBuilder shape = new StringBuilder();
+		return appendObjectShape(shape, filterJSON, literals) ? shape.toString() : null;
+	}
+
+	/**
+	 * Appends the shape of a filter object to the given StringBuilder.
+	 * @return true if the filter object is valid; false otherwise.
+	 */
+	private static boolean appendObjectShape(StringBuilder shape, ObjectNode filterJSON, List<JsonNode> literals) {
+		if (filterJSON.size() == 0) {
+			return false;
+		}
+		shape.append('{');
+		Iterator<Map.Entry<String, JsonNode>> entryIterator = filterJSON.fields();
+		while (entryIterator.hasNext()) {
+			Map.Entry<String, JsonNode> entry = entryIterator.next();
+			String fieldName = entry.getKey();
+			JsonNode fieldValue = entry.getValue();
+			appendName(shape, fieldName);
+			if (fieldName.equals("$not")) {
+				if (!fieldValue.isObject() || !appendObjectShape(shape, (ObjectNode) fieldValue, literals)) {
+					return false;
+				}
+			} else if (CombinatorFactory.isCombinatorFieldName(fieldName)) {
+				if (!fieldValue.isArray()) {
+					return false;
+				}
+				shape.append('[');
+				for (JsonNode filterNode : (ArrayNode) fieldValue) {
+					if (!filterNode.isObject() || !appendObjectShape(shape, (ObjectNode) filterNode, literals)) {
+						return false;
+					}
+					shape.append(',');
+				}
+				shape.append(']');
+			} else if (fieldValue.isValueNode()) {
+				shape.append('?');
+				literals.add(fieldValue);
+			} else if (fieldValue.isObject() && fieldValue.size() == 1) {
+				String operatorName = fieldValue.fieldNames().next();
+				JsonNode operatorValue = fieldValue.get(operatorName);
+				shape.append('{');
+				appendName(shape, operatorName);
+				if (operatorName.equals("$elemMatch")) {
+					if (!operatorValue.isObject() || !appendObjectShape(shape, (ObjectNode) operatorValue, literals)) {
+						return false;
+					}
+				} else {
+					shape.append('?');
+					literals.add(operatorValue);
+				}
+				shape.append('}');
+			} else {
+				return false;
+			}
+			shape.append(',');
+		}
+		shape.append('}');
+		return true;
+	}
+
+	/**
+	 * Appends the given field or operator name to the given StringBuilder as a quoted, escaped JSON string.
+	 */
+	private static void appendName(StringBuilder shape, String name) {
+		shape.append('"');
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '"' || c == '\\') {
+				shape.append('\\');
+			}
+			shape.append(c);
+		}
+		shape.append("\":");
+	}
+
+	/**
+	 * Compiles a filter object, mirroring new Filter(ObjectNode).
+	 */
+	private static ObjectPlan compileObject(ObjectNode filterJSON, CMEObjectDef def) {
+		List<FieldPlan> fields = new ArrayList<>();
+		Iterator<Map.Entry<String, JsonNode>> entryIterator = filterJSON.fields();
+		while (entryIterator.hasNext()) {
+			Map.Entry<String, JsonNode> entry = entryIterator.next();
+			fields.add(compileField(entry.getKey(), entry.getValue(), def));
+		}
+		return new ObjectPlan(fields);
+	}
+
+	/**
+	 * Compiles one field of a filter object. The column definition of a selector is looked up here, once per plan.
+	 */
+	private static FieldPlan compileField(String fieldName, JsonNode fieldValue, CMEObjectDef def) {
+		if (fieldName.equals("$not")) {
+			return new CombinatorPlan(fieldName, compileObject((ObjectNode) fieldValue, def));
+		} else if (CombinatorFactory.isCombinatorFieldName(fieldName)) {
+			List<ObjectPlan> children = new ArrayList<>();
+			for (JsonNode filterNode : (ArrayNode) fieldValue) {
+				children.add(compileObject((ObjectNode) filterNode, def));
+			}
+			return new CombinatorPlan(fieldName, children);
+		}
+		CMEObjectColumnDef column = def != null ? def.getColumnByName(fieldName) : null;
+		if (fieldValue.isValueNode()) {
+			return new SelectorPlan(fieldName, "$eq", column, null);
+		} else {
+			String operatorName = fieldValue.fieldNames().next();
+			if (operatorName.equals("$elemMatch")) {
+				// The elements being matched aren't of the searched type, so their literals are typed without a column
+				return new SelectorPlan(fieldName, operatorName, null, compileObject((ObjectNode) fieldValue.get(operatorName), null));
+			}
+			return new SelectorPlan(fieldName, operatorName, column, null);
+		}
+	}
+
+	/**
+	 * Plan for one field of a filter object.
+	 */
+	private interface FieldPlan {
+		QueryNode bind(Iterator<JsonNode> literals);
+	}
+
+	/**
+	 * Plan for a filter object. A single field becomes the Filter's operator; several fields are ANDed together.
+	 */
+	private static class ObjectPlan {
+		private List<FieldPlan> fields;
+
+		private ObjectPlan(List<FieldPlan> fields) {
+			this.fields = fields;
+		}
+
+		private Filter bind(Iterator<JsonNode> literals) {
+			if (fields.size() == 1) {
+				return new Filter(fields.get(0).bind(literals));
+			}
+			List<Filter> topLevelFilters = new ArrayList<>(fields.size());
+			for (FieldPlan field : fields) {
+				topLevelFilters.add(new Filter(field.bind(literals)));
+			}
+			return new Filter(new AndCombinator(topLevelFilters));
+		}
+	}
+
+	/**
+	 * Plan for a combinator field ($and, $or, $nand, $nor or $not).
+	 */
+	private static class CombinatorPlan implements FieldPlan {
+		private String combinatorName;
+		private List<ObjectPlan> children;
+
+		private CombinatorPlan(String combinatorName, List<ObjectPlan> children) {
+			this.combinatorName = combinatorName;
+			this.children = children;
+		}
+
+		private CombinatorPlan(String combinatorName, ObjectPlan child) {
+			this.combinatorName = combinatorName;
+			this.children = new ArrayList<>();
+			this.children.add(child);
+		}
+
+		@Override
+		public QueryNode bind(Iterator<JsonNode> literals) {
+			List<Filter> filters = new ArrayList<>(children.size());
+			for (ObjectPlan child : children) {
+				filters.add(child.bind(literals));
+			}
+			switch (combinatorName) {
+				case "$and":
+					return new AndCombinator(filters);
+				case "$or":
+					return new OrCombinator(filters);
+				case "$nand":
+					return new NandCombinator(filters);
+				case "$nor":
+					return new NorCombinator(filters);
+				case "$not":
+					return new NotCombinator(filters.get(0));
+				default:
+					throw new RuntimeException("Cannot create combinator from field \"" + combinatorName + "\"!");
+			}
+		}
+	}
+
+	/**
+	 * Plan for a field selector. The literal is typed by ConditionalOperatorFactory when the plan is bound.
+	 */
+	private static class SelectorPlan implements FieldPlan {
+		private String fieldName;
+		private String operatorName;
+		private CMEObjectColumnDef column;
+		private ObjectPlan elemMatch;
+
+		private SelectorPlan(String fieldName, String operatorName, CMEObjectColumnDef column, ObjectPlan elemMatch) {
+			this.fieldName = fieldName;
+			this.operatorName = operatorName;
+			this.column = column;
+			this.elemMatch = elemMatch;
+		}
+
+		@Override
+		public QueryNode bind(Iterator<JsonNode> literals) {
+			if (elemMatch != null) {
+				return new Selector(fieldName, new ElemMatchOperator(elemMatch.bind(literals)));
+			}
+			return new Selector(fieldName, ConditionalOperatorFactory.create(operatorName, literals.next(), column));
+		}
+	}
+}
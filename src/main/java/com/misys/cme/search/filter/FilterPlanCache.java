@@ -0,0 +1,123 @@
+package com.misys.cme.search.filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Caches compiled FilterPlans by filter shape, so filters that only differ in their literal values are compiled once.
+ * The cache is a bounded LRU; hit, miss and eviction counts are kept for monitoring.
+ */
+public class FilterPlanCache {
+	/**
+	 * Maximum number of filter shapes kept in the cache.
+	 */
+	private static final int MAX_SIZE = 512;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+
+	private static final Map<String, FilterPlan> plans = new LinkedHashMap<String, FilterPlan>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, FilterPlan> eldest) {
+			if (size() > MAX_SIZE) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Creates a Filter from the given filter JSON, using the cached plan for its shape if there is one.
+	 * @param filterJSON ObjectNode containing the data for the new Filter.
+	 * @return A new Filter equivalent to new Filter(filterJSON).
+	 */
+	public static Filter getFilter(ObjectNode filterJSON) {
+		return getFilter(filterJSON, null);
+	}
+
+	/**
+	 * Creates a Filter from the given filter JSON for the given CMEObject type, using the cached plan for its shape if
+	 * there is one. Plans are cached per type, since the column definitions decide how literals are typed.
+	 * @param filterJSON ObjectNode containing the data for the new Filter.
+	 * @param def Definition of the CMEObject type being searched, or null if it isn't known.
+	 * @return A new Filter equivalent to new Filter(filterJSON, def).
+	 */
+	public static Filter getFilter(ObjectNode filterJSON, CMEObjectDef def) {
+		List<JsonNode> literals = new ArrayList<>();
+		String filterShape = FilterPlan.getShape(filterJSON, literals);
+		if (filterShape == null) {
+			// Not a valid filter; let the Filter constructor report why
+			return new Filter(filterJSON, def);
+		}
+		String shape = def != null ? def.getName() + filterShape : filterShape;
+
+		FilterPlan plan;
+		synchronized (plans) {
+			plan = plans.get(shape);
+		}
+		if (plan != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			plan = new FilterPlan(filterJSON, def);
+			synchronized (plans) {
+				plans.put(shape, plan);
+			}
+		}
+		return plan.bind(literals);
+	}
+
+	/**
+	 * Gets the number of filters created from a cached plan.
+	 * @return The number of cache hits.
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of filters whose plan had to be compiled.
+	 * @return The number of cache misses.
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of plans removed to keep the cache under its maximum size.
+	 * @return The number of evictions.
+	 */
+	public static long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the number of plans in the cache.
+	 * @return The number of cached plans.
+	 */
+	public static int getSize() {
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	/**
+	 * Removes all plans from the cache.
+	 */
+	public static void clear() {
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+}
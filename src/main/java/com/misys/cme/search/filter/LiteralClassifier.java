@@ -0,0 +1,206 @@
+package com.misys.cme.search.filter;
+
+import com.misys.cmeobject.search.Queries.ValueType;
+
+/**
+ * Contains static functions for deciding what kind of value a text literal in filter JSON holds.
+ * The text is scanned once, without parsing it or throwing exceptions, and is recognized as one of:
+ * <ul>
+ * <li>TIMESTAMP: ISO-8601 date and time, e.g. 2017-06-30T13:45:00, 2017-06-30T13:45:00.123Z, 2017-06-30T13:45:00-05:00</li>
+ * <li>DATE: ISO-8601 date, e.g. 2017-06-30, 2017-06-30Z, 2017-06-30+01:00</li>
+ * <li>TIME: ISO-8601 time, e.g. 13:45:00, 13:45:00.5, 13:45:00Z</li>
+ * <li>UUID: 8-4-4-4-12 hexadecimal digits, e.g. 123e4567-e89b-12d3-a456-426655440000</li>
+ * <li>TEXT: anything else</li>
+ * </ul>
+ */
+public class LiteralClassifier {
+	/**
+	 * Gets the ValueType of the given text literal.
+	 * @param s Text to classify.
+	 * @return ValueType.TIMESTAMP, DATE, TIME, UUID, or TEXT.
+	 */
+	public static ValueType classify(String s) {
+		int length = s.length();
+		if (length < 8) {
+			return ValueType.TEXT;
+		}
+		char first = s.charAt(0);
+		if (first == '-' || isDigit(first)) {
+			//Could be a date or timestamp; dates start with a (possibly negative) year of 4 or more digits
+			int end = scanDate(s, 0);
+			if (end == length) {
+				return ValueType.DATE;
+			} else if (end > 0) {
+				if (s.charAt(end) == 'T') {
+					int timeEnd = scanTime(s, end + 1);
+					if (timeEnd > 0 && scanTimeZone(s, timeEnd) == length) {
+						return ValueType.TIMESTAMP;
+					}
+				} else if (scanTimeZone(s, end) == length) {
+					return ValueType.DATE;
+				}
+			}
+		}
+		if (isDigit(first) && s.charAt(2) == ':') {
+			int end = scanTime(s, 0);
+			if (end > 0 && scanTimeZone(s, end) == length) {
+				return ValueType.TIME;
+			}
+		}
+		if (length == 36 && isUUID(s)) {
+			return ValueType.UUID;
+		}
+		return ValueType.TEXT;
+	}
+
+	/**
+	 * Scans a date (-?YYYY-MM-DD, with a year of 4 or more digits) starting at the given index. The day must exist in
+	 * the month, so 2017-02-29 isn't a date but 2016-02-29 is.
+	 * @return The index after the date, or -1 if there is no valid date there.
+	 */
+	private static int scanDate(String s, int start) {
+		int i = start;
+		int length = s.length();
+		if (i < length && s.charAt(i) == '-') {
+			i++;
+		}
+		int yearStart = i;
+		while (i < length && isDigit(s.charAt(i))) {
+			i++;
+		}
+		if (i - yearStart < 4 || i >= length || s.charAt(i) != '-') {
+			return -1;
+		}
+		int month = readTwoDigits(s, i + 1);
+		if (month < 1 || month > 12 || i + 3 >= length || s.charAt(i + 3) != '-') {
+			return -1;
+		}
+		int day = readTwoDigits(s, i + 4);
+		if (day < 1 || day > getDaysInMonth(s, yearStart, i, month)) {
+			return -1;
+		}
+		return i + 6;
+	}
+
+	/**
+	 * Gets the number of days in the given month of the year whose digits are at [yearStart, yearEnd).
+	 * @note Only the last 4 digits of the year are read, since 400 divides 10000.
+	 */
+	private static int getDaysInMonth(String s, int yearStart, int yearEnd, int month) {
+		switch (month) {
+			case 2:
+				int year = 0;
+				for (int i = Math.max(yearStart, yearEnd - 4); i < yearEnd; i++) {
+					year = year * 10 + (s.charAt(i) - '0');
+				}
+				boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+				return leap ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+
+	/**
+	 * Scans a time (hh:mm:ss with optional fractional seconds) starting at the given index. An hour of 24 is only
+	 * allowed in 24:00:00.
+	 * @return The index after the time, or -1 if there is no valid time there.
+	 */
+	private static int scanTime(String s, int start) {
+		int length = s.length();
+		int hour = readTwoDigits(s, start);
+		if (hour < 0 || hour > 24 || start + 2 >= length || s.charAt(start + 2) != ':') {
+			return -1;
+		}
+		int minute = readTwoDigits(s, start + 3);
+		if (minute < 0 || minute > 59 || start + 5 >= length || s.charAt(start + 5) != ':') {
+			return -1;
+		}
+		int second = readTwoDigits(s, start + 6);
+		if (second < 0 || second > 60) {
+			return -1;
+		}
+		int i = start + 8;
+		if (hour == 24) {
+			//24:00:00 is the end of the day; no other time has an hour of 24
+			return minute == 0 && second == 0 && (i == length || s.charAt(i) != '.') ? i : -1;
+		}
+		if (i < length && s.charAt(i) == '.') {
+			int fractionStart = ++i;
+			while (i < length && isDigit(s.charAt(i))) {
+				i++;
+			}
+			if (i == fractionStart) {
+				return -1;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Scans an optional time zone (Z or +hh:mm or -hh:mm) starting at the given index.
+	 * @return The index after the time zone (the given index if there is none), or -1 if the time zone isn't valid.
+	 */
+	private static int scanTimeZone(String s, int start) {
+		int length = s.length();
+		if (start == length) {
+			return start;
+		}
+		char c = s.charAt(start);
+		if (c == 'Z') {
+			return start + 1;
+		} else if (c == '+' || c == '-') {
+			int hour = readTwoDigits(s, start + 1);
+			if (hour < 0 || hour > 14 || start + 3 >= length || s.charAt(start + 3) != ':') {
+				return -1;
+			}
+			int minute = readTwoDigits(s, start + 4);
+			if (minute < 0 || minute > 59) {
+				return -1;
+			}
+			return start + 6;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether the given 36 character String is a UUID in 8-4-4-4-12 form.
+	 */
+	private static boolean isUUID(String s) {
+		for (int i = 0; i < 36; i++) {
+			char c = s.charAt(i);
+			if (i == 8 || i == 13 || i == 18 || i == 23) {
+				if (c != '-') {
+					return false;
+				}
+			} else if (!isDigit(c) && !((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the two digit number at the given index.
+	 * @return The number, or -1 if there aren't two digits there.
+	 */
+	private static int readTwoDigits(String s, int start) {
+		if (start + 1 >= s.length()) {
+			return -1;
+		}
+		char tens = s.charAt(start);
+		char ones = s.charAt(start + 1);
+		if (!isDigit(tens) || !isDigit(ones)) {
+			return -1;
+		}
+		return (tens - '0') * 10 + (ones - '0');
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
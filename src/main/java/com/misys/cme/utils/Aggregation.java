@@ -0,0 +1,219 @@
+package com.misys.cme.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.enums.DataType;
+
+/**
+ * Groups the results of a search and computes aggregates of each group, like SQL's GROUP BY, from the "$group" field
+ * of a search body, e.g. {"_id": ["ent_type_id"], "entities": {"$count": {}}, "total": {"$sum": "amt"}}.
+ * "_id" holds the column (or array of columns) to group by; without it, all the CMEObjects are one group. Every other
+ * field is an aggregate written under its name:
+ * <ul>
+ * <li>{"$count": {}}: the number of CMEObjects in the group.</li>
+ * <li>{"$sum": "column"}: the sum of a numeric column in the group, ignoring NULLs. It is NULL if every value is.</li>
+ * </ul>
+ * Each group is one object with the group by columns and the aggregates, e.g.
+ * {"ent_type_id": 3, "entities": 120, "total": 51234.50}. The groups are in the order of their group by values.
+ * Group by values are compared the way the database compares them (see SortOrder.compareValues), so e.g. "TX" and
+ * "tx" are one group.
+ */
+public class Aggregation {
+	/**
+	 * Search body field holding the aggregation.
+	 */
+	public static final String GROUP_PARAMETER = "$group";
+
+	private static final String COUNT = "$count";
+	private static final String SUM = "$sum";
+
+	private List<String> groupColumnNames = new ArrayList<>();
+	private List<String> outputNames = new ArrayList<>();
+	private List<String> functions = new ArrayList<>();
+	private List<String> columnNames = new ArrayList<>();
+
+	/**
+	 * Constructs an Aggregation from the given JSON, checking it against the CMEObject type's definition.
+	 * @param name Name of the CMEObject type being searched.
+	 * @param groupJSON JSON object with the "_id" columns and the aggregates.
+	 */
+	public Aggregation(String name, JsonNode groupJSON) {
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		if (!groupJSON.isObject()) {
+			throw new RuntimeException("\"" + GROUP_PARAMETER + "\" must be a JSON object!");
+		}
+		JsonNode idJSON = groupJSON.path("_id");
+		if (idJSON.isTextual()) {
+			groupColumnNames.add(Aggregation.getColumn(def, idJSON.asText()).getColumnName());
+		} else if (idJSON.isArray()) {
+			for (JsonNode columnJSON : idJSON) {
+				String columnName = Aggregation.getColumn(def, columnJSON.asText()).getColumnName();
+				if (!groupColumnNames.contains(columnName)) {
+					groupColumnNames.add(columnName);
+				}
+			}
+		} else if (!idJSON.isMissingNode() && !idJSON.isNull()) {
+			throw new RuntimeException("\"_id\" of \"" + GROUP_PARAMETER + "\" must be a column name or an array of them!");
+		}
+
+		Iterator<Map.Entry<String, JsonNode>> fields = groupJSON.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			String outputName = field.getKey();
+			if (outputName.equals("_id")) {
+				continue;
+			}
+			if (groupColumnNames.contains(outputName)) {
+				throw new RuntimeException("The aggregate \"" + outputName + "\" has the name of a group by column!");
+			}
+			JsonNode aggregateJSON = field.getValue();
+			if (!aggregateJSON.isObject() || aggregateJSON.size() != 1) {
+				throw new RuntimeException("The aggregate \"" + outputName + "\" must be an object with one function, e.g. {\"$count\": {}}!");
+			}
+			String function = aggregateJSON.fieldNames().next();
+			String columnName = null;
+			if (function.equals(SUM)) {
+				CMEObjectColumnDef column = Aggregation.getColumn(def, aggregateJSON.get(SUM).asText());
+				if (column.getDataType() != DataType.INTEGER && column.getDataType() != DataType.DECIMAL) {
+					throw new RuntimeException("Cannot sum \"" + column.getColumnName() + "\", since it is not a number!");
+				}
+				columnName = column.getColumnName();
+			} else if (!function.equals(COUNT)) {
+				throw new RuntimeException("\"" + function + "\" is not a supported aggregate function! Use \"$count\" or \"$sum\".");
+			}
+			outputNames.add(outputName);
+			functions.add(function);
+			columnNames.add(columnName);
+		}
+		if (outputNames.isEmpty()) {
+			throw new RuntimeException("\"" + GROUP_PARAMETER + "\" must have at least one aggregate!");
+		}
+	}
+
+	/**
+	 * Gets the names of the columns the aggregation reads: the group by columns and the summed columns.
+	 * @return The column names. Empty if the aggregation only counts one group.
+	 */
+	public List<String> getColumnNames() {
+		List<String> readColumnNames = new ArrayList<>(groupColumnNames);
+		for (String columnName : columnNames) {
+			if (columnName != null && !readColumnNames.contains(columnName)) {
+				readColumnNames.add(columnName);
+			}
+		}
+		return readColumnNames;
+	}
+
+	/**
+	 * Creates an Accumulator that computes this aggregation over the CMEObjects added to it.
+	 * @return A new Accumulator.
+	 */
+	public Accumulator createAccumulator() {
+		return new Accumulator();
+	}
+
+	/**
+	 * Gets a column of the given CMEObject type, checking that it exists.
+	 */
+	private static CMEObjectColumnDef getColumn(CMEObjectDef def, String columnName) {
+		CMEObjectColumnDef column = def.getColumnByName(columnName);
+		if (column == null) {
+			throw new RuntimeException("Cannot aggregate \"" + columnName + "\", since it is not a column of " + def.getName() + "!");
+		}
+		return column;
+	}
+
+	/**
+	 * Orders groups by their group by values.
+	 */
+	private static int compareGroups(List<Object> a, List<Object> b) {
+		for (int i = 0; i < a.size(); i++) {
+			int result = SortOrder.compareValues(a.get(i), b.get(i));
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Computes an Aggregation over CMEObjects one at a time, holding only one row of aggregates per group.
+	 */
+	public class Accumulator {
+		private TreeMap<List<Object>, Object[]> groups = new TreeMap<>(Aggregation::compareGroups);
+
+		private Accumulator() {
+		}
+
+		/**
+		 * Adds a CMEObject to its group.
+		 * @param cmeObject CMEObject to add.
+		 */
+		public void add(CMEObject cmeObject) {
+			List<Object> group = new ArrayList<>(groupColumnNames.size());
+			for (String columnName : groupColumnNames) {
+				group.add(cmeObject.getValue(columnName));
+			}
+			Object[] aggregates = groups.get(group);
+			if (aggregates == null) {
+				aggregates = createAggregates();
+				groups.put(group, aggregates);
+			}
+			for (int i = 0; i < functions.size(); i++) {
+				if (functions.get(i).equals(COUNT)) {
+					aggregates[i] = (Long) aggregates[i] + 1;
+				} else {
+					Object value = cmeObject.getValue(columnNames.get(i));
+					if (value != null) {
+						BigDecimal number = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString().trim());
+						aggregates[i] = aggregates[i] == null ? number : ((BigDecimal) aggregates[i]).add(number);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Gets the groups and their aggregates. If there are no group by columns and nothing was added, this is one
+		 * group with a count of 0, like SQL's aggregates without GROUP BY.
+		 * @return One map of group by column and aggregate names to values per group, in group order.
+		 */
+		public List<Map<String, Object>> getResults() {
+			if (groups.isEmpty() && groupColumnNames.isEmpty()) {
+				groups.put(new ArrayList<>(), createAggregates());
+			}
+			List<Map<String, Object>> results = new ArrayList<>(groups.size());
+			for (Map.Entry<List<Object>, Object[]> group : groups.entrySet()) {
+				Map<String, Object> result = new LinkedHashMap<>();
+				for (int i = 0; i < groupColumnNames.size(); i++) {
+					result.put(groupColumnNames.get(i), group.getKey().get(i));
+				}
+				for (int i = 0; i < outputNames.size(); i++) {
+					result.put(outputNames.get(i), group.getValue()[i]);
+				}
+				results.add(result);
+			}
+			return results;
+		}
+
+		/**
+		 * Creates the aggregates of an empty group: counts of 0 and NULL sums.
+		 */
+		private Object[] createAggregates() {
+			Object[] aggregates = new Object[functions.size()];
+			for (int i = 0; i < functions.size(); i++) {
+				aggregates[i] = functions.get(i).equals(COUNT) ? (Object) 0L : null;
+			}
+			return aggregates;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.misys.cme.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.inject.Singleton;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Produces;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.api.generator.ApiMethodInfo;
+import com.misys.api.generator.ApiMethodParameterInfo;
+import com.misys.api.generator.ApiMethodType;
+import com.misys.api.generator.ControllerMethodInfo;
+
+/**
+ * Generates API classes whose methods are asynchronous, from the same ApiMethodInfos as ApiClassGenerator.
+ * ApiClassGenerator always generates methods that build and return a Response, which Jersey ignores once a request is
+ * suspended. The methods generated here are void: they only pass their parameters, including the @Suspended
+ * AsyncResponse, to their controller method, which sends the Response through the AsyncResponse.
+ * The classes are laid out the same way as the ones ApiClassGenerator generates.
+ */
+public class AsyncApiClassGenerator {
+	/**
+	 * Generates an asynchronous API class.
+	 * @param sourceDirectory Source directory to write the class under, in the directory of its package.
+	 * @param packageName Package of the class.
+	 * @param className Name of the class.
+	 * @param urlPath URL path of the class.
+	 * @param apiMethods Methods of the class. A method without a controller method does nothing, so Jersey answers
+	 * it with 204 No Content.
+	 * @warning This will overwrite the class if it exists!
+	 */
+	public static void generateClass(Path sourceDirectory, String packageName, String className, String urlPath,
+			List<ApiMethodInfo> apiMethods) {
+		Set<String> imports = new TreeSet<String>();
+		imports.add(Singleton.class.getName());
+		imports.add(javax.ws.rs.Path.class.getName());
+		imports.add(LogManager.class.getName());
+		imports.add(Logger.class.getName());
+		StringBuilder methods = new StringBuilder();
+		for (ApiMethodInfo apiMethod : apiMethods) {
+			methods.append("\n");
+			AsyncApiClassGenerator.appendMethod(methods, imports, apiMethod);
+		}
+
+		StringBuilder code = new StringBuilder();
+		code.append("package ").append(packageName).append(";\n\n");
+		for (String name : imports) {
+			code.append("import ").append(name).append(";\n");
+		}
+		code.append("\n@Singleton\n");
+		code.append("@Path(\"").append(urlPath).append("\")\n");
+		code.append("public class ").append(className).append(" {\n");
+		code.append("\tprivate static Logger logger = LogManager.getLogger(").append(className).append(".class.getName());\n");
+		code.append(methods);
+		code.append("}\n");
+
+		Path directory = sourceDirectory.resolve(packageName.replace('.', '/'));
+		Path path = directory.resolve(className + ".java");
+		try {
+			Files.createDirectories(directory);
+			Files.write(path, code.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write the API class " + path + "!", e);
+		}
+	}
+
+	/**
+	 * Appends the code of an asynchronous API method.
+	 * @param code[in,out] Code of the class to append the method to.
+	 * @param imports[in,out] Names of the classes the class imports. The classes the method uses are added.
+	 * @param apiMethod The method.
+	 */
+	private static void appendMethod(StringBuilder code, Set<String> imports, ApiMethodInfo apiMethod) {
+		Class<?> methodAnnotation = AsyncApiClassGenerator.getMethodAnnotation(apiMethod.getApiMethodType());
+		imports.add(methodAnnotation.getName());
+		code.append("\t@").append(methodAnnotation.getSimpleName()).append("\n");
+		if (!apiMethod.getUrlPath().equals("/")) {
+			code.append("\t@Path(\"").append(apiMethod.getUrlPath()).append("\")\n");
+		}
+		if (apiMethod.getConsumesType() != null) {
+			imports.add(Consumes.class.getName());
+			code.append("\t@Consumes(\"").append(apiMethod.getConsumesType()).append("\")\n");
+		}
+		if (apiMethod.getProducesType() != null) {
+			imports.add(Produces.class.getName());
+			code.append("\t@Produces(\"").append(apiMethod.getProducesType()).append("\")\n");
+		}
+
+		code.append("\tpublic static void ").append(apiMethod.getMethodName()).append("(");
+		String separator = "";
+		for (ApiMethodParameterInfo param : apiMethod.getApiMethodParameters()) {
+			code.append(separator);
+			separator = ", ";
+			if (param.getAnnotationClass() != null) {
+				imports.add(param.getAnnotationClass().getName());
+				code.append("@").append(param.getAnnotationClass().getSimpleName());
+				if (param.getAnnotationValue() != null) {
+					code.append("(\"").append(param.getAnnotationValue()).append("\")");
+				}
+				code.append(" ");
+			}
+			if (param.isFinal()) {
+				code.append("final ");
+			}
+			imports.add(param.getType().getName());
+			code.append(param.getType().getSimpleName()).append(" ").append(param.getName());
+		}
+		code.append(") {\n");
+		code.append("\t\tlogger.traceEntry();\n");
+
+		ControllerMethodInfo controllerMethod = apiMethod.getControllerMethod();
+		if (controllerMethod != null) {
+			StringBuilder arguments = new StringBuilder();
+			for (ApiMethodParameterInfo param : controllerMethod.getParameters()) {
+				if (arguments.length() > 0) {
+					arguments.append(", ");
+				}
+				if (param.getLiteralValue() != null) {
+					arguments.append("\"").append(param.getLiteralValue()).append("\"");
+				} else if (param.getMapValues() != null) {
+					AsyncApiClassGenerator.appendMap(code, imports, param.getName(), param.getMapValues());
+					arguments.append(param.getName());
+				} else {
+					arguments.append(param.getName());
+				}
+			}
+			imports.add(controllerMethod.getClazz().getName());
+			code.append("\t\t").append(controllerMethod.getClazz().getSimpleName()).append(".")
+					.append(controllerMethod.getMethodName()).append("(").append(arguments).append(");\n");
+		}
+
+		code.append("\t\tlogger.traceExit();\n");
+		code.append("\t}\n");
+	}
+
+	/**
+	 * Appends the statements that put the given parameters of an API method in a map, to pass to its controller
+	 * method.
+	 * @param code[in,out] Code of the class to append the statements to.
+	 * @param imports[in,out] Names of the classes the class imports. The classes the statements use are added.
+	 * @param name Name of the map.
+	 * @param mapValues Names of the API method parameters by the key to put each under.
+	 */
+	private static void appendMap(StringBuilder code, Set<String> imports, String name, Map<String, String> mapValues) {
+		imports.add(HashMap.class.getName());
+		imports.add(String.class.getName());
+		imports.add(Object.class.getName());
+		code.append("\t\tHashMap<String, Object> ").append(name).append(" = new HashMap<String, Object>();\n");
+		for (Map.Entry<String, String> entry : mapValues.entrySet()) {
+			code.append("\t\t").append(name).append(".put(\"").append(entry.getKey()).append("\", ")
+					.append(entry.getValue()).append(");\n");
+		}
+	}
+
+	/**
+	 * Gets the JAX-RS annotation of the HTTP method of an API method.
+	 * @param type Type of the API method.
+	 * @return The annotation class.
+	 */
+	private static Class<?> getMethodAnnotation(ApiMethodType type) {
+		switch (type) {
+			case GET:
+				return GET.class;
+			case POST:
+				return POST.class;
+			case PUT:
+				return PUT.class;
+			case DELETE:
+				return DELETE.class;
+			default:
+				throw new RuntimeException("Cannot generate an asynchronous " + type + " method!");
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.misys.cme.utils;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.UriInfo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.misys.cmeobject.CMEObjectController;
+
+/**
+ * Asynchronous versions of the CMEAPIUtils functions called by the generated API classes.
+ * Each function hands the request to the Bulkhead of its API class and returns right away, freeing the container
+ * thread. The Response is sent through the given AsyncResponse when the request is done, or with 503 if the bulkhead
+ * is full or the request waits in its queue too long. The generated API classes call these when CMEAPIGenerator is set
+ * to generate asynchronous classes.
+ */
+public class AsyncCMEAPIUtils {
+	/**
+	 * Name of the Bulkhead used by /searches requests for collections that don't exist.
+	 */
+	private static final String SEARCHES_BULKHEAD = "Searches";
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.search.
+	 * @param name Name of the CMEObject to search for.
+	 * @param uriInfo UriInfo used to request the search.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void search(String name, UriInfo uriInfo, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.search(name, uriInfo));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.count.
+	 * @param name Name of the CMEObject to count.
+	 * @param uriInfo UriInfo used to request the count.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void count(String name, UriInfo uriInfo, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.count(name, uriInfo));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.exists.
+	 * @param name Name of the CMEObject to search for.
+	 * @param uriInfo UriInfo used to request the check.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void exists(String name, UriInfo uriInfo, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.exists(name, uriInfo));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.get.
+	 * @param name Name of the CMEObject to get.
+	 * @param uriInfo UriInfo used to request the CMEObject.
+	 * @param params Key values of the CMEObject to get.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void get(String name, UriInfo uriInfo, Map<String, Object> params, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.get(name, uriInfo, params));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.mget.
+	 * @param name Name of the CMEObjects to get.
+	 * @param uriInfo UriInfo used to request the CMEObjects.
+	 * @param body JSON body of the request.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void mget(String name, UriInfo uriInfo, JsonNode body, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.mget(name, uriInfo, body));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.update.
+	 * @param name Name of the CMEObject to update.
+	 * @param uriInfo UriInfo used to request the update.
+	 * @param json JSON representation of the CMEObject.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void update(String name, UriInfo uriInfo, JsonNode json, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.update(name, uriInfo, json));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.insert.
+	 * @param name Name of the CMEObject to insert.
+	 * @param uriInfo UriInfo used to request the insert.
+	 * @param json JSON representation of the CMEObject.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void insert(String name, UriInfo uriInfo, JsonNode json, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.insert(name, uriInfo, json));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.delete.
+	 * @param name Name of the CMEObject to delete.
+	 * @param params Key values of the CMEObject to delete.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void delete(String name, Map<String, Object> params, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.delete(name, params));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.bulk.
+	 * @param name Name of the CMEObjects the operations apply to.
+	 * @param uriInfo UriInfo used to request the bulk operations.
+	 * @param operations Stream containing the operations.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void bulk(String name, UriInfo uriInfo, InputStream operations, AsyncResponse asyncResponse) {
+		Bulkhead.get(name).submit(asyncResponse, () -> CMEAPIUtils.bulk(name, uriInfo, operations));
+	}
+
+	/**
+	 * Asynchronous version of CMEAPIUtils.searchViaPOST.
+	 * Each collection runs on the bulkhead of its CMEObject, like the searches of its own API class, so slow searches
+	 * of one collection don't hold up the others.
+	 * @param uriInfo UriInfo used to request the search.
+	 * @param collection Collection to search.
+	 * @param filterJSON JSON body of the search.
+	 * @param asyncResponse Suspended response of the request.
+	 */
+	public static void searchViaPOST(UriInfo uriInfo, String collection, JsonNode filterJSON, AsyncResponse asyncResponse) {
+		String name = CMEObjectController.getObjectNameForPath(collection);
+		Bulkhead bulkhead = Bulkhead.get(name != null ? name : SEARCHES_BULKHEAD);
+		bulkhead.submit(asyncResponse, () -> CMEAPIUtils.searchViaPOST(uriInfo, collection, filterJSON));
+	}
+}
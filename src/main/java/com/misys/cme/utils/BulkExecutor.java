@@ -0,0 +1,301 @@
+package com.misys.cme.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cme.backend.BackendRegistry;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.enums.ObjectAction;
+
+/**
+ * Executes a stream of insert, update and delete operations on CMEObjects of one type, as sent to
+ * POST /{collection}/_bulk.
+ * The operations are either a JSON array or newline delimited JSON (NDJSON), one object per operation:
+ * <pre>
+ * {"op": "insert", "values": {...}}
+ * {"op": "update", "values": {...}}
+ * {"op": "delete", "values": {<key columns>}}
+ * </pre>
+ * Operations are read and executed in batches as the response is written, and the results of each batch are written
+ * as soon as it is done, so only one batch of operations and results is held in memory at a time and the client sees
+ * the progress of a long request. A failed operation doesn't stop the ones after it; every operation gets its own
+ * status in the response. If the stream can't be parsed, the operations before the error have been executed, and the
+ * error is the last item of the response.
+ * The response is a JSON object:
+ * {"items": [{"index", "op", "status", "href" or "error"}, ...], "errors": <whether any operation failed>,
+ * "took": <milliseconds>}
+ */
+public class BulkExecutor {
+	private static Logger logger = LogManager.getLogger(BulkExecutor.class);
+
+	/**
+	 * Query parameter holding the number of operations to read and execute per batch.
+	 */
+	public static final String BATCH_SIZE_PARAMETER = "batchSize";
+
+	/**
+	 * Number of operations per batch if the client doesn't give one.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Largest number of operations per batch a client may ask for.
+	 */
+	public static final int MAX_BATCH_SIZE = 5000;
+
+	private String name;
+	private String baseUrl;
+	private int batchSize;
+	private CMEObjectDef def;
+
+	/**
+	 * Constructs a BulkExecutor for CMEObjects of the given type.
+	 * @param name Name of the CMEObject type the operations apply to.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param batchSize Number of operations to read and execute per batch.
+	 */
+	public BulkExecutor(String name, String baseUrl, int batchSize) {
+		this.name = name;
+		this.baseUrl = baseUrl;
+		this.batchSize = batchSize;
+		this.def = CMEObjectDef.getCmeObjDef(name);
+	}
+
+	/**
+	 * Parses the given batch size.
+	 * @param batchSize The batch size as given by the client, or null.
+	 * @return The batch size, or DEFAULT_BATCH_SIZE if none was given.
+	 */
+	public static int parseBatchSize(Object batchSize) {
+		if (batchSize == null) {
+			return DEFAULT_BATCH_SIZE;
+		}
+		try {
+			int value = Integer.parseInt(batchSize.toString().trim());
+			if (value > 0 && value <= MAX_BATCH_SIZE) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+		}
+		throw new RuntimeException("The batch size must be an integer from 1 to " + MAX_BATCH_SIZE + "!");
+	}
+
+	/**
+	 * Creates the response that reads and executes all the operations in the given stream as it is written.
+	 * @param operations Stream containing a JSON array or NDJSON of operations.
+	 * @return StreamingOutput that executes the operations and writes the status of every operation as a JSON object.
+	 */
+	public StreamingOutput execute(InputStream operations) {
+		return new BulkResponse(operations);
+	}
+
+	/**
+	 * Executes one batch of operations.
+	 * @param batch Operations to execute.
+	 * @param firstIndex Position of the first operation of the batch in the request.
+	 * @return The result of each operation of the batch.
+	 */
+	private List<Result> executeBatch(List<JsonNode> batch, int firstIndex) {
+		List<Result> results = new ArrayList<>(batch.size());
+		boolean changed = false;
+		for (JsonNode operation : batch) {
+			Result result = executeOperation(operation, firstIndex + results.size());
+			results.add(result);
+			changed |= result.status < 300;
+		}
+		if (changed) {
+			CMEAPIUtils.getLookupCache().invalidate(name);
+		}
+		logger.debug("Executed " + batch.size() + " bulk operations on " + name + " (" + (firstIndex + batch.size()) + " so far)");
+		return results;
+	}
+
+	/**
+	 * Executes one operation.
+	 * @param operation Operation to execute.
+	 * @param index Position of the operation in the request.
+	 * @return The result of the operation.
+	 */
+	private Result executeOperation(JsonNode operation, int index) {
+		String op = operation.path("op").asText();
+		JsonNode values = operation.get("values");
+		if (!operation.isObject() || values == null || !values.isObject()) {
+			return new Result(index, op, 400, null, "Every operation must be an object with an \"op\" and a \"values\" object!");
+		} else if (operation.has("type") && !name.equals(operation.get("type").asText())) {
+			return new Result(index, op, 400, null, "The type of the operation must be " + name + "!");
+		}
+
+		ObjectAction action;
+		switch (op) {
+			case "insert":
+				action = ObjectAction.CREATE;
+				break;
+			case "update":
+				action = ObjectAction.UPDATE;
+				break;
+			case "delete":
+				action = ObjectAction.DELETE;
+				break;
+			default:
+				return new Result(index, op, 400, null, "The op must be \"insert\", \"update\" or \"delete\"!");
+		}
+		if (def.getViews(action).size() == 0) {
+			return new Result(index, op, 405, null, name + " does not support " + op + "!");
+		}
+
+		try {
+			ObjectNode json = JsonNodeFactory.instance.objectNode();
+			json.put("type", name);
+			json.set("values", values);
+			CMEObject cmeObject = JsonCodec.toCMEObject(json);
+			switch (action) {
+				case CREATE:
+					cmeObject = BackendRegistry.getBackend().insert(cmeObject);
+					CMEAPIUtils.getEntityCache().invalidate(name, cmeObject);
+					return new Result(index, op, 201, CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl), null);
+				case UPDATE:
+					BackendRegistry.getBackend().update(cmeObject);
+					CMEAPIUtils.getEntityCache().invalidate(name, cmeObject);
+					return new Result(index, op, 200, CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl), null);
+				default:
+					Map<String, Object> params = JsonCodec.getValuesReader().readValue(values);
+					BackendRegistry.getBackend().delete(name, params);
+					CMEAPIUtils.getEntityCache().invalidate(name, params);
+					return new Result(index, op, 200, null, null);
+			}
+		} catch (Exception e) {
+			logger.log(Level.ERROR, "Bulk " + op + " of " + name + " at index " + index + " failed", e);
+			return new Result(index, op, 500, null, "There was an error");
+		}
+	}
+
+	/**
+	 * Result of one operation.
+	 */
+	private static class Result {
+		private int index;
+		private String op;
+		private int status;
+		private String href;
+		private String error;
+
+		private Result(int index, String op, int status, String href, String error) {
+			this.index = index;
+			this.op = op;
+			this.status = status;
+			this.href = href;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Reads and executes the operations of a bulk request one batch at a time, writing the results of each batch as a
+	 * JSON object (see BulkExecutor) as soon as the batch is done.
+	 */
+	private class BulkResponse implements StreamingOutput {
+		private InputStream operations;
+
+		private BulkResponse(InputStream operations) {
+			this.operations = operations;
+		}
+
+		@Override
+		public void write(OutputStream output) throws IOException, WebApplicationException {
+			long start = System.currentTimeMillis();
+			boolean errors = false;
+			int count = 0;
+			JsonGenerator generator = JsonCodec.createGenerator(output);
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("items");
+			MappingIterator<JsonNode> iterator = null;
+			boolean parsed = true;
+			try {
+				iterator = JsonCodec.getMapper().readerFor(JsonNode.class).readValues(operations);
+				boolean more = true;
+				while (more) {
+					List<JsonNode> batch = new ArrayList<>(batchSize);
+					try {
+						while (batch.size() < batchSize && iterator.hasNextValue()) {
+							batch.add(iterator.nextValue());
+						}
+					} catch (IOException e) {
+						//The operations read before the error are still executed, and the error is the last item
+						logger.warn("Bulk operations on " + name + " couldn't be parsed after " + (count + batch.size()) + " operations: " + e.getMessage());
+						parsed = false;
+					}
+					if (!batch.isEmpty()) {
+						errors |= writeResults(generator, executeBatch(batch, count));
+						count += batch.size();
+					}
+					more = parsed && batch.size() == batchSize;
+				}
+			} catch (IOException e) {
+				if (iterator != null) {
+					//Writing the results failed, e.g. the client went away
+					throw e;
+				}
+				logger.warn("Bulk operations on " + name + " couldn't be parsed: " + e.getMessage());
+				parsed = false;
+			} finally {
+				if (iterator != null) {
+					iterator.close();
+				}
+			}
+			if (!parsed) {
+				List<Result> parseError = new ArrayList<>(1);
+				parseError.add(new Result(count, null, 400, null, "Bulk operations must be a JSON array or newline delimited JSON objects!"));
+				errors |= writeResults(generator, parseError);
+			}
+			generator.writeEndArray();
+			generator.writeBooleanField("errors", errors);
+			generator.writeNumberField("took", System.currentTimeMillis() - start);
+			generator.writeEndObject();
+			generator.flush();
+		}
+
+		/**
+		 * Writes the given results as items of the response and sends them to the client.
+		 * @param generator JsonGenerator inside the items array.
+		 * @param results Results to write.
+		 * @return true if any of the operations failed; false otherwise.
+		 */
+		private boolean writeResults(JsonGenerator generator, List<Result> results) throws IOException {
+			boolean errors = false;
+			for (Result result : results) {
+				errors |= result.status >= 300;
+				generator.writeStartObject();
+				generator.writeNumberField("index", result.index);
+				if (result.op != null) {
+					generator.writeStringField("op", result.op);
+				}
+				generator.writeNumberField("status", result.status);
+				if (result.href != null) {
+					generator.writeStringField("href", result.href);
+				}
+				if (result.error != null) {
+					generator.writeStringField("error", result.error);
+				}
+				generator.writeEndObject();
+			}
+			generator.flush();
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.misys.cme.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A bounded executor for the requests of one API class, so slow requests to one class (e.g. /entities searches that
+ * expand children) can only use that class's threads and never make requests to other classes (e.g. /admin lookups)
+ * wait.
+ * Requests that arrive while all threads are busy wait in a queue of limited depth. Requests that arrive while the
+ * queue is full are shed with 503 Service Unavailable instead of tying up a container thread, and so are requests that
+ * don't finish within the timeout.
+ * The number of threads, queue depth and timeout can be set with the system properties CMEAPI.bulkhead.threads,
+ * CMEAPI.bulkhead.queueDepth and CMEAPI.bulkhead.timeoutMillis, or per class with CMEAPI.bulkhead.{name}.threads,
+ * CMEAPI.bulkhead.{name}.queueDepth and CMEAPI.bulkhead.{name}.timeoutMillis.
+ */
+public class Bulkhead {
+	private static Logger logger = LogManager.getLogger(Bulkhead.class);
+
+	/**
+	 * Prefix of the system properties that configure bulkheads.
+	 */
+	private static final String PROPERTY_PREFIX = "CMEAPI.bulkhead.";
+
+	/**
+	 * Number of threads per bulkhead if no system property sets it.
+	 */
+	public static final int DEFAULT_THREADS = 8;
+
+	/**
+	 * Number of requests that may wait for a thread per bulkhead if no system property sets it.
+	 */
+	public static final int DEFAULT_QUEUE_DEPTH = 32;
+
+	/**
+	 * Milliseconds a request may take, including its wait in the queue, if no system property sets it.
+	 */
+	public static final int DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * Seconds a client is asked to wait before retrying a shed request.
+	 */
+	private static final int RETRY_AFTER_SECONDS = 1;
+
+	/**
+	 * Map of API class names to their bulkheads.
+	 */
+	private static final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<String, Bulkhead>();
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final int timeoutMillis;
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+
+	/**
+	 * Constructs a Bulkhead with the given name and size.
+	 * @param name Name of the API class the bulkhead is for.
+	 * @param threads Number of requests executed at the same time.
+	 * @param queueDepth Number of requests that may wait for a thread.
+	 * @param timeoutMillis Milliseconds a request may take before it is answered with 503.
+	 */
+	private Bulkhead(String name, int threads, int queueDepth, int timeoutMillis) {
+		this.name = name;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueDepth), new NamedThreadFactory("CMEAPI-" + name));
+		this.executor.allowCoreThreadTimeOut(true);
+		this.timeoutMillis = timeoutMillis;
+		logger.debug("Created bulkhead " + name + " with " + threads + " threads, a queue depth of " + queueDepth
+				+ " and a timeout of " + timeoutMillis + " ms");
+	}
+
+	/**
+	 * Gets the bulkhead for the given API class, creating it if it doesn't exist.
+	 * @param name Name of the API class, e.g. the CMEObject name or "Searches".
+	 * @return The Bulkhead.
+	 */
+	public static Bulkhead get(String name) {
+		return bulkheads.computeIfAbsent(name, n -> new Bulkhead(n,
+				Bulkhead.getIntProperty(n, "threads", DEFAULT_THREADS),
+				Bulkhead.getIntProperty(n, "queueDepth", DEFAULT_QUEUE_DEPTH),
+				Bulkhead.getIntProperty(n, "timeoutMillis", DEFAULT_TIMEOUT_MILLIS)));
+	}
+
+	/**
+	 * Executes the given request on the bulkhead's threads and resumes the given AsyncResponse with its result.
+	 * The Response is built the same way as the generated API classes build it: 200 with the returned entity, or 500
+	 * if the request throws. If the bulkhead is full, the AsyncResponse is resumed right away with 503, and if the
+	 * request doesn't finish within the timeout, it is resumed with 503 then. A request that times out in the queue
+	 * isn't executed.
+	 * @param asyncResponse Suspended response of the request.
+	 * @param request Executes the request and returns the response entity.
+	 */
+	public void submit(AsyncResponse asyncResponse, Callable<Object> request) {
+		asyncResponse.setTimeoutHandler(response -> {
+			timedOut.incrementAndGet();
+			logger.warn("Timed out a request to " + name + " after " + timeoutMillis + " ms: "
+					+ executor.getActiveCount() + " running, " + executor.getQueue().size() + " queued");
+			response.resume(unavailable(name + " took too long to answer the request"));
+		});
+		asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			executor.execute(() -> {
+				if (!asyncResponse.isSuspended()) {
+					//Timed out while queued, so nobody is waiting for the result
+					return;
+				}
+				Response.ResponseBuilder rb = Response.status(Response.Status.OK);
+				try {
+					rb.entity(request.call());
+					rb.header("X-Messages", "This was successful");
+				} catch (Exception e) {
+					rb.status(Response.Status.INTERNAL_SERVER_ERROR);
+					rb.header("X-Errors", "There was an error");
+					logger.log(Level.ERROR, e.getMessage());
+				}
+				asyncResponse.resume(rb.build());
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			logger.warn("Shed a request to " + name + ": " + executor.getActiveCount() + " running, "
+					+ executor.getQueue().size() + " queued");
+			asyncResponse.resume(unavailable(name + " is too busy to take the request"));
+		}
+	}
+
+	/**
+	 * Builds the 503 Service Unavailable Response of a request the bulkhead couldn't answer in time.
+	 * @param message Reason, sent in the X-Errors header.
+	 * @return The Response.
+	 */
+	private static Response unavailable(String message) {
+		return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+				.header("X-Errors", message)
+				.build();
+	}
+
+	/**
+	 * Gets the name of the API class the bulkhead is for.
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the number of requests being executed.
+	 * @return The number of busy threads.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Gets the number of requests waiting for a thread.
+	 * @return The queue depth.
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Gets the number of requests shed with 503 because the bulkhead was full.
+	 * @return The number of rejected requests.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Gets the number of requests answered with 503 because they didn't finish within the timeout.
+	 * @return The number of timed out requests.
+	 */
+	public long getTimedOutCount() {
+		return timedOut.get();
+	}
+
+	/**
+	 * Gets the bulkheads created so far.
+	 * @return Map of API class names to their bulkheads.
+	 */
+	public static ConcurrentHashMap<String, Bulkhead> getBulkheads() {
+		return bulkheads;
+	}
+
+	/**
+	 * Gets a positive integer setting of a bulkhead from the system properties.
+	 * @param name Name of the bulkhead.
+	 * @param setting Name of the setting, e.g. "threads".
+	 * @param defaultValue Value to use if neither the bulkhead's nor the shared property is set.
+	 * @return The setting.
+	 */
+	private static int getIntProperty(String name, String setting, int defaultValue) {
+		String value = System.getProperty(PROPERTY_PREFIX + name + "." + setting,
+				System.getProperty(PROPERTY_PREFIX + setting));
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			if (intValue > 0) {
+				return intValue;
+			}
+		} catch (NumberFormatException e) {
+		}
+		logger.warn("Ignoring invalid bulkhead setting " + PROPERTY_PREFIX + name + "." + setting + "=" + value);
+		return defaultValue;
+	}
+
+	/**
+	 * Names the threads of a bulkhead (or of another pool) so they can be told apart in thread dumps.
+	 */
+	static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
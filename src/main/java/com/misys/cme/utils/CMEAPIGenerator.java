@@ -1,9 +1,15 @@
 package com.misys.cme.utils;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.PathParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
@@ -22,6 +28,39 @@ import com.misys.enums.ObjectAction;
  * Contains functions for generating CME API classes.
  */
 public class CMEAPIGenerator {
+	/**
+	 * Media type of newline delimited JSON.
+	 */
+	public static final String NDJSON = "application/x-ndjson";
+	
+	/**
+	 * Media types searches can be written as: JSON, or the export formats of ExportWriter.
+	 */
+	public static final String SEARCH_TYPES = MediaType.APPLICATION_JSON + ", " + NDJSON + ", text/csv";
+	
+	/**
+	 * Package of the generated API classes.
+	 */
+	private static final String API_PACKAGE = "com.misys.cme.api";
+	
+	/**
+	 * Source directory to write asynchronous API classes under, or null to generate blocking ones. See setAsync.
+	 */
+	private static Path asyncSourceDirectory = null;
+	
+	/**
+	 * Sets whether to generate asynchronous API classes.
+	 * Asynchronous methods take a @Suspended AsyncResponse and call AsyncCMEAPIUtils instead of CMEAPIUtils, which
+	 * executes the request on a Bulkhead and frees the container thread. This keeps slow requests to one class from
+	 * using up the threads that requests to the other classes need. They are void, since the Response is sent through
+	 * the AsyncResponse, so they are generated by AsyncApiClassGenerator instead of ApiClassGenerator.
+	 * @param sourceDirectory Source directory to write the asynchronous classes under, e.g. src\main\java of this
+	 * project; null to generate blocking classes with ApiClassGenerator.
+	 */
+	public static void setAsync(Path sourceDirectory) {
+		CMEAPIGenerator.asyncSourceDirectory = sourceDirectory;
+	}
+	
 	/**
 	 * Generates all CME API classes.
 	 * @warning This will overwrite files in src\main\java\com\misys\cme\api!
@@ -38,34 +77,42 @@ public class CMEAPIGenerator {
 				//|| def.getName().equals("EntityAddress")
 			) continue;
 			*/
-			ApiClassInfo classInfo = new ApiClassInfo();
-			classInfo.setPackageName("com.misys.cme.api");
-			classInfo.setClassName(name);
-			classInfo.setUrlPath("/" + def.getPath());
+			List<ApiMethodInfo> apiMethods = new ArrayList<ApiMethodInfo>();
 			
 			if (def.getViews(ObjectAction.SEARCH).size() > 0) {
 				ApiMethodInfo searchMethod = CMEAPIGenerator.generateSearch(name, def);
-				classInfo.addApiMethod(searchMethod);
+				apiMethods.add(searchMethod);
+				ApiMethodInfo countMethod = CMEAPIGenerator.generateCount(name, def, "count");
+				apiMethods.add(countMethod);
+				ApiMethodInfo existsMethod = CMEAPIGenerator.generateCount(name, def, "exists");
+				apiMethods.add(existsMethod);
 			}
 			if (def.getViews(ObjectAction.LOAD).size() > 0) {
 				ApiMethodInfo getMethod = CMEAPIGenerator.generateGet(name, def);
-				classInfo.addApiMethod(getMethod);
+				apiMethods.add(getMethod);
+				ApiMethodInfo multiGetMethod = CMEAPIGenerator.generateMultiGet(name, def);
+				apiMethods.add(multiGetMethod);
 			}
 			///*
 			if (def.getViews(ObjectAction.UPDATE).size() > 0) {
 				ApiMethodInfo updateMethod = CMEAPIGenerator.generateUpdate(name, def);
-				classInfo.addApiMethod(updateMethod);
+				apiMethods.add(updateMethod);
 			}
 			if (def.getViews(ObjectAction.CREATE).size() > 0) {
 				ApiMethodInfo insertMethod = CMEAPIGenerator.generateInsert(name, def);
-				classInfo.addApiMethod(insertMethod);
+				apiMethods.add(insertMethod);
 			}
 			if (def.getViews(ObjectAction.DELETE).size() > 0) {
 				ApiMethodInfo deleteMethod = CMEAPIGenerator.generateDelete(name, def);
-				classInfo.addApiMethod(deleteMethod);
+				apiMethods.add(deleteMethod);
+			}
+			if (def.getViews(ObjectAction.UPDATE).size() > 0 || def.getViews(ObjectAction.CREATE).size() > 0
+					|| def.getViews(ObjectAction.DELETE).size() > 0) {
+				ApiMethodInfo bulkMethod = CMEAPIGenerator.generateBulk(name, def);
+				apiMethods.add(bulkMethod);
 			}
 			//*/
-			ApiClassGenerator.generateClass(classInfo);
+			CMEAPIGenerator.generateClass(name, "/" + def.getPath(), apiMethods);
 			
 		}
 		
@@ -83,7 +130,7 @@ public class CMEAPIGenerator {
 		ApiMethodInfo searchMethod = new ApiMethodInfo();
 		searchMethod.setMethodName("search" + name);
 		searchMethod.setUrlPath("/");
-		searchMethod.setProducesType(MediaType.APPLICATION_JSON);
+		searchMethod.setProducesType(CMEAPIGenerator.SEARCH_TYPES);
 		searchMethod.setApiMethodType(ApiMethodType.GET);
 		searchMethod.setSuccessMessage("This was successful");
 		searchMethod.setErrorMessage("There was an error");
@@ -103,11 +150,50 @@ public class CMEAPIGenerator {
 		
 		controllerMethod.addParameter(uriInfo);
 		
-		searchMethod.setControllerMethod(controllerMethod);
+		CMEAPIGenerator.setControllerMethod(searchMethod, controllerMethod);
 		
 		return searchMethod;
 	}
 	
+	/**
+	 * Creates the ApiMethodInfo for a count endpoint (GET /_count) or an exists endpoint (GET /_exists) given the
+	 * CMEObject name. They take the same parameters as a search, but only write how many CMEObjects match or whether
+	 * any do. See CMEAPIUtils.count and CMEAPIUtils.exists.
+	 * @param name Name of the CMEObject that the API counts.
+	 * @param def This is not used.
+	 * @param methodName Name of the CMEAPIUtils function to call: "count" or "exists".
+	 * @return A new ApiMethodInfo.
+	 * TODO: Remove name from parameters and get name from def.
+	 */
+	private static ApiMethodInfo generateCount(String name, CMEObjectDef def, String methodName) {
+		ApiMethodInfo countMethod = new ApiMethodInfo();
+		countMethod.setMethodName(methodName + name);
+		countMethod.setUrlPath("/_" + methodName);
+		countMethod.setProducesType(MediaType.APPLICATION_JSON);
+		countMethod.setApiMethodType(ApiMethodType.GET);
+		countMethod.setSuccessMessage("This was successful");
+		countMethod.setErrorMessage("There was an error");
+		
+		ApiMethodParameterInfo uriInfo = ApiMethodParameterInfo.getUriInfoContextParameter();
+		countMethod.addApiMethodParameter(uriInfo);
+		
+		ControllerMethodInfo controllerMethod = new ControllerMethodInfo();
+		controllerMethod.setClazz(CMEAPIUtils.class);
+		controllerMethod.setMethodName(methodName);
+		
+		ApiMethodParameterInfo param1 = new ApiMethodParameterInfo();
+		param1.setType(String.class);
+		param1.setName(name);
+		param1.setLiteralValue(name);
+		controllerMethod.addParameter(param1);
+		
+		controllerMethod.addParameter(uriInfo);
+		
+		CMEAPIGenerator.setControllerMethod(countMethod, controllerMethod);
+		
+		return countMethod;
+	}
+	
 	/**
 	 * Creates the ApiMethodInfo for a GET endpoint (i.e. read endpoint) given the CMEObject name and definition.
 	 * @param name Name of the CMEObject that the API gets.
@@ -175,11 +261,54 @@ public class CMEAPIGenerator {
 		paramMap.setMapValues(testMap);
 		controllerMethod.addParameter(paramMap);
 
-		getMethod.setControllerMethod(controllerMethod);
+		CMEAPIGenerator.setControllerMethod(getMethod, controllerMethod);
 		
 		return getMethod;
 	}
 	
+	/**
+	 * Creates the ApiMethodInfo for a multi-get endpoint (POST /_mget) given the CMEObject name and definition.
+	 * The endpoint gets many CMEObjects by their keys in one request. See CMEAPIUtils.mget.
+	 * @param name Name of the CMEObject that the API gets.
+	 * @param def Definition of the CMEObject. This is not used.
+	 * @return A new ApiMethodInfo.
+	 * TODO: Remove name from parameters and get name from def.
+	 */
+	private static ApiMethodInfo generateMultiGet(String name, CMEObjectDef def) {
+		ApiMethodInfo multiGetMethod = new ApiMethodInfo();
+		multiGetMethod.setMethodName("mget" + name);
+		multiGetMethod.setUrlPath("/_mget");
+		multiGetMethod.setConsumesType(MediaType.APPLICATION_JSON);
+		multiGetMethod.setProducesType(MediaType.APPLICATION_JSON);
+		multiGetMethod.setApiMethodType(ApiMethodType.POST);
+		multiGetMethod.setSuccessMessage("This was successful");
+		multiGetMethod.setErrorMessage("There was an error");
+
+		ControllerMethodInfo controllerMethod = new ControllerMethodInfo();
+		controllerMethod.setClazz(CMEAPIUtils.class);
+		controllerMethod.setMethodName("mget");
+		
+		ApiMethodParameterInfo param1 = new ApiMethodParameterInfo();
+		param1.setType(String.class);
+		param1.setName(name);
+		param1.setLiteralValue(name);
+		controllerMethod.addParameter(param1);
+		
+		ApiMethodParameterInfo uriInfo = ApiMethodParameterInfo.getUriInfoContextParameter();
+		multiGetMethod.addApiMethodParameter(uriInfo);
+		controllerMethod.addParameter(uriInfo);
+		
+		ApiMethodParameterInfo param = new ApiMethodParameterInfo();
+		param.setType(JsonNode.class);
+		param.setName("ids");
+		multiGetMethod.addApiMethodParameter(param);
+		controllerMethod.addParameter(param);
+		
+		CMEAPIGenerator.setControllerMethod(multiGetMethod, controllerMethod);
+		
+		return multiGetMethod;
+	}
+	
 	/**
 	 * Creates the ApiMethodInfo for an update endpoint given the CMEObject name and definition.
 	 * @param name Name of the CMEObject that the API updates.
@@ -245,7 +374,7 @@ public class CMEAPIGenerator {
 		updateMethod.addApiMethodParameter(param);
 		controllerMethod.addParameter(param);
 		
-		updateMethod.setControllerMethod(controllerMethod);
+		CMEAPIGenerator.setControllerMethod(updateMethod, controllerMethod);
 		
 		return updateMethod;
 	}
@@ -287,7 +416,7 @@ public class CMEAPIGenerator {
 		insertMethod.addApiMethodParameter(param);
 		controllerMethod.addParameter(param);
 		
-		insertMethod.setControllerMethod(controllerMethod);
+		CMEAPIGenerator.setControllerMethod(insertMethod, controllerMethod);
 		
 		return insertMethod;
 	}
@@ -354,21 +483,82 @@ public class CMEAPIGenerator {
 		paramMap.setMapValues(testMap);
 		controllerMethod.addParameter(paramMap);
 
-		deleteMethod.setControllerMethod(controllerMethod);
+		CMEAPIGenerator.setControllerMethod(deleteMethod, controllerMethod);
 		
 		return deleteMethod;
 	}
 	
+	/**
+	 * Creates the ApiMethodInfo for a bulk endpoint (POST /_bulk) given the CMEObject name and definition.
+	 * The endpoint takes a JSON array or NDJSON of insert, update and delete operations. See BulkExecutor.
+	 * @param name Name of the CMEObject that the API inserts, updates and deletes.
+	 * @param def Definition of the CMEObject. This is not used.
+	 * @return A new ApiMethodInfo.
+	 * TODO: Remove name from parameters and get name from def.
+	 */
+	private static ApiMethodInfo generateBulk(String name, CMEObjectDef def) {
+		ApiMethodInfo bulkMethod = new ApiMethodInfo();
+		bulkMethod.setMethodName("bulk" + name);
+		bulkMethod.setUrlPath("/_bulk");
+		bulkMethod.setConsumesType(MediaType.APPLICATION_JSON + ", " + CMEAPIGenerator.NDJSON);
+		bulkMethod.setProducesType(MediaType.APPLICATION_JSON);
+		bulkMethod.setApiMethodType(ApiMethodType.POST);
+		bulkMethod.setSuccessMessage("This was successful");
+		bulkMethod.setErrorMessage("There was an error");
+
+		ControllerMethodInfo controllerMethod = new ControllerMethodInfo();
+		controllerMethod.setClazz(CMEAPIUtils.class);
+		controllerMethod.setMethodName("bulk");
+		
+		ApiMethodParameterInfo param1 = new ApiMethodParameterInfo();
+		param1.setType(String.class);
+		param1.setName(name);
+		param1.setLiteralValue(name);
+		controllerMethod.addParameter(param1);
+		
+		ApiMethodParameterInfo uriInfo = ApiMethodParameterInfo.getUriInfoContextParameter();
+		bulkMethod.addApiMethodParameter(uriInfo);
+		controllerMethod.addParameter(uriInfo);
+		
+		//The body is streamed, so large requests aren't read into memory all at once
+		ApiMethodParameterInfo param = new ApiMethodParameterInfo();
+		param.setType(InputStream.class);
+		param.setName("operations");
+		bulkMethod.addApiMethodParameter(param);
+		controllerMethod.addParameter(param);
+		
+		CMEAPIGenerator.setControllerMethod(bulkMethod, controllerMethod);
+		
+		return bulkMethod;
+	}
+	
+	/**
+	 * Sets the controller method of the given API method, making both asynchronous if setAsync was given a source
+	 * directory.
+	 * @param apiMethod[in,out] The API method.
+	 * @param controllerMethod[in,out] The controller method the API method calls. Its class must be CMEAPIUtils, which
+	 * AsyncCMEAPIUtils mirrors.
+	 */
+	private static void setControllerMethod(ApiMethodInfo apiMethod, ControllerMethodInfo controllerMethod) {
+		if (CMEAPIGenerator.asyncSourceDirectory != null) {
+			ApiMethodParameterInfo asyncResponse = new ApiMethodParameterInfo();
+			asyncResponse.setType(AsyncResponse.class);
+			asyncResponse.setName("asyncResponse");
+			asyncResponse.setAnnotationClass(Suspended.class);
+			apiMethod.addApiMethodParameter(asyncResponse);
+			controllerMethod.addParameter(asyncResponse);
+			controllerMethod.setClazz(AsyncCMEAPIUtils.class);
+		}
+		apiMethod.setControllerMethod(controllerMethod);
+	}
+	
 	/**
 	 * Generates the API for the /searches endpoint.
 	 * This creates Searches.java.
 	 * @note This is a one-off function for a non-standard API. If we get more than one, we need to look at refactoring.
 	 */
 	private static void generateSearchesAPI() {
-		ApiClassInfo classInfo = new ApiClassInfo();
-		classInfo.setPackageName("com.misys.cme.api");
-		classInfo.setClassName("Searches");
-		classInfo.setUrlPath("/searches/{collection}");
+		List<ApiMethodInfo> apiMethods = new ArrayList<ApiMethodInfo>();
 		
 		ApiMethodInfo getMethod = new ApiMethodInfo();
 		getMethod.setMethodName("searchViaGET");
@@ -377,7 +567,7 @@ public class CMEAPIGenerator {
 		getMethod.setProducesType(MediaType.APPLICATION_JSON);
 		getMethod.addApiMethodParameter(ApiMethodParameterInfo.getUriInfoContextParameter());
 		getMethod.addApiMethodParameter(ApiMethodParameterInfo.getPathParamParameter("collection"));
-		classInfo.addApiMethod(getMethod);
+		apiMethods.add(getMethod);
 
 		ApiMethodParameterInfo controllerMethodUriInfoParameter = new ApiMethodParameterInfo();
 		controllerMethodUriInfoParameter.setType(UriInfo.class);
@@ -407,13 +597,36 @@ public class CMEAPIGenerator {
 		postMethod.setUrlPath("/");
 		postMethod.setApiMethodType(ApiMethodType.POST);
 		postMethod.setConsumesType(MediaType.APPLICATION_JSON);
-		postMethod.setProducesType(MediaType.APPLICATION_JSON);
+		postMethod.setProducesType(CMEAPIGenerator.SEARCH_TYPES);
 		postMethod.addApiMethodParameter(ApiMethodParameterInfo.getUriInfoContextParameter());
 		postMethod.addApiMethodParameter(ApiMethodParameterInfo.getPathParamParameter("collection"));
 		postMethod.addApiMethodParameter(filterJSONParameter);
-		postMethod.setControllerMethod(controllerMethodInfo);
-		classInfo.addApiMethod(postMethod);
+		CMEAPIGenerator.setControllerMethod(postMethod, controllerMethodInfo);
+		apiMethods.add(postMethod);
 		
+		CMEAPIGenerator.generateClass("Searches", "/searches/{collection}", apiMethods);
+	}
+	
+	/**
+	 * Generates an API class with ApiClassGenerator, or with AsyncApiClassGenerator if setAsync was given a source
+	 * directory.
+	 * @param className Name of the API class.
+	 * @param urlPath URL path of the API class.
+	 * @param apiMethods Methods of the API class.
+	 */
+	private static void generateClass(String className, String urlPath, List<ApiMethodInfo> apiMethods) {
+		if (CMEAPIGenerator.asyncSourceDirectory != null) {
+			AsyncApiClassGenerator.generateClass(CMEAPIGenerator.asyncSourceDirectory, CMEAPIGenerator.API_PACKAGE,
+					className, urlPath, apiMethods);
+			return;
+		}
+		ApiClassInfo classInfo = new ApiClassInfo();
+		classInfo.setPackageName(CMEAPIGenerator.API_PACKAGE);
+		classInfo.setClassName(className);
+		classInfo.setUrlPath(urlPath);
+		for (ApiMethodInfo apiMethod : apiMethods) {
+			classInfo.addApiMethod(apiMethod);
+		}
 		ApiClassGenerator.generateClass(classInfo);
 	}
-}
+}
\ No newline at end of file
@@ -1,38 +1,46 @@
 package com.misys.cme.utils;
 
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.misys.api.utilities.UriInfoUtil;
+import com.misys.cme.backend.BackendRegistry;
+import com.misys.cme.search.filter.AndCombinator;
+import com.misys.cme.search.filter.ConditionalOperatorFactory;
+import com.misys.cme.search.filter.EqualityValue;
+import com.misys.cme.search.filter.EqualsOperator;
 import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.FilterOptimizer;
+import com.misys.cme.search.filter.FilterPlanCache;
+import com.misys.cme.search.filter.InOperator;
+import com.misys.cme.search.filter.Selector;
 import com.misys.cmeobject.CMEObject;
 import com.misys.cmeobject.CMEObjectController;
 import com.misys.definitions.CMEChildRelKeysDef;
 import com.misys.definitions.CMEObjectChildDef;
 import com.misys.definitions.CMEObjectColumnDef;
 import com.misys.definitions.CMEObjectDef;
-import com.misys.enums.CMEObjectType;
 
 /**
- * Contains various static utility functions for interfacing between HTTP request handlers and CMEObjectController
- * functions.
+ * Contains various static utility functions for interfacing between HTTP request handlers and the
+ * CMEObjectBackend.
  */
 public class CMEAPIUtils {
 	private static Logger logger = LogManager.getLogger(CMEAPIUtils.class);
@@ -42,6 +50,31 @@ public class CMEAPIUtils {
 	 */
 	private static Map<String, Class<?>> classMap = new HashMap<String, Class<?>>();
 	
+	/**
+	 * Precompiled href URL templates for the classes in classMap.
+	 */
+	private static HrefTemplateRegistry hrefTemplates;
+	
+	/**
+	 * Cache of GET responses for the lookup types in classMap.
+	 */
+	private static LookupCache lookupCache;
+	
+	/**
+	 * Cache of CMEObjects read by their key.
+	 */
+	private static EntityCache entityCache;
+	
+	/**
+	 * Query parameter (and multi-get body field) holding the keys of the CMEObjects to get.
+	 */
+	private static final String IDS_PARAMETER = "ids";
+	
+	/**
+	 * Maximum number of keys in one multi-get.
+	 */
+	private static final int MAX_IDS = 10000;
+	
 	static {
 		for (String cmeObjectName : CMEObjectDef.getCMEObjectDefs().keySet()) {
 			try {
@@ -50,20 +83,56 @@ public class CMEAPIUtils {
 				e.printStackTrace();
 			}
 		}
+		CMEAPIUtils.hrefTemplates = new HrefTemplateRegistry(CMEAPIUtils.classMap);
+		CMEAPIUtils.lookupCache = new LookupCache(CMEAPIUtils.classMap);
+		CMEAPIUtils.entityCache = new EntityCache();
+	}
+	
+	/**
+	 * Gets the cache of GET responses for lookup types.
+	 * @return The LookupCache.
+	 */
+	public static LookupCache getLookupCache() {
+		return CMEAPIUtils.lookupCache;
+	}
+	
+	/**
+	 * Gets the cache of CMEObjects read by their key.
+	 * @return The EntityCache.
+	 */
+	public static EntityCache getEntityCache() {
+		return CMEAPIUtils.entityCache;
 	}
 	
 	/**
 	 * Performs a search for CMEObjects of the given type (name) with the given UriInfo.
 	 * @param name Name of the CMEObject to search for.
 	 * @param uriInfo UriInfo used to request the search. This will contain the search parameters.
-	 * @return JSON ArrayNode containing the search results.
+	 * @return StreamingOutput that writes the search results as a JSON array, or as rows of NDJSON or CSV if the client
+	 * accepts one of those (see ExportWriter).
+	 * @note Unpaged searches of lookup types are answered from the LookupCache.
 	 */
-	public static ArrayNode search(String name, UriInfo uriInfo) {
+	public static StreamingOutput search(String name, UriInfo uriInfo) {
+		RequestTimer.start();
+		MultivaluedMap<String, String> rawParams = uriInfo.getQueryParameters();
+		if (CMEAPIUtils.lookupCache.isCacheable(name)
+				&& !rawParams.containsKey(KeysetCursor.LIMIT_PARAMETER) && !rawParams.containsKey(KeysetCursor.CURSOR_PARAMETER)) {
+			return CMEAPIUtils.lookupCache.get(name, uriInfo.getRequestUri().toASCIIString(),
+					() -> CMEAPIUtils.searchUncached(name, uriInfo));
+		}
+		return CMEAPIUtils.searchUncached(name, uriInfo);
+	}
+	
+	/**
+	 * Performs a search for CMEObjects of the given type (name) with the given UriInfo, without using the LookupCache.
+	 * @param name Name of the CMEObject to search for.
+	 * @param uriInfo UriInfo used to request the search. This will contain the search parameters.
+	 * @return CMEObjectStreamingOutput that writes the search results as a JSON array.
+	 */
+	private static CMEObjectStreamingOutput searchUncached(String name, UriInfo uriInfo) {
 		Map<String, Object> queryParams = 
 				UriInfoUtil.normalizeMultivaluedMap(uriInfo.getQueryParameters());
 		
-		ArrayNode array = new ObjectMapper().createArrayNode();
-		
 		//Get viewname if applicable
 		String viewName = (String) queryParams.get("viewname");
 		
@@ -71,17 +140,187 @@ public class CMEAPIUtils {
 		List<String> columns = CMEAPIUtils.getVisibleColumns(uriInfo);
 		queryParams.remove("columns");
 		
+		//Get paging options
+		Integer limit = KeysetCursor.parseLimit(queryParams.remove(KeysetCursor.LIMIT_PARAMETER));
+		Object cursor = queryParams.remove(KeysetCursor.CURSOR_PARAMETER);
+		if (limit != null) {
+			CMEAPIUtils.addKeyColumns(name, columns);
+		}
+		
 		String baseUrl = uriInfo.getBaseUri().toASCIIString();
 		
-		//Loop through the CMEObjects and add
-		List<CMEObject> cmeObjects = CMEObjectController.search(name, viewName, columns, queryParams);
-		for (CMEObject cmeObject : cmeObjects) {
-			ObjectNode node = new ObjectMapper().valueToTree(cmeObject);
-			String url = CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl);
-			node.put("href", url);
-			array.add(node);
+		//Get the CMEObjects with the given keys, in the order they were given
+		List<String> ids = uriInfo.getQueryParameters().get(CMEAPIUtils.IDS_PARAMETER);
+		if (ids != null) {
+			String references = (String) queryParams.get("references");
+			Integer expandDepth = ChildExpander.parseExpandDepth(queryParams.get(ChildExpander.EXPAND_DEPTH_PARAMETER));
+			ExpansionPaths expand = ExpansionPaths.parse(name, references,
+					uriInfo.getQueryParameters().get(ExpansionPaths.EXPAND_PARAMETER));
+			return CMEAPIUtils.multiGet(name, CMEAPIUtils.parseIds(name, ids), columns, references, expandDepth, expand, baseUrl);
+		}
+		
+		List<CMEObject> cmeObjects;
+		if (cursor != null || limit != null) {
+			//The backend finds the page itself, in key order
+			Filter filter = CMEAPIUtils.createFilterFromParams(name, queryParams);
+			if (cursor != null) {
+				Filter afterFilter = KeysetCursor.createAfterFilter(name, cursor.toString());
+				filter = filter == null ? afterFilter : new Filter(new AndCombinator(Arrays.asList(filter, afterFilter)));
+			}
+			cmeObjects = CMEAPIUtils.search(name, viewName, columns, filter, null, limit);
+		} else {
+			long start = System.nanoTime();
+			cmeObjects = BackendRegistry.getBackend().search(name, viewName, columns, queryParams);
+			RequestTimer.record(RequestTimer.DB, start);
+		}
+		
+		Metrics.recordRows(name, cmeObjects.size());
+		
+		//The CMEObjects are converted to JSON as they are written to the response
+		CMEObjectStreamingOutput output = new CMEObjectStreamingOutput(cmeObjects, baseUrl, null);
+		output.setColumns(name, columns);
+		if (limit != null && cmeObjects.size() == limit) {
+			output.setNextCursor(KeysetCursor.create(cmeObjects.get(cmeObjects.size() - 1)));
+		}
+		output.prepare();
+		return output;
+	}
+	
+	/**
+	 * Searches for the first CMEObjects of the given type with the given Filter in the given order, simplifying the
+	 * Filter first. The order and limit are passed to the backend, which decides how to find the top results: see
+	 * CMEObjectBackend.search.
+	 * A Filter that can't match anything returns no results without searching.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param viewName Name of the view to search, or null.
+	 * @param columns List of column names to return.
+	 * @param filter Filter to search with, or null to search for every CMEObject of the type.
+	 * @param sort Order of the results, or null for key order if there is a limit and any order otherwise.
+	 * @param limit Maximum number of CMEObjects to return, or null to return all of them.
+	 * @return List of the CMEObjects found.
+	 */
+	private static List<CMEObject> search(String name, String viewName, List<String> columns, Filter filter,
+			SortOrder sort, Integer limit) {
+		Filter searchFilter = null;
+		if (filter != null) {
+			FilterOptimizer optimizer = new FilterOptimizer(filter);
+			if (optimizer.matchesNothing()) {
+				logger.debug("Skipping search of " + name + ", since its filter can't match anything: " + filter);
+				return new ArrayList<>();
+			}
+			searchFilter = optimizer.getFilter();
+		}
+		long start = System.nanoTime();
+		List<CMEObject> cmeObjects;
+		if (sort != null || limit != null) {
+			cmeObjects = BackendRegistry.getBackend().search(name, viewName, columns, searchFilter, sort, limit);
+		} else if (searchFilter == null) {
+			cmeObjects = BackendRegistry.getBackend().search(name, viewName, columns, new HashMap<String, Object>());
+		} else {
+			cmeObjects = BackendRegistry.getBackend().search(name, viewName, columns, searchFilter);
+		}
+		RequestTimer.record(RequestTimer.DB, start);
+		return cmeObjects;
+	}
+	
+	/**
+	 * Counts the CMEObjects of the given type (name) that match the search parameters of the given UriInfo, without
+	 * reading or writing the CMEObjects themselves.
+	 * @param name Name of the CMEObject to count.
+	 * @param uriInfo UriInfo used to request the count. Its parameters are the same as a search's, but paging and
+	 * columns are ignored.
+	 * @return JSON object with the number of CMEObjects found in its "count" field.
+	 */
+	public static ObjectNode count(String name, UriInfo uriInfo) {
+		RequestTimer.start();
+		Map<String, Object> queryParams = UriInfoUtil.normalizeMultivaluedMap(uriInfo.getQueryParameters());
+		String viewName = (String) queryParams.get("viewname");
+		Filter filter = CMEAPIUtils.createFilterFromParams(name, queryParams);
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("count", CMEAPIUtils.count(name, viewName, filter, false));
+		return result;
+	}
+	
+	/**
+	 * Checks whether any CMEObject of the given type (name) matches the search parameters of the given UriInfo,
+	 * stopping at the first match if the backend can.
+	 * @param name Name of the CMEObject to search for.
+	 * @param uriInfo UriInfo used to request the check. Its parameters are the same as a search's, but paging and
+	 * columns are ignored.
+	 * @return JSON object with true in its "exists" field if a CMEObject was found; false otherwise.
+	 */
+	public static ObjectNode exists(String name, UriInfo uriInfo) {
+		RequestTimer.start();
+		Map<String, Object> queryParams = UriInfoUtil.normalizeMultivaluedMap(uriInfo.getQueryParameters());
+		String viewName = (String) queryParams.get("viewname");
+		Filter filter = CMEAPIUtils.createFilterFromParams(name, queryParams);
+		ObjectNode result = JsonNodeFactory.instance.objectNode();
+		result.put("exists", CMEAPIUtils.count(name, viewName, filter, true) > 0);
+		return result;
+	}
+	
+	/**
+	 * Counts the CMEObjects of the given type that match the given Filter, simplifying the Filter first.
+	 * A Filter that can't match anything counts nothing without searching.
+	 * @param name Name of the CMEObject type to count.
+	 * @param viewName Name of the view to search, or null.
+	 * @param filter Filter to search with. If null, every CMEObject of the type is counted.
+	 * @param stopAtFirst true to only check whether any CMEObject matches, so the count is 0 or 1.
+	 * @return Number of CMEObjects found.
+	 */
+	private static int count(String name, String viewName, Filter filter, boolean stopAtFirst) {
+		if (filter != null) {
+			FilterOptimizer optimizer = new FilterOptimizer(filter);
+			if (optimizer.matchesNothing()) {
+				logger.debug("Skipping count of " + name + ", since its filter can't match anything: " + filter);
+				return 0;
+			}
+			filter = optimizer.getFilter();
+		}
+		long start = System.nanoTime();
+		int count;
+		if (stopAtFirst) {
+			count = BackendRegistry.getBackend().exists(name, viewName, filter) ? 1 : 0;
+		} else {
+			count = BackendRegistry.getBackend().count(name, viewName, filter);
 		}
-		return array;		
+		RequestTimer.record(RequestTimer.DB, start);
+		return count;
+	}
+	
+	/**
+	 * Groups the CMEObjects of the given type that match the given Filter and aggregates each group, simplifying the
+	 * Filter first. A Filter that can't match anything aggregates nothing without searching.
+	 * @param name Name of the CMEObject type to aggregate.
+	 * @param viewName Name of the view to search, or null.
+	 * @param filter Filter to search with.
+	 * @param aggregation Group by columns and aggregates to compute.
+	 * @return The groups. See Aggregation.Accumulator.getResults.
+	 */
+	private static List<Map<String, Object>> aggregate(String name, String viewName, Filter filter, Aggregation aggregation) {
+		FilterOptimizer optimizer = new FilterOptimizer(filter);
+		if (optimizer.matchesNothing()) {
+			logger.debug("Skipping aggregation of " + name + ", since its filter can't match anything: " + filter);
+			return aggregation.createAccumulator().getResults();
+		}
+		long start = System.nanoTime();
+		List<Map<String, Object>> groups = BackendRegistry.getBackend().aggregate(name, viewName, optimizer.getFilter(), aggregation);
+		RequestTimer.record(RequestTimer.DB, start);
+		return groups;
+	}
+	
+	/**
+	 * Creates a StreamingOutput that writes the given wrapper object alone, for search responses without results to
+	 * stream.
+	 * @param wrapper JSON object to write.
+	 * @return A new StreamingOutput.
+	 */
+	private static StreamingOutput writeWrapper(ObjectNode wrapper) {
+		return (output) -> {
+			JsonGenerator generator = JsonCodec.createGenerator(output);
+			JsonCodec.getMapper().writeTree(generator, wrapper);
+			generator.flush();
+		};
 	}
 	
 	/**
@@ -90,9 +329,27 @@ public class CMEAPIUtils {
 	 * @param name Name of the CMEObject type to get.
 	 * @param uriInfo UriInfo used to request the GET. This contains configurations for the response.
 	 * @param params Parameters for the GET that were passed in the URL path.
+	 * @return JSON ObjectNode containing a representation of the CMEObject, or for lookup types, a CachedEntity
+	 * containing it.
+	 */
+	public static Object get(String name, UriInfo uriInfo, Map<String, Object> params) {
+		RequestTimer.start();
+		if (CMEAPIUtils.lookupCache.isCacheable(name)) {
+			return CMEAPIUtils.lookupCache.get(name, uriInfo.getRequestUri().toASCIIString(),
+					() -> CMEAPIUtils.getUncached(name, uriInfo, params));
+		}
+		return CMEAPIUtils.getUncached(name, uriInfo, params);
+	}
+	
+	/**
+	 * Performs a GET (i.e. read) for the JSON representation of a CMEObject of the given type using the given UriInfo
+	 * and URL path parameters, without using the LookupCache.
+	 * @param name Name of the CMEObject type to get.
+	 * @param uriInfo UriInfo used to request the GET. This contains configurations for the response.
+	 * @param params Parameters for the GET that were passed in the URL path.
 	 * @return JSON ObjectNode containing a representation of the CMEObject.
 	 */
-	public static ObjectNode get(String name, UriInfo uriInfo, Map<String, Object> params) {
+	private static ObjectNode getUncached(String name, UriInfo uriInfo, Map<String, Object> params) {
 		Map<String, Object> queryParams = 
 				UriInfoUtil.normalizeMultivaluedMap(uriInfo.getQueryParameters());
 		
@@ -101,18 +358,21 @@ public class CMEAPIUtils {
 		queryParams.remove("columns");
 		
 		String references = (String) queryParams.get("references");
+		Integer expandDepth = ChildExpander.parseExpandDepth(queryParams.get(ChildExpander.EXPAND_DEPTH_PARAMETER));
+		ExpansionPaths expand = ExpansionPaths.parse(name, references,
+				uriInfo.getQueryParameters().get(ExpansionPaths.EXPAND_PARAMETER));
 		
 		String baseUrl = uriInfo.getBaseUri().toASCIIString();
 		
 		/*
 		CMEObject cmeObject = CMEObjectController.get(name, columns, params, false);
-		ObjectNode node = new ObjectMapper().valueToTree(cmeObject);
+		ObjectNode node = JsonCodec.toTree(cmeObject);
 		
 		CMEAPIUtils.addChildren(references, uriInfo, node, cmeObject);
 		String url = CMEAPIUtils.getURLFromCMEObject(cmeObject, uriInfo);
 		node.put("href", url);
 		*/
-		return CMEAPIUtils.get(name, params, columns, references, baseUrl);
+		return CMEAPIUtils.get(name, params, columns, references, expandDepth, expand, baseUrl);
 	}
 	
 	/**
@@ -124,22 +384,195 @@ public class CMEAPIUtils {
 	 * @param columns List of column names to return in the output. If the List is empty or null, all columns are returned.
 	 * @param references Configuration for child objects in the output. "link" outputs them as links. "expand" outputs
 	 * them inline. "" or null doesn't output them.
+	 * @param expandDepth Number of levels of children to expand, or null for the most allowed. See ChildExpander.
+	 * @param expand Children to expand, or null to handle every child as references says. See ExpansionPaths.
 	 * @param baseUrl Base URL the client is using to interact with the API.
 	 * @return JSON ObjectNode containing a representation of the CMEObject.
 	 */
-	private static ObjectNode get(String name, Map<String, Object> params, List<String> columns, String references, String baseUrl) {
-		List<CMEObject> cmeObjects = CMEObjectController.search(name, null, columns, params);
-		if (cmeObjects != null && cmeObjects.size() > 0) {
-			CMEObject cmeObject = cmeObjects.get(0);
-			ObjectNode node = new ObjectMapper().valueToTree(cmeObject);
-			CMEAPIUtils.addChildren(references, baseUrl, node, cmeObject);
+	private static ObjectNode get(String name, Map<String, Object> params, List<String> columns, String references,
+			Integer expandDepth, ExpansionPaths expand, String baseUrl) {
+		long start = System.nanoTime();
+		CMEObject cmeObject;
+		if (CMEAPIUtils.entityCache.isCacheable(name, params)) {
+			cmeObject = CMEAPIUtils.entityCache.get(name, params, columns, () -> CMEAPIUtils.getFirst(name, null, params));
+		} else {
+			cmeObject = CMEAPIUtils.getFirst(name, columns, params);
+		}
+		RequestTimer.record(RequestTimer.DB, start);
+		if (cmeObject != null) {
+			start = System.nanoTime();
+			ObjectNode node = JsonCodec.toTree(cmeObject);
+			RequestTimer.record(RequestTimer.SERIALIZE, start);
+			CMEAPIUtils.addChildren(references, expandDepth, expand, baseUrl, node, cmeObject);
+			start = System.nanoTime();
 			String url = CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl);
+			RequestTimer.record(RequestTimer.HREF, start);
 			node.put("href", url);
 			return node;
 		}
 		return null;
 	}
 	
+	/**
+	 * Searches for a CMEObject of the given type with the given parameters.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param columns List of column names to return. If the List is empty or null, all columns are returned.
+	 * @param params Parameters of the search, usually the key columns.
+	 * @return The first CMEObject found, or null if there is none.
+	 */
+	private static CMEObject getFirst(String name, List<String> columns, Map<String, Object> params) {
+		List<CMEObject> cmeObjects = BackendRegistry.getBackend().search(name, null, columns, params);
+		if (cmeObjects != null && cmeObjects.size() > 0) {
+			return cmeObjects.get(0);
+		}
+		return null;
+	}
+	
+	/**
+	 * Gets many CMEObjects of the given type by their keys, as given in the body of a POST to /_mget:
+	 * {"ids": [...], "columns": [...], "references": "...", "expand": "..."}
+	 * Each id is a key value (for single column keys), an array of key values in key column order, or an object of key
+	 * column names to values. Composite keys like NAICSCode's naics_code/naics_div_id/naics_group_id need all values.
+	 * The same can be done with GET ?ids=1,2,3 on the collection, with composite key values separated by "/".
+	 * @param name Name of the CMEObject type to get.
+	 * @param uriInfo UriInfo used to request the multi-get.
+	 * @param body JSON body of the request.
+	 * @return StreamingOutput that writes a JSON array with the CMEObject (or a {"found": false, "key": {...}} marker) for
+	 * each id, in the order the ids were given.
+	 */
+	public static StreamingOutput mget(String name, UriInfo uriInfo, JsonNode body) {
+		RequestTimer.start();
+		JsonNode idsNode = body.get(CMEAPIUtils.IDS_PARAMETER);
+		if (idsNode == null || !idsNode.isArray()) {
+			throw new RuntimeException("Multi-get body must have an \"ids\" array!");
+		}
+		List<CMEObjectColumnDef> keyColumns = CMEObjectDef.getCmeObjDef(name).getKeyColumns();
+		List<Map<String, Object>> keys = new ArrayList<>(idsNode.size());
+		for (JsonNode idNode : idsNode) {
+			Map<String, Object> key = new HashMap<>();
+			for (int i = 0; i < keyColumns.size(); i++) {
+				CMEObjectColumnDef column = keyColumns.get(i);
+				JsonNode valueNode;
+				if (idNode.isObject()) {
+					valueNode = idNode.get(column.getColumnName());
+				} else if (idNode.isArray()) {
+					valueNode = idNode.size() == keyColumns.size() ? idNode.get(i) : null;
+				} else {
+					valueNode = keyColumns.size() == 1 ? idNode : null;
+				}
+				if (valueNode == null || !valueNode.isValueNode()) {
+					throw new RuntimeException("The id " + idNode + " doesn't have a value for every key column of " + name + "!");
+				}
+				key.put(column.getColumnName(), CMEAPIUtils.toKeyValue(column, valueNode.isNumber() ? valueNode.numberValue() : valueNode.isNull() ? null : valueNode.asText()));
+			}
+			keys.add(key);
+		}
+		List<String> columns = CMEAPIUtils.getVisibleColumns(body);
+		String references = body.has("references") ? body.get("references").asText() : null;
+		Integer expandDepth = ChildExpander.parseExpandDepth(
+				body.hasNonNull(ChildExpander.EXPAND_DEPTH_PARAMETER) ? body.get(ChildExpander.EXPAND_DEPTH_PARAMETER).asText() : null);
+		ExpansionPaths expand = ExpansionPaths.parse(name, references,
+				ExpansionPaths.getPaths(body.get(ExpansionPaths.EXPAND_PARAMETER)));
+		String baseUrl = uriInfo.getBaseUri().toASCIIString();
+		return CMEAPIUtils.multiGet(name, keys, columns, references, expandDepth, expand, baseUrl);
+	}
+	
+	/**
+	 * Gets many CMEObjects of the given type by their keys, with one search per chunk of keys (see KeyedSearch).
+	 * @param name Name of the CMEObject type to get.
+	 * @param keys Keys of the CMEObjects to get, as maps of key column name to value.
+	 * @param columns List of column names to return. If the List is empty, all columns are returned.
+	 * @param references Configuration for child objects in the output. See ChildExpander.
+	 * @param expandDepth Number of levels of children to expand, or null for the most allowed. See ChildExpander.
+	 * @param expand Children to expand, or null to handle every child as references says. See ExpansionPaths.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @return CMEObjectStreamingOutput that writes the CMEObject (or a not-found marker) for each key, in the order the
+	 * keys were given.
+	 */
+	private static CMEObjectStreamingOutput multiGet(String name, List<Map<String, Object>> keys, List<String> columns,
+			String references, Integer expandDepth, ExpansionPaths expand, String baseUrl) {
+		if (keys.size() > CMEAPIUtils.MAX_IDS) {
+			throw new RuntimeException("A multi-get can have at most " + CMEAPIUtils.MAX_IDS + " ids!");
+		}
+		CMEAPIUtils.addKeyColumns(name, columns);
+		List<String> keyColumnNames = new ArrayList<>();
+		for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+			keyColumnNames.add(column.getColumnName());
+		}
+		Map<List<Object>, List<CMEObject>> found = keys.isEmpty()
+				? Collections.emptyMap()
+				: KeyedSearch.search(name, columns, keyColumnNames, keys);
+
+		List<CMEObject> cmeObjects = new ArrayList<>(keys.size());
+		List<Map<String, Object>> missingKeys = new ArrayList<>(keys.size());
+		for (Map<String, Object> key : keys) {
+			List<CMEObject> matches = found.get(KeyedSearch.getKey(keyColumnNames, key));
+			cmeObjects.add(matches != null ? matches.get(0) : null);
+			missingKeys.add(matches != null ? null : key);
+		}
+		Metrics.recordRows(name, found.size());
+		CMEObjectStreamingOutput output = new CMEObjectStreamingOutput(cmeObjects, baseUrl, references);
+		output.setExpandDepth(expandDepth);
+		output.setExpansionPaths(expand);
+		output.setMissingKeys(missingKeys);
+		output.setColumns(name, columns);
+		output.prepare();
+		return output;
+	}
+	
+	/**
+	 * Parses the ids query parameter of a multi-get: comma separated ids, with the values of composite keys separated
+	 * by "/" in key column order, e.g. ?ids=5411/44/541,5412/44/541.
+	 * @param name Name of the CMEObject type to get.
+	 * @param ids Values of the ids query parameter.
+	 * @return The keys, as maps of key column name to value.
+	 */
+	private static List<Map<String, Object>> parseIds(String name, List<String> ids) {
+		List<CMEObjectColumnDef> keyColumns = CMEObjectDef.getCmeObjDef(name).getKeyColumns();
+		List<Map<String, Object>> keys = new ArrayList<>();
+		for (String idList : ids) {
+			for (String id : idList.split(",")) {
+				if (id.isEmpty()) {
+					continue;
+				}
+				String[] values = id.split("/", -1);
+				if (values.length != keyColumns.size()) {
+					throw new RuntimeException("Each id of " + name + " must have " + keyColumns.size() + " key value(s) separated by \"/\"!");
+				}
+				Map<String, Object> key = new HashMap<>();
+				for (int i = 0; i < values.length; i++) {
+					key.put(keyColumns.get(i).getColumnName(), CMEAPIUtils.toKeyValue(keyColumns.get(i), values[i]));
+				}
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+	
+	/**
+	 * Converts a key value given by the client to the Java type of the given column.
+	 * @param column Definition of the key column.
+	 * @param value The value as given by the client.
+	 * @return A Long for INTEGER columns, a BigDecimal for DECIMAL columns, or the value as given otherwise.
+	 */
+	private static Object toKeyValue(CMEObjectColumnDef column, Object value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			switch (column.getDataType()) {
+				case INTEGER:
+					return Long.valueOf(value.toString().trim());
+				case DECIMAL:
+					return new BigDecimal(value.toString().trim());
+				default:
+					return value;
+			}
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("\"" + value + "\" is not a valid value for " + column.getColumnName() + "!", e);
+		}
+	}
+	
 	/**
 	 * Updates a CMEObject of the given type using the given UriInfo and JSON representation.
 	 * @param name Name of the CMEObject type to update.
@@ -149,11 +582,14 @@ public class CMEAPIUtils {
 	 * TODO: Make this return an ObjectNode.
 	 */
 	public static CMEObject update(String name, UriInfo uriInfo, JsonNode json) {
+		RequestTimer.start();
 		try {
-			Map<String, Object> map = new ObjectMapper().convertValue(json.get("values"), new TypeReference<Map<String,Object>>(){});
-			CMEObject cmeObject = new CMEObject(json.get("type").asText());
-			cmeObject.setValues(map);
-			CMEObjectController.update(cmeObject);
+			CMEObject cmeObject = JsonCodec.toCMEObject(json);
+			long start = System.nanoTime();
+			BackendRegistry.getBackend().update(cmeObject);
+			RequestTimer.record(RequestTimer.DB, start);
+			CMEAPIUtils.lookupCache.invalidate(name);
+			CMEAPIUtils.entityCache.invalidate(name, cmeObject);
 			return null;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
@@ -168,19 +604,22 @@ public class CMEAPIUtils {
 	 * @return JSON ObjectNode containing a representation of the created CMEObject.
 	 */
 	public static ObjectNode insert(String name, UriInfo uriInfo, JsonNode json) {
+		RequestTimer.start();
 		try {
-			Map<String, Object> map = new ObjectMapper().convertValue(json.get("values"), new TypeReference<Map<String,Object>>(){});
-			CMEObject cmeObject = new CMEObject(json.get("type").asText());
-			cmeObject.setValues(map);
+			CMEObject cmeObject = JsonCodec.toCMEObject(json);
 			
-			cmeObject = CMEObjectController.insert(cmeObject);
+			long start = System.nanoTime();
+			cmeObject = BackendRegistry.getBackend().insert(cmeObject);
+			RequestTimer.record(RequestTimer.DB, start);
+			CMEAPIUtils.lookupCache.invalidate(name);
+			CMEAPIUtils.entityCache.invalidate(name, cmeObject);
 			
 			Map<String, Object> keyParams = new HashMap<String, Object>();
 			CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
 			for (CMEObjectColumnDef column : def.getKeyColumns()) {
 				keyParams.put(column.getColumnName(), cmeObject.getValue(column.getColumnName()));
 			}
-			ObjectNode node = new ObjectMapper().valueToTree(cmeObject);
+			ObjectNode node = JsonCodec.toTree(cmeObject);
 			String baseUrl = uriInfo.getBaseUri().toASCIIString();
 			String url = CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl);
 			node.put("href", url);
@@ -198,66 +637,45 @@ public class CMEAPIUtils {
 	 * TODO: Change return type to void or return something meaningful.
 	 */
 	public static Object delete(String name, Map<String, Object> params) {
-		CMEObjectController.delete(name, params);
+		RequestTimer.start();
+		long start = System.nanoTime();
+		BackendRegistry.getBackend().delete(name, params);
+		RequestTimer.record(RequestTimer.DB, start);
+		CMEAPIUtils.lookupCache.invalidate(name);
+		CMEAPIUtils.entityCache.invalidate(name, params);
 		return null;
 	}
 	
+	/**
+	 * Executes a stream of insert, update and delete operations on CMEObjects of the given type.
+	 * @param name Name of the CMEObject type the operations apply to.
+	 * @param uriInfo UriInfo used to request the operations. The batchSize query parameter sets how many operations are
+	 * read and executed at a time.
+	 * @param operations Stream containing a JSON array or NDJSON of operations. See BulkExecutor.
+	 * @return StreamingOutput that writes the status of every operation as a JSON object.
+	 */
+	public static StreamingOutput bulk(String name, UriInfo uriInfo, InputStream operations) {
+		RequestTimer.start();
+		int batchSize = BulkExecutor.parseBatchSize(uriInfo.getQueryParameters().getFirst(BulkExecutor.BATCH_SIZE_PARAMETER));
+		String baseUrl = uriInfo.getBaseUri().toASCIIString();
+		return new BulkExecutor(name, baseUrl, batchSize).execute(operations);
+	}
+	
 	/**
 	 * Adds child references to the given ObjectNode for the given references format, base URL, and CMEObject.
 	 * @param references Value of the references URL query parameter. This should either be "link", "expand", "", or null.
+	 * @param expandDepth Number of levels of children to expand, or null for the most allowed. See ChildExpander.
+	 * @param expand Children to expand, or null to handle every child as references says. See ExpansionPaths.
 	 * @param baseUrl Base URL the client is using to interact with the API.
 	 * @param node[in,out] JSON Object to add child references to.
 	 * @param cmeObject CMEObject that we are generating the JSON for.
-	 * TODO: Refactor this into 3 functions: addChildren, addChildrenAsLinks, and addChildrenAsExpanded.
-	 */
-	private static void addChildren(String references, String baseUrl, ObjectNode node, CMEObject cmeObject) {
-		if (isValidReferencesOption(references)) {
-			CMEObjectDef def = CMEObjectDef.getCmeObjDef(cmeObject.getType());
-			for (CMEObjectChildDef child : def.getChildDefs()) {
-				CMEObjectType childType = child.getType();
-				String childName = child.getChildName();
-				String refColName = child.getRefColName();
-				Map<String, Object> childParams = CMEAPIUtils.getChildParams(child, cmeObject);
-				if (childParams.size() > 0) {
-					ObjectNode values = (ObjectNode) node.get("values");
-					if (references.equals("link")) {
-						String url = CMEAPIUtils.getURLFromTypeParams(childName, baseUrl, childParams);
-						logger.trace(refColName + ": " + url);
-						values.put(refColName, url);
-					} else if (references.equals("expand")) {
-						if (childType.equals(CMEObjectType.SINGLE)) {
-							logger.trace(childName + ", " + childParams);
-							ObjectNode childNode = CMEAPIUtils.get(childName, childParams, null, null, baseUrl);
-							if (childNode != null) {
-								Map<String, Object> map = new ObjectMapper().convertValue(childNode.get("values"), new TypeReference<Map<String,Object>>(){});
-								CMEObject childObject = new CMEObject(childNode.get("type").asText());
-								childObject.setValues(map);
-								CMEAPIUtils.addChildren(references, baseUrl, childNode, childObject);
-								if (child.isHideParent()) {
-									node.removeAll();
-									node.setAll(childNode);
-								} else {
-									values.set(refColName, childNode);
-								}
-							}
-						} else if (childType.equals(CMEObjectType.GROUP)) {
-							ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
-							
-							List<CMEObject> childObjects = CMEObjectController.search(childName, null, null, childParams);
-							for (CMEObject childObject : childObjects) {
-								ObjectNode childObjectNode = new ObjectMapper().valueToTree(childObject);
-								String url = CMEAPIUtils.getURLFromCMEObject(childObject, baseUrl);
-								childObjectNode.put("href", url);
-								CMEAPIUtils.addChildren(references, baseUrl, childObjectNode, childObject);
-								arrayNode.add(childObjectNode);
-							}
-							
-							values.set(refColName, arrayNode);
-						}
-					}
-				}
-			}
-		}
+	 * @note Use ChildExpander directly to add the child references of many CMEObjects with one search per child type.
+	 */
+	static void addChildren(String references, Integer expandDepth, ExpansionPaths expand, String baseUrl, ObjectNode node,
+			CMEObject cmeObject) {
+		long start = System.nanoTime();
+		new ChildExpander(references, baseUrl, expandDepth, expand).addChildren(Collections.singletonList(node), Collections.singletonList(cmeObject));
+		RequestTimer.record(RequestTimer.EXPAND, start);
 	}
 	
 	/**
@@ -265,7 +683,7 @@ public class CMEAPIUtils {
 	 * @param references String to check.
 	 * @return true if the String has a valid value; false otherwise.
 	 */
-	private static boolean isValidReferencesOption(String references) {
+	static boolean isValidReferencesOption(String references) {
 		if (
 			references != null &&
 			references.length() > 0 && (
@@ -285,7 +703,7 @@ public class CMEAPIUtils {
 	 * @param cmeObject CMEObject to get the values for the keys from.
 	 * @return Map parameters and their values for looking up the CMEObject child.
 	 */
-	private static Map<String, Object> getChildParams(CMEObjectChildDef child, CMEObject cmeObject) {
+	static Map<String, Object> getChildParams(CMEObjectChildDef child, CMEObject cmeObject) {
 		Map<String, Object> childParams = new HashMap<String, Object>();
 		for (CMEChildRelKeysDef key : child.getKeys()) {
 			String childColumnName = key.getColumnName();
@@ -306,22 +724,8 @@ public class CMEAPIUtils {
 	 * @param baseUrl Base URL the client is using to interact with the API.
 	 * @return The URL as a String.
 	 */
-	private static String getURLFromCMEObject(CMEObject cmeObject, String baseUrl) {
-		String name = cmeObject.getType();
-		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
-		
-		UriBuilder uriBuilder = UriBuilder.fromResource(CMEAPIUtils.classMap.get(name));
-		addMethodPathToUriBuilder(uriBuilder, name, "get" + name);
-		
-		for (CMEObjectColumnDef column : def.getKeyColumns()) {
-			String columnName = column.getColumnName();
-			uriBuilder.resolveTemplate(columnName, cmeObject.getValue(columnName));
-		}
-		String url = uriBuilder.build().toASCIIString();
-		if (url.charAt(0) == '/') {
-			url = url.substring(1, url.length());
-		}
-		return baseUrl + url;
+	static String getURLFromCMEObject(CMEObject cmeObject, String baseUrl) {
+		return CMEAPIUtils.hrefTemplates.getURLFromCMEObject(cmeObject, baseUrl);
 	}
 	
 	/**
@@ -331,56 +735,78 @@ public class CMEAPIUtils {
 	 * @param params Parsed parameters from the query params?
 	 * @return The URL as a String.
 	 */
-	private static String getURLFromTypeParams(String name, String baseURL, Map<String, Object> params) {
-		UriBuilder uriBuilder =  UriBuilder.fromResource(CMEAPIUtils.classMap.get(name));
-		CMEObjectDef objectDefinition = CMEObjectDef.getCmeObjDef(name);
-		if (objectDefinition.containsAllKeyColumns(params.keySet())) {
-			addMethodPathToUriBuilder(uriBuilder, name, "get" + name);
-			uriBuilder.resolveTemplates(params);
-		} else {
-			addMethodPathToUriBuilder(uriBuilder, name, "search" + name);
-			for (Map.Entry<String, Object> entry : params.entrySet()) {
-				uriBuilder.queryParam(entry.getKey(), entry.getValue());
+	static String getURLFromTypeParams(String name, String baseURL, Map<String, Object> params) {
+		return CMEAPIUtils.hrefTemplates.getURLFromTypeParams(name, baseURL, params);
+	}
+	
+	/**
+	 * Adds the key columns of the given CMEObject type to the given List of visible columns, unless the List is empty
+	 * (i.e. all columns are visible). Paging needs the key columns to order the results and create the cursor.
+	 * @param name Name of the CMEObject type.
+	 * @param columns[in,out] List of visible column names.
+	 */
+	private static void addKeyColumns(String name, List<String> columns) {
+		if (!columns.isEmpty()) {
+			for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+				if (!columns.contains(column.getColumnName())) {
+					columns.add(column.getColumnName());
+				}
 			}
 		}
-		
-		String url = uriBuilder.build().toASCIIString();
-
-		if (url.charAt(0) == '/') {
-			url = url.substring(1, url.length());
-		}
-		
-		return baseURL + url;
 	}
 	
 	/**
-	 * Adds the path, if any, from the method for the given CMEObject type with the given name to the given UriBuilder.
-	 * @param uriBuilder UriBuilder to add the path to.
-	 * @param cmeObjectType CMEObject type the method is for.
-	 * @param methodName The name of the method to get the path from.
+	 * Creates a Filter equivalent to searching with the given query params, i.e. each param that names a column of
+	 * the CMEObject type must equal (or, if it was given more than once, be in) the param's value(s).
+	 * @param name Name of the CMEObject type.
+	 * @param queryParams Normalized query params.
+	 * @return A new Filter, or null if none of the query params name a column.
 	 */
-	private static void addMethodPathToUriBuilder(UriBuilder uriBuilder, String cmeObjectType, String methodName) {
-		Method method = getFirstMethodWithName(CMEAPIUtils.classMap.get(cmeObjectType), methodName);
-		if (method.isAnnotationPresent(javax.ws.rs.Path.class)) {
-			uriBuilder.path(CMEAPIUtils.classMap.get(cmeObjectType), methodName);
+	@SuppressWarnings("unchecked")
+	public static Filter createFilterFromParams(String name, Map<String, Object> queryParams) {
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		List<Filter> filters = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
+			CMEObjectColumnDef column = def.getColumnByName(entry.getKey());
+			if (column == null) {
+				continue;
+			}
+			if (entry.getValue() instanceof List) {
+				List<EqualityValue> values = new ArrayList<>();
+				for (Object value : (List<Object>) entry.getValue()) {
+					values.add(CMEAPIUtils.createEqualityValue(column, value));
+				}
+				filters.add(new Filter(new Selector(entry.getKey(), new InOperator(values))));
+			} else {
+				EqualityValue value = CMEAPIUtils.createEqualityValue(column, entry.getValue());
+				filters.add(new Filter(new Selector(entry.getKey(), new EqualsOperator(value))));
+			}
+		}
+		if (filters.isEmpty()) {
+			return null;
+		} else if (filters.size() == 1) {
+			return filters.get(0);
 		}
+		return new Filter(new AndCombinator(filters));
 	}
 	
 	/**
-	 * Gets the first Method with the given name from the given Class.
-	 * @param clazz Class to get the Method from.
-	 * @param methodName Name of the Method to get.
-	 * @return The first Method found with the given name.
+	 * Creates an EqualityValue from the given query param value for the given column.
+	 * @param column Definition of the column the value is for.
+	 * @param value Query param value.
+	 * @return A new EqualityValue of the column's data type.
 	 */
-	private static Method getFirstMethodWithName(Class<?> clazz, String methodName) {
-		List<Method> matchingMethods = Arrays.asList(clazz.getDeclaredMethods())
-			.stream()
-			.filter(method -> method.getName().equals(methodName))
-			.collect(Collectors.toList());
-		if (matchingMethods.size() != 0) {
-			return matchingMethods.get(0);
-		} else {
-			throw new RuntimeException("Class \"" + clazz.toString() + "\" has no method \"" + methodName + "\"!");
+	private static EqualityValue createEqualityValue(CMEObjectColumnDef column, Object value) {
+		if (value == null) {
+			return new EqualityValue();
+		}
+		switch (column.getDataType()) {
+			case INTEGER:
+				return new EqualityValue(Long.valueOf(value.toString().trim()));
+			case DECIMAL:
+				return new EqualityValue(new BigDecimal(value.toString().trim()));
+			default:
+				return ConditionalOperatorFactory.createEqualityValueFromObject(value);
 		}
 	}
 	
@@ -417,53 +843,129 @@ public class CMEAPIUtils {
 	/**
 	 * Searches the given collection with the given filter (as JSON).
 	 * @param collection Collection name to search.
-	 * @param filterJSON Filter to use for the search, as JSON.
-	 * @return The results of the search as a JSON object.
+	 * @param filterJSON Filter to use for the search, as JSON. If it has "timing": true, the time spent in each phase of
+	 * the request is written in a "_timing" field after the results. If it has "count": true, only the number of
+	 * matching CMEObjects is written, in a "count" field; if it has "exists": true, only whether there are any, in an
+	 * "exists" field; if it has "$group", the groups and their aggregates, in a "results" field (see Aggregation).
+	 * Its "sort" array orders the results (see SortOrder); with a "limit", only the top results are returned, and
+	 * there is no next cursor. Its "expandDepth" limits how many levels of children "references": "expand" expands, and
+	 * its "expand" paths (e.g. ["addresses", "obligorNumbers.state"]) choose which children are expanded (see
+	 * ExpansionPaths).
+	 * @return StreamingOutput that writes the results of the search as a JSON object, or as rows of NDJSON or CSV if
+	 * the client accepts one of those (see ExportWriter).
 	 */
-	public static ObjectNode searchViaPOST( UriInfo uriInfo, String collection, JsonNode filterJSON) {
+	public static StreamingOutput searchViaPOST( UriInfo uriInfo, String collection, JsonNode filterJSON) {
+		RequestTimer.start();
 		String name = CMEObjectController.getObjectNameForPath(collection);
 		if (name == null) {
 			return null;
 		}
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode wrapper = mapper.createObjectNode();
+		ObjectNode wrapper = JsonNodeFactory.instance.objectNode();
 		String viewName = null;
-		final String references;
+		String references;
 		if (filterJSON.has("references")) {
 			references = filterJSON.get("references").asText();
 		} else {
 			references = "";
 		}
 		wrapper.put("references", references);
+		Integer expandDepth = null;
+		if (filterJSON.hasNonNull(ChildExpander.EXPAND_DEPTH_PARAMETER)) {
+			expandDepth = ChildExpander.parseExpandDepth(filterJSON.get(ChildExpander.EXPAND_DEPTH_PARAMETER).asText());
+			wrapper.put(ChildExpander.EXPAND_DEPTH_PARAMETER, expandDepth);
+		}
+		ExpansionPaths expand = ExpansionPaths.parse(name, references,
+				ExpansionPaths.getPaths(filterJSON.get(ExpansionPaths.EXPAND_PARAMETER)));
+		if (expand != null) {
+			wrapper.put(ExpansionPaths.EXPAND_PARAMETER, expand.toString());
+		}
 		String baseUrl = uriInfo.getBaseUri().toASCIIString();
 		if (filterJSON.isObject()) {
 			JsonNode filterNode = filterJSON.get("filter");
 			wrapper.set("filter", filterNode);
 			if (filterNode != null && filterNode.isObject()) {
-				Filter filter = new Filter((ObjectNode)filterNode);
+				Filter filter = FilterPlanCache.getFilter((ObjectNode)filterNode, CMEObjectDef.getCmeObjDef(name));
 				List<String> columns = getVisibleColumns(filterJSON);
 				if (filterJSON.has("viewName")) {
 					viewName = filterJSON.get("viewName").asText();
 					wrapper.put("viewName", viewName);
 				}
+				
+				//Get paging options
+				Integer limit = null;
+				if (filterJSON.hasNonNull(KeysetCursor.LIMIT_PARAMETER)) {
+					limit = KeysetCursor.parseLimit(filterJSON.get(KeysetCursor.LIMIT_PARAMETER).asText());
+					wrapper.put(KeysetCursor.LIMIT_PARAMETER, limit);
+					CMEAPIUtils.addKeyColumns(name, columns);
+				}
+				
+				//Get the sort order, whose columns are needed to sort
+				SortOrder sort = null;
+				if (filterJSON.hasNonNull(SortOrder.SORT_PARAMETER)) {
+					sort = new SortOrder(name, filterJSON.get(SortOrder.SORT_PARAMETER));
+					wrapper.set(SortOrder.SORT_PARAMETER, filterJSON.get(SortOrder.SORT_PARAMETER));
+					if (!columns.isEmpty()) {
+						for (String columnName : sort.getColumnNames()) {
+							if (!columns.contains(columnName)) {
+								columns.add(columnName);
+							}
+						}
+					}
+				}
+				if (filterJSON.hasNonNull(KeysetCursor.CURSOR_PARAMETER)) {
+					if (sort != null) {
+						throw new RuntimeException("\"" + KeysetCursor.CURSOR_PARAMETER + "\" can't be used with \""
+								+ SortOrder.SORT_PARAMETER + "\", since cursors page in key order!");
+					}
+					String cursor = filterJSON.get(KeysetCursor.CURSOR_PARAMETER).asText();
+					wrapper.put(KeysetCursor.CURSOR_PARAMETER, cursor);
+					filter = new Filter(new AndCombinator(Arrays.asList(filter, KeysetCursor.createAfterFilter(name, cursor))));
+				}
 
-				List<CMEObject> objects = CMEObjectController.search(name, viewName, columns, filter);
-				List<ObjectNode> jsonObjects = objects.stream()
-						.map(cmeObject -> {
-							ObjectNode objNode = mapper.valueToTree(cmeObject);
-							CMEAPIUtils.addChildren(references, baseUrl, objNode, cmeObject);
-							String url = CMEAPIUtils.getURLFromCMEObject(cmeObject, baseUrl);
-							objNode.put("href", url);
-							return objNode;
-						})
-						.collect(Collectors.toList());
-				wrapper.putPOJO("results", jsonObjects);
+				//Counts, existence checks and aggregates are written in the wrapper without reading the CMEObjects
+				boolean count = filterJSON.path("count").asBoolean(false);
+				if (count || filterJSON.path("exists").asBoolean(false)) {
+					if (count) {
+						wrapper.put("count", CMEAPIUtils.count(name, viewName, filter, false));
+					} else {
+						wrapper.put("exists", CMEAPIUtils.count(name, viewName, filter, true) > 0);
+					}
+					return CMEAPIUtils.writeWrapper(wrapper);
+				} else if (filterJSON.hasNonNull(Aggregation.GROUP_PARAMETER)) {
+					Aggregation aggregation = new Aggregation(name, filterJSON.get(Aggregation.GROUP_PARAMETER));
+					wrapper.set(Aggregation.GROUP_PARAMETER, filterJSON.get(Aggregation.GROUP_PARAMETER));
+					List<Map<String, Object>> groups = CMEAPIUtils.aggregate(name, viewName, filter, aggregation);
+					Metrics.recordRows(name, groups.size());
+					wrapper.set("results", JsonCodec.getMapper().valueToTree(groups));
+					return CMEAPIUtils.writeWrapper(wrapper);
+				}
+
+				//The backend finds the first page (or the top results of the sort order) itself
+				List<CMEObject> objects = CMEAPIUtils.search(name, viewName, columns, filter, sort, limit);
+				String nextCursor = null;
+				if (limit != null && sort == null) {
+					if (objects.size() == limit) {
+						nextCursor = KeysetCursor.create(objects.get(objects.size() - 1));
+					}
+					wrapper.put("nextCursor", nextCursor);
+				}
+				
+				Metrics.recordRows(name, objects.size());
+				
+				//The CMEObjects are converted to JSON as they are written into the "results" field of the wrapper
+				CMEObjectStreamingOutput output = new CMEObjectStreamingOutput(objects, baseUrl, references, wrapper);
+				output.setWriteTiming(filterJSON.path("timing").asBoolean(false));
+				output.setExpandDepth(expandDepth);
+				output.setExpansionPaths(expand);
+				output.setColumns(name, columns);
+				output.setNextCursor(nextCursor);
+				output.prepare();
+				return output;
 			} else {
 				throw new RuntimeException("Search filter JSON must have a field named \"filter\" with an object for its value!");
 			}
 		} else {
 			throw new RuntimeException("Request body must be a JSON Object!");
 		}
-		return wrapper;
 	}
 }
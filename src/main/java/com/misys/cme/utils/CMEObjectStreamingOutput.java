@@ -0,0 +1,368 @@
+package com.misys.cme.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Writes a List of CMEObjects to the HTTP response as a JSON array, streaming them as they are converted.
+ * The CMEObjects are converted to JSON, given their child references and href, and written out one page at a time,
+ * so only one page of JSON is held in memory at a time. Paging lets ChildExpander fetch the children of a whole page
+ * with one search per child type.
+ * If the response's media type is an export format (see ExportWriter), the CMEObjects are written as rows of that
+ * format instead, without the wrapper object.
+ * The first page is converted by prepare, before the response is committed, so that a failure to expand it is still
+ * answered with a 500. A later page can only fail once the status and headers are sent, so the output is ended with an
+ * error marker instead: an "_error" field after "results" in the wrapper object, or a last {"_error": ...} element of
+ * a bare JSON array or line of NDJSON. A CSV export has no way to mark it, so it is aborted.
+ */
+public class CMEObjectStreamingOutput implements StreamingOutput {
+	private static Logger logger = LogManager.getLogger(CMEObjectStreamingOutput.class);
+
+	/**
+	 * Number of CMEObjects converted to JSON and expanded together before being written.
+	 */
+	private static final int PAGE_SIZE = 100;
+	
+	/**
+	 * Field marking that the CMEObjects after it couldn't be written.
+	 */
+	public static final String ERROR_FIELD = "_error";
+	
+	/**
+	 * Message of the error marker. The reason is logged instead of sent to the client, as for a 500.
+	 */
+	public static final String ERROR_MESSAGE = "There was an error";
+	
+	private List<CMEObject> cmeObjects;
+	private String baseUrl;
+	private String references;
+	private Integer expandDepth;
+	private ExpansionPaths expansionPaths;
+	private ObjectNode wrapper;
+	private String nextCursor;
+	private List<Map<String, Object>> missingKeys;
+	private RequestTimer timer;
+	private boolean writeTiming;
+	private String name;
+	private List<String> columns;
+	private MediaType mediaType;
+	private ChildExpander childExpander;
+	private List<ObjectNode> firstPageNodes;
+	private RuntimeException failure;
+
+	/**
+	 * Constructs a CMEObjectStreamingOutput that writes the given CMEObjects as a bare JSON array.
+	 * @param cmeObjects CMEObjects to write.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param references Configuration for child objects in the output. See ChildExpander.
+	 */
+	public CMEObjectStreamingOutput(List<CMEObject> cmeObjects, String baseUrl, String references) {
+		this(cmeObjects, baseUrl, references, null);
+	}
+
+	/**
+	 * Constructs a CMEObjectStreamingOutput that writes the given CMEObjects into the "results" field of the given
+	 * wrapper object.
+	 * @param cmeObjects CMEObjects to write.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param references Configuration for child objects in the output. See ChildExpander.
+	 * @param wrapper JSON object whose fields are written before "results". If null, a bare JSON array is written.
+	 */
+	public CMEObjectStreamingOutput(List<CMEObject> cmeObjects, String baseUrl, String references, ObjectNode wrapper) {
+		this.cmeObjects = cmeObjects;
+		this.baseUrl = baseUrl;
+		this.references = references;
+		this.wrapper = wrapper;
+		this.timer = RequestTimer.current();
+	}
+
+	/**
+	 * Gets the cursor of the page after the CMEObjects this writes.
+	 * @return The cursor, or null if this is the last page or the results aren't paged.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+	
+	/**
+	 * Sets the cursor of the page after the CMEObjects this writes.
+	 * @param nextCursor The cursor, or null if this is the last page.
+	 */
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * Sets the number of levels of children to expand when references is "expand".
+	 * @param expandDepth The number of levels, or null for the most allowed. See ChildExpander.
+	 */
+	public void setExpandDepth(Integer expandDepth) {
+		this.expandDepth = expandDepth;
+	}
+
+	/**
+	 * Sets the children to expand, rather than every child.
+	 * @param expansionPaths The children to expand, or null to handle every child as references says. See ExpansionPaths.
+	 */
+	public void setExpansionPaths(ExpansionPaths expansionPaths) {
+		this.expansionPaths = expansionPaths;
+	}
+
+	/**
+	 * Sets the keys of the CMEObjects that weren't found, for writing multi-get results in request order.
+	 * Where the List of CMEObjects has a null, {"found": false, "key": {...}} is written with the key at the same index.
+	 * @param missingKeys Keys, as maps of column name to value, with the same size as the List of CMEObjects.
+	 */
+	public void setMissingKeys(List<Map<String, Object>> missingKeys) {
+		this.missingKeys = missingKeys;
+	}
+
+	/**
+	 * Gets the timer of the request this writes the response of.
+	 * @return The RequestTimer, or null if none was started when this was constructed.
+	 */
+	public RequestTimer getTimer() {
+		return timer;
+	}
+
+	/**
+	 * Sets whether to write the request's phase timings in a "_timing" field after "results".
+	 * This only applies when writing into a wrapper object, and only if a RequestTimer was started.
+	 * @param writeTiming true to write the timings; false otherwise.
+	 */
+	public void setWriteTiming(boolean writeTiming) {
+		this.writeTiming = writeTiming;
+	}
+
+	/**
+	 * Sets the type and requested columns of the CMEObjects this writes, for the header of a CSV export.
+	 * @param name Name of the CMEObject type.
+	 * @param columns Columns the client requested. If empty, the type's visible columns are written.
+	 */
+	public void setColumns(String name, List<String> columns) {
+		this.name = name;
+		this.columns = columns;
+	}
+
+	/**
+	 * Sets the media type to write the CMEObjects as. This is set by ExportInterceptor from the media type Jersey
+	 * negotiated for the response.
+	 * @param mediaType The media type. If it isn't an export format, a JSON array is written.
+	 */
+	public void setMediaType(MediaType mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	/**
+	 * Converts the first page of CMEObjects to JSON and expands its children now, while a failure can still be
+	 * answered with a 500. Call this after setting everything that changes the JSON, before the response is returned.
+	 */
+	public void prepare() {
+		RequestTimer previousTimer = RequestTimer.current();
+		RequestTimer.attach(timer);
+		try {
+			firstPageNodes = toNodes(getPage(0));
+		} finally {
+			RequestTimer.attach(previousTimer);
+		}
+	}
+
+	/**
+	 * Gets the failure that ended the output early, if any. See the error marker in the class description.
+	 * @return The exception, or null if every CMEObject was written.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Writes the CMEObjects to the given OutputStream.
+	 * @param output OutputStream of the HTTP response.
+	 */
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		//The response may be written on another thread than the one that handled the request
+		RequestTimer previousTimer = RequestTimer.current();
+		RequestTimer.attach(timer);
+		try {
+			if (ExportWriter.isExportType(mediaType)) {
+				writeRows(output);
+			} else {
+				writeJson(output);
+			}
+		} finally {
+			RequestTimer.attach(previousTimer);
+		}
+	}
+
+	/**
+	 * Writes the CMEObjects to the given OutputStream, recording the time of each phase in the current RequestTimer.
+	 * @param output OutputStream of the HTTP response.
+	 */
+	private void writeJson(OutputStream output) throws IOException {
+		ObjectMapper mapper = JsonCodec.getMapper();
+		JsonGenerator generator = JsonCodec.createGenerator(output);
+
+		if (wrapper != null) {
+			generator.writeStartObject();
+			Iterator<Map.Entry<String, JsonNode>> entryIterator = wrapper.fields();
+			while (entryIterator.hasNext()) {
+				Map.Entry<String, JsonNode> entry = entryIterator.next();
+				generator.writeFieldName(entry.getKey());
+				mapper.writeTree(generator, entry.getValue());
+			}
+			generator.writeFieldName("results");
+		}
+
+		generator.writeStartArray();
+		for (int start = 0; start < cmeObjects.size(); start += PAGE_SIZE) {
+			List<CMEObject> page = getPage(start);
+			Iterator<ObjectNode> nodeIterator = getNodes(start, page);
+			if (nodeIterator == null) {
+				if (wrapper == null) {
+					generator.writeStartObject();
+					generator.writeStringField(ERROR_FIELD, ERROR_MESSAGE);
+					generator.writeEndObject();
+				}
+				break;
+			}
+			for (int i = 0; i < page.size(); i++) {
+				if (page.get(i) == null) {
+					generator.writeStartObject();
+					generator.writeBooleanField("found", false);
+					generator.writeFieldName("key");
+					mapper.writeValue(generator, missingKeys.get(start + i));
+					generator.writeEndObject();
+					continue;
+				}
+				long phaseStart = System.nanoTime();
+				mapper.writeTree(generator, nodeIterator.next());
+				RequestTimer.record(RequestTimer.SERIALIZE, phaseStart);
+			}
+		}
+		generator.writeEndArray();
+
+		if (wrapper != null) {
+			if (failure != null) {
+				generator.writeStringField(ERROR_FIELD, ERROR_MESSAGE);
+			}
+			if (writeTiming && timer != null) {
+				generator.writeFieldName("_timing");
+				mapper.writeTree(generator, timer.toJson());
+			}
+			generator.writeEndObject();
+		}
+		generator.flush();
+	}
+
+	/**
+	 * Writes the CMEObjects to the given OutputStream as rows of the export format, flushing each page so the client
+	 * can start reading before the last page is converted. Keys that weren't found are written as not-found rows, so
+	 * the rows stay in request order.
+	 * @param output OutputStream of the HTTP response.
+	 */
+	private void writeRows(OutputStream output) throws IOException {
+		ExportWriter exportWriter = ExportWriter.create(mediaType, output, name, columns);
+		for (int start = 0; start < cmeObjects.size(); start += PAGE_SIZE) {
+			List<CMEObject> page = getPage(start);
+			Iterator<ObjectNode> nodeIterator = getNodes(start, page);
+			if (nodeIterator == null) {
+				exportWriter.writeError(ERROR_MESSAGE);
+				break;
+			}
+			long phaseStart = System.nanoTime();
+			for (int i = 0; i < page.size(); i++) {
+				if (page.get(i) == null) {
+					exportWriter.writeMissing(JsonCodec.getMapper().valueToTree(missingKeys.get(start + i)));
+				} else {
+					exportWriter.writeRow(nodeIterator.next());
+				}
+			}
+			exportWriter.flush();
+			RequestTimer.record(RequestTimer.SERIALIZE, phaseStart);
+		}
+		exportWriter.finish();
+	}
+
+	/**
+	 * Gets the page of CMEObjects starting at the given index.
+	 * @param start Index of the first CMEObject of the page.
+	 * @return The page. Empty if there are no CMEObjects.
+	 */
+	private List<CMEObject> getPage(int start) {
+		return cmeObjects.subList(Math.min(start, cmeObjects.size()), Math.min(start + PAGE_SIZE, cmeObjects.size()));
+	}
+
+	/**
+	 * Gets the JSON of a page of CMEObjects while the response is written: the one converted by prepare for the first
+	 * page, or else converted now.
+	 * @param start Index of the first CMEObject of the page.
+	 * @param page The page.
+	 * @return The JSON of the CMEObjects of the page that aren't null, in order, or null if converting it failed, in
+	 * which case the failure is logged and kept for getFailure.
+	 */
+	private Iterator<ObjectNode> getNodes(int start, List<CMEObject> page) {
+		if (start == 0 && firstPageNodes != null) {
+			List<ObjectNode> nodes = firstPageNodes;
+			firstPageNodes = null;
+			return nodes.iterator();
+		}
+		try {
+			return toNodes(page).iterator();
+		} catch (RuntimeException e) {
+			//The status and headers have been sent, so the output is ended with an error marker instead of a 500
+			logger.log(Level.ERROR, e.getMessage(), e);
+			failure = e;
+			return null;
+		}
+	}
+
+	/**
+	 * Converts a page of CMEObjects to JSON, with their child references and href.
+	 * @param page Page of CMEObjects. Its nulls (keys that weren't found) are skipped.
+	 * @return The JSON of the CMEObjects that aren't null, in order.
+	 */
+	private List<ObjectNode> toNodes(List<CMEObject> page) {
+		if (childExpander == null) {
+			//Shared by every page, so that they share the children expanded and the budget of the response
+			childExpander = new ChildExpander(references, baseUrl, expandDepth, expansionPaths);
+		}
+		List<ObjectNode> nodes = new ArrayList<>(page.size());
+		List<CMEObject> foundPage = new ArrayList<>(page.size());
+		long phaseStart = System.nanoTime();
+		for (CMEObject cmeObject : page) {
+			if (cmeObject != null) {
+				nodes.add(JsonCodec.toTree(cmeObject));
+				foundPage.add(cmeObject);
+			}
+		}
+		RequestTimer.record(RequestTimer.SERIALIZE, phaseStart);
+		phaseStart = System.nanoTime();
+		childExpander.addChildren(nodes, foundPage);
+		RequestTimer.record(RequestTimer.EXPAND, phaseStart);
+		phaseStart = System.nanoTime();
+		for (int i = 0; i < nodes.size(); i++) {
+			nodes.get(i).put("href", CMEAPIUtils.getURLFromCMEObject(foundPage.get(i), baseUrl));
+		}
+		RequestTimer.record(RequestTimer.HREF, phaseStart);
+		return nodes;
+	}
+}
@@ -0,0 +1,69 @@
+package com.misys.cme.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Holds a serialized JSON response body along with a strong ETag computed from its content.
+ * Writing it to a response just copies the bytes, so a cached response is never re-serialized.
+ */
+public class CachedEntity implements StreamingOutput {
+	private byte[] body;
+	private String eTag;
+	private long createdMillis;
+
+	/**
+	 * Constructs a CachedEntity holding the given response body.
+	 * @param body Serialized JSON response body.
+	 */
+	public CachedEntity(byte[] body) {
+		this.body = body;
+		this.eTag = CachedEntity.computeETag(body);
+		this.createdMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the strong ETag of the response body, including the surrounding quotes.
+	 * @return The ETag.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Gets when this was created.
+	 * @return The time this was created, in milliseconds since the epoch.
+	 */
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	/**
+	 * Writes the response body to the given OutputStream.
+	 * @param output OutputStream of the HTTP response.
+	 */
+	@Override
+	public void write(OutputStream output) throws IOException, WebApplicationException {
+		output.write(body);
+	}
+
+	/**
+	 * Computes a strong ETag from the SHA-256 digest of the given bytes.
+	 * @param body Bytes to compute the ETag of.
+	 * @return The ETag, including the surrounding quotes.
+	 */
+	private static String computeETag(byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+			return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
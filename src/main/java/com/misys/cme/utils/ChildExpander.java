@@ -0,0 +1,626 @@
+package com.misys.cme.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEChildRelKeysDef;
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectDef;
+import com.misys.enums.CMEObjectType;
+
+/**
+ * Adds child references to the JSON of a page of CMEObjects.
+ * When expanding, the children of every parent in the page for one CMEObjectChildDef are fetched with a single
+ * search (an $in on the child key, or an $or of the key tuples for composite keys) and stitched back onto their
+ * parents by the CMEChildRelKeysDef keys. The expanded children are then expanded the same way, one level at a time.
+ * The CMEObjectChildDefs of the CMEObjects of the response are independent branches, which are fetched at the same
+ * time and then added in definition order.
+ * A ChildExpander is used for one response, and remembers the children it has expanded for the rest of it.
+ * Expansion stops at expandDepth levels (at most CMEAPI.expansion.maxDepth), when the response runs out of its
+ * budget of searches and children, and at the deadline of CMEAPI.expansion.timeoutMillis; the children past that are
+ * linked to, as with "link".
+ * With ExpansionPaths, only the children on its paths are expanded, and the others are linked to.
+ */
+public class ChildExpander {
+	private static Logger logger = LogManager.getLogger(ChildExpander.class);
+
+	/**
+	 * Maximum number of expanded children remembered per response. The least recently used are forgotten first.
+	 */
+	private static final int MAX_EXPANDED_KEYS = 10000;
+
+	/**
+	 * Query parameter (and search body field) holding the number of levels of children to expand.
+	 */
+	public static final String EXPAND_DEPTH_PARAMETER = "expandDepth";
+
+	/**
+	 * Most levels of children expanded if no system property sets it.
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 5;
+
+	/**
+	 * Most child searches per response if no system property sets it.
+	 */
+	public static final int DEFAULT_MAX_QUERIES = 100;
+
+	/**
+	 * Most expanded children built per response if no system property sets it.
+	 */
+	public static final int DEFAULT_MAX_NODES = 5000;
+
+	/**
+	 * Field of the JSON of a CMEObject listing the children that were linked to instead of expanded, and why.
+	 */
+	public static final String TRUNCATED_FIELD = "_truncated";
+
+	private static final String DEPTH = "depth";
+	private static final String QUERIES = "queries";
+	private static final String NODES = "nodes";
+	private static final String DEADLINE = "deadline";
+
+	/**
+	 * Prefix of the system properties that limit child expansion.
+	 */
+	private static final String PROPERTY_PREFIX = "CMEAPI.expansion.";
+
+	private static final int maxDepth = ChildExpander.getIntProperty("maxDepth", DEFAULT_MAX_DEPTH);
+	private static final int maxQueries = ChildExpander.getIntProperty("maxQueries", DEFAULT_MAX_QUERIES);
+	private static final int maxNodes = ChildExpander.getIntProperty("maxNodes", DEFAULT_MAX_NODES);
+
+	/**
+	 * Map of truncation reasons to the number of child branches linked to for that reason.
+	 */
+	private static final ConcurrentHashMap<String, AtomicLong> truncations = new ConcurrentHashMap<>();
+
+	private String references;
+	private String baseUrl;
+	private ExpansionPaths paths;
+	private long deadlineNanos;
+	private int expandDepth;
+	private boolean depthCapped;
+	private final AtomicInteger queries;
+	private final AtomicInteger builtNodes;
+
+	/**
+	 * Expanded JSON of the children added so far, by expanded key (see getExpandedKey), so that a child referred to by
+	 * many CMEObjects (e.g. the State of every Address) is only searched for, serialized and expanded once per response.
+	 * The same ObjectNodes are added to every parent, so they must not be modified once they are in here.
+	 * Branches fetched at the same time share it, so it is only used while synchronized on it.
+	 */
+	private Map<List<Object>, List<ObjectNode>> expanded = new LinkedHashMap<List<Object>, List<ObjectNode>>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<Object>, List<ObjectNode>> eldest) {
+			return size() > MAX_EXPANDED_KEYS;
+		}
+	};
+
+	/**
+	 * Constructs a ChildExpander for the given references format and base URL.
+	 * @param references Value of the references URL query parameter. This should either be "link", "expand", "", or null.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 */
+	public ChildExpander(String references, String baseUrl) {
+		this(references, baseUrl, null);
+	}
+
+	/**
+	 * Constructs a ChildExpander for the given references format, base URL and expansion depth.
+	 * @param references Value of the references URL query parameter. This should either be "link", "expand", "", or null.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param expandDepth Number of levels of children to expand, below which children are linked to. If null or more
+	 * than CMEAPI.expansion.maxDepth, that is used instead. See parseExpandDepth.
+	 */
+	public ChildExpander(String references, String baseUrl, Integer expandDepth) {
+		this(references, baseUrl, expandDepth, null);
+	}
+
+	/**
+	 * Constructs a ChildExpander that only expands the children on the given paths.
+	 * @param references Value of the references URL query parameter. Ignored if paths is given.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param expandDepth Number of levels of children to expand. See ChildExpander(String, String, Integer).
+	 * @param paths Children to expand, or null to handle every child as references says. See ExpansionPaths.parse.
+	 */
+	public ChildExpander(String references, String baseUrl, Integer expandDepth, ExpansionPaths paths) {
+		this.references = paths != null ? "expand" : references;
+		this.baseUrl = baseUrl;
+		this.paths = paths;
+		this.depthCapped = expandDepth == null || expandDepth > maxDepth;
+		this.expandDepth = this.depthCapped ? maxDepth : expandDepth;
+		//The budget is shared by every page of the response
+		this.queries = new AtomicInteger();
+		this.builtNodes = new AtomicInteger();
+	}
+
+	/**
+	 * Parses the expandDepth query parameter (or search body field).
+	 * @param expandDepth Value of the parameter. May be null.
+	 * @return The number of levels of children to expand, or null if the parameter wasn't given.
+	 */
+	public static Integer parseExpandDepth(Object expandDepth) {
+		if (expandDepth == null) {
+			return null;
+		}
+		try {
+			int value = Integer.parseInt(expandDepth.toString().trim());
+			if (value >= 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+		}
+		throw new RuntimeException("\"" + EXPAND_DEPTH_PARAMETER + "\" must be a non-negative integer!");
+	}
+
+	/**
+	 * Gets the number of child branches linked to instead of expanded, per reason ("depth", "queries", "nodes" or
+	 * "deadline").
+	 * @return Map of reasons to the number of branches, sorted by reason.
+	 */
+	public static Map<String, Long> getTruncations() {
+		Map<String, Long> counts = new TreeMap<>();
+		truncations.forEach((reason, count) -> counts.put(reason, count.get()));
+		return counts;
+	}
+
+	/**
+	 * Counts a child branch linked to instead of expanded.
+	 * @param reason Why it was linked to.
+	 * @return The reason.
+	 */
+	private static String recordTruncation(String reason) {
+		truncations.computeIfAbsent(reason, r -> new AtomicLong()).incrementAndGet();
+		logger.debug("Linking to children instead of expanding them, since the " + reason + " limit was reached");
+		return reason;
+	}
+
+	/**
+	 * Takes the given amount from a budget, unless that would go over it.
+	 * @param used[in,out] Amount of the budget used so far.
+	 * @param amount Amount to take.
+	 * @param max Size of the budget.
+	 * @return true if the amount was taken; false if it would have gone over the budget, in which case none was.
+	 */
+	private static boolean reserve(AtomicInteger used, int amount, int max) {
+		while (true) {
+			int current = used.get();
+			if (current + amount > max) {
+				return false;
+			} else if (used.compareAndSet(current, current + amount)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds child references to the given ObjectNodes for the given CMEObjects.
+	 * When expanding, the children of each CMEObjectChildDef (and their own children) are fetched at the same time
+	 * (see ExpansionScheduler), then added to the ObjectNodes in definition order.
+	 * @param nodes[in,out] JSON Objects to add child references to. nodes.get(i) must be the JSON of cmeObjects.get(i).
+	 * @param cmeObjects CMEObjects that we are generating the JSON for. They must all be of the same type.
+	 * @note Each call has CMEAPI.expansion.timeoutMillis to expand, so a streamed search gets that long per page. The
+	 * branches not fetched by then are linked to, and the search a branch is waiting for is the only one it makes past
+	 * the deadline. The calls of a response share its budget of CMEAPI.expansion.maxQueries child searches and
+	 * CMEAPI.expansion.maxNodes expanded children. A branch that would go over it is linked to instead (see
+	 * TRUNCATED_FIELD), and doesn't use any of it. Which branches those are may depend on the order concurrent branches
+	 * finish in.
+	 */
+	public void addChildren(List<ObjectNode> nodes, List<CMEObject> cmeObjects) {
+		deadlineNanos = ExpansionScheduler.getDeadlineNanos();
+		addChildren(nodes, cmeObjects, 1, paths, true);
+	}
+
+	/**
+	 * Adds child references to the given ObjectNodes for the given CMEObjects.
+	 * @param nodes[in,out] JSON Objects to add child references to. nodes.get(i) must be the JSON of cmeObjects.get(i).
+	 * @param cmeObjects CMEObjects that we are generating the JSON for. They must all be of the same type.
+	 * @param depth Level of the children to add, starting at 1 for the children of the CMEObjects of the response.
+	 * @param paths Children of the CMEObjects to expand, or null to expand all of them.
+	 * @param concurrently Whether to fetch the children of each CMEObjectChildDef at the same time. This is only done
+	 * for the CMEObjects the response is for, and each of their branches is expanded on one thread.
+	 */
+	private void addChildren(List<ObjectNode> nodes, List<CMEObject> cmeObjects, int depth, ExpansionPaths paths,
+			boolean concurrently) {
+		if (!CMEAPIUtils.isValidReferencesOption(references) || cmeObjects.isEmpty()) {
+			return;
+		}
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(cmeObjects.get(0).getType());
+		List<CMEObjectChildDef> children = def.getChildDefs();
+		List<List<Map<String, Object>>> childParamsLists = new ArrayList<>(children.size());
+		for (CMEObjectChildDef child : children) {
+			List<Map<String, Object>> childParamsList = new ArrayList<>(cmeObjects.size());
+			for (CMEObject cmeObject : cmeObjects) {
+				childParamsList.add(CMEAPIUtils.getChildParams(child, cmeObject));
+			}
+			childParamsLists.add(childParamsList);
+		}
+		if (references.equals("link")) {
+			for (int i = 0; i < children.size(); i++) {
+				addChildrenAsLinks(children.get(i), nodes, childParamsLists.get(i));
+			}
+		} else if (references.equals("expand") && depth > expandDepth) {
+			//Children below the depth are linked to, which is only reported if the client didn't ask for the depth
+			for (int i = 0; i < children.size(); i++) {
+				addChildrenAsLinks(children.get(i), nodes, childParamsLists.get(i));
+				if (depthCapped && (paths == null || paths.isExpanded(children.get(i).getRefColName()))) {
+					addTruncation(children.get(i), nodes, childParamsLists.get(i), ChildExpander.recordTruncation(DEPTH));
+				}
+			}
+		} else if (references.equals("expand")) {
+			//Only the children on the paths are fetched
+			List<Callable<Branch>> branches = new ArrayList<>(children.size());
+			List<Integer> branchIndexes = new ArrayList<>(children.size());
+			for (int i = 0; i < children.size(); i++) {
+				CMEObjectChildDef child = children.get(i);
+				if (paths != null && !paths.isExpanded(child.getRefColName())) {
+					continue;
+				}
+				ExpansionPaths childPaths = paths == null ? null : paths.getChild(child.getRefColName());
+				List<Map<String, Object>> childParamsList = childParamsLists.get(i);
+				branches.add(() -> fetchChildren(child, childParamsList, depth, childPaths));
+				branchIndexes.add(i);
+			}
+			List<Branch> results;
+			if (concurrently && branches.size() > 1) {
+				results = ExpansionScheduler.invokeAll(def.getName(), branches, deadlineNanos);
+				for (int b = 0; b < results.size(); b++) {
+					if (results.get(b) == null) {
+						//Cancelled by the scheduler at the deadline
+						results.set(b, new Branch(null, null, ChildExpander.recordTruncation(DEADLINE)));
+					}
+				}
+			} else {
+				results = new ArrayList<>(branches.size());
+				for (Callable<Branch> branch : branches) {
+					results.add(fetchChildren(branch));
+				}
+			}
+			List<Branch> fetched = new ArrayList<>(Collections.nCopies(children.size(), (Branch) null));
+			for (int b = 0; b < branchIndexes.size(); b++) {
+				fetched.set(branchIndexes.get(b), results.get(b));
+			}
+			//Added in definition order, so the output is the same however the branches were fetched
+			for (int i = 0; i < children.size(); i++) {
+				Branch branch = fetched.get(i);
+				if (branch == null) {
+					//Not on the paths
+					addChildrenAsLinks(children.get(i), nodes, childParamsLists.get(i));
+				} else if (branch.truncation != null) {
+					addChildrenAsLinks(children.get(i), nodes, childParamsLists.get(i));
+					addTruncation(children.get(i), nodes, childParamsLists.get(i), branch.truncation);
+				} else {
+					addChildrenAsExpanded(children.get(i), nodes, childParamsLists.get(i), branch.childNodesByKey, depth,
+							branch.paths);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds links to the children of the given CMEObjectChildDef to the given ObjectNodes.
+	 * @param child Definition of the CMEObject child to add links for.
+	 * @param nodes[in,out] JSON Objects to add the links to.
+	 * @param childParamsList Parameters for looking up the child of each node. Empty if the node has no child.
+	 */
+	private void addChildrenAsLinks(CMEObjectChildDef child, List<ObjectNode> nodes, List<Map<String, Object>> childParamsList) {
+		String childName = child.getChildName();
+		String refColName = child.getRefColName();
+		for (int i = 0; i < nodes.size(); i++) {
+			Map<String, Object> childParams = childParamsList.get(i);
+			if (childParams.size() > 0) {
+				String url = CMEAPIUtils.getURLFromTypeParams(childName, baseUrl, childParams);
+				logger.trace(refColName + ": " + url);
+				ObjectNode values = (ObjectNode) nodes.get(i).get("values");
+				values.put(refColName, url);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the children of the given CMEObjectChildDef for all of the given parents at once and expands their own
+	 * children. Children already expanded for this response are reused rather than searched for and expanded again.
+	 * @note This only reads the parents' child parameters, so the branches of one set of parents can run at the same
+	 * time.
+	 * @param child Definition of the CMEObject child to expand.
+	 * @param childParamsList Parameters for looking up the child of each parent. Empty if the parent has no child.
+	 * @param depth Level of the children.
+	 * @param paths Children of the children to expand, or null to expand all of them.
+	 * @return The JSON of the children, or the reason they must be linked to instead if they would go over the budget.
+	 */
+	private Branch fetchChildren(CMEObjectChildDef child, List<Map<String, Object>> childParamsList, int depth,
+			ExpansionPaths paths) {
+		//Take the expanded children this response already has, so they can't be evicted before they are added
+		Map<List<Object>, List<ObjectNode>> childNodesByKey = new HashMap<>();
+		List<Map<String, Object>> missingParamsList = new ArrayList<>();
+		synchronized (expanded) {
+			for (Map<String, Object> childParams : childParamsList) {
+				if (childParams.size() > 0) {
+					List<Object> expandedKey = getExpandedKey(child, childParams, depth, paths);
+					if (!childNodesByKey.containsKey(expandedKey)) {
+						List<ObjectNode> childNodes = expanded.get(expandedKey);
+						if (childNodes == null) {
+							missingParamsList.add(childParams);
+							//Searched for below, but only once however many parents have it
+							childNodes = new ArrayList<>();
+						}
+						childNodesByKey.put(expandedKey, childNodes);
+					}
+				}
+			}
+		}
+		String truncation = addMissingChildren(child, missingParamsList, childNodesByKey, depth, paths);
+		return new Branch(truncation == null ? childNodesByKey : null, paths, truncation);
+	}
+
+	/**
+	 * Runs a branch on the current thread.
+	 * @param branch A call to fetchChildren.
+	 * @return The result of the branch.
+	 */
+	private static Branch fetchChildren(Callable<Branch> branch) {
+		try {
+			return branch.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Adds the fetched children of the given CMEObjectChildDef inline to the given ObjectNodes.
+	 * @param child Definition of the CMEObject child to expand.
+	 * @param nodes[in,out] JSON Objects to add the children to.
+	 * @param childParamsList Parameters for looking up the child of each node. Empty if the node has no child.
+	 * @param childNodesByKey The children, as fetched by fetchChildren.
+	 * @param depth Level of the children.
+	 * @param paths Children of the children that were expanded, or null if all of them were.
+	 */
+	private void addChildrenAsExpanded(CMEObjectChildDef child, List<ObjectNode> nodes, List<Map<String, Object>> childParamsList,
+			Map<List<Object>, List<ObjectNode>> childNodesByKey, int depth, ExpansionPaths paths) {
+		CMEObjectType childType = child.getType();
+		String refColName = child.getRefColName();
+		for (int i = 0; i < nodes.size(); i++) {
+			Map<String, Object> childParams = childParamsList.get(i);
+			if (childParams.size() == 0) {
+				continue;
+			}
+			List<ObjectNode> parentChildNodes = childNodesByKey.get(getExpandedKey(child, childParams, depth, paths));
+			Metrics.recordChildFanOut(child.getChildName(), parentChildNodes.size());
+			ObjectNode node = nodes.get(i);
+			ObjectNode values = (ObjectNode) node.get("values");
+			if (childType.equals(CMEObjectType.SINGLE)) {
+				if (parentChildNodes.size() > 0) {
+					ObjectNode childNode = parentChildNodes.get(0);
+					if (child.isHideParent()) {
+						//The node's values are changed by its later children, so it can't share the child's
+						node.removeAll();
+						node.setAll(childNode.deepCopy());
+					} else {
+						values.set(refColName, childNode);
+					}
+				}
+			} else if (childType.equals(CMEObjectType.GROUP)) {
+				ArrayNode arrayNode = JsonNodeFactory.instance.arrayNode();
+				arrayNode.addAll(parentChildNodes);
+				values.set(refColName, arrayNode);
+			}
+		}
+	}
+
+	/**
+	 * Searches for the children of the given CMEObjectChildDef that this response hasn't expanded yet, builds and
+	 * expands their JSON, and remembers it for the rest of the response.
+	 * @param child Definition of the CMEObject child to expand.
+	 * @param missingParamsList Parameters for looking up each child that hasn't been expanded yet.
+	 * @param childNodesByKey[in,out] Map of expanded keys (see getExpandedKey) to the empty Lists to add the JSON of
+	 * the missing children to.
+	 * @param depth Level of the children.
+	 * @param paths Children of the children to expand, or null to expand all of them.
+	 * @return null, or the reason the children weren't added if searching for or building them would go over the
+	 * budget of the response, or the deadline has passed.
+	 */
+	private String addMissingChildren(CMEObjectChildDef child, List<Map<String, Object>> missingParamsList,
+			Map<List<Object>, List<ObjectNode>> childNodesByKey, int depth, ExpansionPaths paths) {
+		if (missingParamsList.isEmpty()) {
+			return null;
+		}
+		if (System.nanoTime() > deadlineNanos || Thread.currentThread().isInterrupted()) {
+			//Past the deadline, or cancelled by the scheduler because of it
+			return ChildExpander.recordTruncation(DEADLINE);
+		}
+		if (builtNodes.get() >= maxNodes) {
+			//Don't search for children there is no room to build
+			return ChildExpander.recordTruncation(NODES);
+		}
+		int keysPerSearch = Math.max(1, KeyedSearch.MAX_KEY_VALUES_PER_SEARCH / child.getKeys().size());
+		if (!ChildExpander.reserve(queries, (missingParamsList.size() + keysPerSearch - 1) / keysPerSearch, maxQueries)) {
+			return ChildExpander.recordTruncation(QUERIES);
+		}
+		Map<List<Object>, List<CMEObject>> childObjectsByKey = searchChildren(child, missingParamsList);
+		int found = 0;
+		for (Map<String, Object> childParams : missingParamsList) {
+			List<CMEObject> matches = childObjectsByKey.get(getChildKey(child, childParams));
+			if (matches != null) {
+				found += child.getType().equals(CMEObjectType.SINGLE) ? 1 : matches.size();
+			}
+		}
+		if (!ChildExpander.reserve(builtNodes, found, maxNodes)) {
+			return ChildExpander.recordTruncation(NODES);
+		}
+
+		//Build the JSON of every child first so that all of their own children can be expanded together
+		List<ObjectNode> childNodes = new ArrayList<>();
+		List<CMEObject> childObjects = new ArrayList<>();
+		for (Map<String, Object> childParams : missingParamsList) {
+			List<ObjectNode> keyChildNodes = childNodesByKey.get(getExpandedKey(child, childParams, depth, paths));
+			List<CMEObject> matches = childObjectsByKey.get(getChildKey(child, childParams));
+			if (matches != null) {
+				for (CMEObject childObject : matches) {
+					ObjectNode childNode = JsonCodec.toTree(childObject);
+					childNode.put("href", CMEAPIUtils.getURLFromCMEObject(childObject, baseUrl));
+					childNodes.add(childNode);
+					childObjects.add(childObject);
+					keyChildNodes.add(childNode);
+					if (child.getType().equals(CMEObjectType.SINGLE)) {
+						break;
+					}
+				}
+			}
+		}
+
+		addChildren(childNodes, childObjects, depth + 1, paths, false);
+
+		synchronized (expanded) {
+			for (Map<String, Object> childParams : missingParamsList) {
+				List<Object> expandedKey = getExpandedKey(child, childParams, depth, paths);
+				expanded.put(expandedKey, childNodesByKey.get(expandedKey));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records on each of the given ObjectNodes that has a child of the given CMEObjectChildDef why the child was linked
+	 * to instead of expanded, in a "_truncated" object of child reference names to reasons, e.g.
+	 * {"_truncated": {"addresses": "queries"}}.
+	 * @param child Definition of the CMEObject child that was linked to.
+	 * @param nodes[in,out] JSON Objects the links were added to.
+	 * @param childParamsList Parameters for looking up the child of each node. Empty if the node has no child.
+	 * @param reason Why the child was linked to: "depth", "queries", "nodes" or "deadline".
+	 */
+	private static void addTruncation(CMEObjectChildDef child, List<ObjectNode> nodes, List<Map<String, Object>> childParamsList,
+			String reason) {
+		for (int i = 0; i < nodes.size(); i++) {
+			if (childParamsList.get(i).size() == 0) {
+				continue;
+			}
+			ObjectNode node = nodes.get(i);
+			JsonNode truncated = node.get(TRUNCATED_FIELD);
+			if (truncated == null || !truncated.isObject()) {
+				truncated = node.putObject(TRUNCATED_FIELD);
+			}
+			((ObjectNode) truncated).put(child.getRefColName(), reason);
+		}
+	}
+
+	/**
+	 * Searches for the children of the given CMEObjectChildDef for all of the given child parameters.
+	 * @param child Definition of the CMEObject child to search for.
+	 * @param childParamsList Parameters for looking up each child. Empty parameters are skipped.
+	 * @return The children found, grouped by their key (see getChildKey), in the order they were returned.
+	 */
+	private Map<List<Object>, List<CMEObject>> searchChildren(CMEObjectChildDef child, List<Map<String, Object>> childParamsList) {
+		List<Map<String, Object>> keyParamsList = new ArrayList<>(childParamsList.size());
+		for (Map<String, Object> childParams : childParamsList) {
+			if (childParams.size() > 0) {
+				keyParamsList.add(childParams);
+			}
+		}
+		if (keyParamsList.isEmpty()) {
+			return new LinkedHashMap<>();
+		}
+		return KeyedSearch.search(child.getChildName(), null, getChildKeyColumnNames(child), keyParamsList);
+	}
+
+	/**
+	 * Gets the key the expanded JSON of a child is remembered by for the rest of the response: the child's type,
+	 * whether it is a single child or a group, its key (see getChildKey), and its level and path, since those decide
+	 * which of its own children are expanded.
+	 * @param child Definition of the CMEObject child.
+	 * @param childParams Parameters for looking up the child.
+	 * @param depth Level of the child.
+	 * @param paths Children of the child to expand, or null if all of them are.
+	 * @return The expanded key.
+	 */
+	private static List<Object> getExpandedKey(CMEObjectChildDef child, Map<String, Object> childParams, int depth,
+			ExpansionPaths paths) {
+		List<Object> expandedKey = new ArrayList<>(6);
+		expandedKey.add(depth);
+		expandedKey.add(paths == null ? null : paths.getPath());
+		expandedKey.add(child.getChildName());
+		expandedKey.add(child.getType());
+		expandedKey.add(getChildKeyColumnNames(child));
+		expandedKey.add(getChildKey(child, childParams));
+		return expandedKey;
+	}
+
+	/**
+	 * Gets the key used to match a child to its parents from the given child parameters.
+	 * @param child Definition of the CMEObject child.
+	 * @param childParams Parameters for looking up the child.
+	 * @return The normalized values of the child key columns, in CMEChildRelKeysDef order.
+	 */
+	private static List<Object> getChildKey(CMEObjectChildDef child, Map<String, Object> childParams) {
+		return KeyedSearch.getKey(getChildKeyColumnNames(child), childParams);
+	}
+
+	/**
+	 * Gets the names of the child columns the given CMEObjectChildDef matches on.
+	 * @param child Definition of the CMEObject child.
+	 * @return The child key column names, in CMEChildRelKeysDef order.
+	 */
+	private static List<String> getChildKeyColumnNames(CMEObjectChildDef child) {
+		List<String> columnNames = new ArrayList<>(child.getKeys().size());
+		for (CMEChildRelKeysDef keyDef : child.getKeys()) {
+			columnNames.add(keyDef.getColumnName());
+		}
+		return columnNames;
+	}
+
+	/**
+	 * Gets a positive integer limit from the system properties.
+	 * @param setting Name of the setting, e.g. "maxDepth".
+	 * @param defaultValue Value to use if the property isn't set.
+	 * @return The setting.
+	 */
+	private static int getIntProperty(String setting, int defaultValue) {
+		String value = System.getProperty(PROPERTY_PREFIX + setting);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			if (intValue > 0) {
+				return intValue;
+			}
+		} catch (NumberFormatException e) {
+		}
+		logger.warn("Ignoring invalid expansion limit " + PROPERTY_PREFIX + setting + "=" + value);
+		return defaultValue;
+	}
+
+	/**
+	 * Result of fetching the children of one CMEObjectChildDef: their JSON, or why they weren't fetched.
+	 */
+	private static class Branch {
+		private Map<List<Object>, List<ObjectNode>> childNodesByKey;
+		private ExpansionPaths paths;
+		private String truncation;
+
+		private Branch(Map<List<Object>, List<ObjectNode>> childNodesByKey, ExpansionPaths paths, String truncation) {
+			this.childNodesByKey = childNodesByKey;
+			this.paths = paths;
+			this.truncation = truncation;
+		}
+	}
+}
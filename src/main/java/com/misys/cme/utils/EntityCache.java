@@ -0,0 +1,846 @@
+package com.misys.cme.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Read-through cache of CMEObjects read by their key, e.g. by GET /entities/{ent_id}, so that repeated reads of the
+ * same CMEObjects don't each search the database.
+ * CMEObjects are cached with all of their columns, by type and normalized key (see KeyedSearch.normalizeKeyValue), and
+ * the requested columns are copied out of them. The cache is bounded by the estimated size of the CMEObjects in it and
+ * uses W-TinyLFU to choose what to keep: new CMEObjects enter a small LRU window, and leave it for the main
+ * (segmented LRU) space only if they have been read more often than the CMEObject they would evict, as counted by a
+ * frequency sketch. So a search that reads many CMEObjects once can't flush out the ones that are read all the time.
+ * A CMEObject is dropped when it is updated, inserted or deleted through this API, and so are the CMEObjects related
+ * to it by a CMEObjectChildDef (in either direction) whose relationship columns match it, since the database may
+ * change them with it (e.g. an Individual and its Entity). Those are found through an index of the cached CMEObjects by
+ * type and by the values of their relationship columns, so a write costs one lookup per relationship of its type, not
+ * a scan of the cache. CMEObjects are also dropped after a time to live, to pick up
+ * changes made elsewhere. It can be set with the system property CMEAPI.entityCache.ttlSeconds, or per type with
+ * CMEAPI.entityCache.{name}.ttlSeconds. A time to live of 0 turns the cache off for the type.
+ * The size of the cache can be set with CMEAPI.entityCache.maxBytes.
+ * Callers get a copy of the cached CMEObject, so they may modify it.
+ */
+public class EntityCache {
+	private static Logger logger = LogManager.getLogger(EntityCache.class);
+
+	/**
+	 * Prefix of the system properties that configure the cache.
+	 */
+	private static final String PROPERTY_PREFIX = "CMEAPI.entityCache.";
+
+	/**
+	 * Time to live of cached CMEObjects if no system property sets it.
+	 */
+	private static final long DEFAULT_TTL_SECONDS = 60;
+
+	/**
+	 * Estimated size of the cached CMEObjects if no system property sets it.
+	 */
+	private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	/**
+	 * Share of the cache used by the window that new CMEObjects enter, in percent.
+	 */
+	private static final int WINDOW_PERCENT = 1;
+
+	/**
+	 * Share of the main space used by the protected segment (CMEObjects read again since entering it), in percent.
+	 */
+	private static final int PROTECTED_PERCENT = 80;
+
+	/**
+	 * Estimated size of an average cached CMEObject, to size the frequency sketch.
+	 */
+	private static final int AVERAGE_BYTES = 1024;
+
+	private final long maxBytes;
+	private final long windowMaxBytes;
+	private final long protectedMaxBytes;
+	private long windowBytes;
+	private long probationBytes;
+	private long protectedBytes;
+
+	private final LinkedHashMap<List<Object>, Entry> window = new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<List<Object>, Entry> probation = new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<List<Object>, Entry> protectedSegment = new LinkedHashMap<>(64, 0.75f, true);
+	private final FrequencySketch sketch;
+
+	private final AtomicLong evictions = new AtomicLong();
+	private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Long> ttls = new ConcurrentHashMap<>();
+
+	/**
+	 * Map of CMEObject names to the names of their columns.
+	 */
+	private final Map<String, List<String>> columnNames;
+
+	/**
+	 * Map of CMEObject names to the names of their key columns.
+	 */
+	private final Map<String, List<String>> keyColumnNames;
+
+	/**
+	 * Map of CMEObject names to the relationships of their type to other types.
+	 */
+	private final Map<String, List<Relationship>> relationships = new HashMap<>();
+
+	/**
+	 * Map of CMEObject names to the lists of columns their CMEObjects are found by when a related CMEObject changes.
+	 */
+	private final Map<String, List<List<String>>> indexedColumnNames = new HashMap<>();
+
+	/**
+	 * Cached entries by index key: a type's name alone for all of the type's entries, or a type's name, a list of its
+	 * indexed columns and the normalized values of those columns for the entries related to a changed CMEObject.
+	 * Every entry in a segment is in here, under the index keys in its indexKeys.
+	 */
+	private final Map<List<Object>, Set<Entry>> index = new HashMap<>();
+
+	/**
+	 * Map of CMEObject names to the number of times the type's cached CMEObjects have been invalidated, so a
+	 * CMEObject loaded while its type was being invalidated isn't cached, without holding up loads of other types.
+	 */
+	private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs an EntityCache for all CMEObject types, sized by the system properties.
+	 */
+	public EntityCache() {
+		this(EntityCache.getLongProperty(PROPERTY_PREFIX + "maxBytes", DEFAULT_MAX_BYTES));
+	}
+
+	/**
+	 * Constructs an EntityCache for all CMEObject types.
+	 * @param maxBytes Maximum estimated size of the cached CMEObjects, in bytes.
+	 */
+	public EntityCache(long maxBytes) {
+		this(maxBytes, EntityCache.getColumnNames(false), EntityCache.getColumnNames(true));
+		for (CMEObjectDef def : CMEObjectDef.getCMEObjectDefs().values()) {
+			if (def.getChildDefs() == null) {
+				continue;
+			}
+			for (CMEObjectChildDef childDef : def.getChildDefs()) {
+				List<String> parentColumnNames = new ArrayList<>();
+				List<String> childColumnNames = new ArrayList<>();
+				childDef.getKeys().forEach(key -> {
+					parentColumnNames.add(key.getParentColumnName());
+					childColumnNames.add(key.getColumnName());
+				});
+				addChild(def.getName(), childDef.getChildName(), parentColumnNames, childColumnNames);
+			}
+		}
+	}
+
+	/**
+	 * Constructs an EntityCache for the given CMEObject types, without relationships between them (see addChild).
+	 * @param maxBytes Maximum estimated size of the cached CMEObjects, in bytes.
+	 * @param columnNames Map of CMEObject names to the names of their columns.
+	 * @param keyColumnNames Map of CMEObject names to the names of their key columns.
+	 * @note The CMEObject definitions come from the database, so tests describe their types this way instead.
+	 */
+	EntityCache(long maxBytes, Map<String, List<String>> columnNames, Map<String, List<String>> keyColumnNames) {
+		this.maxBytes = maxBytes;
+		this.windowMaxBytes = Math.max(1, maxBytes * WINDOW_PERCENT / 100);
+		this.protectedMaxBytes = (maxBytes - windowMaxBytes) * PROTECTED_PERCENT / 100;
+		this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(1024, maxBytes / AVERAGE_BYTES)));
+		this.columnNames = columnNames;
+		this.keyColumnNames = keyColumnNames;
+		logger.debug("Caching CMEObjects by key in " + maxBytes + " bytes");
+	}
+
+	/**
+	 * Records that the CMEObjects of the given child type are children of the CMEObjects of the given parent type
+	 * whose parent columns equal their child columns, so changing one drops the other.
+	 * @param parentName Name of the parent type.
+	 * @param childName Name of the child type.
+	 * @param parentColumnNames Names of the parent type's columns of the relationship.
+	 * @param childColumnNames Names of the child type's columns of the relationship, in the same order.
+	 */
+	void addChild(String parentName, String childName, List<String> parentColumnNames, List<String> childColumnNames) {
+		addRelationship(parentName, new Relationship(childName, childColumnNames, parentColumnNames));
+		addRelationship(childName, new Relationship(parentName, parentColumnNames, childColumnNames));
+	}
+
+	/**
+	 * Checks whether the given parameters are exactly the key of the given CMEObject type, and that the type is cached.
+	 * @param name Name of the CMEObject type.
+	 * @param params Parameters of a read.
+	 * @return true if the CMEObject read with the parameters can be cached; false otherwise.
+	 */
+	public boolean isCacheable(String name, Map<String, Object> params) {
+		if (getTtlMillis(name) <= 0) {
+			return false;
+		}
+		List<String> keyColumns = keyColumnNames.get(name);
+		if (keyColumns.isEmpty() || params.size() != keyColumns.size()) {
+			return false;
+		}
+		for (String columnName : keyColumns) {
+			if (params.get(columnName) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the cached CMEObject with the given key, loading and caching it if it isn't cached.
+	 * @param name Name of the CMEObject type.
+	 * @param params Values of the key columns. See isCacheable.
+	 * @param columns Names of the columns to return. If the List is empty or null, all columns are returned.
+	 * @param loader Loads the CMEObject with all of its columns, or returns null if it doesn't exist.
+	 * @return A copy of the CMEObject, or null if it doesn't exist.
+	 */
+	public CMEObject get(String name, Map<String, Object> params, List<String> columns, Supplier<CMEObject> loader) {
+		List<Object> key = getKey(name, params);
+		Stats typeStats = getStats(name);
+		long now = System.currentTimeMillis();
+		Entry entry;
+		synchronized (this) {
+			sketch.increment(key);
+			entry = getEntry(key);
+			if (entry != null && now >= entry.expiresMillis) {
+				remove(entry);
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			typeStats.hits.incrementAndGet();
+			return copy(entry.cmeObject, columns);
+		}
+		typeStats.misses.incrementAndGet();
+
+		//Don't cache a CMEObject loaded while it was being invalidated
+		AtomicLong typeGeneration = getGeneration(name);
+		long loadGeneration = typeGeneration.get();
+		CMEObject cmeObject = loader.get();
+		if (cmeObject == null) {
+			return null;
+		}
+		long ttlMillis = getTtlMillis(name);
+		if (ttlMillis > 0) {
+			Entry loaded = new Entry(key, cmeObject, columnNames.get(name), now + ttlMillis);
+			synchronized (this) {
+				if (typeGeneration.get() == loadGeneration) {
+					put(loaded);
+				}
+			}
+		}
+		return copy(cmeObject, columns);
+	}
+
+	/**
+	 * Drops the given CMEObject and the CMEObjects related to it.
+	 * This should be called whenever a CMEObject is updated or inserted.
+	 * @param name Name of the CMEObject's type.
+	 * @param cmeObject The CMEObject that changed, with at least its key columns.
+	 */
+	public void invalidate(String name, CMEObject cmeObject) {
+		Map<String, Object> values = new HashMap<>();
+		for (String columnName : columnNames.get(name)) {
+			Object value = cmeObject.getValue(columnName);
+			if (value != null) {
+				values.put(columnName, value);
+			}
+		}
+		invalidate(name, values);
+	}
+
+	/**
+	 * Drops the CMEObject with the given values and the CMEObjects related to it.
+	 * This should be called whenever a CMEObject is deleted, or changed when only its key is known.
+	 * @param name Name of the CMEObject's type.
+	 * @param values Values of the columns of the CMEObject that changed, with at least its key columns. The values
+	 * of the cached CMEObject are used for the columns that are missing.
+	 */
+	public void invalidate(String name, Map<String, Object> values) {
+		for (String columnName : keyColumnNames.get(name)) {
+			if (values.get(columnName) == null) {
+				invalidate(name);
+				return;
+			}
+		}
+		List<Object> key = getKey(name, values);
+		synchronized (this) {
+			invalidateGenerations(name);
+			List<Map<String, Object>> versions = new ArrayList<>();
+			Entry entry = getEntry(key);
+			if (entry != null) {
+				Map<String, Object> newValues = new HashMap<>(entry.values);
+				newValues.putAll(values);
+				versions.add(newValues);
+				//The relationship columns may have changed, so the CMEObjects related to the old version are dropped too
+				versions.add(entry.values);
+				remove(entry);
+			} else {
+				versions.add(values);
+			}
+			for (Relationship relationship : getRelationships(name)) {
+				for (Map<String, Object> version : versions) {
+					removeRelated(relationship, version);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops all CMEObjects of the given type and of the types related to it.
+	 * This should be called whenever CMEObjects of the type change and it isn't known which.
+	 * @param name Name of the CMEObject type that changed.
+	 */
+	public void invalidate(String name) {
+		synchronized (this) {
+			invalidateGenerations(name);
+			removeType(name);
+			for (Relationship relationship : getRelationships(name)) {
+				removeType(relationship.relatedName);
+			}
+		}
+		logger.debug("Invalidated cached CMEObjects of " + name + " and its related types");
+	}
+
+	/**
+	 * Removes all CMEObjects from the cache.
+	 */
+	public void clear() {
+		synchronized (this) {
+			generations.values().forEach(AtomicLong::incrementAndGet);
+			window.clear();
+			probation.clear();
+			protectedSegment.clear();
+			index.clear();
+			windowBytes = 0;
+			probationBytes = 0;
+			protectedBytes = 0;
+		}
+	}
+
+	/**
+	 * Gets the number of reads answered from the cache, per CMEObject type.
+	 * @return Map of CMEObject names to their cache hits.
+	 */
+	public Map<String, Long> getHits() {
+		Map<String, Long> hits = new TreeMap<>();
+		stats.forEach((name, typeStats) -> hits.put(name, typeStats.hits.get()));
+		return hits;
+	}
+
+	/**
+	 * Gets the number of reads that had to be loaded, per CMEObject type.
+	 * @return Map of CMEObject names to their cache misses.
+	 */
+	public Map<String, Long> getMisses() {
+		Map<String, Long> misses = new TreeMap<>();
+		stats.forEach((name, typeStats) -> misses.put(name, typeStats.misses.get()));
+		return misses;
+	}
+
+	/**
+	 * Gets the number of CMEObjects evicted to make room for others (not counting invalidated or expired ones).
+	 * @return The number of evictions.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the number of CMEObjects in the cache.
+	 * @return The number of cached CMEObjects.
+	 */
+	public synchronized int getSize() {
+		return window.size() + probation.size() + protectedSegment.size();
+	}
+
+	/**
+	 * Gets the estimated size of the CMEObjects in the cache.
+	 * @return The estimated size, in bytes.
+	 */
+	public synchronized long getBytes() {
+		return windowBytes + probationBytes + protectedBytes;
+	}
+
+	/**
+	 * Finds the entry with the given key and records that it was read: an entry read in probation is promoted to the
+	 * protected segment, demoting the protected segment's least recently read entries if it's full.
+	 * @param key Key of the entry.
+	 * @return The entry, or null if it isn't cached.
+	 */
+	private Entry getEntry(List<Object> key) {
+		Entry entry = window.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		entry = protectedSegment.get(key);
+		if (entry != null) {
+			return entry;
+		}
+		entry = probation.remove(key);
+		if (entry == null) {
+			return null;
+		}
+		probationBytes -= entry.bytes;
+		protectedSegment.put(key, entry);
+		protectedBytes += entry.bytes;
+		Iterator<Entry> protectedIterator = protectedSegment.values().iterator();
+		while (protectedBytes > protectedMaxBytes && protectedIterator.hasNext()) {
+			Entry demoted = protectedIterator.next();
+			if (demoted == entry) {
+				break;
+			}
+			protectedIterator.remove();
+			protectedBytes -= demoted.bytes;
+			probation.put(demoted.key, demoted);
+			probationBytes += demoted.bytes;
+		}
+		return entry;
+	}
+
+	/**
+	 * Adds an entry to the window, moving the window's least recently read entries to the main space if they are read
+	 * more often than the entries they would evict from it.
+	 * @param entry Entry to add.
+	 */
+	private void put(Entry entry) {
+		Entry existing = getEntry(entry.key);
+		if (existing != null) {
+			remove(existing);
+		}
+		if (entry.bytes > maxBytes - windowMaxBytes) {
+			return;
+		}
+		window.put(entry.key, entry);
+		windowBytes += entry.bytes;
+		addToIndex(entry);
+		Iterator<Entry> windowIterator = window.values().iterator();
+		while (windowBytes > windowMaxBytes && windowIterator.hasNext()) {
+			Entry candidate = windowIterator.next();
+			windowIterator.remove();
+			windowBytes -= candidate.bytes;
+			admit(candidate);
+		}
+	}
+
+	/**
+	 * Moves an entry leaving the window to probation if there's room for it, or if it's read more often than the
+	 * entries it would evict. Otherwise it is evicted itself.
+	 * @param candidate Entry leaving the window.
+	 */
+	private void admit(Entry candidate) {
+		long mainMaxBytes = maxBytes - windowMaxBytes;
+		int candidateFrequency = sketch.frequency(candidate.key);
+		List<Entry> victims = new ArrayList<>();
+		long freedBytes = 0;
+		Iterator<Entry> victimIterator = probation.values().iterator();
+		Iterator<Entry> protectedIterator = protectedSegment.values().iterator();
+		while (probationBytes + protectedBytes - freedBytes + candidate.bytes > mainMaxBytes) {
+			Entry victim = victimIterator.hasNext() ? victimIterator.next() : protectedIterator.next();
+			if (sketch.frequency(victim.key) >= candidateFrequency) {
+				removeFromIndex(candidate);
+				evictions.incrementAndGet();
+				return;
+			}
+			victims.add(victim);
+			freedBytes += victim.bytes;
+		}
+		for (Entry victim : victims) {
+			remove(victim);
+			evictions.incrementAndGet();
+		}
+		probation.put(candidate.key, candidate);
+		probationBytes += candidate.bytes;
+	}
+
+	/**
+	 * Removes an entry from whichever segment it's in, and from the index.
+	 * @param entry Entry to remove.
+	 */
+	private void remove(Entry entry) {
+		if (window.remove(entry.key) != null) {
+			windowBytes -= entry.bytes;
+		} else if (probation.remove(entry.key) != null) {
+			probationBytes -= entry.bytes;
+		} else if (protectedSegment.remove(entry.key) != null) {
+			protectedBytes -= entry.bytes;
+		}
+		removeFromIndex(entry);
+	}
+
+	/**
+	 * Adds an entry to the index, under its type and under the values of each list of its type's indexed columns.
+	 * @param entry Entry that was added to a segment.
+	 */
+	private void addToIndex(Entry entry) {
+		String name = (String) entry.key.get(0);
+		entry.indexKeys.add(Collections.<Object>singletonList(name));
+		for (List<String> columnNames : getIndexedColumnNames(name)) {
+			entry.indexKeys.add(EntityCache.getIndexKey(name, columnNames, KeyedSearch.getKey(columnNames, entry.values)));
+		}
+		for (List<Object> indexKey : entry.indexKeys) {
+			index.computeIfAbsent(indexKey, k -> new HashSet<>()).add(entry);
+		}
+	}
+
+	/**
+	 * Removes an entry from the index.
+	 * @param entry Entry that left the cache.
+	 */
+	private void removeFromIndex(Entry entry) {
+		for (List<Object> indexKey : entry.indexKeys) {
+			Set<Entry> entries = index.get(indexKey);
+			if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+				index.remove(indexKey);
+			}
+		}
+		entry.indexKeys.clear();
+	}
+
+	/**
+	 * Removes the entries of the related type of the given relationship whose relationship columns match the given
+	 * values. If the values don't have all of the relationship columns, all entries of the related type are removed.
+	 * @param relationship Relationship of the changed CMEObject's type to another type.
+	 * @param values Values of the columns of the changed CMEObject.
+	 */
+	private void removeRelated(Relationship relationship, Map<String, Object> values) {
+		List<Object> relatedValues = new ArrayList<>(relationship.columnNames.size());
+		for (String columnName : relationship.columnNames) {
+			Object value = values.get(columnName);
+			if (value == null) {
+				removeType(relationship.relatedName);
+				return;
+			}
+			relatedValues.add(KeyedSearch.normalizeKeyValue(value));
+		}
+		removeIndexed(EntityCache.getIndexKey(relationship.relatedName, relationship.relatedColumnNames, relatedValues));
+	}
+
+	/**
+	 * Removes all entries of the given type.
+	 * @param name Name of the CMEObject type.
+	 */
+	private void removeType(String name) {
+		removeIndexed(Collections.<Object>singletonList(name));
+	}
+
+	/**
+	 * Removes the entries under the given index key.
+	 * @param indexKey Index key. See index.
+	 */
+	private void removeIndexed(List<Object> indexKey) {
+		Set<Entry> entries = index.get(indexKey);
+		if (entries != null) {
+			new ArrayList<>(entries).forEach(this::remove);
+		}
+	}
+
+	/**
+	 * Records a relationship of the given type to another type, and that the other type's CMEObjects are found by the
+	 * relationship's columns.
+	 */
+	private void addRelationship(String name, Relationship relationship) {
+		relationships.computeIfAbsent(name, n -> new ArrayList<>()).add(relationship);
+		List<List<String>> columnNamesLists = indexedColumnNames.computeIfAbsent(relationship.relatedName, n -> new ArrayList<>());
+		if (!columnNamesLists.contains(relationship.relatedColumnNames)) {
+			columnNamesLists.add(relationship.relatedColumnNames);
+		}
+	}
+
+	/**
+	 * Gets the lists of columns the given type's CMEObjects are found by when a related CMEObject changes.
+	 */
+	private List<List<String>> getIndexedColumnNames(String name) {
+		List<List<String>> columnNamesLists = indexedColumnNames.get(name);
+		return columnNamesLists != null ? columnNamesLists : Collections.<List<String>>emptyList();
+	}
+
+	/**
+	 * Gets the invalidation counter of the given type.
+	 */
+	private AtomicLong getGeneration(String name) {
+		AtomicLong generation = generations.get(name);
+		if (generation == null) {
+			generation = generations.computeIfAbsent(name, n -> new AtomicLong());
+		}
+		return generation;
+	}
+
+	/**
+	 * Counts an invalidation of the given type and of the types related to it, whose CMEObjects it also drops.
+	 */
+	private void invalidateGenerations(String name) {
+		getGeneration(name).incrementAndGet();
+		for (Relationship relationship : getRelationships(name)) {
+			getGeneration(relationship.relatedName).incrementAndGet();
+		}
+	}
+
+	/**
+	 * Gets the relationships of the given type to other types.
+	 */
+	private List<Relationship> getRelationships(String name) {
+		List<Relationship> typeRelationships = relationships.get(name);
+		return typeRelationships != null ? typeRelationships : new ArrayList<>();
+	}
+
+	/**
+	 * Gets the hit and miss counters of the given type.
+	 */
+	private Stats getStats(String name) {
+		Stats typeStats = stats.get(name);
+		if (typeStats == null) {
+			typeStats = stats.computeIfAbsent(name, n -> new Stats());
+		}
+		return typeStats;
+	}
+
+	/**
+	 * Gets the time to live of the given type's CMEObjects, in milliseconds.
+	 */
+	private long getTtlMillis(String name) {
+		Long ttl = ttls.get(name);
+		if (ttl == null) {
+			long seconds = EntityCache.getLongProperty(PROPERTY_PREFIX + name + ".ttlSeconds",
+					EntityCache.getLongProperty(PROPERTY_PREFIX + "ttlSeconds", DEFAULT_TTL_SECONDS));
+			ttl = seconds * 1000;
+			ttls.put(name, ttl);
+		}
+		return ttl;
+	}
+
+	/**
+	 * Gets the cache key of a CMEObject: its type's name followed by its normalized key values.
+	 * @param name Name of the CMEObject type.
+	 * @param values Values of (at least) the key columns.
+	 * @return The cache key.
+	 */
+	private List<Object> getKey(String name, Map<String, Object> values) {
+		List<String> keyColumns = keyColumnNames.get(name);
+		List<Object> key = new ArrayList<>(keyColumns.size() + 1);
+		key.add(name);
+		for (String columnName : keyColumns) {
+			key.add(KeyedSearch.normalizeKeyValue(values.get(columnName)));
+		}
+		return key;
+	}
+
+	/**
+	 * Gets the index key of the CMEObjects of the given type whose given columns have the given values.
+	 * @param name Name of the CMEObject type.
+	 * @param columnNames Names of the columns.
+	 * @param values Normalized values of the columns, in the same order.
+	 * @return The index key.
+	 */
+	private static List<Object> getIndexKey(String name, List<String> columnNames, List<Object> values) {
+		List<Object> indexKey = new ArrayList<>(3);
+		indexKey.add(name);
+		indexKey.add(columnNames);
+		indexKey.add(values);
+		return indexKey;
+	}
+
+	/**
+	 * Copies the given columns of a cached CMEObject, so the caller can't change the one shared by every request.
+	 * @param cmeObject The cached CMEObject.
+	 * @param columns Names of the columns to copy. If the List is empty or null, all of its type's columns are copied.
+	 * @return The CMEObject to return to the caller.
+	 */
+	private CMEObject copy(CMEObject cmeObject, List<String> columns) {
+		if (columns == null || columns.isEmpty()) {
+			columns = columnNames.get(cmeObject.getType());
+		}
+		CMEObject copy = new CMEObject(cmeObject.getType());
+		for (String columnName : columns) {
+			copy.setValue(columnName, cmeObject.getValue(columnName));
+		}
+		return copy;
+	}
+
+	/**
+	 * Estimates the memory used by a CMEObject, from the lengths of its values.
+	 * @param columnNames Names of the columns of the CMEObject's type.
+	 * @param cmeObject The CMEObject.
+	 * @return The estimated size, in bytes.
+	 */
+	private static long estimateBytes(List<String> columnNames, CMEObject cmeObject) {
+		long bytes = 64;
+		for (String columnName : columnNames) {
+			Object value = cmeObject.getValue(columnName);
+			//A map entry, plus the value: a String's characters, or a boxed number
+			bytes += 48;
+			if (value instanceof String) {
+				bytes += 40 + 2 * ((String) value).length();
+			} else if (value != null) {
+				bytes += 32;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Gets the names of the columns of every CMEObject type.
+	 * @param keys true to get the names of the key columns only.
+	 * @return Map of CMEObject names to the names of their columns.
+	 */
+	private static Map<String, List<String>> getColumnNames(boolean keys) {
+		Map<String, List<String>> columnNames = new HashMap<>();
+		for (CMEObjectDef def : CMEObjectDef.getCMEObjectDefs().values()) {
+			List<String> names = new ArrayList<>();
+			for (CMEObjectColumnDef column : keys ? def.getKeyColumns() : def.getColumns()) {
+				names.add(column.getColumnName());
+			}
+			columnNames.put(def.getName(), names);
+		}
+		return columnNames;
+	}
+
+	/**
+	 * Gets a non-negative long setting from the system properties.
+	 * @param property Name of the system property.
+	 * @param defaultValue Value to use if the property isn't set.
+	 * @return The setting.
+	 */
+	private static long getLongProperty(String property, long defaultValue) {
+		String value = System.getProperty(property);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			long longValue = Long.parseLong(value.trim());
+			if (longValue >= 0) {
+				return longValue;
+			}
+		} catch (NumberFormatException e) {
+		}
+		logger.warn("Ignoring invalid entity cache setting " + property + "=" + value);
+		return defaultValue;
+	}
+
+	/**
+	 * A cached CMEObject.
+	 */
+	private static class Entry {
+		private final List<Object> key;
+		private final CMEObject cmeObject;
+		private final Map<String, Object> values = new HashMap<>();
+		private final List<List<Object>> indexKeys = new ArrayList<>();
+		private final long expiresMillis;
+		private final long bytes;
+
+		private Entry(List<Object> key, CMEObject cmeObject, List<String> columnNames, long expiresMillis) {
+			this.key = key;
+			this.cmeObject = cmeObject;
+			this.expiresMillis = expiresMillis;
+			this.bytes = EntityCache.estimateBytes(columnNames, cmeObject);
+			for (String columnName : columnNames) {
+				values.put(columnName, cmeObject.getValue(columnName));
+			}
+		}
+	}
+
+	/**
+	 * A CMEObjectChildDef seen from one of its two types: the other (related) type, and the columns of each type that
+	 * must be equal for two CMEObjects to be related.
+	 */
+	private static class Relationship {
+		private final String relatedName;
+		private final List<String> relatedColumnNames;
+		private final List<String> columnNames;
+
+		private Relationship(String relatedName, List<String> relatedColumnNames, List<String> columnNames) {
+			this.relatedName = relatedName;
+			this.relatedColumnNames = relatedColumnNames;
+			this.columnNames = columnNames;
+		}
+	}
+
+	/**
+	 * Hit and miss counters of one CMEObject type.
+	 */
+	private static class Stats {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+	}
+
+	/**
+	 * Count-min sketch of how often keys were read recently, with four 4-bit counters per key (so counts stop at 15).
+	 * Every counter is halved after 10 reads per counter, so the counts follow changes in what is read.
+	 */
+	private static class FrequencySketch {
+		private static final int MAX_COUNT = 15;
+		private static final int[] SEEDS = { 0x97cb3127, 0xb2ad3f4d, 0x5e4c8f1b, 0x2c1b3c6d };
+
+		private final byte[] counters;
+		private final int mask;
+		private final int sampleSize;
+		private int additions;
+
+		private FrequencySketch(int expectedKeys) {
+			int width = Integer.highestOneBit(Math.max(expectedKeys - 1, 1)) << 1;
+			this.counters = new byte[width];
+			this.mask = width - 1;
+			this.sampleSize = 10 * width;
+		}
+
+		/**
+		 * Counts a read of the given key.
+		 */
+		private void increment(Object key) {
+			int hash = spread(key.hashCode());
+			boolean added = false;
+			for (int seed : SEEDS) {
+				int index = indexOf(hash, seed);
+				if (counters[index] < MAX_COUNT) {
+					counters[index]++;
+					added = true;
+				}
+			}
+			if (added && ++additions >= sampleSize) {
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] >>= 1;
+				}
+				additions /= 2;
+			}
+		}
+
+		/**
+		 * Estimates how often the given key was read recently.
+		 */
+		private int frequency(Object key) {
+			int hash = spread(key.hashCode());
+			int frequency = MAX_COUNT;
+			for (int seed : SEEDS) {
+				frequency = Math.min(frequency, counters[indexOf(hash, seed)]);
+			}
+			return frequency;
+		}
+
+		private int indexOf(int hash, int seed) {
+			int h = (hash ^ seed) * 0x9e3779b9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private static int spread(int hash) {
+			hash = (hash ^ (hash >>> 16)) * 0x45d9f3b;
+			return hash ^ (hash >>> 16);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.misys.cme.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Children to expand, as a tree of child reference names, from paths like "addresses,obligorNumbers.state": the
+ * addresses of each CMEObject, its obligorNumbers, and the state of each of those. Only the children on a path are
+ * searched for and expanded. The other children of the CMEObjects on a path are linked to, as with "link", so they
+ * cost no searches.
+ * The paths are given in the "expand" query parameter (or search body field, as a String or an array of Strings), or
+ * after "expand:" in "references", e.g. references=expand:addresses,obligorNumbers.state. They are checked against the
+ * CMEObjectChildDefs of each type on the path when they are parsed, once per request.
+ */
+public class ExpansionPaths {
+	/**
+	 * Query parameter (and search body field) holding the paths of the children to expand.
+	 */
+	public static final String EXPAND_PARAMETER = "expand";
+
+	/**
+	 * Prefix of a references value that is followed by the paths of the children to expand.
+	 */
+	public static final String REFERENCES_PREFIX = "expand:";
+
+	private String path;
+	private Map<String, ExpansionPaths> children = new LinkedHashMap<>();
+
+	/**
+	 * Constructs the ExpansionPaths of the given paths, checking them against the CMEObject type's definition.
+	 * @param name Name of the CMEObject type whose children are expanded.
+	 * @param paths Paths of child reference names separated by ".". Each may also be a list of paths separated by ",".
+	 */
+	public ExpansionPaths(String name, List<String> paths) {
+		this("");
+		for (String pathList : paths) {
+			for (String path : pathList.split(",", -1)) {
+				add(name, path.trim());
+			}
+		}
+		if (children.isEmpty()) {
+			throw new RuntimeException("\"" + EXPAND_PARAMETER + "\" must name at least one child to expand!");
+		}
+	}
+
+	private ExpansionPaths(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * Parses the children to expand from the references and expand parameters of a request.
+	 * @param name Name of the CMEObject type whose children are expanded.
+	 * @param references Value of the references parameter. May be null.
+	 * @param expand Values of the expand parameter. May be null.
+	 * @return The ExpansionPaths, or null if neither parameter names children to expand, in which case references
+	 * applies to every child.
+	 */
+	public static ExpansionPaths parse(String name, String references, List<String> expand) {
+		if (references != null && references.startsWith(REFERENCES_PREFIX)) {
+			if (expand != null) {
+				throw new RuntimeException("Give the children to expand in \"references\" or in \"" + EXPAND_PARAMETER + "\", not both!");
+			}
+			List<String> paths = new ArrayList<>();
+			paths.add(references.substring(REFERENCES_PREFIX.length()));
+			return new ExpansionPaths(name, paths);
+		}
+		if (expand == null) {
+			return null;
+		}
+		if (references != null && references.length() > 0 && !references.equals("expand")) {
+			throw new RuntimeException("\"" + EXPAND_PARAMETER + "\" can't be used with references=" + references + "!");
+		}
+		return new ExpansionPaths(name, expand);
+	}
+
+	/**
+	 * Gets the paths given in the expand field of a search body.
+	 * @param expandJSON The field: a String of paths separated by ",", or an array of them. May be null.
+	 * @return The paths, or null if the field wasn't given.
+	 */
+	public static List<String> getPaths(JsonNode expandJSON) {
+		if (expandJSON == null || expandJSON.isNull()) {
+			return null;
+		}
+		List<String> paths = new ArrayList<>();
+		if (expandJSON.isTextual()) {
+			paths.add(expandJSON.asText());
+		} else if (expandJSON.isArray()) {
+			for (JsonNode pathJSON : expandJSON) {
+				if (!pathJSON.isTextual()) {
+					throw new RuntimeException("Every element of \"" + EXPAND_PARAMETER + "\" must be a path like \"obligorNumbers.state\"!");
+				}
+				paths.add(pathJSON.asText());
+			}
+		} else {
+			throw new RuntimeException("\"" + EXPAND_PARAMETER + "\" must be a path like \"obligorNumbers.state\" or an array of them!");
+		}
+		return paths;
+	}
+
+	/**
+	 * Checks whether the child with the given reference name is on a path.
+	 * @param refColName Reference name of the child, as in its CMEObjectChildDef.
+	 * @return true if the child is expanded; false if it is linked to.
+	 */
+	public boolean isExpanded(String refColName) {
+		return children.containsKey(refColName);
+	}
+
+	/**
+	 * Gets the children to expand below the child with the given reference name.
+	 * @param refColName Reference name of the child, as in its CMEObjectChildDef.
+	 * @return The ExpansionPaths of the child's own children, or null if the child isn't on a path. Its children are
+	 * all linked to if it is the end of its paths.
+	 */
+	public ExpansionPaths getChild(String refColName) {
+		return children.get(refColName);
+	}
+
+	/**
+	 * Gets the path of the children these are the ExpansionPaths of.
+	 * @return The path, e.g. "obligorNumbers" for the children below obligorNumbers.state. "" for the CMEObjects
+	 * of the response.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Gets the paths of the children to expand, the way they would be given in the expand parameter.
+	 * @return The paths separated by ",", e.g. "addresses,obligorNumbers.state".
+	 */
+	@Override
+	public String toString() {
+		List<String> paths = new ArrayList<>();
+		addPaths(paths);
+		return String.join(",", paths);
+	}
+
+	/**
+	 * Adds a path below this, checking each child reference name on it against the definition of its parent type.
+	 * @param name Name of the CMEObject type of this.
+	 * @param path Path of child reference names separated by ".".
+	 */
+	private void add(String name, String path) {
+		ExpansionPaths paths = this;
+		String typeName = name;
+		for (String refColName : path.split("\\.", -1)) {
+			if (refColName.isEmpty()) {
+				throw new RuntimeException("\"" + path + "\" is not a path of child names separated by \".\"!");
+			}
+			CMEObjectChildDef child = ExpansionPaths.getChildDef(typeName, refColName);
+			ExpansionPaths childPaths = paths.children.get(refColName);
+			if (childPaths == null) {
+				childPaths = new ExpansionPaths(paths.path.isEmpty() ? refColName : paths.path + "." + refColName);
+				paths.children.put(refColName, childPaths);
+			}
+			paths = childPaths;
+			typeName = child.getChildName();
+		}
+	}
+
+	/**
+	 * Adds the paths below this that end at a child with no children to expand.
+	 * @param paths[in,out] List to add the paths to.
+	 */
+	private void addPaths(List<String> paths) {
+		for (ExpansionPaths childPaths : children.values()) {
+			if (childPaths.children.isEmpty()) {
+				paths.add(childPaths.path);
+			} else {
+				childPaths.addPaths(paths);
+			}
+		}
+	}
+
+	/**
+	 * Gets the CMEObjectChildDef of the given CMEObject type with the given reference name, checking that it exists.
+	 */
+	private static CMEObjectChildDef getChildDef(String name, String refColName) {
+		for (CMEObjectChildDef child : CMEObjectDef.getCmeObjDef(name).getChildDefs()) {
+			if (child.getRefColName().equals(refColName)) {
+				return child;
+			}
+		}
+		throw new RuntimeException("Cannot expand \"" + refColName + "\", since it is not a child of " + name + "!");
+	}
+}
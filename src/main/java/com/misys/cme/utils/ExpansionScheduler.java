@@ -0,0 +1,177 @@
+package com.misys.cme.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the independent branches of a child expansion (one per CMEObjectChildDef of the parents) at the same time, so
+ * a CMEObject with several child types doesn't wait for their searches one after the other.
+ * The branches of a request are split into at most CMEAPI.expansion.parallelism lanes. The first lane runs on the
+ * request's thread, and the others on a pool of CMEAPI.expansion.threads threads shared by all requests. Lanes the pool
+ * hasn't started by the time the request's thread is done with its own are run on the request's thread too, so a busy
+ * pool only makes expansion slower, never stuck. The results are returned in the order of the branches, whatever order
+ * they finish in.
+ * A request stops waiting for its branches CMEAPI.expansion.timeoutMillis after it starts expanding. The branches that
+ * haven't finished by then are cancelled, and their children are linked to instead (see ChildExpander).
+ */
+public class ExpansionScheduler {
+	private static Logger logger = LogManager.getLogger(ExpansionScheduler.class);
+
+	/**
+	 * Prefix of the system properties that configure child expansion.
+	 */
+	private static final String PROPERTY_PREFIX = "CMEAPI.expansion.";
+
+	/**
+	 * Number of threads shared by all requests if no system property sets it.
+	 */
+	public static final int DEFAULT_THREADS = 16;
+
+	/**
+	 * Number of branches a request runs at once if no system property sets it.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * Time a request may spend expanding children if no system property sets it.
+	 */
+	public static final int DEFAULT_TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * Number of lanes that may wait for a thread.
+	 */
+	private static final int QUEUE_DEPTH = 256;
+
+	private static final int parallelism = ExpansionScheduler.getIntProperty("parallelism", DEFAULT_PARALLELISM);
+	private static final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+			ExpansionScheduler.getIntProperty("timeoutMillis", DEFAULT_TIMEOUT_MILLIS));
+	private static final ThreadPoolExecutor executor;
+
+	static {
+		int threads = ExpansionScheduler.getIntProperty("threads", DEFAULT_THREADS);
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_DEPTH), new Bulkhead.NamedThreadFactory("CMEAPI-expansion"));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets the time by which an expansion started now must finish.
+	 * @return The deadline, as a value of System.nanoTime().
+	 */
+	public static long getDeadlineNanos() {
+		return System.nanoTime() + timeoutNanos;
+	}
+
+	/**
+	 * Runs the given branches, at most CMEAPI.expansion.parallelism at a time, and waits for all of them until the
+	 * deadline.
+	 * @param name Name of the CMEObject type whose children are expanded, for log messages.
+	 * @param branches Branches to run. They must not depend on each other, and should check the deadline themselves,
+	 * since the branches of the request's thread can't be stopped.
+	 * @param deadlineNanos Time by which all branches must finish, as a value of System.nanoTime(). See getDeadlineNanos.
+	 * @return The result of each branch, in the order of the branches. The result is null for a branch that didn't
+	 * finish by the deadline, in which case it is cancelled.
+	 */
+	public static <T> List<T> invokeAll(String name, List<Callable<T>> branches, long deadlineNanos) {
+		List<T> results = new ArrayList<>(Collections.nCopies(branches.size(), (T) null));
+		int laneCount = Math.min(parallelism, branches.size());
+		RequestTimer timer = RequestTimer.current();
+		List<FutureTask<List<T>>> lanes = new ArrayList<>(laneCount);
+		for (int lane = 0; lane < laneCount; lane++) {
+			int firstBranch = lane;
+			lanes.add(new FutureTask<List<T>>(() -> {
+				//Branches of a lane run one after the other, and only the lane that runs them writes their results
+				List<T> laneResults = new ArrayList<>();
+				for (int i = firstBranch; i < branches.size(); i += laneCount) {
+					laneResults.add(branches.get(i).call());
+				}
+				return laneResults;
+			}));
+		}
+		for (FutureTask<List<T>> lane : lanes.subList(1, laneCount)) {
+			try {
+				executor.execute(() -> {
+					RequestTimer.attach(timer);
+					try {
+						lane.run();
+					} finally {
+						RequestTimer.clear();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				logger.debug("Expansion pool is full, so a lane of " + name + " runs on the request's thread");
+			}
+		}
+		try {
+			lanes.get(0).run();
+			for (int lane = 0; lane < laneCount; lane++) {
+				FutureTask<List<T>> task = lanes.get(lane);
+				if (!task.isDone() && System.nanoTime() < deadlineNanos) {
+					//Not started by the pool yet (or rejected by it), so run it here rather than wait
+					task.run();
+				}
+				List<T> laneResults;
+				try {
+					laneResults = task.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					task.cancel(true);
+					logger.debug("Cancelled a lane of " + name + " at the deadline of "
+							+ TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+					continue;
+				}
+				for (int b = 0; b < laneResults.size(); b++) {
+					results.set(lane + b * laneCount, laneResults.get(b));
+				}
+			}
+		} catch (InterruptedException e) {
+			lanes.forEach(lane -> lane.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while expanding the children of " + name + "!", e);
+		} catch (CancellationException e) {
+			lanes.forEach(lane -> lane.cancel(true));
+			throw new RuntimeException("Expanding the children of " + name + " was cancelled!", e);
+		} catch (ExecutionException e) {
+			lanes.forEach(lane -> lane.cancel(true));
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * Gets a positive integer setting from the system properties.
+	 * @param setting Name of the setting, e.g. "threads".
+	 * @param defaultValue Value to use if the property isn't set.
+	 * @return The setting.
+	 */
+	private static int getIntProperty(String setting, int defaultValue) {
+		String value = System.getProperty(PROPERTY_PREFIX + setting);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			int intValue = Integer.parseInt(value.trim());
+			if (intValue > 0) {
+				return intValue;
+			}
+		} catch (NumberFormatException e) {
+		}
+		logger.warn("Ignoring invalid expansion setting " + PROPERTY_PREFIX + setting + "=" + value);
+		return defaultValue;
+	}
+}
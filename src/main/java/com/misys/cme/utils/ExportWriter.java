@@ -0,0 +1,309 @@
+package com.misys.cme.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Writes search results one row at a time in an export format, for clients that read large result sets as a stream
+ * instead of as one JSON array:
+ * <ul>
+ * <li>application/x-ndjson: each CMEObject's JSON (the same object as in a JSON array of results) on its own line.
+ * A key of a multi-get that wasn't found is written as {"found": false, "key": {...}}, as in the JSON array, and rows
+ * that couldn't be written as a last {"_error": ...} line.</li>
+ * <li>text/csv: a header line with the column names, then one line per CMEObject with its column values, quoted as in
+ * RFC 4180. Child objects aren't written. A key of a multi-get that wasn't found is written as a line of empty fields,
+ * so each line still matches the id at its position. If the rows can't all be written, the response is aborted.</li>
+ * </ul>
+ * The CSV columns are the columns of the type's CMEObjectDef, in definition order: the requested ones if columns were
+ * requested; otherwise the visible ones.
+ */
+public abstract class ExportWriter {
+	/**
+	 * Media type of newline delimited JSON.
+	 */
+	public static final MediaType NDJSON_TYPE = MediaType.valueOf("application/x-ndjson");
+
+	/**
+	 * Media type of comma separated values.
+	 */
+	public static final MediaType CSV_TYPE = MediaType.valueOf("text/csv");
+
+	/**
+	 * Checks whether the given media type is one of the export formats.
+	 * @param mediaType Media type of a response. May be null.
+	 * @return true if the media type is NDJSON or CSV; false otherwise.
+	 */
+	public static boolean isExportType(MediaType mediaType) {
+		if (mediaType == null || mediaType.isWildcardType() || mediaType.isWildcardSubtype()) {
+			return false;
+		}
+		return NDJSON_TYPE.isCompatible(mediaType) || CSV_TYPE.isCompatible(mediaType);
+	}
+
+	/**
+	 * Creates an ExportWriter for the given media type.
+	 * @param mediaType An export media type. See isExportType.
+	 * @param output OutputStream of the HTTP response.
+	 * @param name Name of the CMEObject type written, for the CSV header. If null, it is taken from the first row.
+	 * @param columns Requested columns, for the CSV header. If null, they are taken from the values of the first row.
+	 * @return A new ExportWriter.
+	 */
+	public static ExportWriter create(MediaType mediaType, OutputStream output, String name, List<String> columns) throws IOException {
+		if (CSV_TYPE.isCompatible(mediaType)) {
+			return new CsvWriter(output, name, columns);
+		} else if (NDJSON_TYPE.isCompatible(mediaType)) {
+			return new NdjsonWriter(output);
+		}
+		throw new RuntimeException("\"" + mediaType + "\" is not an export format!");
+	}
+
+	/**
+	 * Writes a JSON array of CMEObjects, e.g. a cached response, one row at a time.
+	 * @param results JSON array of CMEObjects, as written by CMEObjectStreamingOutput.
+	 * @param mediaType An export media type. See isExportType.
+	 * @param output OutputStream of the HTTP response.
+	 */
+	public static void writeAll(JsonNode results, MediaType mediaType, OutputStream output) throws IOException {
+		String name = null;
+		for (JsonNode node : results) {
+			if (node.has("type")) {
+				name = node.get("type").asText();
+				break;
+			}
+		}
+		ExportWriter exportWriter = ExportWriter.create(mediaType, output, name, null);
+		for (JsonNode node : results) {
+			if (node.has("found")) {
+				exportWriter.writeMissing(node.get("key"));
+			} else {
+				exportWriter.writeRow((ObjectNode) node);
+			}
+		}
+		exportWriter.finish();
+	}
+
+	/**
+	 * Writes a row.
+	 * @param node JSON of a CMEObject, with its "type", "values" and "href".
+	 */
+	public abstract void writeRow(ObjectNode node) throws IOException;
+
+	/**
+	 * Writes the row of a multi-get key that wasn't found.
+	 * @param key The key, as a JSON object of key column name to value.
+	 */
+	public abstract void writeMissing(JsonNode key) throws IOException;
+
+	/**
+	 * Marks that the rows after the ones written so far couldn't be written, and sends them to the client.
+	 * @param message Message of the marker. See CMEObjectStreamingOutput.ERROR_FIELD.
+	 * @throws IOException if the format has no way to mark it, so that the response is aborted rather than look
+	 * complete.
+	 */
+	public abstract void writeError(String message) throws IOException;
+
+	/**
+	 * Sends the rows written so far to the client.
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * Finishes writing, after the last row.
+	 */
+	public abstract void finish() throws IOException;
+
+	/**
+	 * Writes each row as a line of JSON.
+	 */
+	private static class NdjsonWriter extends ExportWriter {
+		private JsonGenerator generator;
+
+		private NdjsonWriter(OutputStream output) throws IOException {
+			this.generator = JsonCodec.createGenerator(output);
+			//Each row ends with its own line break, so no separator is needed between them
+			this.generator.setRootValueSeparator(null);
+		}
+
+		@Override
+		public void writeRow(ObjectNode node) throws IOException {
+			JsonCodec.getMapper().writeTree(generator, node);
+			generator.writeRaw('\n');
+		}
+
+		@Override
+		public void writeMissing(JsonNode key) throws IOException {
+			generator.writeStartObject();
+			generator.writeBooleanField("found", false);
+			generator.writeFieldName("key");
+			JsonCodec.getMapper().writeTree(generator, key);
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+		}
+
+		@Override
+		public void writeError(String message) throws IOException {
+			generator.writeStartObject();
+			generator.writeStringField(CMEObjectStreamingOutput.ERROR_FIELD, message);
+			generator.writeEndObject();
+			generator.writeRaw('\n');
+			generator.flush();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			generator.flush();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			generator.flush();
+		}
+	}
+
+	/**
+	 * Writes each row as a line of CSV, after a header line.
+	 */
+	private static class CsvWriter extends ExportWriter {
+		private Writer writer;
+		private String name;
+		private List<String> requestedColumns;
+		private List<String> columns;
+
+		private CsvWriter(OutputStream output, String name, List<String> requestedColumns) {
+			this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			this.name = name;
+			this.requestedColumns = requestedColumns;
+		}
+
+		@Override
+		public void writeRow(ObjectNode node) throws IOException {
+			JsonNode values = node.path("values");
+			if (columns == null) {
+				if (name == null) {
+					name = node.path("type").asText();
+				}
+				if (requestedColumns == null) {
+					requestedColumns = new ArrayList<>();
+					values.fieldNames().forEachRemaining(requestedColumns::add);
+				}
+				writeHeader();
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeValue(values.get(columns.get(i)));
+			}
+			writer.write("\r\n");
+		}
+
+		@Override
+		public void writeMissing(JsonNode key) throws IOException {
+			if (columns == null && name != null) {
+				writeHeader();
+			}
+			for (int i = 1; columns != null && i < columns.size(); i++) {
+				writer.write(',');
+			}
+			writer.write("\r\n");
+		}
+
+		@Override
+		public void writeError(String message) throws IOException {
+			//Any line would read as a row, so the response is cut off instead
+			writer.flush();
+			throw new IOException(message + ", so the CSV export was cut off!");
+		}
+
+		@Override
+		public void flush() throws IOException {
+			writer.flush();
+		}
+
+		@Override
+		public void finish() throws IOException {
+			if (columns == null && name != null) {
+				writeHeader();
+			}
+			writer.flush();
+		}
+
+		/**
+		 * Picks the columns from the CMEObjectDef and writes their names.
+		 */
+		private void writeHeader() throws IOException {
+			CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+			if (def == null) {
+				throw new RuntimeException("There is no CMEObject type \"" + name + "\"!");
+			}
+			Set<String> requested = new HashSet<>();
+			if (requestedColumns != null) {
+				requested.addAll(requestedColumns);
+			}
+			columns = new ArrayList<>();
+			for (CMEObjectColumnDef column : def.getColumns()) {
+				String columnName = column.getColumnName();
+				if (requested.isEmpty() ? column.isVisible() : requested.contains(columnName)) {
+					columns.add(columnName);
+				}
+			}
+			for (int i = 0; i < columns.size(); i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeText(columns.get(i));
+			}
+			writer.write("\r\n");
+		}
+
+		/**
+		 * Writes a column value. NULL is written as an empty field.
+		 */
+		private void writeValue(JsonNode value) throws IOException {
+			if (value == null || value.isNull()) {
+				return;
+			}
+			if (value.isBigDecimal()) {
+				writer.write(value.decimalValue().toPlainString());
+			} else if (value.isValueNode()) {
+				writeText(value.asText());
+			} else {
+				writeText(value.toString());
+			}
+		}
+
+		/**
+		 * Writes text, quoted if it has a comma, quote or line break.
+		 */
+		private void writeText(String text) throws IOException {
+			boolean quote = false;
+			for (int i = 0; i < text.length() && !quote; i++) {
+				char c = text.charAt(i);
+				quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+			}
+			if (!quote) {
+				writer.write(text);
+				return;
+			}
+			writer.write('"');
+			writer.write(text.replace("\"", "\"\""));
+			writer.write('"');
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.misys.cme.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed bucket bounds that can be recorded to from many threads without locking.
+ * Each bucket is a LongAdder, so recording a value is a binary search and two uncontended increments.
+ * Values are recorded as longs in the histogram's unit (e.g. nanoseconds) and written out divided by a scale (e.g. as
+ * seconds), the way Prometheus expects them.
+ */
+public class Histogram {
+	/**
+	 * Bucket bounds for latencies recorded in nanoseconds: 0.5ms to 30s, roughly 2.5x apart.
+	 */
+	public static final long[] LATENCY_NANOS_BOUNDS = {
+		500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L,
+		250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L, 30_000_000_000L
+	};
+
+	/**
+	 * Scale that turns nanoseconds into seconds.
+	 */
+	public static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+	/**
+	 * Bucket bounds for counts such as rows per response: 0 to 10000, roughly 2.5x apart.
+	 */
+	public static final long[] COUNT_BOUNDS = {
+		0L, 1L, 2L, 5L, 10L, 25L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L
+	};
+
+	private final long[] bounds;
+	private final double scale;
+	private final LongAdder[] buckets;
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * Constructs a Histogram with the given bucket bounds.
+	 * @param bounds Inclusive upper bounds of the buckets, in ascending order. Larger values go in a +Inf bucket.
+	 * @param scale Number the values are divided by when written out.
+	 */
+	public Histogram(long[] bounds, double scale) {
+		this.bounds = bounds;
+		this.scale = scale;
+		this.buckets = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records a value.
+	 * @param value The value, in the histogram's unit.
+	 */
+	public void record(long value) {
+		int index = Arrays.binarySearch(bounds, value);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		buckets[index].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * Writes the histogram in Prometheus text format.
+	 * @param name Name of the metric, without the _bucket, _sum and _count suffixes.
+	 * @param labels Labels of the histogram, e.g. {resource="Entity"}, or "" for none.
+	 * @param output[in,out] StringBuilder to write to.
+	 * @note Buckets are read one at a time, so a value recorded while writing may be in _count but not in a bucket.
+	 */
+	public void write(String name, String labels, StringBuilder output) {
+		String labelPrefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			count += buckets[i].sum();
+			String bound = i < bounds.length ? Metrics.formatNumber(bounds[i] / scale) : "+Inf";
+			output.append(name).append("_bucket").append(labelPrefix).append("le=\"").append(bound).append("\"} ")
+					.append(count).append('\n');
+		}
+		output.append(name).append("_sum").append(labels).append(' ').append(Metrics.formatNumber(sum.sum() / scale))
+				.append('\n');
+		output.append(name).append("_count").append(labels).append(' ').append(count).append('\n');
+	}
+}
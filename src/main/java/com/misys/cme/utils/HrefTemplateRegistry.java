@@ -0,0 +1,252 @@
+package com.misys.cme.utils;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Holds precompiled href URL templates for the API classes of every CMEObject type.
+ * The paths of the get and search methods are resolved once, when the registry is built, and split into literal text
+ * and key slots, so building an href is just appending the literals and the encoded key values.
+ */
+public class HrefTemplateRegistry {
+	private static Logger logger = LogManager.getLogger(HrefTemplateRegistry.class);
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private Map<String, HrefTemplate> getTemplates = new HashMap<String, HrefTemplate>();
+	private Map<String, String> searchPaths = new HashMap<String, String>();
+	private Map<String, Class<?>> classMap;
+
+	/**
+	 * Constructs a HrefTemplateRegistry for the given API classes.
+	 * @param classMap Map of CMEObject names to the classes that handle API requests for the CMEObjects.
+	 */
+	public HrefTemplateRegistry(Map<String, Class<?>> classMap) {
+		this.classMap = classMap;
+		for (Map.Entry<String, Class<?>> entry : classMap.entrySet()) {
+			String name = entry.getKey();
+			Class<?> clazz = entry.getValue();
+			if (getFirstMethodWithName(clazz, "get" + name) != null) {
+				HrefTemplate template = new HrefTemplate(getMethodPath(clazz, "get" + name));
+				List<String> slots = Arrays.asList(template.slots);
+				for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+					if (!slots.contains(column.getColumnName())) {
+						logger.warn("The path of get" + name + " has no slot for key column \"" + column.getColumnName() + "\"!");
+					}
+				}
+				getTemplates.put(name, template);
+			}
+			if (getFirstMethodWithName(clazz, "search" + name) != null) {
+				searchPaths.put(name, getMethodPath(clazz, "search" + name));
+			}
+		}
+		logger.debug("Compiled href templates: " + getTemplates.keySet());
+	}
+
+	/**
+	 * Gets the URL for getting (i.e. reading) the given CMEObject with the given base URL.
+	 * @param cmeObject CMEObject to get the URL for.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @return The URL as a String.
+	 */
+	public String getURLFromCMEObject(CMEObject cmeObject, String baseUrl) {
+		HrefTemplate template = getGetTemplate(cmeObject.getType());
+		StringBuilder url = new StringBuilder(baseUrl.length() + template.length + 16);
+		url.append(baseUrl).append(template.literals[0]);
+		for (int i = 0; i < template.slots.length; i++) {
+			appendEncoded(url, cmeObject.getValue(template.slots[i]), false);
+			url.append(template.literals[i + 1]);
+		}
+		return url.toString();
+	}
+
+	/**
+	 * Creates a URL from the given base URL, CMEObject name, and parsed query params.
+	 * If the params contain all of the key columns of the CMEObject, the URL of the get method is created. Otherwise,
+	 * the URL of the search method is created with the params as query params.
+	 * @param name Name of the CMEObject to use the base path from.
+	 * @param baseUrl Base URL the client is using to interact with the API.
+	 * @param params Parsed parameters from the query params?
+	 * @return The URL as a String.
+	 */
+	public String getURLFromTypeParams(String name, String baseUrl, Map<String, Object> params) {
+		CMEObjectDef objectDefinition = CMEObjectDef.getCmeObjDef(name);
+		StringBuilder url = new StringBuilder(baseUrl.length() + 64);
+		url.append(baseUrl);
+		if (objectDefinition.containsAllKeyColumns(params.keySet())) {
+			HrefTemplate template = getGetTemplate(name);
+			url.append(template.literals[0]);
+			for (int i = 0; i < template.slots.length; i++) {
+				appendEncoded(url, params.get(template.slots[i]), false);
+				url.append(template.literals[i + 1]);
+			}
+		} else {
+			String searchPath = searchPaths.get(name);
+			if (searchPath == null) {
+				throw new RuntimeException("Class \"" + classMap.get(name) + "\" has no method \"search" + name + "\"!");
+			}
+			url.append(searchPath);
+			char separator = '?';
+			for (Map.Entry<String, Object> entry : params.entrySet()) {
+				url.append(separator);
+				appendEncoded(url, entry.getKey(), true);
+				url.append('=');
+				appendEncoded(url, entry.getValue(), true);
+				separator = '&';
+			}
+		}
+		return url.toString();
+	}
+
+	/**
+	 * Gets the template for the get method of the given CMEObject type.
+	 * @param name Name of the CMEObject type.
+	 * @return The HrefTemplate.
+	 */
+	private HrefTemplate getGetTemplate(String name) {
+		HrefTemplate template = getTemplates.get(name);
+		if (template == null) {
+			throw new RuntimeException("Class \"" + classMap.get(name) + "\" has no method \"get" + name + "\"!");
+		}
+		return template;
+	}
+
+	/**
+	 * Gets the URL path template of the given method, relative to the base URL (i.e. without a leading '/').
+	 * @param clazz Class containing the method.
+	 * @param methodName Name of the method.
+	 * @return The path template, e.g. "entities/{ent_id}".
+	 */
+	private static String getMethodPath(Class<?> clazz, String methodName) {
+		UriBuilder uriBuilder = UriBuilder.fromResource(clazz);
+		Method method = getFirstMethodWithName(clazz, methodName);
+		if (method.isAnnotationPresent(javax.ws.rs.Path.class)) {
+			uriBuilder.path(clazz, methodName);
+		}
+		String path = uriBuilder.toTemplate();
+		if (path.length() > 0 && path.charAt(0) == '/') {
+			path = path.substring(1, path.length());
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the first Method with the given name from the given Class.
+	 * @param clazz Class to get the Method from.
+	 * @param methodName Name of the Method to get.
+	 * @return The first Method found with the given name, or null if there is none.
+	 */
+	private static Method getFirstMethodWithName(Class<?> clazz, String methodName) {
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (method.getName().equals(methodName)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Appends the given value to the given StringBuilder, percent-encoding any characters that aren't allowed in a path
+	 * segment or query param.
+	 * @param url[in,out] StringBuilder to append to.
+	 * @param value Value to append. null is appended as an empty String.
+	 * @param isQuery true to encode for a query param; false to encode for a path segment.
+	 */
+	private static void appendEncoded(StringBuilder url, Object value, boolean isQuery) {
+		if (value == null) {
+			return;
+		}
+		String text = value.toString();
+		int length = text.length();
+		int i = 0;
+		while (i < length && isAllowed(text.charAt(i), isQuery)) {
+			i++;
+		}
+		if (i == length) {
+			url.append(text);
+			return;
+		}
+		url.append(text, 0, i);
+		for (byte b : text.substring(i).getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xFF);
+			if (c < 0x80 && isAllowed(c, isQuery)) {
+				url.append(c);
+			} else {
+				url.append('%').append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the given character can appear unencoded in a path segment or query param.
+	 * @param c Character to check.
+	 * @param isQuery true to check for a query param; false to check for a path segment.
+	 * @return true if the character doesn't need to be encoded; false otherwise.
+	 */
+	private static boolean isAllowed(char c, boolean isQuery) {
+		if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+			return true;
+		}
+		switch (c) {
+			case '-': case '.': case '_': case '~':
+			case '!': case '$': case '\'': case '(': case ')': case '*': case ',': case ';': case ':': case '@':
+				return true;
+			case '&': case '=': case '+':
+				return !isQuery;
+			case '/': case '?':
+				return isQuery;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * A URL path template split into literal text and the names of the key slots between them.
+	 */
+	private static class HrefTemplate {
+		private String[] literals;
+		private String[] slots;
+		private int length;
+
+		/**
+		 * Constructs a HrefTemplate by splitting the given path template.
+		 * @param path Path template, e.g. "entities/{ent_id}".
+		 */
+		private HrefTemplate(String path) {
+			List<String> literalList = new ArrayList<String>();
+			List<String> slotList = new ArrayList<String>();
+			int start = 0;
+			int open = path.indexOf('{');
+			while (open >= 0) {
+				int close = path.indexOf('}', open);
+				literalList.add(path.substring(start, open));
+				String slot = path.substring(open + 1, close);
+				int colon = slot.indexOf(':');
+				if (colon >= 0) {
+					slot = slot.substring(0, colon);
+				}
+				slotList.add(slot.trim());
+				start = close + 1;
+				open = path.indexOf('{', start);
+			}
+			literalList.add(path.substring(start));
+			this.literals = literalList.toArray(new String[literalList.size()]);
+			this.slots = slotList.toArray(new String[slotList.size()]);
+			this.length = path.length();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.misys.cme.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Holds the ObjectMapper, and the ObjectReader made from it, shared by the whole API layer.
+ * ObjectMapper and ObjectReader are thread-safe once configured, and each one caches the serializers and
+ * deserializers it looks up, so sharing them avoids rebuilding those caches on every request (or every row).
+ * @note Every CMEObject type is the same Java class, so the shared ObjectMapper's serializer cache serves all of them.
+ */
+public class JsonCodec {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final JavaType VALUES_TYPE = MAPPER.getTypeFactory().constructType(new TypeReference<Map<String, Object>>(){});
+
+	/**
+	 * Reader for the "values" object of a CMEObject's JSON. Creating it with readerFor prefetches the deserializer.
+	 */
+	private static final ObjectReader VALUES_READER = MAPPER.readerFor(VALUES_TYPE);
+
+	/**
+	 * Gets the shared ObjectMapper.
+	 * @return The shared ObjectMapper.
+	 * @note Don't change the configuration of the returned ObjectMapper.
+	 */
+	public static ObjectMapper getMapper() {
+		return MAPPER;
+	}
+
+	/**
+	 * Gets the shared ObjectReader for the "values" object of a CMEObject's JSON.
+	 * @return The ObjectReader.
+	 */
+	public static ObjectReader getValuesReader() {
+		return VALUES_READER;
+	}
+
+	/**
+	 * Converts the given CMEObject to JSON.
+	 * @param cmeObject CMEObject to convert.
+	 * @return A new ObjectNode.
+	 */
+	public static ObjectNode toTree(CMEObject cmeObject) {
+		return MAPPER.valueToTree(cmeObject);
+	}
+
+	/**
+	 * Converts the given JSON to a CMEObject.
+	 * @param json JSON with a "type" field and a "values" object, as produced by toTree.
+	 * @return A new CMEObject.
+	 * @throws IOException if the "values" object isn't a JSON object.
+	 */
+	public static CMEObject toCMEObject(JsonNode json) throws IOException {
+		Map<String, Object> map = VALUES_READER.readValue(json.get("values"));
+		CMEObject cmeObject = new CMEObject(json.get("type").asText());
+		cmeObject.setValues(map);
+		return cmeObject;
+	}
+
+	/**
+	 * Creates a JsonGenerator that writes to the given OutputStream.
+	 * @param output OutputStream to write to.
+	 * @return A new JsonGenerator.
+	 * @throws IOException if the JsonGenerator can't be created.
+	 */
+	public static JsonGenerator createGenerator(OutputStream output) throws IOException {
+		return MAPPER.getFactory().createGenerator(output);
+	}
+}
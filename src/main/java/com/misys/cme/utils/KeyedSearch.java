@@ -0,0 +1,141 @@
+package com.misys.cme.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.cme.backend.BackendRegistry;
+import com.misys.cme.search.filter.AndCombinator;
+import com.misys.cme.search.filter.ConditionalOperatorFactory;
+import com.misys.cme.search.filter.EqualityValue;
+import com.misys.cme.search.filter.EqualsOperator;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.InOperator;
+import com.misys.cme.search.filter.OrCombinator;
+import com.misys.cme.search.filter.Selector;
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Contains static functions for fetching many CMEObjects by their key values with as few searches as possible.
+ * Single column keys are fetched with an $in on the column; composite keys with an $or of an $and per key tuple.
+ * The keys are split into chunks so no search goes over SQL Server's limit on parameters per statement.
+ */
+public class KeyedSearch {
+	private static Logger logger = LogManager.getLogger(KeyedSearch.class);
+
+	/**
+	 * Maximum number of key values sent to the database in a single search.
+	 * SQL Server allows at most 2100 parameters per statement.
+	 */
+	public static final int MAX_KEY_VALUES_PER_SEARCH = 1000;
+
+	/**
+	 * Searches for the CMEObjects of the given type with the given key values.
+	 * @param name Name of the CMEObject type to search for.
+	 * @param columns List of column names to return, or null for all columns. This must include the key columns.
+	 * @param keyColumnNames Names of the columns the key values are for.
+	 * @param keyParamsList Key values to search for, as maps of column name to value. Duplicates are only searched for
+	 * once.
+	 * @return The CMEObjects found, grouped by their key (see getKey), in the order they were returned.
+	 */
+	public static Map<List<Object>, List<CMEObject>> search(String name, List<String> columns, List<String> keyColumnNames,
+			Collection<Map<String, Object>> keyParamsList) {
+		//Only search for each distinct key once
+		Map<List<Object>, Map<String, Object>> distinctKeyParams = new LinkedHashMap<>();
+		for (Map<String, Object> keyParams : keyParamsList) {
+			distinctKeyParams.putIfAbsent(KeyedSearch.getKey(keyColumnNames, keyParams), keyParams);
+		}
+
+		Map<List<Object>, List<CMEObject>> cmeObjectsByKey = new LinkedHashMap<>();
+		List<Map<String, Object>> pending = new ArrayList<>(distinctKeyParams.values());
+		int keysPerSearch = Math.max(1, MAX_KEY_VALUES_PER_SEARCH / keyColumnNames.size());
+		for (int start = 0; start < pending.size(); start += keysPerSearch) {
+			List<Map<String, Object>> batch = pending.subList(start, Math.min(start + keysPerSearch, pending.size()));
+			Filter filter = KeyedSearch.createKeyFilter(keyColumnNames, batch);
+			logger.trace(name + ", " + filter);
+			long searchStart = System.nanoTime();
+			List<CMEObject> cmeObjects = BackendRegistry.getBackend().search(name, null, columns, filter);
+			RequestTimer.record(RequestTimer.DB, searchStart);
+			for (CMEObject cmeObject : cmeObjects) {
+				List<Object> key = new ArrayList<>(keyColumnNames.size());
+				for (String columnName : keyColumnNames) {
+					key.add(KeyedSearch.normalizeKeyValue(cmeObject.getValue(columnName)));
+				}
+				cmeObjectsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(cmeObject);
+			}
+		}
+		return cmeObjectsByKey;
+	}
+
+	/**
+	 * Creates the Filter that finds the CMEObjects with any of the given key values.
+	 * Single column keys become {"column": {"$in": [...]}}. Composite keys become an $or of an $and per key tuple.
+	 * @param keyColumnNames Names of the columns the key values are for.
+	 * @param keyParamsList Distinct key values, as maps of column name to value.
+	 * @return A new Filter.
+	 */
+	public static Filter createKeyFilter(List<String> keyColumnNames, List<Map<String, Object>> keyParamsList) {
+		if (keyColumnNames.size() == 1) {
+			String columnName = keyColumnNames.get(0);
+			List<EqualityValue> values = new ArrayList<>();
+			for (Map<String, Object> keyParams : keyParamsList) {
+				values.add(ConditionalOperatorFactory.createEqualityValueFromObject(keyParams.get(columnName)));
+			}
+			return new Filter(new Selector(columnName, new InOperator(values)));
+		} else {
+			List<Filter> keyFilters = new ArrayList<>();
+			for (Map<String, Object> keyParams : keyParamsList) {
+				List<Filter> columnFilters = new ArrayList<>();
+				for (String columnName : keyColumnNames) {
+					EqualityValue value = ConditionalOperatorFactory.createEqualityValueFromObject(keyParams.get(columnName));
+					columnFilters.add(new Filter(new Selector(columnName, new EqualsOperator(value))));
+				}
+				keyFilters.add(new Filter(new AndCombinator(columnFilters)));
+			}
+			return new Filter(new OrCombinator(keyFilters));
+		}
+	}
+
+	/**
+	 * Gets the key used to match CMEObjects to the key values they were searched for with.
+	 * @param keyColumnNames Names of the key columns.
+	 * @param keyParams Key values, as a map of column name to value.
+	 * @return The normalized key values, in keyColumnNames order.
+	 */
+	public static List<Object> getKey(List<String> keyColumnNames, Map<String, Object> keyParams) {
+		List<Object> key = new ArrayList<>(keyColumnNames.size());
+		for (String columnName : keyColumnNames) {
+			key.add(KeyedSearch.normalizeKeyValue(keyParams.get(columnName)));
+		}
+		return key;
+	}
+
+	/**
+	 * Normalizes a key value so that values that the database considers equal are also equal in Java.
+	 * Numbers are compared by value regardless of their class. Text is compared the way SQL Server's default collation
+	 * compares it: ignoring case and trailing spaces.
+	 * @param value Value to normalize.
+	 * @return The normalized value.
+	 */
+	public static Object normalizeKeyValue(Object value) {
+		if (value instanceof Number) {
+			return new BigDecimal(value.toString()).stripTrailingZeros().toPlainString();
+		} else if (value instanceof String) {
+			String text = (String) value;
+			int end = text.length();
+			while (end > 0 && text.charAt(end - 1) == ' ') {
+				end--;
+			}
+			return text.substring(0, end).toUpperCase(Locale.ROOT);
+		} else {
+			return value;
+		}
+	}
+}
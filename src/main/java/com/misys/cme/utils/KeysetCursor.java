@@ -0,0 +1,207 @@
+package com.misys.cme.utils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.misys.cme.search.filter.AndCombinator;
+import com.misys.cme.search.filter.ComparisonValue;
+import com.misys.cme.search.filter.ConditionalOperatorFactory;
+import com.misys.cme.search.filter.EqualsOperator;
+import com.misys.cme.search.filter.Filter;
+import com.misys.cme.search.filter.GreaterThanOperator;
+import com.misys.cme.search.filter.OrCombinator;
+import com.misys.cme.search.filter.Selector;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Contains static functions for keyset (cursor) pagination of search results.
+ * Pages are ordered by the key columns of the CMEObjectDef. A cursor is an opaque token holding the key values of the
+ * last CMEObject of a page; the next page is found with a filter for the keys that come after it, e.g.
+ * (ent_bsys_id > a) OR (ent_bsys_id = a AND ent_id > b) OR (ent_bsys_id = a AND ent_id = b AND lgl_ent_id > c).
+ * The key values are stored by the data type of their column, so they are compared as that type again: INTEGER values
+ * as numbers, DECIMAL values as text holding the exact number, and STRING values as text. Types whose key columns are
+ * of any other data type, and CMEObjects with a null key value, can't be paged on.
+ */
+public class KeysetCursor {
+	/**
+	 * Query parameter (and search body field) holding the maximum number of results to return.
+	 */
+	public static final String LIMIT_PARAMETER = "limit";
+
+	/**
+	 * Query parameter (and search body field) holding the cursor of the page to return.
+	 */
+	public static final String CURSOR_PARAMETER = "cursor";
+
+	/**
+	 * Creates the cursor for the page that comes after the given CMEObject.
+	 * @param cmeObject Last CMEObject of the current page.
+	 * @return The cursor as an opaque String.
+	 * @throws RuntimeException if the CMEObject's type can't be paged on, or one of its key values is null.
+	 */
+	public static String create(CMEObject cmeObject) {
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(cmeObject.getType());
+		ObjectNode token = JsonNodeFactory.instance.objectNode();
+		token.put("type", cmeObject.getType());
+		ArrayNode keys = token.putArray("keys");
+		for (CMEObjectColumnDef column : def.getKeyColumns()) {
+			keys.add(KeysetCursor.encodeKey(cmeObject.getType(), column, cmeObject.getValue(column.getColumnName())));
+		}
+		try {
+			byte[] json = JsonCodec.getMapper().writeValueAsBytes(token);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates a Filter that matches the CMEObjects of the given type that come after the given cursor.
+	 * @param name Name of the CMEObject type being searched.
+	 * @param cursor Cursor created by create().
+	 * @return A new Filter.
+	 */
+	public static Filter createAfterFilter(String name, String cursor) {
+		JsonNode token;
+		try {
+			token = JsonCodec.getMapper().readTree(Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII)));
+		} catch (Exception e) {
+			throw new RuntimeException("The cursor \"" + cursor + "\" is not valid!", e);
+		}
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		List<CMEObjectColumnDef> keyColumns = def.getKeyColumns();
+		JsonNode keys = token.get("keys");
+		if (!name.equals(token.path("type").asText()) || keys == null || !keys.isArray() || keys.size() != keyColumns.size()) {
+			throw new RuntimeException("The cursor \"" + cursor + "\" is not valid for " + name + "!");
+		}
+
+		List<Object> values = new ArrayList<>(keyColumns.size());
+		for (int i = 0; i < keyColumns.size(); i++) {
+			Object value = KeysetCursor.decodeKey(keyColumns.get(i), keys.get(i));
+			if (value == null) {
+				throw new RuntimeException("The cursor \"" + cursor + "\" is not valid for " + name + "!");
+			}
+			values.add(value);
+		}
+
+		List<Filter> orFilters = new ArrayList<>();
+		for (int i = 0; i < keyColumns.size(); i++) {
+			List<Filter> andFilters = new ArrayList<>();
+			for (int j = 0; j < i; j++) {
+				andFilters.add(new Filter(new Selector(keyColumns.get(j).getColumnName(),
+						new EqualsOperator(ConditionalOperatorFactory.createEqualityValueFromObject(values.get(j))))));
+			}
+			andFilters.add(new Filter(new Selector(keyColumns.get(i).getColumnName(),
+					new GreaterThanOperator(KeysetCursor.createComparisonValue(values.get(i))))));
+			if (andFilters.size() == 1) {
+				orFilters.add(andFilters.get(0));
+			} else {
+				orFilters.add(new Filter(new AndCombinator(andFilters)));
+			}
+		}
+		if (orFilters.size() == 1) {
+			return orFilters.get(0);
+		}
+		return new Filter(new OrCombinator(orFilters));
+	}
+
+	/**
+	 * Parses the given limit.
+	 * @param limit The limit as given by the client, or null.
+	 * @return The limit, or null if none was given.
+	 */
+	public static Integer parseLimit(Object limit) {
+		if (limit == null) {
+			return null;
+		}
+		try {
+			int value = Integer.parseInt(limit.toString().trim());
+			if (value > 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+		}
+		throw new RuntimeException("The limit must be a positive integer!");
+	}
+
+	/**
+	 * Encodes a key value to store in a cursor by the data type of its column.
+	 * @param name Name of the CMEObject type.
+	 * @param column Definition of the key column.
+	 * @param value The key value.
+	 * @return The key value as JSON.
+	 * @throws RuntimeException if the value is null or the column's data type can't be paged on.
+	 */
+	private static JsonNode encodeKey(String name, CMEObjectColumnDef column, Object value) {
+		if (value == null) {
+			throw new RuntimeException("Cannot page on " + name + ", since a result has no value for its key column "
+					+ column.getColumnName() + "!");
+		}
+		try {
+			switch (column.getDataType()) {
+				case INTEGER:
+					return LongNode.valueOf(value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString().trim()));
+				case DECIMAL:
+					return TextNode.valueOf(new BigDecimal(value.toString().trim()).toString());
+				case STRING:
+					return TextNode.valueOf(value.toString());
+				default:
+					throw new RuntimeException("Cannot page on " + name + ", since its key column " + column.getColumnName()
+							+ " is of the data type " + column.getDataType() + "!");
+			}
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("Cannot page on " + name + ", since the value \"" + value + "\" of its key column "
+					+ column.getColumnName() + " is not a number!", e);
+		}
+	}
+
+	/**
+	 * Decodes a key value stored in a cursor by the data type of its column.
+	 * @param column Definition of the key column.
+	 * @param key The key value as JSON.
+	 * @return A Long for INTEGER columns, a BigDecimal for DECIMAL columns or a String for STRING columns, or null if
+	 * the value isn't one encodeKey stores for the column.
+	 */
+	private static Object decodeKey(CMEObjectColumnDef column, JsonNode key) {
+		switch (column.getDataType()) {
+			case INTEGER:
+				return key.isIntegralNumber() && key.canConvertToLong() ? key.longValue() : null;
+			case DECIMAL:
+				if (key.isTextual()) {
+					try {
+						return new BigDecimal(key.textValue());
+					} catch (NumberFormatException e) {
+					}
+				}
+				return null;
+			case STRING:
+				return key.isTextual() ? key.textValue() : null;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Creates a ComparisonValue from a key value decoded from a cursor.
+	 * @param value Key value to create the ComparisonValue from. See decodeKey.
+	 * @return A new ComparisonValue.
+	 */
+	private static ComparisonValue createComparisonValue(Object value) {
+		if (value instanceof Number) {
+			return new ComparisonValue((Number) value);
+		} else {
+			return new ComparisonValue(value.toString());
+		}
+	}
+}
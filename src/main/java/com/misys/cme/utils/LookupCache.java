@@ -0,0 +1,241 @@
+package com.misys.cme.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.ws.rs.Path;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.misys.definitions.CMEObjectChildDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Read-through cache of serialized GET responses for lookup tables, i.e. the CMEObject types served under /admin
+ * (State, NAICSCode, Gender, YesNo, ...). These are read on nearly every screen but change a few times a year.
+ * Responses are cached by request URI, so different query parameters and base URLs are cached separately.
+ * Entries are dropped when a CMEObject of their type (or of a child type they may expand) is updated, inserted or
+ * deleted through this API, and in any case after MAX_AGE_MILLIS, to pick up changes made elsewhere.
+ */
+public class LookupCache {
+	private static Logger logger = LogManager.getLogger(LookupCache.class);
+
+	/**
+	 * Prefix of the paths of the API classes whose responses are cached.
+	 */
+	private static final String LOOKUP_PATH_PREFIX = "/admin/";
+
+	/**
+	 * Maximum number of responses kept in the cache.
+	 */
+	private static final int MAX_SIZE = 1024;
+
+	/**
+	 * Time after which a cached response is reloaded even if nothing invalidated it.
+	 */
+	private static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong();
+
+	/**
+	 * Map of CMEObject names to the cached types whose responses may contain CMEObjects of that type.
+	 */
+	private Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	/**
+	 * Constructs a LookupCache for the lookup types among the given API classes.
+	 * @param classMap Map of CMEObject names to the classes that handle API requests for the CMEObjects.
+	 */
+	public LookupCache(Map<String, Class<?>> classMap) {
+		for (Map.Entry<String, Class<?>> entry : classMap.entrySet()) {
+			Path path = entry.getValue().getAnnotation(Path.class);
+			if (path != null && path.value().startsWith(LOOKUP_PATH_PREFIX)) {
+				addDependent(entry.getKey(), entry.getKey(), new HashSet<String>());
+			}
+		}
+		logger.debug("Caching lookup types: " + dependents.keySet());
+	}
+
+	/**
+	 * Checks whether GET responses for the given CMEObject type are cached.
+	 * @param name Name of the CMEObject type.
+	 * @return true if the type is a lookup type; false otherwise.
+	 */
+	public boolean isCacheable(String name) {
+		Set<String> types = dependents.get(name);
+		return types != null && types.contains(name);
+	}
+
+	/**
+	 * Gets the cached response for the given request, loading and caching it if it isn't cached.
+	 * @param name Name of the CMEObject type the request is for.
+	 * @param requestUri URI of the request, including its query parameters.
+	 * @param loader Loads the response entity: a StreamingOutput or an object Jackson can serialize.
+	 * @return The cached response, or null if loader returned null (e.g. the CMEObject wasn't found).
+	 */
+	public CachedEntity get(String name, String requestUri, Supplier<Object> loader) {
+		String key = name + " " + requestUri;
+		long now = System.currentTimeMillis();
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null && now - entry.entity.getCreatedMillis() < MAX_AGE_MILLIS) {
+			hits.incrementAndGet();
+			return entry.entity;
+		}
+		misses.incrementAndGet();
+
+		//Don't cache a response loaded while it was being invalidated
+		long loadGeneration = generation.get();
+		Object entity = loader.get();
+		if (entity == null) {
+			return null;
+		}
+		CachedEntity cachedEntity = new CachedEntity(LookupCache.serialize(entity));
+		synchronized (entries) {
+			if (generation.get() == loadGeneration) {
+				entries.put(key, new Entry(name, cachedEntity));
+			}
+		}
+		return cachedEntity;
+	}
+
+	/**
+	 * Drops the cached responses that may contain CMEObjects of the given type.
+	 * This should be called whenever a CMEObject of the type is updated, inserted or deleted.
+	 * @param name Name of the CMEObject type that changed.
+	 */
+	public void invalidate(String name) {
+		Set<String> types = dependents.get(name);
+		if (types == null) {
+			return;
+		}
+		synchronized (entries) {
+			generation.incrementAndGet();
+			Iterator<Entry> entryIterator = entries.values().iterator();
+			while (entryIterator.hasNext()) {
+				if (types.contains(entryIterator.next().name)) {
+					entryIterator.remove();
+				}
+			}
+		}
+		logger.debug("Invalidated cached responses for " + types + " after a change to " + name);
+	}
+
+	/**
+	 * Removes all responses from the cache.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			generation.incrementAndGet();
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Gets the number of requests answered from the cache.
+	 * @return The number of cache hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of requests whose response had to be loaded.
+	 * @return The number of cache misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of responses in the cache.
+	 * @return The number of cached responses.
+	 */
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Records that responses for the given cached type may contain CMEObjects of the given type and its child types.
+	 * @param cachedName Name of the cached CMEObject type.
+	 * @param name Name of the CMEObject type the responses may contain.
+	 * @param visited[in,out] Names of the types already recorded, to stop at cycles.
+	 */
+	private void addDependent(String cachedName, String name, Set<String> visited) {
+		if (!visited.add(name)) {
+			return;
+		}
+		Set<String> types = dependents.get(name);
+		if (types == null) {
+			types = new HashSet<String>();
+			dependents.put(name, types);
+		}
+		types.add(cachedName);
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		if (def != null && def.getChildDefs() != null) {
+			for (CMEObjectChildDef childDef : def.getChildDefs()) {
+				addDependent(cachedName, childDef.getChildName(), visited);
+			}
+		}
+	}
+
+	/**
+	 * Serializes the given response entity.
+	 * @param entity A StreamingOutput or an object Jackson can serialize.
+	 * @return The serialized entity.
+	 */
+	private static byte[] serialize(Object entity) {
+		try {
+			if (entity instanceof StreamingOutput) {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				((StreamingOutput) entity).write(output);
+				if (entity instanceof CMEObjectStreamingOutput && ((CMEObjectStreamingOutput) entity).getFailure() != null) {
+					//Ended with an error marker, which must not be cached, and the response can still be a 500
+					throw ((CMEObjectStreamingOutput) entity).getFailure();
+				}
+				return output.toByteArray();
+			}
+			return JsonCodec.getMapper().writeValueAsBytes(entity);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * A cached response and the CMEObject type it is for.
+	 */
+	private static class Entry {
+		private String name;
+		private CachedEntity entity;
+
+		private Entry(String name, CachedEntity entity) {
+			this.name = name;
+			this.entity = entity;
+		}
+	}
+}
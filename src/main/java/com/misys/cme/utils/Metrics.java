@@ -0,0 +1,247 @@
+package com.misys.cme.utils;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.misys.cme.search.filter.FilterPlanCache;
+
+/**
+ * Contains static functions for recording request metrics and writing them in Prometheus text format for /metrics.
+ * Latencies are recorded per API class and method by MetricsFilter; rows returned and child expansion fan-out are
+ * recorded per CMEObject type by CMEAPIUtils and ChildExpander. Recording never locks (see Histogram).
+ * The cache and bulkhead counters are read when the metrics are written.
+ */
+public class Metrics {
+	private static final Family requestDuration = new Family("cmeapi_request_duration_seconds",
+			"Time from receiving a request to writing the last byte of its response.",
+			Histogram.LATENCY_NANOS_BOUNDS, Histogram.NANOS_PER_SECOND);
+	private static final Family serializationDuration = new Family("cmeapi_serialization_duration_seconds",
+			"Time spent writing response bodies, including lazy child expansion.",
+			Histogram.LATENCY_NANOS_BOUNDS, Histogram.NANOS_PER_SECOND);
+	private static final Family rowsReturned = new Family("cmeapi_rows_returned",
+			"Number of CMEObjects in search and multi-get responses.",
+			Histogram.COUNT_BOUNDS, 1);
+	private static final Family childFanOut = new Family("cmeapi_child_fanout",
+			"Number of children expanded inline per parent CMEObject.",
+			Histogram.COUNT_BOUNDS, 1);
+
+	/**
+	 * Records the latency of a request.
+	 * @param resource Simple name of the API class that handled the request.
+	 * @param method Name of the API method that handled the request.
+	 * @param status HTTP status of the response.
+	 * @param nanos Time from receiving the request to writing its response, in nanoseconds.
+	 */
+	public static void recordRequest(String resource, String method, int status, long nanos) {
+		requestDuration.get("{resource=\"" + Metrics.escape(resource) + "\",method=\"" + Metrics.escape(method)
+				+ "\",status=\"" + status + "\"}").record(nanos);
+	}
+
+	/**
+	 * Records the time spent writing a response body.
+	 * @param resource Simple name of the API class that handled the request.
+	 * @param method Name of the API method that handled the request.
+	 * @param nanos Time spent writing the body, in nanoseconds.
+	 */
+	public static void recordSerialization(String resource, String method, long nanos) {
+		serializationDuration.get("{resource=\"" + Metrics.escape(resource) + "\",method=\"" + Metrics.escape(method)
+				+ "\"}").record(nanos);
+	}
+
+	/**
+	 * Records the number of CMEObjects in a response.
+	 * @param type Name of the CMEObject type.
+	 * @param rows Number of CMEObjects.
+	 */
+	public static void recordRows(String type, int rows) {
+		rowsReturned.get("{type=\"" + Metrics.escape(type) + "\"}").record(rows);
+	}
+
+	/**
+	 * Records the number of children expanded inline for one parent CMEObject.
+	 * @param childType Name of the child CMEObject type.
+	 * @param children Number of children.
+	 */
+	public static void recordChildFanOut(String childType, int children) {
+		childFanOut.get("{child=\"" + Metrics.escape(childType) + "\"}").record(children);
+	}
+
+	/**
+	 * Writes all metrics in Prometheus text format (version 0.0.4).
+	 * @return The metrics.
+	 */
+	public static String toPrometheus() {
+		StringBuilder output = new StringBuilder(16 * 1024);
+		requestDuration.write(output);
+		serializationDuration.write(output);
+		rowsReturned.write(output);
+		childFanOut.write(output);
+
+		Metrics.writeHeader(output, "cmeapi_filter_plan_cache_hits_total", "counter", "Search filters whose compiled plan was cached.");
+		Metrics.writeSample(output, "cmeapi_filter_plan_cache_hits_total", "", FilterPlanCache.getHits());
+		Metrics.writeHeader(output, "cmeapi_filter_plan_cache_misses_total", "counter", "Search filters that had to be compiled.");
+		Metrics.writeSample(output, "cmeapi_filter_plan_cache_misses_total", "", FilterPlanCache.getMisses());
+		Metrics.writeHeader(output, "cmeapi_filter_plan_cache_evictions_total", "counter", "Compiled filter plans evicted from the cache.");
+		Metrics.writeSample(output, "cmeapi_filter_plan_cache_evictions_total", "", FilterPlanCache.getEvictions());
+		Metrics.writeHeader(output, "cmeapi_filter_plan_cache_size", "gauge", "Compiled filter plans in the cache.");
+		Metrics.writeSample(output, "cmeapi_filter_plan_cache_size", "", FilterPlanCache.getSize());
+
+		LookupCache lookupCache = CMEAPIUtils.getLookupCache();
+		if (lookupCache != null) {
+			Metrics.writeHeader(output, "cmeapi_lookup_cache_hits_total", "counter", "Lookup table GETs answered from the cache.");
+			Metrics.writeSample(output, "cmeapi_lookup_cache_hits_total", "", lookupCache.getHits());
+			Metrics.writeHeader(output, "cmeapi_lookup_cache_misses_total", "counter", "Lookup table GETs that had to be loaded.");
+			Metrics.writeSample(output, "cmeapi_lookup_cache_misses_total", "", lookupCache.getMisses());
+			Metrics.writeHeader(output, "cmeapi_lookup_cache_size", "gauge", "Lookup table responses in the cache.");
+			Metrics.writeSample(output, "cmeapi_lookup_cache_size", "", lookupCache.getSize());
+		}
+
+		EntityCache entityCache = CMEAPIUtils.getEntityCache();
+		if (entityCache != null) {
+			Map<String, Long> hits = entityCache.getHits();
+			Map<String, Long> misses = entityCache.getMisses();
+			Metrics.writeHeader(output, "cmeapi_entity_cache_hits_total", "counter", "GETs by key answered from the entity cache.");
+			for (Map.Entry<String, Long> entry : hits.entrySet()) {
+				Metrics.writeSample(output, "cmeapi_entity_cache_hits_total", Metrics.getTypeLabels(entry.getKey()), entry.getValue());
+			}
+			Metrics.writeHeader(output, "cmeapi_entity_cache_misses_total", "counter", "GETs by key that had to be loaded.");
+			for (Map.Entry<String, Long> entry : misses.entrySet()) {
+				Metrics.writeSample(output, "cmeapi_entity_cache_misses_total", Metrics.getTypeLabels(entry.getKey()), entry.getValue());
+			}
+			Metrics.writeHeader(output, "cmeapi_entity_cache_hit_ratio", "gauge", "Share of GETs by key answered from the entity cache.");
+			for (Map.Entry<String, Long> entry : hits.entrySet()) {
+				long total = entry.getValue() + misses.getOrDefault(entry.getKey(), 0L);
+				double ratio = total > 0 ? (double) entry.getValue() / total : 0;
+				output.append("cmeapi_entity_cache_hit_ratio").append(Metrics.getTypeLabels(entry.getKey())).append(' ')
+						.append(Metrics.formatNumber(Math.round(ratio * 10000) / 10000.0)).append('\n');
+			}
+			Metrics.writeHeader(output, "cmeapi_entity_cache_evictions_total", "counter", "CMEObjects evicted from the entity cache to make room.");
+			Metrics.writeSample(output, "cmeapi_entity_cache_evictions_total", "", entityCache.getEvictions());
+			Metrics.writeHeader(output, "cmeapi_entity_cache_size", "gauge", "CMEObjects in the entity cache.");
+			Metrics.writeSample(output, "cmeapi_entity_cache_size", "", entityCache.getSize());
+			Metrics.writeHeader(output, "cmeapi_entity_cache_bytes", "gauge", "Estimated size of the CMEObjects in the entity cache.");
+			Metrics.writeSample(output, "cmeapi_entity_cache_bytes", "", entityCache.getBytes());
+		}
+
+		Metrics.writeHeader(output, "cmeapi_expansion_truncated_total", "counter", "Child branches linked to instead of expanded, by the limit they hit.");
+		for (Map.Entry<String, Long> entry : ChildExpander.getTruncations().entrySet()) {
+			Metrics.writeSample(output, "cmeapi_expansion_truncated_total", "{reason=\"" + Metrics.escape(entry.getKey()) + "\"}", entry.getValue());
+		}
+
+		Map<String, Bulkhead> bulkheads = new TreeMap<String, Bulkhead>(Bulkhead.getBulkheads());
+		Metrics.writeHeader(output, "cmeapi_bulkhead_active", "gauge", "Requests being executed per bulkhead.");
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			Metrics.writeSample(output, "cmeapi_bulkhead_active", Metrics.getBulkheadLabels(bulkhead), bulkhead.getActiveCount());
+		}
+		Metrics.writeHeader(output, "cmeapi_bulkhead_queued", "gauge", "Requests waiting for a thread per bulkhead.");
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			Metrics.writeSample(output, "cmeapi_bulkhead_queued", Metrics.getBulkheadLabels(bulkhead), bulkhead.getQueueSize());
+		}
+		Metrics.writeHeader(output, "cmeapi_bulkhead_rejected_total", "counter", "Requests shed with 503 per bulkhead.");
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			Metrics.writeSample(output, "cmeapi_bulkhead_rejected_total", Metrics.getBulkheadLabels(bulkhead), bulkhead.getRejectedCount());
+		}
+		Metrics.writeHeader(output, "cmeapi_bulkhead_timed_out_total", "counter", "Requests answered with 503 after the timeout per bulkhead.");
+		for (Bulkhead bulkhead : bulkheads.values()) {
+			Metrics.writeSample(output, "cmeapi_bulkhead_timed_out_total", Metrics.getBulkheadLabels(bulkhead), bulkhead.getTimedOutCount());
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Formats a number for Prometheus text format, without exponents or trailing zeros (e.g. 0.0005 and 1).
+	 * @param value The number.
+	 * @return The formatted number.
+	 */
+	static String formatNumber(double value) {
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * Escapes a label value for Prometheus text format.
+	 * @param value The label value.
+	 * @return The escaped value.
+	 */
+	private static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Gets the labels of a CMEObject type's metrics.
+	 * @param type Name of the CMEObject type.
+	 * @return The labels.
+	 */
+	private static String getTypeLabels(String type) {
+		return "{type=\"" + Metrics.escape(type) + "\"}";
+	}
+
+	/**
+	 * Gets the labels of a bulkhead's metrics.
+	 * @param bulkhead The bulkhead.
+	 * @return The labels.
+	 */
+	private static String getBulkheadLabels(Bulkhead bulkhead) {
+		return "{bulkhead=\"" + Metrics.escape(bulkhead.getName()) + "\"}";
+	}
+
+	/**
+	 * Writes the HELP and TYPE lines of a metric.
+	 * @param output[in,out] StringBuilder to write to.
+	 * @param name Name of the metric.
+	 * @param type Prometheus type of the metric.
+	 * @param help Description of the metric.
+	 */
+	private static void writeHeader(StringBuilder output, String name, String type, String help) {
+		output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	/**
+	 * Writes one sample of a metric.
+	 * @param output[in,out] StringBuilder to write to.
+	 * @param name Name of the metric.
+	 * @param labels Labels of the sample, or "" for none.
+	 * @param value Value of the sample.
+	 */
+	private static void writeSample(StringBuilder output, String name, String labels, long value) {
+		output.append(name).append(labels).append(' ').append(value).append('\n');
+	}
+
+	/**
+	 * A histogram metric and its Histogram per set of labels.
+	 */
+	private static class Family {
+		private final String name;
+		private final String help;
+		private final long[] bounds;
+		private final double scale;
+		private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+		private Family(String name, String help, long[] bounds, double scale) {
+			this.name = name;
+			this.help = help;
+			this.bounds = bounds;
+			this.scale = scale;
+		}
+
+		private Histogram get(String labels) {
+			Histogram histogram = histograms.get(labels);
+			if (histogram == null) {
+				histogram = histograms.computeIfAbsent(labels, l -> new Histogram(bounds, scale));
+			}
+			return histogram;
+		}
+
+		private void write(StringBuilder output) {
+			Metrics.writeHeader(output, name, "histogram", help);
+			for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+				entry.getValue().write(name, entry.getKey(), output);
+			}
+		}
+	}
+}
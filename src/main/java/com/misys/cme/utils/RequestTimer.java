@@ -0,0 +1,120 @@
+package com.misys.cme.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Times the phases of one request: backend searches (db), child expansion (expand), conversion to JSON (serialize)
+ * and href building (href). ServerTimingFilter reports them in a Server-Timing header, and searchViaPOST can report
+ * them in a "_timing" field.
+ * The timer of the request being handled is kept per thread, so CMEAPIUtils, ChildExpander and KeyedSearch can record
+ * into it without passing it around. Code that doesn't run while a timer is started records nothing.
+ * @note The phases overlap: expand includes the searches and serialization of the children.
+ */
+public class RequestTimer {
+	public static final int DB = 0;
+	public static final int EXPAND = 1;
+	public static final int SERIALIZE = 2;
+	public static final int HREF = 3;
+
+	/**
+	 * Names of the phases, as reported in the Server-Timing header. They are indexed by the phase constants.
+	 */
+	private static final String[] PHASE_NAMES = {"db", "expand", "serialize", "href"};
+
+	private static final ThreadLocal<RequestTimer> current = new ThreadLocal<RequestTimer>();
+
+	private final AtomicLongArray nanos = new AtomicLongArray(PHASE_NAMES.length);
+
+	/**
+	 * Starts a timer for the request being handled by the current thread, replacing any timer left on the thread.
+	 * @return The new RequestTimer.
+	 */
+	public static RequestTimer start() {
+		RequestTimer timer = new RequestTimer();
+		current.set(timer);
+		return timer;
+	}
+
+	/**
+	 * Gets the timer of the request being handled by the current thread.
+	 * @return The RequestTimer, or null if none is started.
+	 */
+	public static RequestTimer current() {
+		return current.get();
+	}
+
+	/**
+	 * Makes the given timer the current thread's timer, e.g. when a response is written on another thread than the
+	 * one that handled the request.
+	 * @param timer The RequestTimer, or null to remove the current thread's timer.
+	 */
+	public static void attach(RequestTimer timer) {
+		if (timer == null) {
+			current.remove();
+		} else {
+			current.set(timer);
+		}
+	}
+
+	/**
+	 * Removes the current thread's timer.
+	 */
+	public static void clear() {
+		current.remove();
+	}
+
+	/**
+	 * Adds the time since the given start to a phase of the current thread's timer, if it has one.
+	 * @param phase The phase, e.g. RequestTimer.DB.
+	 * @param startNanos Value of System.nanoTime() when the work started.
+	 */
+	public static void record(int phase, long startNanos) {
+		RequestTimer timer = current.get();
+		if (timer != null) {
+			timer.nanos.addAndGet(phase, System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Formats the phases as the value of a Server-Timing header, e.g. "db;dur=12.5, expand;dur=40.1".
+	 * Phases that took no time are left out.
+	 * @return The header value, or "" if no phase took any time.
+	 */
+	public String toServerTiming() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			long phaseNanos = nanos.get(i);
+			if (phaseNanos > 0) {
+				if (value.length() > 0) {
+					value.append(", ");
+				}
+				value.append(PHASE_NAMES[i]).append(";dur=").append(RequestTimer.toMillis(phaseNanos));
+			}
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Converts the phases to a JSON object of phase names to milliseconds.
+	 * @return A new ObjectNode.
+	 */
+	public ObjectNode toJson() {
+		ObjectNode node = JsonNodeFactory.instance.objectNode();
+		for (int i = 0; i < PHASE_NAMES.length; i++) {
+			node.put(PHASE_NAMES[i], RequestTimer.toMillis(nanos.get(i)));
+		}
+		return node;
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds rounded to 0.1ms.
+	 * @param nanos The nanoseconds.
+	 * @return The milliseconds.
+	 */
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 100_000.0) / 10.0;
+	}
+}
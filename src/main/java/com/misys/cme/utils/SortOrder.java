@@ -0,0 +1,241 @@
+package com.misys.cme.utils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.misys.cmeobject.CMEObject;
+import com.misys.definitions.CMEObjectColumnDef;
+import com.misys.definitions.CMEObjectDef;
+
+/**
+ * Order of the results of a search, from the "sort" field of a search body, e.g.
+ * [{"field": "ent_name", "direction": "asc"}, {"field": "ent_id", "direction": "desc"}].
+ * Values are ordered the way the database orders them: NULL first, numbers by value, and text like SQL Server's
+ * default collation, ignoring case and trailing spaces. CMEObjects that are equal in every sort field keep the order
+ * the backend found them in.
+ */
+public class SortOrder {
+	/**
+	 * Search body field holding the sort order.
+	 */
+	public static final String SORT_PARAMETER = "sort";
+
+	private String name;
+	private List<String> columnNames = new ArrayList<>();
+	private List<Boolean> descending = new ArrayList<>();
+
+	/**
+	 * Constructs a SortOrder from the given JSON, checking it against the CMEObject type's definition.
+	 * @param name Name of the CMEObject type being searched.
+	 * @param sortJSON JSON array of objects with the "field" to sort by and an optional "direction": "asc" (the
+	 * default) or "desc".
+	 */
+	public SortOrder(String name, JsonNode sortJSON) {
+		this.name = name;
+		CMEObjectDef def = CMEObjectDef.getCmeObjDef(name);
+		if (!sortJSON.isArray() || sortJSON.size() == 0) {
+			throw new RuntimeException("\"" + SORT_PARAMETER + "\" must be a non-empty array of {\"field\": ..., \"direction\": ...} objects!");
+		}
+		for (JsonNode fieldJSON : sortJSON) {
+			JsonNode field = fieldJSON.path("field");
+			if (!field.isTextual()) {
+				throw new RuntimeException("Every element of \"" + SORT_PARAMETER + "\" must have a \"field\" with a column name!");
+			}
+			String columnName = field.asText();
+			if (def.getColumnByName(columnName) == null) {
+				throw new RuntimeException("Cannot sort by \"" + columnName + "\", since it is not a column of " + name + "!");
+			}
+			if (columnNames.contains(columnName)) {
+				throw new RuntimeException("Cannot sort by \"" + columnName + "\" more than once!");
+			}
+			String direction = fieldJSON.path("direction").asText("asc");
+			if (!direction.equalsIgnoreCase("asc") && !direction.equalsIgnoreCase("desc")) {
+				throw new RuntimeException("The direction of \"" + columnName + "\" must be \"asc\" or \"desc\"!");
+			}
+			columnNames.add(columnName);
+			descending.add(direction.equalsIgnoreCase("desc"));
+		}
+	}
+
+	/**
+	 * Constructs an empty SortOrder for the given CMEObject type. See keyOrder.
+	 */
+	private SortOrder(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Creates the key order of the given CMEObject type: ascending by its key columns, which is the order pages are
+	 * in (see KeysetCursor).
+	 * @param name Name of the CMEObject type.
+	 * @return A new SortOrder.
+	 */
+	public static SortOrder keyOrder(String name) {
+		SortOrder sort = new SortOrder(name);
+		for (CMEObjectColumnDef column : CMEObjectDef.getCmeObjDef(name).getKeyColumns()) {
+			sort.columnNames.add(column.getColumnName());
+			sort.descending.add(false);
+		}
+		return sort;
+	}
+
+	/**
+	 * Gets the names of the columns sorted by, most significant first.
+	 * @return The column names.
+	 */
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+
+	/**
+	 * Checks whether this sorts the CMEObjects in key order, i.e. ascending by the first key columns, which is the
+	 * order of the type's clustered index.
+	 * @return true if this is key order; false otherwise.
+	 */
+	public boolean isKeyOrder() {
+		List<CMEObjectColumnDef> keyColumns = CMEObjectDef.getCmeObjDef(name).getKeyColumns();
+		if (columnNames.size() > keyColumns.size()) {
+			return false;
+		}
+		for (int i = 0; i < columnNames.size(); i++) {
+			if (descending.get(i) || !columnNames.get(i).equals(keyColumns.get(i).getColumnName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares two CMEObjects in this order.
+	 * @param a First CMEObject.
+	 * @param b Second CMEObject.
+	 * @return A negative number, zero, or a positive number as a comes before, with, or after b.
+	 */
+	public int compare(CMEObject a, CMEObject b) {
+		for (int i = 0; i < columnNames.size(); i++) {
+			String columnName = columnNames.get(i);
+			int result = SortOrder.compareValues(a.getValue(columnName), b.getValue(columnName));
+			if (result != 0) {
+				return descending.get(i) ? -result : result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the first CMEObjects of the given ones in this order.
+	 * A bounded heap is used, so with a limit this is O(n log limit) rather than a full sort.
+	 * @param cmeObjects CMEObjects to sort. These are all of the same type.
+	 * @param limit Maximum number of CMEObjects to return, or null to sort all of them.
+	 * @return The first CMEObjects, sorted.
+	 */
+	public List<CMEObject> top(List<CMEObject> cmeObjects, Integer limit) {
+		if (limit == null || limit >= cmeObjects.size()) {
+			List<CMEObject> sorted = new ArrayList<>(cmeObjects);
+			//List.sort is stable, so equal CMEObjects keep their order
+			sorted.sort(this::compare);
+			return sorted;
+		}
+		//Positions break ties, so equal CMEObjects keep their order
+		Comparator<Integer> order = (i, j) -> {
+			int result = compare(cmeObjects.get(i), cmeObjects.get(j));
+			return result != 0 ? result : Integer.compare(i, j);
+		};
+		PriorityQueue<Integer> heap = new PriorityQueue<>(limit + 1, order.reversed());
+		for (int i = 0; i < cmeObjects.size(); i++) {
+			//Most CMEObjects come after the last one kept, so they are skipped without touching the heap
+			if (heap.size() == limit && order.compare(i, heap.peek()) > 0) {
+				continue;
+			}
+			heap.add(i);
+			if (heap.size() > limit) {
+				heap.poll();
+			}
+		}
+		List<Integer> positions = new ArrayList<>(heap);
+		Collections.sort(positions, order);
+		List<CMEObject> top = new ArrayList<>(positions.size());
+		for (Integer position : positions) {
+			top.add(cmeObjects.get(position));
+		}
+		return top;
+	}
+
+	/**
+	 * Gets this order the way an ORDER BY clause would have it, e.g. "ent_name ASC, ent_id DESC".
+	 * @return The order as a String.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < columnNames.size(); i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(columnNames.get(i)).append(descending.get(i) ? " DESC" : " ASC");
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Compares two column values the way the database orders them. null comes first. Numbers are compared by value
+	 * regardless of their class, and text like SQL Server's default collation: ignoring case and trailing spaces.
+	 * @param a First value.
+	 * @param b Second value.
+	 * @return A negative number, zero, or a positive number as a is less than, equal to, or greater than b.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static int compareValues(Object a, Object b) {
+		if (a == b) {
+			return 0;
+		} else if (a == null || b == null) {
+			return a == null ? -1 : 1;
+		} else if ((a instanceof Long || a instanceof Integer) && (b instanceof Long || b instanceof Integer)) {
+			return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+		} else if (a instanceof BigDecimal && b instanceof BigDecimal) {
+			return ((BigDecimal) a).compareTo((BigDecimal) b);
+		} else if (a instanceof Number && b instanceof Number) {
+			return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+		} else if (a instanceof String && b instanceof String) {
+			return SortOrder.compareText((String) a, (String) b);
+		} else if (a instanceof java.util.Date && b instanceof java.util.Date) {
+			return Long.compare(((java.util.Date) a).getTime(), ((java.util.Date) b).getTime());
+		} else if (a instanceof Comparable && a.getClass().equals(b.getClass())) {
+			return ((Comparable) a).compareTo(b);
+		} else {
+			return a.toString().compareTo(b.toString());
+		}
+	}
+
+	/**
+	 * Compares two Strings ignoring case and trailing spaces, without copying them.
+	 */
+	private static int compareText(String a, String b) {
+		int aLength = a.length();
+		while (aLength > 0 && a.charAt(aLength - 1) == ' ') {
+			aLength--;
+		}
+		int bLength = b.length();
+		while (bLength > 0 && b.charAt(bLength - 1) == ' ') {
+			bLength--;
+		}
+		int length = Math.min(aLength, bLength);
+		for (int i = 0; i < length; i++) {
+			char aChar = Character.toUpperCase(a.charAt(i));
+			char bChar = Character.toUpperCase(b.charAt(i));
+			if (aChar != bChar) {
+				aChar = Character.toLowerCase(aChar);
+				bChar = Character.toLowerCase(bChar);
+				if (aChar != bChar) {
+					return aChar - bChar;
+				}
+			}
+		}
+		return aLength - bLength;
+	}
+}
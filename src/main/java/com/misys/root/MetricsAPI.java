@@ -0,0 +1,25 @@
+package com.misys.root;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import com.misys.cme.utils.Metrics;
+
+/**
+ * Exposes the request metrics of the CME REST API for Prometheus to scrape.
+ */
+@Singleton
+@Path(value="/metrics")
+public class MetricsAPI {
+	/**
+	 * Handles GET requests to /metrics.
+	 * @return The metrics in Prometheus text format. See Metrics.
+	 */
+	@GET
+	@Produces(value={"text/plain; version=0.0.4; charset=utf-8"})
+	public static String getMetrics() {
+		return Metrics.toPrometheus();
+	}
+}
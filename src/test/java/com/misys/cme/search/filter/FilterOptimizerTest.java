@@ -0,0 +1,151 @@
+package com.misys.cme.search.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tests the rewrites FilterOptimizer makes: De Morgan, flattening, merging, and contradiction detection.
+ * Each optimized filter is compared with the filter parsed from the JSON it should be equivalent to.
+ */
+public class FilterOptimizerTest {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Test
+	public void pushesNotDownToTheSelectors() throws IOException {
+		assertOptimizesTo("{\"$not\": {\"$and\": [{\"x\": {\"$lt\": 5}}, {\"y\": 1}]}}",
+				"{\"$or\": [{\"x\": {\"$gte\": 5}}, {\"y\": {\"$ne\": 1}}]}");
+		assertOptimizesTo("{\"$not\": {\"$or\": [{\"x\": {\"$lte\": 5}}, {\"y\": {\"$in\": [1, 2]}}]}}",
+				"{\"$and\": [{\"x\": {\"$gt\": 5}}, {\"y\": {\"$nin\": [1, 2]}}]}");
+		assertOptimizesTo("{\"$not\": {\"x\": {\"$gt\": 5}}}", "{\"x\": {\"$lte\": 5}}");
+		assertOptimizesTo("{\"$not\": {\"x\": {\"$gte\": 5}}}", "{\"x\": {\"$lt\": 5}}");
+	}
+
+	@Test
+	public void rewritesNandAndNor() throws IOException {
+		assertOptimizesTo("{\"$nor\": [{\"x\": 1}, {\"y\": {\"$nin\": [1, 2]}}]}",
+				"{\"$and\": [{\"x\": {\"$ne\": 1}}, {\"y\": {\"$in\": [1, 2]}}]}");
+		assertOptimizesTo("{\"$nand\": [{\"x\": 1}, {\"y\": {\"$lt\": 3}}]}",
+				"{\"$or\": [{\"x\": {\"$ne\": 1}}, {\"y\": {\"$gte\": 3}}]}");
+		assertOptimizesTo("{\"$not\": {\"$nor\": [{\"x\": 1}, {\"y\": 2}]}}",
+				"{\"$or\": [{\"x\": 1}, {\"y\": 2}]}");
+	}
+
+	@Test
+	public void cancelsDoubleNegation() throws IOException {
+		assertOptimizesTo("{\"$not\": {\"$not\": {\"x\": 1}}}", "{\"x\": 1}");
+	}
+
+	@Test
+	public void keepsNotAroundOperatorsWithoutAnOpposite() throws IOException {
+		assertOptimizesTo("{\"$not\": {\"x\": {\"$begins\": \"a\"}}}", "{\"$not\": {\"x\": {\"$begins\": \"a\"}}}");
+	}
+
+	@Test
+	public void flattensNestedCombinators() throws IOException {
+		assertOptimizesTo("{\"$and\": [{\"$and\": [{\"x\": 1}, {\"y\": 2}]}, {\"z\": 3}]}",
+				"{\"$and\": [{\"x\": 1}, {\"y\": 2}, {\"z\": 3}]}");
+		assertOptimizesTo("{\"$or\": [{\"x\": 1}, {\"$or\": [{\"y\": 2}, {\"z\": 3}]}]}",
+				"{\"$or\": [{\"x\": 1}, {\"y\": 2}, {\"z\": 3}]}");
+		assertOptimizesTo("{\"$and\": [{\"x\": 1}]}", "{\"x\": 1}");
+	}
+
+	@Test
+	public void mergesEqualitiesUnderOr() throws IOException {
+		assertOptimizesTo("{\"$or\": [{\"x\": 1}, {\"x\": {\"$in\": [2, 3]}}, {\"x\": 1.0}]}",
+				"{\"x\": {\"$in\": [1, 2, 3]}}");
+		assertOptimizesTo("{\"$or\": [{\"x\": 1}, {\"y\": 2}, {\"x\": 3}]}",
+				"{\"$or\": [{\"x\": {\"$in\": [1, 3]}}, {\"y\": 2}]}");
+	}
+
+	@Test
+	public void mergesInequalitiesUnderAnd() throws IOException {
+		assertOptimizesTo("{\"$and\": [{\"x\": {\"$ne\": 1}}, {\"x\": {\"$nin\": [2, 3]}}]}",
+				"{\"x\": {\"$nin\": [1, 2, 3]}}");
+	}
+
+	@Test
+	public void doesNotMergeNulls() throws IOException {
+		assertOptimizesTo("{\"$or\": [{\"x\": null}, {\"x\": 1}]}", "{\"$or\": [{\"x\": null}, {\"x\": 1}]}");
+	}
+
+	@Test
+	public void mergesTextOnlyWhenItIsTheSameString() throws IOException {
+		assertOptimizesTo("{\"$or\": [{\"x\": \"a\"}, {\"x\": \"a\"}]}", "{\"x\": \"a\"}");
+		assertOptimizesTo("{\"$or\": [{\"x\": \"a\"}, {\"x\": \"A\"}, {\"x\": \"a \"}]}",
+				"{\"x\": {\"$in\": [\"a\", \"A\", \"a \"]}}");
+	}
+
+	@Test
+	public void detectsContradictoryRanges() throws IOException {
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": {\"$lt\": 5}}, {\"x\": {\"$gt\": 10}}]}"));
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": {\"$lt\": 5}}, {\"x\": {\"$gte\": 5}}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": {\"$lte\": 5}}, {\"x\": {\"$gte\": 5}}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": {\"$lt\": 5}}, {\"y\": {\"$gt\": 10}}]}"));
+	}
+
+	@Test
+	public void detectsContradictoryEqualities() throws IOException {
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": 1}, {\"x\": 2}]}"));
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": 1}, {\"x\": {\"$ne\": 1.0}}]}"));
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": {\"$in\": [1, 2]}}, {\"x\": {\"$gt\": 2}}]}"));
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": null}, {\"x\": {\"$gt\": 1}}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": {\"$in\": [1, 2]}}, {\"x\": {\"$in\": [2, 3]}}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": 1}, {\"x\": \"1\"}]}"));
+	}
+
+	@Test
+	public void detectsTextContradictionsOnlyForTheSameString() throws IOException {
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": \"a\"}, {\"x\": {\"$ne\": \"a\"}}]}"));
+		assertTrue(matchesNothing("{\"$and\": [{\"x\": {\"$in\": [\"a\", \"b\"]}}, {\"x\": {\"$nin\": [\"a\", \"b\"]}}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": \"a\"}, {\"x\": \"A\"}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": \"a\"}, {\"x\": \"a \"}]}"));
+		assertFalse(matchesNothing("{\"$and\": [{\"x\": \"a\"}, {\"x\": {\"$ne\": \"A\"}}]}"));
+	}
+
+	@Test
+	public void propagatesContradictions() throws IOException {
+		assertTrue(matchesNothing("{\"$and\": [{\"y\": 1}, {\"$and\": [{\"x\": 1}, {\"x\": 2}]}]}"));
+		assertTrue(matchesNothing("{\"$or\": [{\"$and\": [{\"x\": 1}, {\"x\": 2}]}, {\"$and\": [{\"y\": 1}, {\"y\": null}]}]}"));
+		assertOptimizesTo("{\"$or\": [{\"y\": 1}, {\"$and\": [{\"x\": 1}, {\"x\": 2}]}]}", "{\"y\": 1}");
+		FilterOptimizer optimizer = optimize("{\"$or\": [{\"$and\": [{\"x\": 1}, {\"x\": 2}]}]}");
+		assertFalse(optimizer.matchesEverything());
+		assertNull(optimizer.getFilter());
+	}
+
+	@Test
+	public void doesNotTreatTheNegationOfAContradictionAsMatchingEverything() throws IOException {
+		// x = 1 AND x = 2 is never true, but its negation is unknown when x is NULL
+		assertOptimizesTo("{\"$not\": {\"$and\": [{\"x\": 1}, {\"x\": 2}]}}",
+				"{\"$or\": [{\"x\": {\"$ne\": 1}}, {\"x\": {\"$ne\": 2}}]}");
+	}
+
+	/**
+	 * Checks that the given filter optimizes to the given expected filter.
+	 */
+	private static void assertOptimizesTo(String filterJSON, String expectedJSON) throws IOException {
+		FilterOptimizer optimizer = optimize(filterJSON);
+		assertFalse(optimizer.matchesNothing());
+		assertEquals(parse(expectedJSON).toString(), String.valueOf(optimizer.getFilter()));
+	}
+
+	private static boolean matchesNothing(String filterJSON) throws IOException {
+		return optimize(filterJSON).matchesNothing();
+	}
+
+	private static FilterOptimizer optimize(String filterJSON) throws IOException {
+		return new FilterOptimizer(parse(filterJSON));
+	}
+
+	private static Filter parse(String filterJSON) throws IOException {
+		return new Filter((ObjectNode) MAPPER.readTree(filterJSON));
+	}
+}
@@ -0,0 +1,96 @@
+package com.misys.cme.search.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.misys.cmeobject.search.Queries.ValueType;
+
+/**
+ * Tests LiteralClassifier against the ISO-8601 and UUID forms it recognizes, and text that only looks like them.
+ */
+public class LiteralClassifierTest {
+	@Test
+	public void classifiesTimestamps() {
+		assertEquals(ValueType.TIMESTAMP, LiteralClassifier.classify("2017-06-30T13:45:00"));
+		assertEquals(ValueType.TIMESTAMP, LiteralClassifier.classify("2017-06-30T13:45:00.123Z"));
+		assertEquals(ValueType.TIMESTAMP, LiteralClassifier.classify("2017-06-30T13:45:00-05:00"));
+		assertEquals(ValueType.TIMESTAMP, LiteralClassifier.classify("2017-06-30T24:00:00"));
+	}
+
+	@Test
+	public void classifiesDates() {
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-06-30"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-06-30Z"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-06-30+01:00"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("-0044-03-15"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("12017-06-30"));
+	}
+
+	@Test
+	public void checksTheDayAgainstTheMonth() {
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-01-31"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-04-31"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-04-30"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-06-31"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-09-31"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-11-31T00:00:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-13-01"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-00-01"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-01-00"));
+	}
+
+	@Test
+	public void checksLeapYears() {
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2016-02-29"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-02-29"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2017-02-28"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("1900-02-29"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("2000-02-29"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2016-02-30"));
+		assertEquals(ValueType.DATE, LiteralClassifier.classify("12000-02-29"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("12100-02-29"));
+	}
+
+	@Test
+	public void classifiesTimes() {
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("13:45:00"));
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("13:45:00.5"));
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("13:45:00Z"));
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("23:59:60"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("13:60:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("25:00:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("13:45:00."));
+	}
+
+	@Test
+	public void allowsHour24OnlyAtTheEndOfTheDay() {
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("24:00:00"));
+		assertEquals(ValueType.TIME, LiteralClassifier.classify("24:00:00Z"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("24:00:01"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("24:30:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("24:00:00.5"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-06-30T24:00:01"));
+	}
+
+	@Test
+	public void classifiesUUIDs() {
+		assertEquals(ValueType.UUID, LiteralClassifier.classify("123e4567-e89b-12d3-a456-426655440000"));
+		assertEquals(ValueType.UUID, LiteralClassifier.classify("123E4567-E89B-12D3-A456-426655440000"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("123e4567-e89b-12d3-a456-42665544000g"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("123e4567e89b-12d3-a456-4266554400000"));
+	}
+
+	@Test
+	public void leavesOtherTextAsText() {
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify(""));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("Smith"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("75001"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("12345678"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-06-30 13:45:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-06-30T13:45"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("2017-06-30+15:00"));
+		assertEquals(ValueType.TEXT, LiteralClassifier.classify("17-06-30"));
+	}
+}
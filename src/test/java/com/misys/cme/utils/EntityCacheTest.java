@@ -0,0 +1,220 @@
+package com.misys.cme.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.misys.cmeobject.CMEObject;
+
+/**
+ * Tests when EntityCache answers reads from the cache and when it loads them again: after writes to the CMEObject or
+ * to a related one, after a write that raced the load, with a time to live of 0, and when it is full.
+ * The types are an Entity and its Individuals, related by ent_id.
+ */
+public class EntityCacheTest {
+	private static final String ENTITY = "Entity";
+	private static final String INDIVIDUAL = "Individual";
+
+	@Test
+	public void answersRepeatedReadsFromTheCache() {
+		EntityCache cache = createCache(1024 * 1024);
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals("Acme", read(cache, ENTITY, 1, loads).getValue("nm"));
+		assertEquals("Acme", read(cache, ENTITY, 1, loads).getValue("nm"));
+		assertEquals(1, loads.get());
+		assertEquals(Long.valueOf(1), cache.getHits().get(ENTITY));
+		assertEquals(Long.valueOf(1), cache.getMisses().get(ENTITY));
+	}
+
+	@Test
+	public void returnsCopiesOfTheCachedCMEObject() {
+		EntityCache cache = createCache(1024 * 1024);
+		AtomicInteger loads = new AtomicInteger();
+		CMEObject first = read(cache, ENTITY, 1, loads);
+		first.setValue("nm", "Changed");
+		CMEObject second = read(cache, ENTITY, 1, loads);
+		assertNotSame(first, second);
+		assertEquals("Acme", second.getValue("nm"));
+		assertEquals(1, loads.get());
+
+		CMEObject name = cache.get(ENTITY, key(ENTITY, 1), Arrays.asList("nm"), () -> load(ENTITY, 1, loads));
+		assertEquals("Acme", name.getValue("nm"));
+		assertNull(name.getValue("ent_id"));
+	}
+
+	@Test
+	public void dropsTheCMEObjectAndItsRelatedCMEObjectsOnWrite() {
+		EntityCache cache = createCache(1024 * 1024);
+		AtomicInteger loads = new AtomicInteger();
+		read(cache, ENTITY, 1, loads);
+		read(cache, ENTITY, 2, loads);
+		read(cache, INDIVIDUAL, 10, loads);
+		read(cache, INDIVIDUAL, 20, loads);
+		assertEquals(4, loads.get());
+
+		//Entity 1 and its Individual 10 are dropped, but not Entity 2 and its Individual 20
+		cache.invalidate(ENTITY, load(ENTITY, 1, new AtomicInteger()));
+		read(cache, ENTITY, 1, loads);
+		read(cache, INDIVIDUAL, 10, loads);
+		assertEquals(6, loads.get());
+		read(cache, ENTITY, 2, loads);
+		read(cache, INDIVIDUAL, 20, loads);
+		assertEquals(6, loads.get());
+
+		//A child written by its key alone drops its parent through the cached version's ent_id
+		cache.invalidate(INDIVIDUAL, key(INDIVIDUAL, 20));
+		read(cache, ENTITY, 2, loads);
+		read(cache, INDIVIDUAL, 20, loads);
+		assertEquals(8, loads.get());
+		read(cache, ENTITY, 1, loads);
+		assertEquals(8, loads.get());
+	}
+
+	@Test
+	public void dropsEveryCMEObjectOfTheRelatedTypesWhenTheKeyIsNotKnown() {
+		EntityCache cache = createCache(1024 * 1024);
+		AtomicInteger loads = new AtomicInteger();
+		read(cache, ENTITY, 1, loads);
+		read(cache, INDIVIDUAL, 20, loads);
+		cache.invalidate(ENTITY);
+		read(cache, ENTITY, 1, loads);
+		read(cache, INDIVIDUAL, 20, loads);
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void doesNotCacheALoadThatRacedAnInvalidation() {
+		EntityCache cache = createCache(1024 * 1024);
+		AtomicInteger loads = new AtomicInteger();
+
+		//The Entity is written while it is being loaded, so the loaded version may be stale
+		cache.get(ENTITY, key(ENTITY, 1), null, () -> {
+			cache.invalidate(ENTITY, key(ENTITY, 1));
+			return load(ENTITY, 1, loads);
+		});
+		read(cache, ENTITY, 1, loads);
+		assertEquals(2, loads.get());
+
+		//So is an Individual whose Entity is written while it is being loaded
+		cache.get(INDIVIDUAL, key(INDIVIDUAL, 10), null, () -> {
+			cache.invalidate(ENTITY, key(ENTITY, 1));
+			return load(INDIVIDUAL, 10, loads);
+		});
+		read(cache, INDIVIDUAL, 10, loads);
+		assertEquals(4, loads.get());
+
+		read(cache, INDIVIDUAL, 10, loads);
+		assertEquals(4, loads.get());
+	}
+
+	@Test
+	public void doesNotCacheTypesWithATimeToLiveOfZero() {
+		String name = "EntityWithoutCache";
+		System.setProperty("CMEAPI.entityCache." + name + ".ttlSeconds", "0");
+		try {
+			Map<String, List<String>> columnNames = new HashMap<>();
+			columnNames.put(name, Arrays.asList("ent_id", "nm"));
+			Map<String, List<String>> keyColumnNames = new HashMap<>();
+			keyColumnNames.put(name, Arrays.asList("ent_id"));
+			EntityCache cache = new EntityCache(1024 * 1024, columnNames, keyColumnNames);
+			assertFalse(cache.isCacheable(name, key(name, 1)));
+
+			AtomicInteger loads = new AtomicInteger();
+			read(cache, name, 1, loads);
+			read(cache, name, 1, loads);
+			assertEquals(2, loads.get());
+			assertEquals(0, cache.getSize());
+		} finally {
+			System.clearProperty("CMEAPI.entityCache." + name + ".ttlSeconds");
+		}
+	}
+
+	@Test
+	public void staysUnderMaxBytesAndKeepsWhatIsReadOften() {
+		long maxBytes = 64 * 1024;
+		EntityCache cache = createCache(maxBytes);
+		AtomicInteger loads = new AtomicInteger();
+		for (int i = 0; i < 10; i++) {
+			read(cache, ENTITY, 1, loads);
+		}
+
+		//A scan of CMEObjects read once fills the cache many times over
+		for (int id = 1000; id < 3000; id++) {
+			read(cache, ENTITY, id, loads);
+			assertTrue(cache.getBytes() <= maxBytes);
+		}
+		assertTrue(cache.getEvictions() > 0);
+		assertTrue(cache.getSize() < 2000);
+
+		int before = loads.get();
+		read(cache, ENTITY, 1, loads);
+		assertEquals(before, loads.get());
+	}
+
+	@Test
+	public void isCacheableOnlyForReadsByTheWholeKey() {
+		EntityCache cache = createCache(1024 * 1024);
+		assertTrue(cache.isCacheable(ENTITY, key(ENTITY, 1)));
+		Map<String, Object> params = key(ENTITY, 1);
+		params.put("nm", "Acme");
+		assertFalse(cache.isCacheable(ENTITY, params));
+		assertFalse(cache.isCacheable(ENTITY, Collections.<String, Object>singletonMap("ent_id", null)));
+		assertFalse(cache.isCacheable(ENTITY, Collections.<String, Object>singletonMap("nm", "Acme")));
+	}
+
+	/**
+	 * Creates a cache of Entities and their Individuals.
+	 */
+	private static EntityCache createCache(long maxBytes) {
+		Map<String, List<String>> columnNames = new HashMap<>();
+		columnNames.put(ENTITY, Arrays.asList("ent_id", "nm"));
+		columnNames.put(INDIVIDUAL, Arrays.asList("ind_id", "ent_id", "nm"));
+		Map<String, List<String>> keyColumnNames = new HashMap<>();
+		keyColumnNames.put(ENTITY, Arrays.asList("ent_id"));
+		keyColumnNames.put(INDIVIDUAL, Arrays.asList("ind_id"));
+		EntityCache cache = new EntityCache(maxBytes, columnNames, keyColumnNames);
+		cache.addChild(ENTITY, INDIVIDUAL, Arrays.asList("ent_id"), Arrays.asList("ent_id"));
+		return cache;
+	}
+
+	/**
+	 * Reads a CMEObject with all of its columns through the cache, counting the loads.
+	 */
+	private static CMEObject read(EntityCache cache, String name, long id, AtomicInteger loads) {
+		return cache.get(name, key(name, id), null, () -> load(name, id, loads));
+	}
+
+	/**
+	 * Loads a CMEObject as the database would. Individual n belongs to Entity n / 10.
+	 */
+	private static CMEObject load(String name, long id, AtomicInteger loads) {
+		loads.incrementAndGet();
+		CMEObject cmeObject = new CMEObject(name);
+		if (name.equals(INDIVIDUAL)) {
+			cmeObject.setValue("ind_id", id);
+			cmeObject.setValue("ent_id", id / 10);
+			cmeObject.setValue("nm", "Individual " + id);
+		} else {
+			cmeObject.setValue("ent_id", id);
+			cmeObject.setValue("nm", id == 1 ? "Acme" : "Entity " + id);
+		}
+		return cmeObject;
+	}
+
+	private static Map<String, Object> key(String name, long id) {
+		Map<String, Object> key = new HashMap<>();
+		key.put(name.equals(INDIVIDUAL) ? "ind_id" : "ent_id", id);
+		return key;
+	}
+}